@@ -0,0 +1,108 @@
+package command;
+
+import model.ChatFixture;
+import model.ClientHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Despacho de una línea por {@link CommandRegistry#executeCommand}: búsqueda del
+ * token, parseo de argumentos y ejecución del comando contra usuarios en memoria.
+ * Los comandos de mensaje incluyen el envío a los destinatarios y el registro en el historial.
+ * <p>
+ * {@link #dispatch} repite siempre el mismo comando; {@link #dispatchMixed}
+ * recorre una mezcla ponderada como la de una sesión real (sobre todo mensajes),
+ * en un orden fijo pero entreverado, para que el predictor de saltos y los
+ * perfiles del JIT no se especialicen en un solo comando.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CommandDispatchBenchmark {
+
+    /**
+     * Comandos de la mezcla con su peso (veces cada 100 comandos).
+     */
+    private static final Object[][] MIX = {
+            {"/msg beto hola que tal", 55},
+            {"/msggroup equipo hola a todos", 25},
+            {"/listusers", 6},
+            {"/listgroups", 5},
+            {"/joingroup equipo", 4},
+            {"/codecs pcm16,ulaw", 3},
+            {"/desconocido x", 2},
+    };
+    private static final int MIX_SIZE = 100;
+
+    /**
+     * Usuarios en memoria: ana envía, beto y carla reciben; los tres en "equipo".
+     */
+    @State(Scope.Thread)
+    public static class Chat {
+        final CommandRegistry registry = CommandRegistry.shared();
+        ChatFixture fixture;
+        ClientHandler sender;
+
+        @Setup
+        public void setup() {
+            fixture = new ChatFixture();
+            sender = fixture.connect("ana");
+            fixture.connect("beto");
+            fixture.connect("carla");
+            fixture.group("equipo", "ana", "beto", "carla");
+        }
+
+        @TearDown
+        public void tearDown() {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Single {
+        @Param({"/listgroups", "/listusers", "/msg beto hola que tal", "/msggroup equipo hola a todos",
+                "/codecs pcm16,ulaw", "/desconocido x"})
+        public String command;
+    }
+
+    @State(Scope.Thread)
+    public static class Mixed {
+        final String[] commands = new String[MIX_SIZE];
+
+        @Setup
+        public void setup() {
+            List<String> mix = new ArrayList<>(MIX_SIZE);
+            for (Object[] entry : MIX) {
+                for (int i = 0; i < (Integer) entry[1]; i++) mix.add((String) entry[0]);
+            }
+            if (mix.size() != MIX_SIZE) throw new IllegalStateException("Los pesos deben sumar " + MIX_SIZE);
+            Collections.shuffle(mix, new Random(42));
+            mix.toArray(commands);
+        }
+    }
+
+    @Benchmark
+    public boolean dispatch(Chat chat, Single single) {
+        return chat.registry.executeCommand(single.command, "ana", chat.sender);
+    }
+
+    /**
+     * Una pasada por la mezcla (tiempo promedio por comando). Al final espera a
+     * que las particiones entreguen los mensajes encolados: el costo del reparto
+     * entra en la medición y las colas no crecen entre pasadas.
+     */
+    @Benchmark
+    @OperationsPerInvocation(MIX_SIZE)
+    public int dispatchMixed(Chat chat, Mixed mixed) {
+        int handled = 0;
+        for (String command : mixed.commands) {
+            if (chat.registry.executeCommand(command, "ana", chat.sender)) handled++;
+        }
+        chat.fixture.settle();
+        return handled;
+    }
+}
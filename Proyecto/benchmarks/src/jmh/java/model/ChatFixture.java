@@ -0,0 +1,104 @@
+package model;
+
+import service.ConversationShards;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Servidor de chat en memoria para los benchmarks: usuarios y grupos reales
+ * (los mismos registros que usa ChatServer) conectados por {@link DiscardTransport},
+ * sin abrir puertos ni arrancar Ice.
+ */
+public final class ChatFixture implements AutoCloseable {
+    private final List<ClientHandler> clients = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final ChatServer server;
+
+    public ChatFixture() {
+        server = new ChatServer(new Config("127.0.0.1", 0));
+        install(server);
+    }
+
+    // ChatServer publica su instancia al iniciar; aquí se publica sin abrir sockets
+    private static void install(ChatServer server) {
+        try {
+            Field instance = ChatServer.class.getDeclaredField("instance");
+            instance.setAccessible(true);
+            instance.set(null, server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo instalar el servidor de prueba", e);
+        }
+    }
+
+    /**
+     * Registra un usuario conectado con el protocolo de texto.
+     */
+    public ClientHandler connect(String name) {
+        return connect(name, 1);
+    }
+
+    /**
+     * Registra un usuario conectado con la versión de protocolo dada (1 texto, 2 binario).
+     */
+    public ClientHandler connect(String name, int protocol) {
+        ClientHandler handler = new ClientHandler(new DiscardTransport());
+        if (protocol >= FrameCodec.VERSION) handler.handleProtocolRequest(FrameCodec.HANDSHAKE + " " + protocol);
+        handler.handleRegistration(name);
+        clients.add(handler);
+        names.add(name);
+        return handler;
+    }
+
+    /**
+     * Crea un grupo con los miembros dados; el primero es el creador. Vuelve
+     * cuando la partición del grupo ya aplicó todas las altas.
+     */
+    public void group(String group, String... members) {
+        ChatServer.createGroup(group, members[0]);
+        for (int i = 1; i < members.length; i++) {
+            ChatServer.joinGroup(group, members[i]);
+        }
+        ChatServer.callInGroup(group, () -> null);
+    }
+
+    /**
+     * Espera a que todas las particiones de conversación terminen lo que tienen
+     * encolado (los comandos de mensajes solo encolan el reparto).
+     */
+    public void settle() {
+        ConversationShards shards;
+        try {
+            Field field = ChatServer.class.getDeclaredField("conversations");
+            field.setAccessible(true);
+            shards = (ConversationShards) field.get(server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo acceder a las particiones", e);
+        }
+        // Una clave por partición: cada una corre sus tareas en orden, así que esperar la última alcanza
+        boolean[] done = new boolean[shards.size()];
+        int remaining = done.length;
+        for (int i = 0; remaining > 0; i++) {
+            String key = "settle" + i;
+            int shard = shards.shardOf(key);
+            if (done[shard]) continue;
+            done[shard] = true;
+            remaining--;
+            shards.call(key, () -> null);
+        }
+    }
+
+    public List<ClientHandler> clients() {
+        return clients;
+    }
+
+    @Override
+    public void close() {
+        for (String name : names) {
+            ChatServer.removeUser(name);
+        }
+        clients.clear();
+        names.clear();
+    }
+}
@@ -0,0 +1,45 @@
+package model;
+
+import interfaces.ClientTransport;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Transporte en memoria para los benchmarks: acepta cada escritura y solo
+ * cuenta los bytes, así se mide el trabajo del servidor sin la red.
+ * Lo usa un único hilo a la vez.
+ */
+public final class DiscardTransport implements ClientTransport {
+    private long bytes;
+    private long writes;
+
+    @Override
+    public boolean write(ByteBuffer frame) {
+        bytes += frame.remaining();
+        writes++;
+        return true;
+    }
+
+    @Override
+    public Socket socket() {
+        return null;
+    }
+
+    @Override
+    public QueueStats queueStats() {
+        return new QueueStats(0, 0, writes, 0, 0);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void abort() {
+    }
+
+    public long bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,55 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.ProtocolException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodificación de frames del protocolo 2 con {@link FrameDecoder}: cabeceras
+ * y fragmentos de audio (VOICE_DATA) leídos tal como llegan del socket. Mide el
+ * costo por frame del decodificador; el audio se descarta porque no hay nota en curso.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(FrameDecoderBenchmark.FRAMES)
+public class FrameDecoderBenchmark {
+    static final int FRAMES = 256;
+
+    @Param({"160", "16384"})
+    public int payloadSize;
+
+    // Tamaño de cada read() del socket
+    @Param({"1460", "65536"})
+    public int chunkSize;
+
+    private ChatFixture fixture;
+    private FrameDecoder decoder;
+    private byte[] stream;
+
+    @Setup
+    public void setup() {
+        fixture = new ChatFixture();
+        decoder = new FrameDecoder(fixture.connect("ana", FrameCodec.VERSION));
+        byte[] frame = FrameCodec.encode(FrameCodec.VOICE_DATA, 0, 0, new byte[payloadSize], 0, payloadSize);
+        stream = new byte[frame.length * FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            System.arraycopy(frame, 0, stream, i * frame.length, frame.length);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean decode() throws ProtocolException {
+        boolean open = true;
+        for (int offset = 0; offset < stream.length; offset += chunkSize) {
+            open &= decoder.feed(stream, offset, Math.min(chunkSize, stream.length - offset));
+        }
+        return open;
+    }
+}
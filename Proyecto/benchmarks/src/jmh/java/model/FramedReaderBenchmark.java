@@ -0,0 +1,118 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lectura de líneas del protocolo de texto con {@link FramedReader} sobre un
+ * flujo que repite el mismo bloque sin fin, como un socket que siempre tiene datos.
+ * {@link #readLineByteAtATime} es la referencia: el lector que usaba el
+ * servidor antes, un {@code InputStream.read()} por byte. El flujo cuenta sus
+ * llamadas a read ({@code readCalls} por {@code lines} leídas en el reporte);
+ * la asignación por línea se ve con {@code -prof gc} (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FramedReaderBenchmark {
+
+    @Param({"32", "512"})
+    public int lineLength;
+
+    // Tamaño de cada read() del flujo: menor que el buffer obliga a armar líneas partidas
+    @Param({"1460", "65536"})
+    public int chunkSize;
+
+    private LoopedInputStream buffered;
+    private LoopedInputStream raw;
+    private FramedReader reader;
+
+    /**
+     * Llamadas a read del flujo y líneas leídas en la iteración.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ReadCalls {
+        public long readCalls;
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            readCalls = 0;
+            lines = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        StringBuilder block = new StringBuilder();
+        while (block.length() < 64 * 1024) {
+            block.append("/msg beto ");
+            while (block.length() % lineLength != lineLength - 1) block.append('x');
+            block.append('\n');
+        }
+        byte[] data = block.toString().getBytes(StandardCharsets.UTF_8);
+        buffered = new LoopedInputStream(data, chunkSize);
+        reader = new FramedReader(buffered);
+        raw = new LoopedInputStream(data, chunkSize);
+    }
+
+    @Benchmark
+    public String readLine(ReadCalls calls) throws IOException {
+        buffered.calls = calls;
+        calls.lines++;
+        return reader.readLine();
+    }
+
+    @Benchmark
+    public String readLineByteAtATime(ReadCalls calls) throws IOException {
+        raw.calls = calls;
+        calls.lines++;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = raw.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Flujo infinito que entrega el mismo arreglo en bucle, a lo sumo chunk bytes
+     * por lectura, y cuenta las llamadas a read.
+     */
+    static final class LoopedInputStream extends InputStream {
+        private final byte[] data;
+        private final int chunk;
+        private int position = 0;
+        // Contadores de la iteración en curso (JMH los inyecta en el método medido)
+        ReadCalls calls;
+
+        LoopedInputStream(byte[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read() {
+            calls.readCalls++;
+            byte b = data[position];
+            position = (position + 1) % data.length;
+            return b & 0xff;
+        }
+
+        @Override
+        public int read(byte[] dst, int offset, int length) {
+            calls.readCalls++;
+            int n = Math.min(Math.min(length, chunk), data.length - position);
+            System.arraycopy(data, position, dst, offset, n);
+            position = (position + n) % data.length;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package model;
+
+import command.CommandRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envío de un mensaje de grupo a N miembros en memoria: el comando /msggroup
+ * completo, un sendMessage por miembro (codifica para cada uno) y un único
+ * frame compartido con sendFrame (lo que hace /msggroup).
+ * /msggroup solo encola el reparto en la partición del grupo; la medición
+ * espera a que esa partición lo termine, así no mide solo el encolado.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GroupFanoutBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int members;
+
+    // Porcentaje de miembros con el protocolo binario (mezcla de codificaciones)
+    @Param({"0", "50"})
+    public int binaryPercent;
+
+    private static final String TEXT = "hola a todos, ¿cómo van?";
+
+    private ChatFixture fixture;
+    private ClientHandler sender;
+    private List<ClientHandler> clients;
+
+    @Setup
+    public void setup() {
+        fixture = new ChatFixture();
+        String[] names = new String[members];
+        for (int i = 0; i < members; i++) {
+            names[i] = "u" + i;
+            fixture.connect(names[i], i * 100 < binaryPercent * members ? FrameCodec.VERSION : 1);
+        }
+        fixture.group("sala", names);
+        clients = fixture.clients();
+        sender = clients.get(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean msggroupCommand() {
+        boolean handled = CommandRegistry.shared().executeCommand("/msggroup sala " + TEXT, "u0", sender);
+        // Las tareas de una partición corren en orden: esta termina después del reparto
+        return ChatServer.callInGroup("sala", () -> handled);
+    }
+
+    @Benchmark
+    public void sendMessageEach() {
+        String message = "MENSAJE_GRUPO [sala] de u0: " + TEXT;
+        for (int i = 1; i < clients.size(); i++) {
+            clients.get(i).sendMessage(message);
+        }
+    }
+
+    @Benchmark
+    public void sendFrameShared() {
+        OutboundFrame frame = ClientHandler.encodeLine("MENSAJE_GRUPO [sala] de u0: " + TEXT);
+        for (int i = 1; i < clients.size(); i++) {
+            clients.get(i).sendFrame(frame);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package model;
+
+import command.CommandRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escalado del envío a grupos con varios hilos de clientes a la vez: cada hilo
+ * ejecuta /msggroup completo y espera a que la partición del grupo termine el
+ * reparto. Con "distinct" cada hilo escribe a su propio grupo (conversaciones
+ * independientes, que se reparten entre las particiones); con "shared" todos
+ * escriben al mismo grupo, que atiende una sola partición en orden.
+ * Se mide con 1, 2, 4 y tantos hilos como procesadores; el número de
+ * particiones es el del servidor por defecto (un hilo por procesador).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GroupSendScalingBenchmark {
+
+    @Param({"distinct", "shared"})
+    public String groups;
+
+    // Miembros de cada grupo (en "shared", del único grupo)
+    @Param({"100"})
+    public int members;
+
+    private static final String TEXT = "hola a todos, ¿cómo van?";
+
+    private ChatFixture fixture;
+    private ClientHandler[] clients;
+
+    /**
+     * Remitente y grupo de cada hilo.
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+        String name;
+        String group;
+        ClientHandler handler;
+        String command;
+
+        @Setup
+        public void setup(GroupSendScalingBenchmark benchmark, ThreadParams thread) {
+            int index = thread.getThreadIndex();
+            boolean shared = benchmark.groups.equals("shared");
+            // En "shared" cada hilo es un miembro distinto del grupo; en "distinct", el creador de su grupo
+            int user = shared ? index : index * benchmark.members;
+            name = "u" + user;
+            handler = benchmark.clients[user];
+            group = shared ? "sala" : "sala" + index;
+            command = "/msggroup " + group + " " + TEXT;
+        }
+    }
+
+    @Setup
+    public void setup(BenchmarkParams params) {
+        int threads = params.getThreads();
+        boolean shared = groups.equals("shared");
+        int users = shared ? Math.max(threads, members) : threads * members;
+        fixture = new ChatFixture();
+        clients = new ClientHandler[users];
+        String[] names = new String[users];
+        for (int i = 0; i < users; i++) {
+            names[i] = "u" + i;
+            clients[i] = fixture.connect(names[i]);
+        }
+        if (shared) {
+            fixture.group("sala", names);
+            return;
+        }
+        for (int g = 0; g < threads; g++) {
+            String[] group = new String[members];
+            System.arraycopy(names, g * members, group, 0, members);
+            fixture.group("sala" + g, group);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        fixture.close();
+    }
+
+    private static boolean send(Sender sender) {
+        boolean handled = CommandRegistry.shared().executeCommand(sender.command, sender.name, sender.handler);
+        // Las tareas de una partición corren en orden: esta termina después del reparto
+        return ChatServer.callInGroup(sender.group, () -> handled);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1(Sender sender) {
+        return send(sender);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean threads2(Sender sender) {
+        return send(sender);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4(Sender sender) {
+        return send(sender);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean threadsMax(Sender sender) {
+        return send(sender);
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Codificación de mensajes salientes con {@link OutboundFrame} para cada versión
+ * del protocolo: una línea, una respuesta de varias líneas con id de petición y
+ * un fragmento de nota de voz.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OutboundFrameBenchmark {
+
+    @Param({"1", "2"})
+    public int protocol;
+
+    private final String line = "MENSAJE_GRUPO [equipo] de ana: hola a todos, ¿cómo van?";
+    private final String reply = "Usuarios conectados:\n  * ana\n  * beto\n  * carla";
+    private final byte[] audio = new byte[1024];
+
+    @Benchmark
+    public ByteBuffer line() {
+        return OutboundFrame.line(line).bytes(protocol);
+    }
+
+    @Benchmark
+    public ByteBuffer taggedReply() {
+        return OutboundFrame.reply(42, reply).bytes(protocol);
+    }
+
+    @Benchmark
+    public ByteBuffer voiceData() {
+        return OutboundFrame.voiceData(audio, 0, audio.length).bytes(protocol);
+    }
+}
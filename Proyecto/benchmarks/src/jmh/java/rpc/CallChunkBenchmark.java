@@ -0,0 +1,54 @@
+package rpc;
+
+import org.openjdk.jmh.annotations.*;
+import service.CallManagerImpl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ruteo de un fragmento de llamada por {@link CallImpl#sendCallChunk}: lectura de
+ * los participantes, armado del CallChunk y despacho a cada uno. Los participantes
+ * no tienen observer suscrito, así se mide el camino del servidor sin Ice.
+ * lateChunk es un fragmento en vuelo de una llamada que ya terminó.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CallChunkBenchmark {
+
+    @Param({"2", "8", "32"})
+    public int participants;
+
+    private CallImpl calls;
+    // 20 ms de PCM16 a 44.1 kHz
+    private final byte[] audio = new byte[1764];
+
+    @Setup
+    public void setup() {
+        CallManagerImpl registry = new CallManagerImpl();
+        Set<String> users = new HashSet<>();
+        for (int i = 0; i < participants; i++) {
+            users.add("u" + i);
+        }
+        registry.createCall("llamada", users);
+        calls = new CallImpl(registry);
+    }
+
+    @Benchmark
+    public void sendCallChunk() {
+        calls.sendCallChunk("llamada", "u0", audio, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void sendCallChunkContended() {
+        calls.sendCallChunk("llamada", "u0", audio, null);
+    }
+
+    @Benchmark
+    public void lateChunk() {
+        calls.sendCallChunk("terminada", "u0", audio, null);
+    }
+}
@@ -0,0 +1,134 @@
+package service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de una entrada en el historial desde el hilo que atiende al cliente:
+ * armar la entrada, serializarla a JSON y encolarla en el {@link HistoryWriter}.
+ * La escritura a disco ocurre en el hilo del escritor y no entra en la medición.
+ * El escritor usa la política "drop" (historyOnFull): si la cola se llena las
+ * entradas se descartan (chat_history_dropped) en vez de esperar, así se mide
+ * solo el costo de encolar.
+ * <p>
+ * Lo que el escritor alcanza a escribir con cada política de durabilidad se mide
+ * aparte: {@link #writeThrough} encola un lote y espera a que quede escrito
+ * (entradas escritas por segundo; {@link #writeThroughSingle} de a una), y
+ * {@link #appendOpenLoop} encola sin parar y cuenta por segundo las entradas
+ * aceptadas y las descartadas por cola llena.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryServiceBenchmark {
+    private static final int BATCH = 1000;
+    private static final String KEY = HistoryIndex.groupKey("equipo");
+    private static final String LINE = "{\"type\":\"text\",\"scope\":\"group\",\"sender\":\"ana\",\"group\":\"equipo\","
+            + "\"message\":\"hola a todos, ¿cómo van?\",\"timestamp\":\"2024-01-01T00:00:00Z\"}";
+
+    @Param({"none", "interval", "always"})
+    public String durability;
+
+    private HistoryWriter writer;
+
+    /**
+     * Entradas aceptadas y descartadas por {@link HistoryWriter#append}.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Appends {
+        public long accepted;
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            accepted = 0;
+            dropped = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        HistoryService.configure(durability, 0, 0, 0, 0, null, "drop");
+        writer = HistoryService.getWriter();
+    }
+
+    @TearDown
+    public void tearDown() {
+        HistoryService.shutdown();
+    }
+
+    @Benchmark
+    public void logTextGroup() {
+        HistoryService.logTextGroup("ana", "equipo", "hola a todos, ¿cómo van?");
+    }
+
+    @Benchmark
+    public void logTextPrivate() {
+        HistoryService.logTextPrivate("ana", "beto", "hola que tal");
+    }
+
+    // Varios hilos de clientes registrando a la vez sobre la misma cola
+    @Benchmark
+    @Threads(4)
+    public void logTextGroupContended() {
+        HistoryService.logTextGroup("ana", "equipo", "hola a todos, ¿cómo van?");
+    }
+
+    /**
+     * Entradas escritas por segundo: encola un lote y espera a que el escritor
+     * lo escriba (y lo fuerce a disco según la política). La cola está vacía al
+     * empezar cada lote, así que no hay descartes.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public void writeThrough(Appends appends) {
+        long target = writer.getWrittenCount();
+        for (int i = 0; i < BATCH; i++) {
+            if (writer.append(KEY, LINE)) {
+                appends.accepted++;
+                target++;
+            } else {
+                appends.dropped++;
+            }
+        }
+        // Con un solo procesador, esperar girando le quitaría la CPU al escritor
+        while (writer.getWrittenCount() < target) LockSupport.parkNanos(20_000);
+    }
+
+    /**
+     * Como {@link #writeThrough} pero de a una entrada: cada lote es una sola
+     * entrada, y con "always" cada una paga su propio fsync.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void writeThroughSingle(Appends appends) {
+        long target = writer.getWrittenCount() + 1;
+        if (!writer.append(KEY, LINE)) {
+            appends.dropped++;
+            return;
+        }
+        appends.accepted++;
+        while (writer.getWrittenCount() < target) LockSupport.parkNanos(20_000);
+    }
+
+    /**
+     * Encola sin esperar al disco, como un servidor con más carga de la que el
+     * escritor puede sostener: en régimen, accepted/s es lo que el escritor
+     * escribe y dropped/s lo que se pierde por cola llena.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean appendOpenLoop(Appends appends) {
+        boolean queued = writer.append(KEY, LINE);
+        if (queued) appends.accepted++;
+        else appends.dropped++;
+        return queued;
+    }
+}
@@ -3,6 +3,7 @@ package controller;
 import model.*;
 import com.google.gson.Gson;
 import java.io.FileReader;
+import java.util.List;
 
 /**
  * Controlador principal del cliente de chat.
@@ -105,6 +106,26 @@ public class Controller {
         chatClient.sendCommand("/endcall");
     }
 
+    /**
+     * Obtiene el estado del audio recibido en la llamada actual: jitter medido,
+     * profundidad del búfer de jitter y paquetes perdidos o tardíos por emisor.
+     *
+     * @return Estadísticas por emisor (vacía si no hay llamada)
+     */
+    public List<JitterBuffer.Stats> getCallStats() {
+        return chatClient.getCallStats();
+    }
+
+    /**
+     * Obtiene los contadores de envío de la llamada activa (voz, silencio suprimido
+     * y ruido de confort).
+     *
+     * @return Contadores del emisor (en cero si no hay llamada)
+     */
+    public CallAudio.CallSender.Stats getSendStats() {
+        return chatClient.getSendStats();
+    }
+
     /**
      * Envía un mensaje de texto privado a un usuario específico usando TCP.
      * El mensaje se entrega de manera confiable al destinatario.
@@ -1,5 +1,9 @@
 package interfaces;
 
+import model.AudioCodec;
+import model.CallAudio;
+import model.JitterBuffer;
+
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.util.List;
@@ -20,8 +24,9 @@ public interface AudioService {
      * Inicia la captura y envío de audio a los destinatarios especificados.
      * 
      * @param peers Lista de direcciones UDP de los destinatarios
+     * @param codec Códec con el que se envía el audio
      */
-    void startSending(List<InetSocketAddress> peers);
+    void startSending(List<InetSocketAddress> peers, AudioCodec codec);
     
     /**
      * Inicia la recepción y reproducción de audio.
@@ -32,4 +37,18 @@ public interface AudioService {
      * Detiene todas las operaciones de audio (envío y recepción).
      */
     void stopAudio();
+
+    /**
+     * Obtiene el estado de recepción de la llamada activa.
+     *
+     * @return Jitter, profundidad del búfer y pérdidas por emisor (vacía sin llamada)
+     */
+    List<JitterBuffer.Stats> getCallStats();
+
+    /**
+     * Obtiene las tramas enviadas y suprimidas por silencio en la llamada activa.
+     *
+     * @return Contadores del emisor (en cero sin llamada)
+     */
+    CallAudio.CallSender.Stats getSendStats();
 }
\ No newline at end of file
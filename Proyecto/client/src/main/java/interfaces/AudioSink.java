@@ -0,0 +1,29 @@
+package interfaces;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+
+/**
+ * Destino de audio PCM: los altavoces (model.JavaSoundSink) o un destino sin
+ * hardware (model.NullSink, model.RecordingSink).
+ * Como una línea de salida, write bloquea mientras el búfer del dispositivo
+ * está lleno: el consumo del destino marca el ritmo de quien escribe.
+ */
+public interface AudioSink extends AutoCloseable {
+    /**
+     * @param format Formato de las muestras (PCM con signo, little-endian)
+     * @param bufferBytes Tamaño del búfer del dispositivo, o 0 para el valor por defecto
+     * @throws IOException si el dispositivo no está disponible
+     */
+    void open(AudioFormat format, int bufferBytes) throws IOException;
+
+    void write(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Espera a que se reproduzca todo lo escrito.
+     */
+    void drain();
+
+    @Override
+    void close();
+}
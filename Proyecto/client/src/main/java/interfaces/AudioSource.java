@@ -0,0 +1,30 @@
+package interfaces;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+
+/**
+ * Origen de audio PCM para llamadas y notas de voz: el micrófono
+ * (model.JavaSoundSource) o un generador sintético (model.SyntheticSource)
+ * para correr sin hardware de sonido.
+ * Como un micrófono, read bloquea hasta que el audio pedido fue "capturado",
+ * así quien lee queda al ritmo del tiempo real.
+ */
+public interface AudioSource extends AutoCloseable {
+    /**
+     * Abre el origen en el formato pedido (PCM con signo, little-endian).
+     *
+     * @throws IOException si el dispositivo no está disponible o el formato no se puede producir
+     */
+    void open(AudioFormat format) throws IOException;
+
+    /**
+     * Lee hasta {@code length} bytes de muestras.
+     *
+     * @return Bytes leídos (múltiplo del tamaño de trama) o -1 si el origen terminó
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+
+    @Override
+    void close();
+}
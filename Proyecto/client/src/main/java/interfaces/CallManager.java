@@ -1,5 +1,7 @@
 package interfaces;
 
+import model.AudioCodec;
+
 import java.net.InetSocketAddress;
 import java.util.List;
 
@@ -13,8 +15,9 @@ public interface CallManager {
      *
      * @param callId ID único de la llamada
      * @param peers  Lista de direcciones UDP de los participantes
+     * @param codec  Códec de audio acordado por el servidor
      */
-    void startCall(String callId, List<InetSocketAddress> peers);
+    void startCall(String callId, List<InetSocketAddress> peers, AudioCodec codec);
     
     /**
      * Finaliza la llamada activa actual.
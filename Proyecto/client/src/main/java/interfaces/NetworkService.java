@@ -59,4 +59,14 @@ public interface NetworkService {
      * Detiene la grabación de la nota de voz (si está activa) y la envía por TCP.
      */
     default void stopAndSendVoiceNote() {}
-}
\ No newline at end of file
+
+    /**
+     * Envía por TCP una nota de voz ya grabada, codificada con el códec acordado
+     * con el servidor. Se indica el usuario o el grupo destino.
+     *
+     * @param username usuario destino, o null si es para un grupo
+     * @param groupName grupo destino, o null si es para un usuario
+     * @param pcm audio PCM 16 bits little-endian, mono, 44.1 kHz
+     */
+    default void sendVoiceNote(String username, String groupName, byte[] pcm) {}
+}
@@ -0,0 +1,59 @@
+package model;
+
+import interfaces.AudioSink;
+import interfaces.AudioSource;
+
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * Elige los dispositivos de audio a partir de su descripción en config.json
+ * ({@code audioSource} y {@code audioSink}). Sin valor se usan el micrófono y
+ * los altavoces; los demás permiten correr el cliente en una máquina sin sonido.
+ * <ul>
+ *   <li>Orígenes: {@code javasound}, {@code sine[:hz]}, {@code noise}, {@code wav:<archivo>}</li>
+ *   <li>Destinos: {@code javasound}, {@code null}, {@code record:<archivo.wav>}</li>
+ * </ul>
+ */
+public final class AudioDevices {
+    private AudioDevices() {}
+
+    /**
+     * @throws IllegalArgumentException si la descripción no es válida
+     */
+    public static Supplier<AudioSource> source(String spec) {
+        if (spec == null || spec.isBlank() || spec.equals("javasound")) return JavaSoundSource::new;
+        if (spec.equals("noise")) return () -> SyntheticSource.noise(3000);
+        if (spec.equals("sine")) return () -> SyntheticSource.sine(440, 8000);
+        if (spec.startsWith("sine:")) {
+            double hz = parseNumber(spec.substring(5), spec);
+            return () -> SyntheticSource.sine(hz, 8000);
+        }
+        if (spec.startsWith("wav:") && spec.length() > 4) {
+            Path file = Path.of(spec.substring(4));
+            return () -> SyntheticSource.wav(file);
+        }
+        throw new IllegalArgumentException("Origen de audio desconocido: " + spec);
+    }
+
+    /**
+     * @throws IllegalArgumentException si la descripción no es válida
+     */
+    public static Supplier<AudioSink> sink(String spec) {
+        if (spec == null || spec.isBlank() || spec.equals("javasound")) return JavaSoundSink::new;
+        if (spec.equals("null")) return NullSink::new;
+        if (spec.startsWith("record:") && spec.length() > 7) {
+            Path file = Path.of(spec.substring(7));
+            return () -> new RecordingSink(file);
+        }
+        throw new IllegalArgumentException("Destino de audio desconocido: " + spec);
+    }
+
+    private static double parseNumber(String value, String spec) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Origen de audio inválido: " + spec);
+        }
+    }
+}
@@ -1,15 +1,30 @@
 package model;
 
-import javax.sound.sampled.*;
+import interfaces.AudioSink;
+import interfaces.AudioSource;
+
+import javax.sound.sampled.AudioFormat;
 import java.io.IOException;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utilidades para el manejo de audio en llamadas UDP.
  * Proporciona clases para enviar audio (CallSender) y recibir/reproducir audio (CallReceiver).
  * Utiliza formato de audio PCM 16000 Hz, 16 bits, mono para la comunicación.
+ * Cada datagrama lleva una cabecera {@link MediaHeader} seguida de las muestras
+ * codificadas con el códec acordado para la llamada ({@link AudioCodec}).
+ * Durante el silencio el emisor no envía audio, solo paquetes periódicos de ruido
+ * de confort con el nivel del ruido de fondo, que el receptor reproduce.
  */
 public class CallAudio {
 
@@ -18,24 +33,119 @@ public class CallAudio {
      */
     public static final AudioFormat AUDIO_FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
 
+    /**
+     * Muestras por trama de reproducción (20 ms).
+     */
+    public static final int FRAME_SAMPLES = 320;
+
+    /**
+     * Cabecera compacta de los datagramas de audio, al estilo RTP (12 bytes, big-endian):
+     * versión (0x80), tipo de carga, número de secuencia (16 bits), marca de tiempo
+     * de captura en muestras (32 bits) e identificador del emisor (ssrc, 32 bits).
+     */
+    public static final class MediaHeader {
+        public static final int BYTES = 12;
+        public static final int VERSION = 0x80;
+        /** Ruido de confort (RFC 3389): la carga es un byte con el nivel en -dBov. */
+        public static final int PAYLOAD_CN = 13;
+
+        private MediaHeader() {}
+
+        public static void write(byte[] buf, int payloadType, int sequence, int timestamp, int ssrc) {
+            buf[0] = (byte) VERSION;
+            buf[1] = (byte) payloadType;
+            buf[2] = (byte) (sequence >> 8);
+            buf[3] = (byte) sequence;
+            putInt(buf, 4, timestamp);
+            putInt(buf, 8, ssrc);
+        }
+
+        public static boolean isValid(byte[] buf, int length) {
+            return length > BYTES && (buf[0] & 0xC0) == VERSION;
+        }
+
+        public static int payloadType(byte[] buf) {
+            return buf[1] & 0x7f;
+        }
+
+        public static int sequence(byte[] buf) {
+            return ((buf[2] & 0xff) << 8) | (buf[3] & 0xff);
+        }
+
+        public static int timestamp(byte[] buf) {
+            return getInt(buf, 4);
+        }
+
+        public static int ssrc(byte[] buf) {
+            return getInt(buf, 8);
+        }
+
+        private static void putInt(byte[] buf, int off, int v) {
+            buf[off] = (byte) (v >> 24);
+            buf[off + 1] = (byte) (v >> 16);
+            buf[off + 2] = (byte) (v >> 8);
+            buf[off + 3] = (byte) v;
+        }
+
+        private static int getInt(byte[] buf, int off) {
+            return ((buf[off] & 0xff) << 24) | ((buf[off + 1] & 0xff) << 16)
+                    | ((buf[off + 2] & 0xff) << 8) | (buf[off + 3] & 0xff);
+        }
+    }
+
     /**
      * Clase que maneja la captura y envío de audio desde el micrófono.
-     * Captura audio del micrófono y lo envía vía UDP a todos los participantes.
+     * Captura audio del micrófono, lo codifica y lo envía vía UDP a todos los participantes.
      */
     public static class CallSender implements Runnable {
+        // Cada cuánto se repite el ruido de confort en silencio (también mantiene vivo el flujo)
+        private static final int COMFORT_NOISE_INTERVAL_MS = 200;
+
+        /**
+         * Tramas de la llamada según lo decidido por el detector de voz.
+         *
+         * @param voiceFrames Tramas enviadas con audio
+         * @param suppressedFrames Tramas de silencio no enviadas
+         * @param comfortNoiseFrames Paquetes de ruido de confort enviados
+         */
+        public record Stats(long voiceFrames, long suppressedFrames, long comfortNoiseFrames) {
+            /**
+             * Fracción de paquetes ahorrados frente a enviar todas las tramas.
+             */
+            public double savedRatio() {
+                long total = voiceFrames + suppressedFrames;
+                return total == 0 ? 0 : (double) (suppressedFrames - comfortNoiseFrames) / total;
+            }
+        }
+
         private final DatagramSocket socket;
         private final List<InetSocketAddress> peers;
+        private final AudioCodec codec;
+        private final AudioSource microphone;
         private final AtomicBoolean running = new AtomicBoolean(true);
+        private final AtomicLong voiceFrames = new AtomicLong();
+        private final AtomicLong suppressedFrames = new AtomicLong();
+        private final AtomicLong comfortNoiseFrames = new AtomicLong();
 
         /**
          * Constructor que inicializa el emisor de audio.
          * 
          * @param socket Socket UDP para envío de audio
          * @param peers Lista de destinatarios del audio
+         * @param codec Códec acordado para la llamada
          */
-        public CallSender(DatagramSocket socket, List<InetSocketAddress> peers) {
+        public CallSender(DatagramSocket socket, List<InetSocketAddress> peers, AudioCodec codec) {
+            this(socket, peers, codec, new JavaSoundSource());
+        }
+
+        /**
+         * @param microphone Origen del audio a enviar (se abre al arrancar y se cierra al terminar)
+         */
+        public CallSender(DatagramSocket socket, List<InetSocketAddress> peers, AudioCodec codec, AudioSource microphone) {
             this.socket = socket;
             this.peers = peers;
+            this.codec = codec;
+            this.microphone = microphone;
         }
 
         /**
@@ -45,90 +155,97 @@ public class CallAudio {
             running.set(false);
         }
 
+        public Stats getStats() {
+            return new Stats(voiceFrames.get(), suppressedFrames.get(), comfortNoiseFrames.get());
+        }
+
         /**
          * Ejecuta el bucle principal de captura y envío de audio.
          */
         @Override
         public void run() {
-            TargetDataLine microphone = null;
             try {
-                microphone = openMicrophoneWithFallback();
-                if (microphone == null) {
-                    System.err.println("CallSender error: no se pudo abrir el micrófono en ningún mixer.");
-                    return;
-                }
+                microphone.open(AUDIO_FORMAT);
 
                 int bufferSize = 512;
-                byte[] buffer = new byte[bufferSize];
+                byte[] capture = new byte[bufferSize];
+                short[] samples = new short[bufferSize / 2];
+                AudioCodec.Encoder encoder = codec.newEncoder();
+                byte[] buffer = new byte[MediaHeader.BYTES + codec.maxEncodedBytes(samples.length)];
+                byte[] noise = new byte[MediaHeader.BYTES + 1];
+                int sampleRate = (int) AUDIO_FORMAT.getSampleRate();
+                VoiceActivityDetector vad = new VoiceActivityDetector(sampleRate);
+                int noiseInterval = sampleRate * COMFORT_NOISE_INTERVAL_MS / 1000;
+                int ssrc = ThreadLocalRandom.current().nextInt();
+                int sequence = 0;
+                int timestamp = 0;
+                int lastNoise = 0;
+                boolean talking = true;
 
                 while (running.get()) {
-                    int read = microphone.read(buffer, 0, buffer.length);
-                    if (read <= 0) continue;
-                    DatagramPacket packet = new DatagramPacket(buffer, read);
-                    for (InetSocketAddress peer : peers) {
-                        try {
-                            packet.setSocketAddress(peer);
-                            socket.send(packet);
-                        } catch (SocketException se) {
-                            running.set(false);
-                            break;
+                    int read = microphone.read(capture, 0, bufferSize);
+                    if (read < 0) break;
+                    if (read == 0) continue;
+                    int count = read / 2;
+                    AudioCodec.pcmFromLe(capture, 0, count, samples, 0);
+                    if (vad.isSpeech(samples, 0, count)) {
+                        int length = encoder.encode(samples, 0, count, buffer, MediaHeader.BYTES);
+                        MediaHeader.write(buffer, codec.payloadType(), sequence++, timestamp, ssrc);
+                        send(buffer, MediaHeader.BYTES + length);
+                        voiceFrames.incrementAndGet();
+                        talking = true;
+                    } else {
+                        suppressedFrames.incrementAndGet();
+                        // Al empezar el silencio y luego cada COMFORT_NOISE_INTERVAL_MS
+                        if (talking || timestamp - lastNoise >= noiseInterval) {
+                            MediaHeader.write(noise, MediaHeader.PAYLOAD_CN, sequence++, timestamp, ssrc);
+                            noise[MediaHeader.BYTES] = (byte) vad.noiseLevel();
+                            send(noise, noise.length);
+                            comfortNoiseFrames.incrementAndGet();
+                            lastNoise = timestamp;
+                            talking = false;
                         }
                     }
+                    timestamp += count;
                 }
-            } catch (LineUnavailableException e) {
-                System.err.println("CallSender error: línea de audio no disponible - " + e.getMessage());
             } catch (IOException e) {
                 if (running.get()) {
                     System.err.println("CallSender error: " + e.getMessage());
                 }
             } finally {
-                if (microphone != null) {
-                    microphone.stop();
-                    microphone.close();
-                }
+                microphone.close();
             }
         }
 
-        /**
-         * Intenta abrir el micrófono en el mixer por defecto y, si falla,
-         * recorre todos los mixers disponibles hasta encontrar uno compatible.
-         */
-        private TargetDataLine openMicrophoneWithFallback() throws LineUnavailableException {
-            DataLine.Info info = new DataLine.Info(TargetDataLine.class, AUDIO_FORMAT);
-            try {
-                TargetDataLine line = (TargetDataLine) AudioSystem.getLine(info);
-                line.open(AUDIO_FORMAT);
-                line.start();
-                System.out.println("[Audio] Mic abierto en mixer por defecto.");
-                return line;
-            } catch (Exception ex) {
-                System.err.println("[Audio] No se pudo abrir mic en mixer por defecto: " + ex.getMessage());
-            }
-
-            Mixer.Info[] mixers = AudioSystem.getMixerInfo();
-            for (Mixer.Info mi : mixers) {
+        private void send(byte[] data, int length) throws IOException {
+            DatagramPacket packet = new DatagramPacket(data, length);
+            for (InetSocketAddress peer : peers) {
                 try {
-                    Mixer m = AudioSystem.getMixer(mi);
-                    if (m.isLineSupported(info)) {
-                        TargetDataLine line = (TargetDataLine) m.getLine(info);
-                        line.open(AUDIO_FORMAT);
-                        line.start();
-                        System.out.println("[Audio] Mic abierto en mixer: " + mi.getName());
-                        return line;
-                    }
-                } catch (Exception ignored) {}
+                    packet.setSocketAddress(peer);
+                    socket.send(packet);
+                } catch (SocketException se) {
+                    running.set(false);
+                    return;
+                }
             }
-            return null;
         }
     }
 
     /**
      * Clase que maneja la recepción y reproducción de audio.
-     * Recibe paquetes de audio vía UDP y los reproduce en los altavoces.
+     * Un hilo recibe los paquetes y los ubica en el búfer de jitter de su emisor;
+     * el hilo de reproducción toma cada 20 ms una trama de cada emisor, las mezcla
+     * y las escribe en el destino de audio (cuyo consumo marca el ritmo). Un emisor en
+     * silencio aporta el ruido de confort que anunció.
      */
     public static class CallReceiver implements Runnable {
+        // Emisor sin paquetes durante este tiempo: se descarta su búfer
+        private static final long IDLE_NANOS = 2_000_000_000L;
+
         private final DatagramSocket socket;
+        private final AudioSink speakers;
         private final AtomicBoolean running = new AtomicBoolean(true);
+        private final Map<Integer, JitterBuffer> streams = new ConcurrentHashMap<>();
 
         /**
          * Constructor que inicializa el receptor de audio.
@@ -136,7 +253,15 @@ public class CallAudio {
          * @param socket Socket UDP para recepción de audio
          */
         public CallReceiver(DatagramSocket socket) {
+            this(socket, new JavaSoundSink());
+        }
+
+        /**
+         * @param speakers Destino del audio mezclado (se abre al arrancar y se cierra al terminar)
+         */
+        public CallReceiver(DatagramSocket socket, AudioSink speakers) {
             this.socket = socket;
+            this.speakers = speakers;
         }
 
         /**
@@ -147,42 +272,98 @@ public class CallAudio {
         }
 
         /**
-         * Ejecuta el bucle principal de recepción y reproducción de audio.
+         * Jitter medido, profundidad del búfer y pérdidas de cada emisor activo.
+         */
+        public List<JitterBuffer.Stats> getStats() {
+            List<JitterBuffer.Stats> stats = new ArrayList<>();
+            for (JitterBuffer jb : streams.values()) stats.add(jb.stats());
+            return stats;
+        }
+
+        /**
+         * Ejecuta el bucle principal de reproducción y arranca el hilo de recepción.
          */
         @Override
         public void run() {
-            SourceDataLine speakers = null;
+            Thread network = new Thread(this::receiveLoop, "CallReceiver-UDP");
+            network.setDaemon(true);
+            boolean opened = false;
             try {
-                DataLine.Info info = new DataLine.Info(SourceDataLine.class, AUDIO_FORMAT);
-                speakers = (SourceDataLine) AudioSystem.getLine(info);
-                speakers.open(AUDIO_FORMAT);
-                speakers.start();
-
-                byte[] buffer = new byte[512];
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-
-                try {
-                    socket.setSoTimeout(300);
-                } catch (SocketException ignored) {}
+                // Búfer de línea corto: el retardo lo decide el búfer de jitter
+                speakers.open(AUDIO_FORMAT, FRAME_SAMPLES * 2 * 4);
+                opened = true;
+                network.start();
 
+                short[] frame = new short[FRAME_SAMPLES];
+                int[] mix = new int[FRAME_SAMPLES];
+                byte[] out = new byte[FRAME_SAMPLES * 2];
                 while (running.get()) {
-                    try {
-                        socket.receive(packet);
-                        speakers.write(packet.getData(), 0, packet.getLength());
-                    } catch (SocketTimeoutException ignored) {
-                    } catch (SocketException se) {
-                        break;
+                    Arrays.fill(mix, 0);
+                    long now = System.nanoTime();
+                    Iterator<JitterBuffer> it = streams.values().iterator();
+                    while (it.hasNext()) {
+                        JitterBuffer jb = it.next();
+                        if (jb.idleNanos(now) > IDLE_NANOS) {
+                            it.remove();
+                        } else if (jb.read(frame)) {
+                            for (int i = 0; i < FRAME_SAMPLES; i++) mix[i] += frame[i];
+                        }
+                    }
+                    for (int i = 0; i < FRAME_SAMPLES; i++) {
+                        int v = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+                        out[2 * i] = (byte) v;
+                        out[2 * i + 1] = (byte) (v >> 8);
                     }
+                    speakers.write(out, 0, out.length);
                 }
-            } catch (LineUnavailableException | IOException e) {
+            } catch (IOException e) {
                 System.err.println("CallReceiver error: " + e.getMessage());
             } finally {
-                if (speakers != null) {
+                running.set(false);
+                if (opened) {
                     speakers.drain();
-                    speakers.stop();
                     speakers.close();
                 }
             }
         }
+
+        private JitterBuffer stream(int ssrc) {
+            return streams.computeIfAbsent(ssrc,
+                    id -> new JitterBuffer(id, (int) AUDIO_FORMAT.getSampleRate(), FRAME_SAMPLES));
+        }
+
+        private void receiveLoop() {
+            byte[] buffer = new byte[2048];
+            // Cada emisor puede usar su códec: se decodifica según el tipo de carga del paquete
+            short[] samples = new short[buffer.length * 2];
+            Map<AudioCodec, AudioCodec.Decoder> decoders = new EnumMap<>(AudioCodec.class);
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.setSoTimeout(300);
+            } catch (SocketException ignored) {}
+
+            while (running.get()) {
+                try {
+                    packet.setLength(buffer.length);
+                    socket.receive(packet);
+                    int length = packet.getLength();
+                    if (!MediaHeader.isValid(buffer, length)) continue;
+                    if (MediaHeader.payloadType(buffer) == MediaHeader.PAYLOAD_CN) {
+                        stream(MediaHeader.ssrc(buffer)).offerComfortNoise(MediaHeader.sequence(buffer),
+                                buffer[MediaHeader.BYTES] & 0x7f, System.nanoTime());
+                        continue;
+                    }
+                    AudioCodec codec = AudioCodec.fromPayloadType(MediaHeader.payloadType(buffer));
+                    if (codec == null) continue;
+                    int count = decoders.computeIfAbsent(codec, AudioCodec::newDecoder)
+                            .decode(buffer, MediaHeader.BYTES, length - MediaHeader.BYTES, samples, 0);
+                    stream(MediaHeader.ssrc(buffer)).offer(MediaHeader.sequence(buffer), MediaHeader.timestamp(buffer),
+                            samples, count, System.nanoTime());
+                } catch (SocketTimeoutException ignored) {
+                } catch (IOException e) {
+                    break;
+                }
+            }
+        }
     }
 }
@@ -3,6 +3,8 @@ package model;
 import interfaces.*;
 import service.*;
 import java.net.*;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Cliente de chat principal que coordina todos los servicios del cliente.
@@ -21,9 +23,13 @@ public class ChatClient {
     public ChatClient(Config config) {
         this.serverHost = config.host();
         this.serverPort = config.port();
-        this.networkService = new NetworkServiceImpl(serverHost, serverPort);
+        Supplier<AudioSource> microphones = AudioDevices.source(config.audioSource());
+        Supplier<AudioSink> speakers = AudioDevices.sink(config.audioSink());
+        NetworkServiceImpl network = new NetworkServiceImpl(serverHost, serverPort);
+        network.setAudioDevices(microphones, speakers);
+        this.networkService = network;
         this.CallManagerImpl = new CallManagerImpl();
-        this.audioService = new AudioServiceImpl();
+        this.audioService = new AudioServiceImpl(microphones, speakers);
         this.messageHandler = new MessageHandlerImpl("");        
         setupServiceDependencies();
     }
@@ -123,6 +129,20 @@ public class ChatClient {
         }
     }
 
+    /**
+     * Obtiene jitter, profundidad del búfer y pérdidas de cada emisor de la llamada activa.
+     */
+    public List<JitterBuffer.Stats> getCallStats() {
+        return audioService.getCallStats();
+    }
+
+    /**
+     * Obtiene las tramas de voz enviadas y las suprimidas por silencio en la llamada activa.
+     */
+    public CallAudio.CallSender.Stats getSendStats() {
+        return audioService.getSendStats();
+    }
+
     /**
      * Verifica si está conectado al servidor.
      * 
@@ -1,3 +1,9 @@
 package model;
 
-public record Config(String host, int port){}
\ No newline at end of file
+/**
+ * Configuración del cliente, leída de config.json.
+ *
+ * @param audioSource Origen de audio (ver {@link AudioDevices}); sin valor, el micrófono
+ * @param audioSink Destino de audio; sin valor, los altavoces
+ */
+public record Config(String host, int port, String audioSource, String audioSink){}
\ No newline at end of file
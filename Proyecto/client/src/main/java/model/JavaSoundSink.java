@@ -0,0 +1,48 @@
+package model;
+
+import interfaces.AudioSink;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+
+/**
+ * Altavoces del sistema (javax.sound).
+ */
+public class JavaSoundSink implements AudioSink {
+    private SourceDataLine line;
+
+    @Override
+    public void open(AudioFormat format, int bufferBytes) throws IOException {
+        try {
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+            line = (SourceDataLine) AudioSystem.getLine(info);
+            if (bufferBytes > 0) {
+                line.open(format, bufferBytes);
+            } else {
+                line.open(format);
+            }
+            line.start();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            line = null;
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        line.write(buffer, offset, length);
+    }
+
+    @Override
+    public void drain() {
+        if (line != null) line.drain();
+    }
+
+    @Override
+    public void close() {
+        if (line != null) {
+            line.stop();
+            line.close();
+        }
+    }
+}
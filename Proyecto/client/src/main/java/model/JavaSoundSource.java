@@ -0,0 +1,58 @@
+package model;
+
+import interfaces.AudioSource;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+
+/**
+ * Micrófono del sistema (javax.sound). Si el mixer por defecto no ofrece el
+ * formato pedido, recorre los demás hasta encontrar uno compatible.
+ */
+public class JavaSoundSource implements AudioSource {
+    private TargetDataLine line;
+
+    @Override
+    public void open(AudioFormat format) throws IOException {
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+        try {
+            line = (TargetDataLine) AudioSystem.getLine(info);
+            line.open(format);
+            line.start();
+            System.out.println("[Audio] Mic abierto en mixer por defecto.");
+            return;
+        } catch (Exception ex) {
+            line = null;
+            System.err.println("[Audio] No se pudo abrir mic en mixer por defecto: " + ex.getMessage());
+        }
+
+        for (Mixer.Info mi : AudioSystem.getMixerInfo()) {
+            try {
+                Mixer m = AudioSystem.getMixer(mi);
+                if (m.isLineSupported(info)) {
+                    line = (TargetDataLine) m.getLine(info);
+                    line.open(format);
+                    line.start();
+                    System.out.println("[Audio] Mic abierto en mixer: " + mi.getName());
+                    return;
+                }
+            } catch (Exception ignored) {
+                line = null;
+            }
+        }
+        throw new IOException("no se pudo abrir el micrófono en ningún mixer");
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        return line.read(buffer, offset, length);
+    }
+
+    @Override
+    public void close() {
+        if (line != null) {
+            line.stop();
+            line.close();
+        }
+    }
+}
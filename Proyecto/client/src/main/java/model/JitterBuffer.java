@@ -0,0 +1,295 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Búfer de jitter adaptativo para el audio de un emisor (un ssrc) en una llamada UDP.
+ * Los paquetes se ubican por su marca de tiempo de captura, de modo que el
+ * desorden se corrige solo; la reproducción avanza a ritmo fijo con un retardo
+ * objetivo que se ajusta al jitter medido (estimador de RFC 3550).
+ * <p>
+ * Los paquetes que llegan después de su momento de reproducción se descartan (y el
+ * retardo crece una trama), los huecos se ocultan repitiendo la última trama
+ * atenuada y, si el búfer crece por una ráfaga, se recorta para que la latencia no
+ * aumente con el tiempo. Cuando el emisor anuncia silencio (ruido de confort) las
+ * tramas sin audio se llenan con ruido blanco al nivel indicado.
+ */
+public final class JitterBuffer {
+
+    /**
+     * Estadísticas de un emisor.
+     *
+     * @param ssrc Identificador del flujo
+     * @param jitterMs Jitter entre llegadas medido
+     * @param depthMs Audio pendiente de reproducir
+     * @param targetMs Retardo de reproducción objetivo actual
+     * @param received Paquetes recibidos
+     * @param lost Paquetes perdidos según la numeración
+     * @param late Paquetes descartados por llegar tarde
+     * @param concealed Tramas reproducidas con ocultamiento de pérdida
+     * @param comfortNoise Tramas reproducidas con ruido de confort
+     */
+    public record Stats(int ssrc, double jitterMs, int depthMs, int targetMs,
+                        long received, long lost, long late, long concealed, long comfortNoise) {}
+
+    // 2^15 muestras: unos 2 s a 16 kHz
+    private static final int RING = 1 << 15;
+    private static final int MASK = RING - 1;
+    // Tramas seguidas que se ocultan antes de considerar que el emisor calló
+    private static final int MAX_CONCEALED_RUN = 3;
+
+    private final int ssrc;
+    private final int sampleRate;
+    private final int minTarget;
+    private final int maxTarget;
+    private final short[] ring = new short[RING];
+    private final boolean[] valid = new boolean[RING];
+    private final short[] last;
+    private final boolean[] filled;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private boolean synced = false;
+    private long cursor;
+    private long newestEnd;
+    // Primera muestra del flujo tras sincronizar (antes de ella solo hay retardo inicial)
+    private long playFrom;
+    private int target;
+    private boolean first = true;
+    private long lastTimestamp;
+    private long lastTransit;
+    private int expectedSeq;
+    private double jitter;
+    private int concealedRun = 0;
+    // Un paquete llegó tarde: la próxima trama se repite sin avanzar, sumando 20 ms de retardo
+    private boolean stretch = false;
+    private long lastArrival;
+    // El emisor está en silencio: los huecos se llenan con ruido de esta amplitud pico
+    private boolean silent = false;
+    private int noiseAmplitude = 0;
+    private int noiseSeed = 0x2545F491;
+
+    private long received, lost, late, concealed, comfortNoise;
+
+    /**
+     * @param ssrc Identificador del emisor
+     * @param sampleRate Frecuencia de muestreo del flujo
+     * @param frameSamples Muestras por trama de reproducción
+     */
+    public JitterBuffer(int ssrc, int sampleRate, int frameSamples) {
+        this.ssrc = ssrc;
+        this.sampleRate = sampleRate;
+        this.last = new short[frameSamples];
+        this.filled = new boolean[frameSamples];
+        this.minTarget = frameSamples * 2;
+        this.maxTarget = RING / 4;
+        this.target = minTarget;
+    }
+
+    /**
+     * Agrega el audio ya decodificado de un paquete.
+     *
+     * @param seq Número de secuencia de la cabecera {@link CallAudio.MediaHeader}
+     * @param ts Marca de tiempo de captura de la cabecera, en muestras
+     * @param pcm Muestras decodificadas (se copian)
+     * @param samples Cantidad de muestras
+     * @param arrivalNanos Instante de llegada (System.nanoTime())
+     */
+    public void offer(int seq, int ts, short[] pcm, int samples, long arrivalNanos) {
+        if (samples <= 0) return;
+
+        lock.lock();
+        try {
+            received++;
+            lastArrival = arrivalNanos;
+            long arrival = arrivalNanos / 1000 * sampleRate / 1_000_000;
+            long timestamp;
+            if (first) {
+                first = false;
+                timestamp = ts & 0xffffffffL;
+                expectedSeq = (seq + 1) & 0xffff;
+            } else {
+                // Marca de tiempo de 32 bits extendida respecto de la última vista
+                timestamp = lastTimestamp + (ts - (int) lastTimestamp);
+                long d = Math.abs((arrival - timestamp) - lastTransit);
+                jitter += (d - jitter) / 16.0;
+                countSequence(seq);
+            }
+            silent = false;
+            lastTransit = arrival - timestamp;
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+            target = (int) Math.min(maxTarget, Math.max(minTarget, 3 * jitter + last.length));
+
+            if (!synced || timestamp + samples - cursor > RING) {
+                resync(timestamp);
+            }
+            long end = timestamp + samples;
+            if (end <= cursor) {
+                late++;
+                stretch = newestEnd - cursor < target;
+                return;
+            }
+            for (long t = Math.max(timestamp, cursor); t < end; t++) {
+                int idx = (int) (t & MASK);
+                ring[idx] = pcm[(int) (t - timestamp)];
+                valid[idx] = true;
+            }
+            newestEnd = Math.max(newestEnd, end);
+
+            // Tras una ráfaga se descarta lo más viejo para volver al retardo objetivo
+            if (newestEnd - cursor > 2L * target + last.length) {
+                long skipTo = newestEnd - target;
+                clear(cursor, skipTo);
+                cursor = skipTo;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registra un paquete de ruido de confort: el emisor dejó de hablar.
+     *
+     * @param seq Número de secuencia del paquete
+     * @param level Nivel del ruido de fondo en -dBov
+     * @param arrivalNanos Instante de llegada (System.nanoTime())
+     */
+    public void offerComfortNoise(int seq, int level, long arrivalNanos) {
+        lock.lock();
+        try {
+            received++;
+            lastArrival = arrivalNanos;
+            if (!first) countSequence(seq);
+            silent = true;
+            // Ruido uniforme con el valor eficaz del nivel anunciado (pico = eficaz * raíz de 3)
+            noiseAmplitude = (int) Math.min(32767, 32767 * Math.pow(10, -level / 20.0) * Math.sqrt(3));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void countSequence(int seq) {
+        int gap = (short) (seq - expectedSeq);
+        if (gap >= 0) {
+            lost += gap;
+            expectedSeq = (seq + 1) & 0xffff;
+        } else if (lost > 0) {
+            lost--; // llegó desordenado un paquete que se había contado como perdido
+        }
+    }
+
+    private void resync(long timestamp) {
+        clear(cursor, newestEnd);
+        cursor = timestamp - target;
+        newestEnd = timestamp;
+        playFrom = timestamp;
+        concealedRun = 0;
+        stretch = false;
+        synced = true;
+    }
+
+    private void clear(long from, long to) {
+        if (to - from >= RING) {
+            Arrays.fill(valid, false);
+            return;
+        }
+        for (long t = from; t < to; t++) {
+            valid[(int) (t & MASK)] = false;
+        }
+    }
+
+    /**
+     * Entrega la siguiente trama a reproducir.
+     *
+     * @param frame Destino de las muestras (del tamaño de trama del búfer)
+     * @return false si no hay audio de este emisor en esta trama
+     */
+    public boolean read(short[] frame) {
+        lock.lock();
+        try {
+            if (!synced) return fillNoise(frame);
+            if (stretch && cursor >= playFrom) {
+                stretch = false;
+                concealed++;
+                for (int i = 0; i < frame.length; i++) frame[i] = (short) (last[i] >> 1);
+                return true;
+            }
+            int missing = 0;
+            for (int i = 0; i < frame.length; i++) {
+                int idx = (int) ((cursor + i) & MASK);
+                filled[i] = valid[idx];
+                if (filled[i]) {
+                    frame[i] = ring[idx];
+                    valid[idx] = false;
+                } else {
+                    missing++;
+                }
+            }
+            long start = cursor;
+            cursor += frame.length;
+
+            if (missing == 0) {
+                concealedRun = 0;
+                System.arraycopy(frame, 0, last, 0, frame.length);
+                return true;
+            }
+            if (start < playFrom) {
+                // Todavía dentro del retardo inicial: silencio sin contar pérdida
+                for (int i = 0; i < frame.length; i++) {
+                    if (!filled[i]) frame[i] = 0;
+                }
+                return missing < frame.length;
+            }
+            if (missing == frame.length && start >= newestEnd && (silent || concealedRun >= MAX_CONCEALED_RUN)) {
+                // Sin audio por delante: el emisor calló, se espera al siguiente paquete
+                synced = false;
+                return fillNoise(frame);
+            }
+            // Ocultamiento: los huecos repiten la última trama, atenuada a la mitad por trama
+            concealedRun++;
+            concealed++;
+            int shift = Math.min(15, concealedRun);
+            for (int i = 0; i < frame.length; i++) {
+                if (!filled[i]) frame[i] = (short) (last[i] >> shift);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Ruido de confort (xorshift, sin reservar memoria); false si el emisor no lo anunció
+    private boolean fillNoise(short[] frame) {
+        if (!silent || noiseAmplitude == 0) return false;
+        int seed = noiseSeed;
+        for (int i = 0; i < frame.length; i++) {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            frame[i] = (short) ((seed >> 16) * noiseAmplitude / 32768);
+        }
+        noiseSeed = seed;
+        comfortNoise++;
+        return true;
+    }
+
+    public long idleNanos(long now) {
+        lock.lock();
+        try {
+            return now - lastArrival;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats stats() {
+        lock.lock();
+        try {
+            int depth = synced ? (int) Math.max(0, newestEnd - cursor) : 0;
+            return new Stats(ssrc, jitter * 1000 / sampleRate, depth * 1000 / sampleRate,
+                    target * 1000 / sampleRate, received, lost, late, concealed, comfortNoise);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
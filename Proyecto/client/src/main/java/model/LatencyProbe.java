@@ -0,0 +1,134 @@
+package model;
+
+import interfaces.AudioSink;
+import interfaces.AudioSource;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+
+/**
+ * Mide la latencia boca a oído de un camino de audio sin hardware: el origen
+ * ({@link #source()}) emite ráfagas de tono separadas por silencio y anota
+ * cuándo empieza cada una; el destino ({@link #sink()}) detecta el comienzo de
+ * cada ráfaga en lo que reproduce y la latencia es el instante en que se oye
+ * menos el instante en que se dijo. Incluye todo el camino: captura en bloques,
+ * detector de voz, códec, red, búfer de jitter, mezcla y búfer de salida.
+ * El período debe ser mayor que la latencia esperada (cada ráfaga oída se
+ * empareja con la última dicha antes).
+ */
+public class LatencyProbe {
+    // Amplitud de las ráfagas: 12000. El umbral queda lejos del ruido de confort y de los errores del códec
+    private static final int THRESHOLD = 4000;
+    private static final long MIN_SILENCE_NANOS = 50_000_000L;
+
+    private final int periodMs;
+    private final LongConsumer onLatency;
+    private final ArrayDeque<Long> said = new ArrayDeque<>();
+    private final List<Long> latencies = new ArrayList<>();
+    private long saidCount;
+    private long lost;
+
+    /**
+     * @param periodMs Separación entre ráfagas (al menos 200 ms)
+     */
+    public LatencyProbe(int periodMs) {
+        this(periodMs, null);
+    }
+
+    /**
+     * @param onLatency Recibe cada latencia medida, en nanosegundos (p. ej. para un histograma compartido)
+     */
+    public LatencyProbe(int periodMs, LongConsumer onLatency) {
+        this.periodMs = Math.max(200, periodMs);
+        this.onLatency = onLatency;
+    }
+
+    /**
+     * Origen de ráfagas para el extremo que habla. Cada llamada crea uno nuevo.
+     */
+    public AudioSource source() {
+        return SyntheticSource.pulses(periodMs, this::pulseSaid);
+    }
+
+    /**
+     * Destino que detecta las ráfagas en el extremo que escucha.
+     */
+    public AudioSink sink() {
+        return new Detector();
+    }
+
+    private synchronized void pulseSaid(long nanos) {
+        said.addLast(nanos);
+        saidCount++;
+    }
+
+    private void pulseHeard(long nanos) {
+        long latency;
+        synchronized (this) {
+            Long match = null;
+            while (!said.isEmpty() && said.peekFirst() <= nanos) {
+                if (match != null) lost++;
+                match = said.pollFirst();
+            }
+            if (match == null) return;
+            latency = nanos - match;
+            latencies.add(latency);
+        }
+        if (onLatency != null) onLatency.accept(latency);
+    }
+
+    /**
+     * Latencias medidas hasta ahora.
+     */
+    public synchronized Stats stats() {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return new Stats(saidCount, sorted.size(), lost, percentile(sorted, 0.5), percentile(sorted, 0.95),
+                sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1));
+    }
+
+    private static long percentile(List<Long> sorted, double q) {
+        if (sorted.isEmpty()) return 0;
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(q * sorted.size()) - 1));
+    }
+
+    /**
+     * @param said Ráfagas emitidas
+     * @param heard Ráfagas oídas y emparejadas
+     * @param lost Ráfagas dichas que no se oyeron (perdidas o suprimidas)
+     * @param p50Nanos Mediana de la latencia boca a oído
+     * @param p95Nanos Percentil 95
+     * @param maxNanos Máximo
+     */
+    public record Stats(long said, int heard, long lost, long p50Nanos, long p95Nanos, long maxNanos) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "boca a oído: %d de %d ráfagas oídas (%d perdidas) p50=%.1fms p95=%.1fms max=%.1fms",
+                    heard, said, lost, p50Nanos / 1e6, p95Nanos / 1e6, maxNanos / 1e6);
+        }
+    }
+
+    // Busca el primer valor sobre el umbral después de MIN_SILENCE_NANOS de silencio
+    private final class Detector extends PacedSink {
+        private long quietSince = Long.MIN_VALUE;
+
+        @Override
+        protected void played(byte[] buffer, int offset, int length, long heardAtNanos) {
+            int frameSize = format().getFrameSize();
+            for (int i = 0; i + 1 < length; i += frameSize) {
+                int sample = (short) ((buffer[offset + i] & 0xff) | (buffer[offset + i + 1] << 8));
+                long t = heardAtNanos + (long) (i / frameSize * nanosPerFrame());
+                if (Math.abs(sample) < THRESHOLD) {
+                    if (quietSince == Long.MIN_VALUE) quietSince = t;
+                } else {
+                    if (quietSince != Long.MIN_VALUE && t - quietSince >= MIN_SILENCE_NANOS) pulseHeard(t);
+                    quietSince = Long.MIN_VALUE;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package model;
+
+/**
+ * Destino que descarta el audio, al ritmo de unos altavoces reales.
+ */
+public class NullSink extends PacedSink {
+}
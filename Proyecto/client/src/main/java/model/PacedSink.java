@@ -0,0 +1,85 @@
+package model;
+
+import interfaces.AudioSink;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base de los destinos sin hardware. Simula el reloj de una placa de sonido:
+ * la reproducción avanza en tiempo real desde la primera escritura, write
+ * bloquea mientras el búfer simulado está lleno y, si se queda sin datos, el
+ * "dispositivo" reproduce silencio y el audio siguiente suena más tarde. Así
+ * quien escribe (p. ej. el bucle de CallAudio.CallReceiver) mantiene el mismo
+ * ritmo que con altavoces, y cada muestra tiene un instante en que "se oye".
+ */
+public abstract class PacedSink implements AudioSink {
+    private static final int DEFAULT_BUFFER_MS = 100;
+
+    private AudioFormat format;
+    private double nanosPerFrame;
+    private long bufferNanos;
+    private long startNanos;
+    private long frames;
+
+    @Override
+    public void open(AudioFormat format, int bufferBytes) {
+        this.format = format;
+        this.nanosPerFrame = 1e9 / format.getFrameRate();
+        int bufferFrames = bufferBytes > 0 ? bufferBytes / format.getFrameSize()
+                : (int) (format.getFrameRate() * DEFAULT_BUFFER_MS / 1000);
+        this.bufferNanos = (long) (bufferFrames * nanosPerFrame);
+        this.startNanos = -1;
+        this.frames = 0;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        long now = System.nanoTime();
+        if (startNanos < 0) startNanos = now;
+        // Búfer vacío: el silencio intercalado corre el audio siguiente
+        if (timeOf(frames) < now) startNanos = now - (long) (frames * nanosPerFrame);
+        played(buffer, offset, length, timeOf(frames));
+        frames += length / format.getFrameSize();
+        long wait;
+        while ((wait = timeOf(frames) - bufferNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    @Override
+    public void drain() {
+        if (startNanos < 0) return;
+        long wait;
+        while ((wait = timeOf(frames) - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    @Override
+    public void close() {
+        startNanos = -1;
+    }
+
+    /**
+     * Muestras que acaban de entrar al búfer.
+     *
+     * @param heardAtNanos Instante (System.nanoTime()) en que se reproduce la primera de ellas
+     */
+    protected void played(byte[] buffer, int offset, int length, long heardAtNanos) {}
+
+    protected AudioFormat format() {
+        return format;
+    }
+
+    /**
+     * Duración de una trama (una muestra por canal) en nanosegundos.
+     */
+    protected double nanosPerFrame() {
+        return nanosPerFrame;
+    }
+
+    private long timeOf(long frame) {
+        return startNanos + (long) (frame * nanosPerFrame);
+    }
+}
@@ -0,0 +1,61 @@
+package model;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Destino que guarda lo reproducido. Con un archivo, al cerrarse lo escribe
+ * como WAV (se puede escuchar después para revisar una prueba automática).
+ */
+public class RecordingSink extends PacedSink {
+    private final Path file;
+    private final ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+    public RecordingSink() {
+        this(null);
+    }
+
+    /**
+     * @param file WAV a escribir al cerrar, o null para solo guardar en memoria
+     */
+    public RecordingSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void open(AudioFormat format, int bufferBytes) {
+        super.open(format, bufferBytes);
+        recorded.reset();
+    }
+
+    @Override
+    protected synchronized void played(byte[] buffer, int offset, int length, long heardAtNanos) {
+        recorded.write(buffer, offset, length);
+    }
+
+    /**
+     * Todo lo reproducido hasta ahora, en el formato con que se abrió.
+     */
+    public synchronized byte[] recorded() {
+        return recorded.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        if (file == null || format() == null) return;
+        byte[] data = recorded();
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(data), format(),
+                data.length / format().getFrameSize())) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file.toFile());
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar la grabación en " + file + ": " + e.getMessage());
+        }
+    }
+}
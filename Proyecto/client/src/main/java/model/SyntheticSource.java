@@ -0,0 +1,150 @@
+package model;
+
+import interfaces.AudioSource;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Origen de audio sin hardware: un tono, ruido blanco, pulsos o un archivo WAV
+ * reproducido en bucle. Entrega las muestras al ritmo de un micrófono real
+ * (read espera a que transcurra el tiempo que representan), así el resto del
+ * camino de audio (detector de voz, códec, envío) se ejercita igual que en una
+ * llamada de verdad.
+ */
+public class SyntheticSource implements AudioSource {
+
+    // Muestra en la posición dada (contada desde la apertura) a la frecuencia de muestreo dada
+    private interface Generator {
+        short sample(long position, float sampleRate);
+    }
+
+    private final Generator generator;
+    private final Path wavFile;
+    private final int pulsePeriodMs;
+    private final LongConsumer onPulse;
+    private AudioFormat format;
+    private byte[] wavData;
+    private int wavOffset;
+    private long startNanos;
+    private long position;
+
+    private SyntheticSource(Generator generator, Path wavFile, int pulsePeriodMs, LongConsumer onPulse) {
+        this.generator = generator;
+        this.wavFile = wavFile;
+        this.pulsePeriodMs = pulsePeriodMs;
+        this.onPulse = onPulse;
+    }
+
+    /**
+     * Tono senoidal continuo.
+     *
+     * @param hz Frecuencia del tono
+     * @param amplitude Amplitud (hasta 32767)
+     */
+    public static SyntheticSource sine(double hz, int amplitude) {
+        return new SyntheticSource((p, rate) -> (short) (Math.sin(2 * Math.PI * hz * p / rate) * amplitude),
+                null, 0, null);
+    }
+
+    /**
+     * Ruido blanco uniforme.
+     */
+    public static SyntheticSource noise(int amplitude) {
+        return new SyntheticSource((p, rate) -> (short) ThreadLocalRandom.current().nextInt(-amplitude, amplitude + 1),
+                null, 0, null);
+    }
+
+    /**
+     * Ráfagas de 100 ms de un tono de 1 kHz cada {@code periodMs}, con silencio
+     * absoluto entre ellas. Sirve para medir la latencia boca a oído ({@link LatencyProbe}).
+     *
+     * @param onPulse Recibe el instante (System.nanoTime()) en que "se dijo" el inicio de cada ráfaga
+     */
+    public static SyntheticSource pulses(int periodMs, LongConsumer onPulse) {
+        return new SyntheticSource((p, rate) -> {
+            long periodSamples = (long) rate * periodMs / 1000;
+            long offset = p % periodSamples;
+            return offset < rate / 10 ? (short) (Math.sin(2 * Math.PI * 1000 * offset / rate) * 12000) : 0;
+        }, null, periodMs, onPulse);
+    }
+
+    /**
+     * Reproduce un archivo WAV en bucle, convertido al formato que se pida al abrir.
+     */
+    public static SyntheticSource wav(Path file) {
+        return new SyntheticSource(null, file, 0, null);
+    }
+
+    @Override
+    public void open(AudioFormat format) throws IOException {
+        if (format.getSampleSizeInBits() != 16 || format.isBigEndian()
+                || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IOException("formato no soportado por el origen sintético: " + format);
+        }
+        this.format = format;
+        if (wavFile != null) wavData = loadWav(wavFile, format);
+        position = 0;
+        wavOffset = 0;
+        startNanos = System.nanoTime();
+    }
+
+    private static byte[] loadWav(Path file, AudioFormat format) throws IOException {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(file.toFile())) {
+            AudioInputStream converted = in.getFormat().matches(format) ? in : AudioSystem.getAudioInputStream(format, in);
+            byte[] data = converted.readAllBytes();
+            if (data.length < format.getFrameSize()) throw new IOException("WAV vacío: " + file);
+            return data;
+        } catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+            throw new IOException("no se puede leer " + file + " como " + format + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        int frameSize = format.getFrameSize();
+        int frames = length / frameSize;
+        if (frames == 0) return 0;
+        float rate = format.getSampleRate();
+        if (wavData != null) {
+            for (int i = 0; i < frames * frameSize; i++) {
+                buffer[offset + i] = wavData[wavOffset++];
+                if (wavOffset == wavData.length) wavOffset = 0;
+            }
+        } else {
+            long periodSamples = pulsePeriodMs > 0 ? (long) rate * pulsePeriodMs / 1000 : 0;
+            for (int f = 0; f < frames; f++) {
+                long p = position + f;
+                short s = generator.sample(p, rate);
+                if (periodSamples > 0 && p % periodSamples == 0 && onPulse != null) onPulse.accept(timeOf(p));
+                for (int c = 0, at = offset + f * frameSize; c < format.getChannels(); c++, at += 2) {
+                    buffer[at] = (byte) s;
+                    buffer[at + 1] = (byte) (s >> 8);
+                }
+            }
+        }
+        position += frames;
+        // Como un micrófono: las muestras existen recién cuando pasó su tiempo
+        long wait;
+        while ((wait = timeOf(position) - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return frames * frameSize;
+    }
+
+    private long timeOf(long frame) {
+        return startNanos + (long) (frame * 1e9 / format.getSampleRate());
+    }
+
+    @Override
+    public void close() {
+        wavData = null;
+    }
+}
@@ -0,0 +1,98 @@
+package model;
+
+/**
+ * Detector de actividad de voz para el audio de una llamada.
+ * Compara la energía de cada trama con un piso de ruido estimado como el mínimo
+ * nivel observado en la última ventana (incluso al hablar hay pausas entre
+ * sílabas, así que el mínimo es el ruido de fondo y sigue sus cambios en un par
+ * de segundos); las consonantes sordas (poca energía pero muchos cruces por
+ * cero) se aceptan con un margen menor. Tras la última trama con voz la
+ * decisión se mantiene activa un tiempo (hangover) para no cortar finales de
+ * palabra ni las pausas cortas entre ellas.
+ */
+public final class VoiceActivityDetector {
+
+    // Margen sobre el piso de ruido para voz sonora y para consonantes sordas
+    private static final double SPEECH_MARGIN_DB = 9.0;
+    private static final double FRICATIVE_MARGIN_DB = 4.0;
+    // Fracción de cruces por cero típica de fricativas (s, f, ch)
+    private static final double FRICATIVE_ZCR = 0.3;
+    // Por debajo de este nivel nunca hay voz, por alto que sea el margen
+    private static final double MIN_SPEECH_DBOV = -55.0;
+    private static final double MIN_FLOOR_DBOV = -90.0;
+    private static final double MAX_FLOOR_DBOV = -25.0;
+    private static final int HANGOVER_MS = 200;
+    private static final int NOISE_WINDOW_MS = 1000;
+
+    private final int hangoverSamples;
+    private final int windowSamples;
+    private double floorDb = -60.0;
+    // Hasta completar la primera ventana se parte de un piso bajo: ante la duda se envía
+    private double windowMin = Double.MAX_VALUE;
+    private double previousMin = floorDb;
+    private int windowFill = 0;
+    private int hangover = 0;
+
+    /**
+     * @param sampleRate Frecuencia de muestreo del audio analizado
+     */
+    public VoiceActivityDetector(int sampleRate) {
+        this.hangoverSamples = sampleRate * HANGOVER_MS / 1000;
+        this.windowSamples = sampleRate * NOISE_WINDOW_MS / 1000;
+    }
+
+    /**
+     * Analiza una trama.
+     *
+     * @return true si la trama debe enviarse como voz (incluido el hangover)
+     */
+    public boolean isSpeech(short[] pcm, int offset, int samples) {
+        if (samples <= 0) return hangover > 0;
+        long energy = 0;
+        int crossings = 0;
+        short previous = pcm[offset];
+        for (int i = 0; i < samples; i++) {
+            short s = pcm[offset + i];
+            energy += (long) s * s;
+            if ((s ^ previous) < 0) crossings++;
+            previous = s;
+        }
+        double mean = (double) energy / samples;
+        double levelDb = mean > 0 ? 10 * Math.log10(mean / (32768.0 * 32768.0)) : MIN_FLOOR_DBOV;
+        double zcr = (double) crossings / samples;
+
+        boolean active = levelDb > MIN_SPEECH_DBOV
+                && (levelDb > floorDb + SPEECH_MARGIN_DB
+                    || (levelDb > floorDb + FRICATIVE_MARGIN_DB && zcr > FRICATIVE_ZCR));
+        updateFloor(levelDb, samples);
+        if (active) {
+            hangover = hangoverSamples;
+            return true;
+        }
+        if (hangover > 0) {
+            hangover -= samples;
+            return true;
+        }
+        return false;
+    }
+
+    // Mínimo de la ventana actual y de la anterior: baja al instante y sube tras una ventana completa
+    private void updateFloor(double levelDb, int samples) {
+        windowMin = Math.min(windowMin, levelDb);
+        windowFill += samples;
+        if (windowFill >= windowSamples) {
+            previousMin = windowMin;
+            windowMin = Double.MAX_VALUE;
+            windowFill = 0;
+        }
+        floorDb = Math.max(MIN_FLOOR_DBOV, Math.min(MAX_FLOOR_DBOV, Math.min(windowMin, previousMin)));
+    }
+
+    /**
+     * Nivel del ruido de fondo en -dBov (0..127), como lo lleva un paquete de
+     * ruido de confort (RFC 3389).
+     */
+    public int noiseLevel() {
+        return (int) Math.max(0, Math.min(127, Math.round(-floorDb)));
+    }
+}
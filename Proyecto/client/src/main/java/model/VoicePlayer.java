@@ -1,7 +1,11 @@
 package model;
 
-import javax.sound.sampled.*;
+import interfaces.AudioSink;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class VoicePlayer {
     
@@ -16,6 +20,18 @@ public class VoicePlayer {
     private static final int BUFFER_SIZE = 1024;
 
     private final AtomicBoolean playing = new AtomicBoolean(false);
+    private final Supplier<AudioSink> speakers;
+
+    public VoicePlayer() {
+        this(JavaSoundSink::new);
+    }
+
+    /**
+     * @param speakers Crea el destino de cada reproducción (p. ej. NullSink sin hardware de sonido)
+     */
+    public VoicePlayer(Supplier<AudioSink> speakers) {
+        this.speakers = speakers;
+    }
 
     /**
      * Reproduce una nota de voz desde datos de audio.
@@ -30,28 +46,26 @@ public class VoicePlayer {
         playing.set(true);
 
         Thread playbackThread = new Thread(() -> {
-            SourceDataLine speakers = null;
+            AudioSink sink = speakers.get();
+            boolean opened = false;
             try {
-                DataLine.Info speakerInfo = new DataLine.Info(SourceDataLine.class, VOICE_FORMAT);
-                speakers = (SourceDataLine) AudioSystem.getLine(speakerInfo);
-                speakers.open(VOICE_FORMAT);
-                speakers.start();
+                sink.open(VOICE_FORMAT, 0);
+                opened = true;
 
                 int offset = 0;
                 while (offset < audioData.length && playing.get()) {
                     int length = Math.min(BUFFER_SIZE, audioData.length - offset);
-                    speakers.write(audioData, offset, length);
+                    sink.write(audioData, offset, length);
                     offset += length;
                 }
 
-            } catch (LineUnavailableException e) {
+            } catch (IOException e) {
                 System.err.println("Error reproduciendo nota de voz: " + e.getMessage());
             } finally {
                 playing.set(false);
-                if (speakers != null) {
-                    speakers.drain();
-                    speakers.stop();
-                    speakers.close();
+                if (opened) {
+                    sink.drain();
+                    sink.close();
                 }
             }
         });
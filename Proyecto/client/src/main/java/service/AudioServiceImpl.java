@@ -1,10 +1,17 @@
 package service;
 
 import interfaces.AudioService;
+import interfaces.AudioSink;
+import interfaces.AudioSource;
+import model.AudioCodec;
 import model.CallAudio;
+import model.JavaSoundSink;
+import model.JavaSoundSource;
+import model.JitterBuffer;
 import java.net.*;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 /**
  * Implementación del servicio de audio del cliente.
@@ -13,26 +20,44 @@ import java.util.concurrent.*;
 public class AudioServiceImpl implements AudioService {
     private DatagramSocket udpSocket;
     private final ExecutorService audioThreads = Executors.newCachedThreadPool();
+    private final Supplier<AudioSource> microphones;
+    private final Supplier<AudioSink> speakers;
 
     private CallAudio.CallSender sender;
     private CallAudio.CallReceiver receiver;
     private Future<?> senderFuture;
     private Future<?> receiverFuture;
 
+    /**
+     * Servicio con el micrófono y los altavoces del sistema.
+     */
+    public AudioServiceImpl() {
+        this(JavaSoundSource::new, JavaSoundSink::new);
+    }
+
+    /**
+     * @param microphones Crea el origen de audio de cada llamada
+     * @param speakers Crea el destino de audio de cada llamada
+     */
+    public AudioServiceImpl(Supplier<AudioSource> microphones, Supplier<AudioSink> speakers) {
+        this.microphones = microphones;
+        this.speakers = speakers;
+    }
+
     @Override
     public void setUdpSocket(DatagramSocket udpSocket) {
         this.udpSocket = udpSocket;
     }
 
     @Override
-    public void startSending(List<InetSocketAddress> peers) {
+    public void startSending(List<InetSocketAddress> peers, AudioCodec codec) {
         if (udpSocket == null) {
             throw new IllegalStateException("UDP socket no configurado");
         }
 
         stopSending(); // Detener envío anterior si existe
         
-        sender = new CallAudio.CallSender(udpSocket, peers);
+        sender = new CallAudio.CallSender(udpSocket, peers, codec, microphones.get());
         senderFuture = audioThreads.submit(sender);
     }
 
@@ -44,7 +69,7 @@ public class AudioServiceImpl implements AudioService {
 
         stopReceiving(); // Detener recepción anterior si existe
         
-        receiver = new CallAudio.CallReceiver(udpSocket);
+        receiver = new CallAudio.CallReceiver(udpSocket, speakers.get());
         receiverFuture = audioThreads.submit(receiver);
     }
 
@@ -54,6 +79,18 @@ public class AudioServiceImpl implements AudioService {
         stopReceiving();
     }
 
+    @Override
+    public List<JitterBuffer.Stats> getCallStats() {
+        CallAudio.CallReceiver current = receiver;
+        return current != null ? current.getStats() : List.of();
+    }
+
+    @Override
+    public CallAudio.CallSender.Stats getSendStats() {
+        CallAudio.CallSender current = sender;
+        return current != null ? current.getStats() : new CallAudio.CallSender.Stats(0, 0, 0);
+    }
+
     private void stopSending() {
         try {
             if (sender != null) sender.stop();
@@ -2,6 +2,7 @@ package service;
 
 import interfaces.AudioService;
 import interfaces.CallManager;
+import model.AudioCodec;
 import java.net.InetSocketAddress;
 import java.util.List;
 
@@ -21,7 +22,7 @@ public class CallManagerImpl implements CallManager {
     }
 
     @Override
-    public void startCall(String callId, List<InetSocketAddress> peers) {
+    public void startCall(String callId, List<InetSocketAddress> peers, AudioCodec codec) {
         if (audioService == null) {
             System.err.println("AudioService no configurado");
             return;
@@ -33,10 +34,10 @@ public class CallManagerImpl implements CallManager {
 
         try {
             activeCallId = callId;
-            audioService.startSending(peers);
+            audioService.startSending(peers, codec);
             audioService.startReceiving();
             
-            System.out.println("Llamada activa: " + callId + ".");
+            System.out.println("Llamada activa: " + callId + " (" + codec.id() + ").");
 
         } catch (Exception e) {
             System.err.println("Error iniciando llamada: " + e.getMessage());
@@ -2,6 +2,8 @@ package service;
 
 import interfaces.CallManager;
 import interfaces.MessageHandler;
+import model.AudioCodec;
+
 import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -45,7 +47,8 @@ public class MessageHandlerImpl implements MessageHandler {
      * Delegado a CallManagerImpl para iniciar la llamada.
      * 
      * @param callId Identificador de la llamada
-     * @param participants Cadena con formato "user1:ip:port,user2:ip:port,..."
+     * @param participants Cadena con formato "user1:ip:port,user2:ip:port,..." seguida
+     *                     opcionalmente de " codec=<id>" (sin ella el audio va en PCM16)
      */
     @Override
     public void handleCallStarted(String callId, String participants) {
@@ -55,6 +58,13 @@ public class MessageHandlerImpl implements MessageHandler {
         }
 
         try {
+            AudioCodec codec = AudioCodec.PCM16;
+            int codecAt = participants.indexOf(" codec=");
+            if (codecAt >= 0) {
+                AudioCodec announced = AudioCodec.fromId(participants.substring(codecAt + 7).trim());
+                if (announced != null) codec = announced;
+                participants = participants.substring(0, codecAt);
+            }
             List<InetSocketAddress> peers = parseParticipants(participants);
             if (peers.isEmpty()) {
                 System.out.println("No hay pares para la llamada.");
@@ -62,7 +72,7 @@ public class MessageHandlerImpl implements MessageHandler {
             }
 
             System.out.println("Iniciando llamada (callId=" + callId + ") con pares: " + peers);
-            CallManagerImpl.startCall(callId, peers);
+            CallManagerImpl.startCall(callId, peers, codec);
 
         } catch (Exception e) {
             System.err.println("Error iniciando llamada: " + e.getMessage());
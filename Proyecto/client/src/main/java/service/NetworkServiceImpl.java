@@ -1,11 +1,21 @@
 package service;
 
+import interfaces.AudioSink;
+import interfaces.AudioSource;
 import interfaces.MessageHandler;
 import interfaces.NetworkService;
+import model.AudioCodec;
+import model.FrameCodec;
+import model.FramedReader;
+import model.JavaSoundSource;
 import model.VoicePlayer;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Implementación del servicio de comunicación de red del cliente.
@@ -13,32 +23,85 @@ import java.net.*;
  * - Mensajes normales
  * - Notas de voz individuales (/voice <usuario>)
  * - Notas de voz grupales (/voicegroup <grupo>)
+ * Al conectar anuncia los códecs de voz que soporta (/codecs); las notas se envían
+ * con el preferido que el servidor confirme.
+ * Pide el protocolo binario 2 ({@link FrameCodec}) al conectar; si el servidor
+ * no lo acepta sigue con el protocolo de líneas.
  */
 public class NetworkServiceImpl implements NetworkService {
+    // Audio por frame de nota de voz: otros frames (comandos) pueden intercalarse entre ellos
+    private static final int VOICE_CHUNK = 16 * 1024;
+
     private final String serverHost;
     private final int serverPort;
+    private final ThreadFactory listenerThreads;
 
     private Socket tcpSocket;
-    // Eliminamos el uso de BufferedReader para evitar mezclar buffers con binarios
+    // FramedReader permite mezclar líneas y binarios sobre el mismo buffer
     private PrintWriter tcpOut;
-    private InputStream rawIn;
+    private FramedReader reader;
     private boolean connected = false;
+    // Protocolo 2 acordado: todo se envía y recibe en frames por out
+    private volatile boolean framed = false;
+    private OutputStream out;
+    private final Object writeLock = new Object();
+    private final byte[] frameHeader = new byte[FrameCodec.MAX_HEADER_BYTES];
+    private final AtomicInteger requestIds = new AtomicInteger();
 
     private MessageHandler messageHandler;
     private Thread listenerThread;
-    private final VoicePlayer voicePlayer = new VoicePlayer();
+    private volatile VoicePlayer voicePlayer = new VoicePlayer();
+    private Supplier<AudioSource> microphones = JavaSoundSource::new;
+    private volatile boolean voicePlayback = true;
+    // Códec de las notas de voz salientes; PCM16 hasta que el servidor confirme otros
+    private volatile AudioCodec voiceCodec = AudioCodec.PCM16;
 
     // Estado para grabación de notas de voz
     private volatile boolean recordingVoice = false;
     private ByteArrayOutputStream voiceBuffer;
-    private javax.sound.sampled.TargetDataLine micLine;
     private String pendingVoiceTargetUser;
     private String pendingVoiceTargetGroup;
     private Thread recordingThread;
 
+    // Nota de voz entrante en el protocolo 2 (solo la toca el hilo que escucha)
+    private byte[] incomingVoice;
+    private int incomingLength;
+    private String incomingSender;
+    private String incomingCodec;
+
     public NetworkServiceImpl(String serverHost, int serverPort) {
+        this(serverHost, serverPort, r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * @param listenerThreads Fábrica del hilo que escucha al servidor (p. ej. hilos
+     *                        virtuales cuando un proceso abre miles de conexiones)
+     */
+    public NetworkServiceImpl(String serverHost, int serverPort, ThreadFactory listenerThreads) {
         this.serverHost = serverHost;
         this.serverPort = serverPort;
+        this.listenerThreads = listenerThreads;
+    }
+
+    /**
+     * Activa o desactiva la reproducción de las notas de voz recibidas (activa
+     * por defecto). Sin reproducción igual se avisa al MessageHandler.
+     */
+    public void setVoicePlayback(boolean enabled) {
+        this.voicePlayback = enabled;
+    }
+
+    /**
+     * Dispositivos con que se graban y reproducen las notas de voz (por defecto
+     * micrófono y altavoces; ver {@link model.AudioDevices}).
+     */
+    public void setAudioDevices(Supplier<AudioSource> microphones, Supplier<AudioSink> speakers) {
+        this.microphones = microphones;
+        this.voicePlayer = new VoicePlayer(speakers);
     }
 
     @Override
@@ -46,10 +109,16 @@ public class NetworkServiceImpl implements NetworkService {
         try {
             tcpSocket = new Socket(serverHost, serverPort);
             tcpOut = new PrintWriter(tcpSocket.getOutputStream(), true);
-            rawIn = tcpSocket.getInputStream();
-            // Registrar usuario leyendo/escribiendo líneas manualmente
-            tcpOut.println(username);
-            String welcomeMessage = readLine(rawIn);
+            reader = new FramedReader(tcpSocket.getInputStream());
+            // Pedir el protocolo binario; un servidor que no lo soporta responde con otra versión
+            tcpOut.println(FrameCodec.HANDSHAKE + " " + FrameCodec.VERSION);
+            framed = (FrameCodec.HANDSHAKE + " " + FrameCodec.VERSION).equals(reader.readLine());
+            if (framed) out = new BufferedOutputStream(tcpSocket.getOutputStream());
+
+            // Registrar usuario
+            sendLine(username);
+            String welcomeMessage = framed ? readWelcomeFrame() : reader.readLine();
+            sendLine("/codecs " + AudioCodec.toList(java.util.EnumSet.allOf(AudioCodec.class)));
 
             connected = true;
             startMessageListener();
@@ -67,10 +136,34 @@ public class NetworkServiceImpl implements NetworkService {
             return;
         }
 
-        tcpOut.println(command);
+        sendLine(command);
         if (command.equals("/quit")) disconnect();
     }
 
+    // Una línea del protocolo: frame de texto o línea terminada en '\n' según la versión
+    private void sendLine(String line) {
+        if (!framed) {
+            tcpOut.println(line);
+            return;
+        }
+        byte[] payload = line.getBytes(StandardCharsets.UTF_8);
+        try {
+            writeFrame(FrameCodec.TEXT, 0, 0, payload, 0, payload.length);
+        } catch (IOException e) {
+            System.err.println("Error enviando al servidor: " + e.getMessage());
+        }
+    }
+
+    // Cada frame se escribe completo bajo el lock: los de distintos hilos pueden intercalarse
+    private void writeFrame(int type, int flags, int requestId, byte[] payload, int offset, int length) throws IOException {
+        synchronized (writeLock) {
+            int headerLength = FrameCodec.putHeader(frameHeader, type, flags, requestId, length);
+            out.write(frameHeader, 0, headerLength);
+            out.write(payload, offset, length);
+            out.flush();
+        }
+    }
+
     @Override
     public void disconnect() {
         connected = false;
@@ -89,8 +182,7 @@ public class NetworkServiceImpl implements NetworkService {
     }
 
     private void startMessageListener() {
-        listenerThread = new Thread(this::listenServer);
-        listenerThread.setDaemon(true);
+        listenerThread = listenerThreads.newThread(this::listenServer);
         listenerThread.start();
     }
 
@@ -100,19 +192,18 @@ public class NetworkServiceImpl implements NetworkService {
     private void listenServer() {
         try {
             while (connected) {
-                String line = readLine(rawIn);
+                if (framed) {
+                    if (!readFrame()) break;
+                    continue;
+                }
+                String line = reader.readLine();
                 if (line == null) break;
 
                 if (line.startsWith("VOICE_NOTE_START") || line.startsWith("VOICE_NOTE_GROUP_START")) {
                     processIncomingVoice(line);
                     continue;
                 }
-
-                if (messageHandler != null) {
-                    messageHandler.handleMessage(line);
-                } else {
-                    System.out.println("[SERVER] " + line);
-                }
+                handleLine(line);
             }
 
         } catch (IOException e) {
@@ -120,11 +211,88 @@ public class NetworkServiceImpl implements NetworkService {
         }
     }
 
+    private void handleLine(String line) {
+        if (line.startsWith("CODECS:")) {
+            voiceCodec = AudioCodec.best(AudioCodec.parseList(line.substring("CODECS:".length())));
+            return;
+        }
+        if (messageHandler != null) {
+            messageHandler.handleMessage(line);
+        } else {
+            System.out.println("[SERVER] " + line);
+        }
+    }
+
+    private String readWelcomeFrame() throws IOException {
+        int type = reader.readByte();
+        if (type < 0) return null;
+        reader.readByte();
+        FrameCodec.readVarint(reader);
+        byte[] payload = new byte[(int) FrameCodec.readVarint(reader)];
+        reader.readFully(payload, 0, payload.length);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lee y procesa un frame del protocolo 2. El audio de las notas de voz se
+     * lee directo al arreglo de la nota, sin búferes intermedios.
+     *
+     * @return false si el servidor cerró la conexión
+     */
+    private boolean readFrame() throws IOException {
+        int type = reader.readByte();
+        if (type < 0) return false;
+        int flags = reader.readByte();
+        FrameCodec.readVarint(reader); // id de petición: las respuestas se muestran como cualquier línea
+        int length = (int) FrameCodec.readVarint(reader);
+
+        switch (type) {
+            case FrameCodec.TEXT, FrameCodec.ACK -> {
+                byte[] payload = new byte[length];
+                reader.readFully(payload, 0, length);
+                // Un ACK vacío confirma un comando que no tenía nada que responder
+                if (length > 0 || type == FrameCodec.TEXT) handleLine(new String(payload, StandardCharsets.UTF_8));
+            }
+            case FrameCodec.VOICE_START -> {
+                byte[] payload = new byte[length];
+                reader.readFully(payload, 0, length);
+                FrameCodec.FieldReader fields = new FrameCodec.FieldReader(payload, 0, length);
+                incomingSender = fields.string();
+                String group = fields.string();
+                long size = fields.varint();
+                incomingCodec = fields.string();
+                incomingVoice = new byte[(int) size];
+                incomingLength = 0;
+                System.out.println("Recibiendo nota de voz de " + incomingSender
+                        + ((flags & FrameCodec.FLAG_GROUP) != 0 ? " en '" + group + "'" : "") + " (" + size + " bytes)");
+            }
+            case FrameCodec.VOICE_DATA -> {
+                int n = incomingVoice == null ? 0 : Math.min(length, incomingVoice.length - incomingLength);
+                if (n > 0) {
+                    reader.readFully(incomingVoice, incomingLength, n);
+                    incomingLength += n;
+                }
+                reader.skip(length - n);
+            }
+            case FrameCodec.VOICE_END -> {
+                reader.skip(length);
+                if (incomingVoice != null) {
+                    byte[] audioData = incomingVoice;
+                    incomingVoice = null;
+                    playVoiceNote(incomingSender, incomingCodec.isEmpty() ? "pcm16" : incomingCodec, audioData);
+                }
+            }
+            default -> reader.skip(length); // tipo desconocido (servidor más nuevo)
+        }
+        return true;
+    }
+
     /**
      * Procesa la recepción de una nota de voz según encabezado del servidor.
      * Ejemplos:
-     *  - "VOICE_NOTE_START <sender> <fileSize>"
-     *  - "VOICE_NOTE_GROUP_START <sender> <group> <fileSize>"
+     *  - "VOICE_NOTE_START <sender> <fileSize> [códec]"
+     *  - "VOICE_NOTE_GROUP_START <sender> <group> <fileSize> [códec]"
+     * Sin códec el audio viene en PCM16; si no, se decodifica antes de reproducirlo.
      */
     private void processIncomingVoice(String header) {
         try {
@@ -135,43 +303,56 @@ public class NetworkServiceImpl implements NetworkService {
             }
 
             String sender = parts[1];
-            long fileSize;
+            int sizeAt = 2;
             if (header.startsWith("VOICE_NOTE_GROUP_START")) {
                 if (parts.length < 4) {
                     System.err.println("Encabezado grupal inválido: " + header);
                     return;
                 }
-                fileSize = Long.parseLong(parts[3]);
-            } else {
-                fileSize = Long.parseLong(parts[2]);
+                sizeAt = 3;
             }
+            long fileSize = Long.parseLong(parts[sizeAt]);
+            String codecId = parts.length > sizeAt + 1 ? parts[sizeAt + 1] : "pcm16";
 
             System.out.println("Recibiendo nota de voz de " + sender + " (" + fileSize + " bytes)");
 
-            byte[] audioData;
-            try (java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream()) {
-                byte[] buffer = new byte[4096];
-                long remaining = fileSize;
-                while (remaining > 0) {
-                    int bytesRead = rawIn.read(buffer, 0, (int) Math.min(buffer.length, remaining));
-                    if (bytesRead == -1) break;
-                    baos.write(buffer, 0, bytesRead);
-                    remaining -= bytesRead;
-                }
-                audioData = baos.toByteArray();
-            }
+            // El tamaño se conoce de antemano: se lee directo al arreglo final
+            byte[] audioData = new byte[(int) fileSize];
+            reader.readFully(audioData, 0, audioData.length);
 
             // Leer la línea de cierre
-            String endLine = readLine(rawIn);
+            String endLine = reader.readLine();
             if (!("VOICE_NOTE_END".equals(endLine) || "VOICE_NOTE_GROUP_END".equals(endLine))) {
                 System.err.println("Fin de nota de voz no detectado correctamente (recibido: " + endLine + ")");
             }
+            playVoiceNote(sender, codecId, audioData);
+
+        } catch (Exception e) {
+            System.err.println("Error procesando nota de voz: " + e.getMessage());
+        }
+    }
 
+    // Avisa de la nota recibida y la reproduce (decodificándola a PCM16 si hace falta)
+    private void playVoiceNote(String sender, String codecId, byte[] audioData) {
+        try {
+            AudioCodec codec = AudioCodec.fromId(codecId);
             System.out.println("Nota de voz recibida de " + sender + ": " + audioData.length + " bytes");
             if (messageHandler != null) {
                 messageHandler.handleMessage("[Nota de voz recibida de " + sender + "]");
             }
 
+            if (!voicePlayback) return;
+            if (codec == null) {
+                System.err.println("Nota de voz en un códec no soportado: " + codecId);
+                return;
+            }
+            if (codec != AudioCodec.PCM16) {
+                short[] samples = new short[codec.decodedSamples(audioData.length)];
+                int count = codec.newDecoder().decode(audioData, 0, audioData.length, samples, 0);
+                audioData = new byte[count * 2];
+                AudioCodec.pcmToLe(samples, 0, count, audioData, 0);
+            }
+
             // Reproducción automática
             if (audioData.length > 0) {
                 voicePlayer.playVoiceNote(audioData);
@@ -182,17 +363,6 @@ public class NetworkServiceImpl implements NetworkService {
         }
     }
 
-    private String readLine(InputStream in) throws IOException {
-        StringBuilder sb = new StringBuilder();
-        int b;
-        while ((b = in.read()) != -1) {
-            if (b == '\n') break;
-            if (b != '\r') sb.append((char) b);
-        }
-        if (sb.isEmpty() && b == -1) return null;
-        return sb.toString();
-    }
-
     @Override
     public void startVoiceNoteToUser(String username) {
         if (!connected || tcpSocket == null) {
@@ -229,11 +399,8 @@ public class NetworkServiceImpl implements NetworkService {
             System.out.println("No hay grabación activa.");
             return;
         }
-        // Detener captura
+        // Detener captura: el hilo de grabación cierra el micrófono al salir
         recordingVoice = false;
-        if (micLine != null) {
-            try { micLine.stop(); micLine.close(); } catch (Exception ignored) {}
-        }
         if (recordingThread != null) {
             try { recordingThread.join(500); } catch (InterruptedException ignored) {}
         }
@@ -247,58 +414,107 @@ public class NetworkServiceImpl implements NetworkService {
         }
 
         try {
+            sendVoiceNote(pendingVoiceTargetUser, pendingVoiceTargetGroup, audioData);
+        } finally {
+            pendingVoiceTargetUser = null;
+            pendingVoiceTargetGroup = null;
+        }
+    }
+
+    @Override
+    public void sendVoiceNote(String username, String groupName, byte[] pcm) {
+        if (!connected || tcpSocket == null) {
+            System.out.println("No conectado al servidor.");
+            return;
+        }
+        byte[] audioData = pcm;
+        AudioCodec codec = voiceCodec;
+        String codecSuffix = "";
+        if (codec != AudioCodec.PCM16) {
+            // Muestras en número par (ADPCM empaqueta dos por byte)
+            int count = audioData.length / 4 * 2;
+            short[] samples = new short[count];
+            AudioCodec.pcmFromLe(audioData, 0, count, samples, 0);
+            byte[] encoded = new byte[codec.maxEncodedBytes(count)];
+            int length = codec.newEncoder().encode(samples, 0, count, encoded, 0);
+            audioData = java.util.Arrays.copyOf(encoded, length);
+            codecSuffix = " " + codec.id();
+        }
+
+        try {
+            if (framed) {
+                sendVoiceFrames(username, groupName, audioData, codec);
+                return;
+            }
             DataOutputStream dos = new DataOutputStream(tcpSocket.getOutputStream());
-            if (pendingVoiceTargetUser != null) {
-                // Protocolo: VOICE_NOTE_START <destinatario> <tamaño> (usuario)
-                String header = "VOICE_NOTE_START " + pendingVoiceTargetUser + " " + audioData.length + "\n";
+            if (username != null) {
+                // Protocolo: VOICE_NOTE_START <destinatario> <tamaño> [códec] (usuario)
+                String header = "VOICE_NOTE_START " + username + " " + audioData.length + codecSuffix + "\n";
                 dos.write(header.getBytes(java.nio.charset.StandardCharsets.UTF_8));
                 dos.write(audioData);
                 dos.write("VOICE_NOTE_END\n".getBytes(java.nio.charset.StandardCharsets.UTF_8));
                 dos.flush();
-                System.out.println("Nota de voz enviada a " + pendingVoiceTargetUser);
-            } else if (pendingVoiceTargetGroup != null) {
-                // Protocolo: VOICE_NOTE_GROUP_START <grupo> <tamaño>
-                String header = "VOICE_NOTE_GROUP_START " + pendingVoiceTargetGroup + " " + audioData.length + "\n";
+                System.out.println("Nota de voz enviada a " + username);
+            } else if (groupName != null) {
+                // Protocolo: VOICE_NOTE_GROUP_START <grupo> <tamaño> [códec]
+                String header = "VOICE_NOTE_GROUP_START " + groupName + " " + audioData.length + codecSuffix + "\n";
                 dos.write(header.getBytes(java.nio.charset.StandardCharsets.UTF_8));
                 dos.write(audioData);
                 dos.write("VOICE_NOTE_GROUP_END\n".getBytes(java.nio.charset.StandardCharsets.UTF_8));
                 dos.flush();
-                System.out.println("Nota de voz grupal enviada a '" + pendingVoiceTargetGroup + "'");
+                System.out.println("Nota de voz grupal enviada a '" + groupName + "'");
             }
         } catch (IOException e) {
             System.err.println("Error enviando nota de voz: " + e.getMessage());
-        } finally {
-            pendingVoiceTargetUser = null;
-            pendingVoiceTargetGroup = null;
         }
     }
 
+    // Protocolo 2: inicio con los campos de destino, el audio en frames de VOICE_CHUNK y el cierre
+    private void sendVoiceFrames(String username, String groupName, byte[] audioData, AudioCodec codec) throws IOException {
+        boolean group = groupName != null;
+        byte[] start = new FrameCodec.Fields()
+                .string(username).string(groupName)
+                .varint(audioData.length).string(codec == AudioCodec.PCM16 ? "" : codec.id())
+                .toByteArray();
+        int flags = group ? FrameCodec.FLAG_GROUP : 0;
+        // El servidor confirma la nota con un ACK que lleva este id
+        writeFrame(FrameCodec.VOICE_START, flags, requestIds.incrementAndGet(), start, 0, start.length);
+        for (int offset = 0; offset < audioData.length; offset += VOICE_CHUNK) {
+            writeFrame(FrameCodec.VOICE_DATA, 0, 0, audioData, offset, Math.min(VOICE_CHUNK, audioData.length - offset));
+        }
+        writeFrame(FrameCodec.VOICE_END, flags, 0, new byte[0], 0, 0);
+        System.out.println(group
+                ? "Nota de voz grupal enviada a '" + groupName + "'"
+                : "Nota de voz enviada a " + username);
+    }
+
     private void beginRecording() {
+        AudioSource microphone = microphones.get();
         try {
-            javax.sound.sampled.AudioFormat fmt = new javax.sound.sampled.AudioFormat(44100, 16, 1, true, false);
-            javax.sound.sampled.DataLine.Info info = new javax.sound.sampled.DataLine.Info(javax.sound.sampled.TargetDataLine.class, fmt);
-            micLine = (javax.sound.sampled.TargetDataLine) javax.sound.sampled.AudioSystem.getLine(info);
-            micLine.open(fmt);
-            micLine.start();
-
-            voiceBuffer = new ByteArrayOutputStream();
-            recordingVoice = true;
-            recordingThread = new Thread(() -> {
-                byte[] buf = new byte[1024];
-                try {
-                    while (recordingVoice) {
-                        int n = micLine.read(buf, 0, buf.length);
-                        if (n > 0) voiceBuffer.write(buf, 0, n);
-                    }
-                } catch (Exception ignored) {
-                }
-            }, "voice-recorder");
-            recordingThread.setDaemon(true);
-            recordingThread.start();
-            System.out.println("🎙️ Grabación iniciada. Usa 'detener' para finalizar y enviar.");
-        } catch (Exception e) {
+            microphone.open(VoicePlayer.VOICE_FORMAT);
+        } catch (IOException e) {
             System.err.println("No se pudo iniciar la grabación: " + e.getMessage());
+            return;
         }
+
+        voiceBuffer = new ByteArrayOutputStream();
+        recordingVoice = true;
+        recordingThread = new Thread(() -> {
+            byte[] buf = new byte[1024];
+            try {
+                while (recordingVoice) {
+                    int n = microphone.read(buf, 0, buf.length);
+                    if (n < 0) break;
+                    if (n > 0) voiceBuffer.write(buf, 0, n);
+                }
+            } catch (Exception ignored) {
+            } finally {
+                microphone.close();
+            }
+        }, "voice-recorder");
+        recordingThread.setDaemon(true);
+        recordingThread.start();
+        System.out.println("🎙️ Grabación iniciada. Usa 'detener' para finalizar y enviar.");
     }
 
     private void cleanup() {
@@ -0,0 +1,428 @@
+package model;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Códecs de voz para llamadas y notas de voz, escritos sobre arreglos primitivos
+ * y sin reservar memoria por trama (los estados y tablas se crean una vez).
+ * <ul>
+ *   <li>PCM16: sin compresión, 16-bit little-endian.</li>
+ *   <li>ULAW: G.711 μ-law, 8 bits por muestra (2:1).</li>
+ *   <li>ADPCM: IMA-ADPCM, 4 bits por muestra (~4:1), en bloques de hasta
+ *       {@link #ADPCM_BLOCK_SAMPLES} muestras. Cada bloque empieza con 4 bytes
+ *       (predictor int16 LE, índice de paso, 0) y luego dos muestras por byte,
+ *       la primera en el nibble bajo; así un bloque se decodifica solo (un
+ *       paquete perdido no arrastra error) y el emisor conserva su estado.</li>
+ * </ul>
+ * Cliente y servidor comparten esta clase (módulo common), así ambos lados
+ * producen y aceptan exactamente los mismos bytes.
+ */
+public enum AudioCodec {
+    PCM16("pcm16", 0),
+    ULAW("ulaw", 1),
+    ADPCM("adpcm", 2);
+
+    public static final int ADPCM_BLOCK_SAMPLES = 1016;
+    public static final int ADPCM_BLOCK_BYTES = 4 + ADPCM_BLOCK_SAMPLES / 2;
+
+    // Orden de preferencia al negociar: el de mayor compresión primero
+    private static final AudioCodec[] PREFERENCE = {ADPCM, ULAW, PCM16};
+
+    private final String id;
+    private final int payloadType;
+
+    AudioCodec(String id, int payloadType) {
+        this.id = id;
+        this.payloadType = payloadType;
+    }
+
+    /**
+     * Nombre usado en el protocolo ("pcm16", "ulaw", "adpcm").
+     */
+    public String id() {
+        return id;
+    }
+
+    /**
+     * Tipo de carga en la cabecera de medios de los paquetes UDP.
+     */
+    public int payloadType() {
+        return payloadType;
+    }
+
+    /**
+     * @return El códec con ese nombre, o null si no se conoce
+     */
+    public static AudioCodec fromId(String id) {
+        if (id == null) return null;
+        for (AudioCodec c : values()) {
+            if (c.id.equalsIgnoreCase(id.trim())) return c;
+        }
+        return null;
+    }
+
+    /**
+     * @return El códec de ese tipo de carga, o null si no se conoce
+     */
+    public static AudioCodec fromPayloadType(int payloadType) {
+        for (AudioCodec c : values()) {
+            if (c.payloadType == payloadType) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Interpreta una lista separada por comas; los nombres desconocidos se ignoran
+     * y PCM16 siempre se considera soportado.
+     */
+    public static Set<AudioCodec> parseList(String list) {
+        Set<AudioCodec> codecs = EnumSet.of(PCM16);
+        if (list == null) return codecs;
+        for (String token : list.split(",")) {
+            AudioCodec c = fromId(token);
+            if (c != null) codecs.add(c);
+        }
+        return codecs;
+    }
+
+    /**
+     * Lista separada por comas en orden de preferencia.
+     */
+    public static String toList(Collection<AudioCodec> codecs) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (AudioCodec c : PREFERENCE) {
+            if (codecs.contains(c)) joiner.add(c.id);
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * El códec preferido entre los soportados (PCM16 si no hay otro).
+     */
+    public static AudioCodec best(Collection<AudioCodec> supported) {
+        for (AudioCodec c : PREFERENCE) {
+            if (supported.contains(c)) return c;
+        }
+        return PCM16;
+    }
+
+    /**
+     * Bytes máximos que produce codificar la cantidad de muestras indicada.
+     */
+    public int maxEncodedBytes(int samples) {
+        return switch (this) {
+            case PCM16 -> samples * 2;
+            case ULAW -> samples;
+            case ADPCM -> {
+                int blocks = (samples + ADPCM_BLOCK_SAMPLES - 1) / ADPCM_BLOCK_SAMPLES;
+                yield blocks * 4 + (samples + blocks) / 2;
+            }
+        };
+    }
+
+    /**
+     * Muestras que se obtienen al decodificar un flujo completo de esta longitud.
+     */
+    public int decodedSamples(int encodedBytes) {
+        return switch (this) {
+            case PCM16 -> encodedBytes / 2;
+            case ULAW -> encodedBytes;
+            case ADPCM -> {
+                int full = encodedBytes / ADPCM_BLOCK_BYTES;
+                int rest = encodedBytes % ADPCM_BLOCK_BYTES;
+                yield full * ADPCM_BLOCK_SAMPLES + Math.max(0, rest - 4) * 2;
+            }
+        };
+    }
+
+    /**
+     * Crea un codificador (ADPCM guarda estado entre llamadas: uno por flujo).
+     */
+    public Encoder newEncoder() {
+        return switch (this) {
+            case PCM16 -> Pcm16.INSTANCE;
+            case ULAW -> ULaw.INSTANCE;
+            case ADPCM -> new Adpcm();
+        };
+    }
+
+    /**
+     * Crea un decodificador. Ninguno guarda estado entre llamadas.
+     */
+    public Decoder newDecoder() {
+        return switch (this) {
+            case PCM16 -> Pcm16.INSTANCE;
+            case ULAW -> ULaw.INSTANCE;
+            case ADPCM -> new Adpcm();
+        };
+    }
+
+    /**
+     * Codificador de muestras PCM 16-bit.
+     */
+    public interface Encoder {
+        /**
+         * Codifica las muestras en out (con al menos maxEncodedBytes(samples) libres).
+         * Para ADPCM samples debe ser par.
+         *
+         * @return Bytes escritos
+         */
+        int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset);
+    }
+
+    /**
+     * Decodificador a muestras PCM 16-bit.
+     */
+    public interface Decoder {
+        /**
+         * Decodifica bloques completos (un paquete o un flujo entero) en out.
+         *
+         * @return Muestras escritas
+         */
+        int decode(byte[] in, int offset, int length, short[] out, int outOffset);
+    }
+
+    /**
+     * Convierte PCM 16-bit little-endian a muestras.
+     */
+    public static void pcmFromLe(byte[] src, int offset, int samples, short[] dst, int dstOffset) {
+        for (int i = 0; i < samples; i++) {
+            int b = offset + 2 * i;
+            dst[dstOffset + i] = (short) ((src[b] & 0xff) | (src[b + 1] << 8));
+        }
+    }
+
+    /**
+     * Convierte muestras a PCM 16-bit little-endian.
+     */
+    public static void pcmToLe(short[] src, int offset, int samples, byte[] dst, int dstOffset) {
+        for (int i = 0; i < samples; i++) {
+            short s = src[offset + i];
+            dst[dstOffset + 2 * i] = (byte) s;
+            dst[dstOffset + 2 * i + 1] = (byte) (s >> 8);
+        }
+    }
+
+    /**
+     * Decodifica un flujo que llega en fragmentos arbitrarios (p. ej. desde el
+     * socket): guarda el bloque o la muestra incompleta hasta el siguiente fragmento.
+     */
+    public static final class StreamDecoder {
+        private final AudioCodec codec;
+        private final Decoder decoder;
+        private final byte[] pending;
+        private int pendingBytes = 0;
+
+        public StreamDecoder(AudioCodec codec) {
+            this.codec = codec;
+            this.decoder = codec.newDecoder();
+            this.pending = new byte[codec == ADPCM ? ADPCM_BLOCK_BYTES : 2];
+        }
+
+        /**
+         * Muestras máximas que puede producir un fragmento de esta longitud.
+         */
+        public int maxSamples(int length) {
+            return codec.decodedSamples(length + pendingBytes) + ADPCM_BLOCK_SAMPLES;
+        }
+
+        /**
+         * Decodifica todo lo que el fragmento completa.
+         *
+         * @return Muestras escritas en out
+         */
+        public int feed(byte[] in, int offset, int length, short[] out) {
+            int unit = codec == PCM16 ? 2 : codec == ADPCM ? ADPCM_BLOCK_BYTES : 1;
+            int produced = 0;
+            if (pendingBytes > 0) {
+                int n = Math.min(unit - pendingBytes, length);
+                System.arraycopy(in, offset, pending, pendingBytes, n);
+                pendingBytes += n;
+                offset += n;
+                length -= n;
+                if (pendingBytes < unit) return 0;
+                produced = decoder.decode(pending, 0, unit, out, 0);
+                pendingBytes = 0;
+            }
+            int whole = length - length % unit;
+            produced += decoder.decode(in, offset, whole, out, produced);
+            pendingBytes = length - whole;
+            System.arraycopy(in, offset + whole, pending, 0, pendingBytes);
+            return produced;
+        }
+
+        /**
+         * Decodifica lo que quedó pendiente al terminar el flujo (el último bloque
+         * ADPCM suele ser más corto).
+         */
+        public int finish(short[] out) {
+            int produced = pendingBytes > 0 && codec == ADPCM
+                    ? decoder.decode(pending, 0, pendingBytes, out, 0) : 0;
+            pendingBytes = 0;
+            return produced;
+        }
+    }
+
+    private static final class Pcm16 implements Encoder, Decoder {
+        static final Pcm16 INSTANCE = new Pcm16();
+
+        @Override
+        public int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset) {
+            pcmToLe(pcm, offset, samples, out, outOffset);
+            return samples * 2;
+        }
+
+        @Override
+        public int decode(byte[] in, int offset, int length, short[] out, int outOffset) {
+            pcmFromLe(in, offset, length / 2, out, outOffset);
+            return length / 2;
+        }
+    }
+
+    /**
+     * G.711 μ-law: decodificación por tabla y codificación por segmento.
+     */
+    private static final class ULaw implements Encoder, Decoder {
+        static final ULaw INSTANCE = new ULaw();
+        private static final int BIAS = 0x84;
+        private static final int CLIP = 32635;
+        private static final byte[] EXPONENT = new byte[256];
+        private static final short[] TO_LINEAR = new short[256];
+
+        static {
+            for (int i = 1; i < 256; i++) {
+                EXPONENT[i] = (byte) (31 - Integer.numberOfLeadingZeros(i));
+            }
+            for (int i = 0; i < 256; i++) {
+                int u = ~i & 0xff;
+                int exponent = (u >> 4) & 0x07;
+                int sample = ((((u & 0x0f) << 3) + BIAS) << exponent) - BIAS;
+                TO_LINEAR[i] = (short) ((u & 0x80) != 0 ? -sample : sample);
+            }
+        }
+
+        @Override
+        public int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset) {
+            for (int i = 0; i < samples; i++) {
+                int s = pcm[offset + i];
+                int sign = (s >> 8) & 0x80;
+                if (sign != 0) s = -s;
+                if (s > CLIP) s = CLIP;
+                s += BIAS;
+                int exponent = EXPONENT[(s >> 7) & 0xff];
+                int mantissa = (s >> (exponent + 3)) & 0x0f;
+                out[outOffset + i] = (byte) ~(sign | (exponent << 4) | mantissa);
+            }
+            return samples;
+        }
+
+        @Override
+        public int decode(byte[] in, int offset, int length, short[] out, int outOffset) {
+            for (int i = 0; i < length; i++) {
+                out[outOffset + i] = TO_LINEAR[in[offset + i] & 0xff];
+            }
+            return length;
+        }
+    }
+
+    /**
+     * IMA-ADPCM en bloques independientes.
+     */
+    private static final class Adpcm implements Encoder, Decoder {
+        private static final int[] INDEX_TABLE = {-1, -1, -1, -1, 2, 4, 6, 8};
+        private static final int[] STEP_TABLE = {
+                7, 8, 9, 10, 11, 12, 13, 14, 16, 17, 19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+                50, 55, 60, 66, 73, 80, 88, 97, 107, 118, 130, 143, 157, 173, 190, 209, 230,
+                253, 279, 307, 337, 371, 408, 449, 494, 544, 598, 658, 724, 796, 876, 963,
+                1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066, 2272, 2499, 2749, 3024, 3327,
+                3660, 4026, 4428, 4871, 5358, 5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487,
+                12635, 13899, 15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767};
+
+        private int predictor = 0;
+        private int index = 0;
+
+        @Override
+        public int encode(short[] pcm, int offset, int samples, byte[] out, int outOffset) {
+            int o = outOffset;
+            while (samples > 0) {
+                int n = Math.min(samples, ADPCM_BLOCK_SAMPLES);
+                o += encodeBlock(pcm, offset, n, out, o);
+                offset += n;
+                samples -= n;
+            }
+            return o - outOffset;
+        }
+
+        private int encodeBlock(short[] pcm, int offset, int n, byte[] out, int o) {
+            out[o] = (byte) predictor;
+            out[o + 1] = (byte) (predictor >> 8);
+            out[o + 2] = (byte) index;
+            out[o + 3] = 0;
+            int p = o + 4;
+            for (int i = 0; i < n; i++) {
+                int step = STEP_TABLE[index];
+                int diff = pcm[offset + i] - predictor;
+                int nibble = 0;
+                if (diff < 0) {
+                    nibble = 8;
+                    diff = -diff;
+                }
+                int delta = step >> 3;
+                if (diff >= step) { nibble |= 4; diff -= step; delta += step; }
+                step >>= 1;
+                if (diff >= step) { nibble |= 2; diff -= step; delta += step; }
+                step >>= 1;
+                if (diff >= step) { nibble |= 1; delta += step; }
+
+                predictor += (nibble & 8) != 0 ? -delta : delta;
+                if (predictor > Short.MAX_VALUE) predictor = Short.MAX_VALUE;
+                else if (predictor < Short.MIN_VALUE) predictor = Short.MIN_VALUE;
+                index += INDEX_TABLE[nibble & 7];
+                if (index < 0) index = 0;
+                else if (index > 88) index = 88;
+
+                if ((i & 1) == 0) {
+                    out[p] = (byte) nibble;
+                } else {
+                    out[p++] |= (byte) (nibble << 4);
+                }
+            }
+            if ((n & 1) != 0) p++;
+            return p - o;
+        }
+
+        @Override
+        public int decode(byte[] in, int offset, int length, short[] out, int outOffset) {
+            int produced = 0;
+            int end = offset + length;
+            while (end - offset > 4) {
+                int blockEnd = Math.min(end, offset + ADPCM_BLOCK_BYTES);
+                int value = (short) ((in[offset] & 0xff) | (in[offset + 1] << 8));
+                int idx = Math.min(88, in[offset + 2] & 0xff);
+                for (int p = offset + 4; p < blockEnd; p++) {
+                    int b = in[p];
+                    for (int half = 0; half < 2; half++) {
+                        int nibble = half == 0 ? b & 0x0f : (b >> 4) & 0x0f;
+                        int step = STEP_TABLE[idx];
+                        int delta = step >> 3;
+                        if ((nibble & 4) != 0) delta += step;
+                        if ((nibble & 2) != 0) delta += step >> 1;
+                        if ((nibble & 1) != 0) delta += step >> 2;
+                        value += (nibble & 8) != 0 ? -delta : delta;
+                        if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+                        else if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+                        idx += INDEX_TABLE[nibble & 7];
+                        if (idx < 0) idx = 0;
+                        else if (idx > 88) idx = 88;
+                        out[outOffset + produced++] = (short) value;
+                    }
+                }
+                offset = blockEnd;
+            }
+            return produced;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Formato binario del protocolo TCP versión 2.
+ * Un cliente lo pide enviando "PROTOCOL 2" como primera línea; si el servidor
+ * responde "PROTOCOL 2" ambos lados pasan a intercambiar solo frames:
+ * <pre>
+ *   tipo (1 byte) | flags (1 byte) | id de petición (varint) | largo (varint) | carga
+ * </pre>
+ * Los varint son LEB128 sin signo (7 bits por byte, el bit alto indica que sigue otro).
+ * Las líneas de texto, las notas de voz y las confirmaciones comparten el formato,
+ * así un frame nunca se confunde con otro (no hay bloques binarios entre líneas)
+ * y los campos de texto llevan su largo, por lo que pueden contener espacios.
+ * Si el servidor responde otra versión el cliente sigue con el protocolo de líneas;
+ * los clientes que no lo piden (como el proxy web) siguen con él desde el inicio.
+ * Cliente y servidor comparten esta definición.
+ */
+public final class FrameCodec {
+    public static final String HANDSHAKE = "PROTOCOL";
+    public static final int VERSION = 2;
+
+    /** Una línea del protocolo de texto (comando o mensaje), UTF-8 sin '\n'. */
+    public static final int TEXT = 1;
+    /** Inicio de nota de voz; campos: usuario (destino o remitente), grupo, tamaño en bytes, códec. */
+    public static final int VOICE_START = 2;
+    /** Fragmento de audio de la nota de voz en curso. */
+    public static final int VOICE_DATA = 3;
+    /** Fin de la nota de voz en curso. */
+    public static final int VOICE_END = 4;
+    /** Respuesta a la petición con el mismo id; la carga es el texto de la respuesta. */
+    public static final int ACK = 5;
+
+    /** La nota de voz es grupal. */
+    public static final int FLAG_GROUP = 1;
+
+    // tipo + flags + dos varint de 32 bits
+    public static final int MAX_HEADER_BYTES = 2 + 5 + 5;
+
+    private FrameCodec() {}
+
+    /**
+     * Codifica un frame completo en un arreglo nuevo.
+     */
+    public static byte[] encode(int type, int flags, int requestId, byte[] payload, int offset, int length) {
+        byte[] frame = new byte[2 + varintSize(requestId & 0xffffffffL) + varintSize(length) + length];
+        int pos = putHeader(frame, type, flags, requestId, length);
+        System.arraycopy(payload, offset, frame, pos, length);
+        return frame;
+    }
+
+    /**
+     * Escribe la cabecera de un frame.
+     *
+     * @return Posición donde empieza la carga
+     */
+    public static int putHeader(byte[] dst, int type, int flags, int requestId, int length) {
+        dst[0] = (byte) type;
+        dst[1] = (byte) flags;
+        int pos = putVarint(dst, 2, requestId & 0xffffffffL);
+        return putVarint(dst, pos, length);
+    }
+
+    /**
+     * @return Posición siguiente al varint escrito
+     */
+    public static int putVarint(byte[] dst, int pos, long value) {
+        while ((value & ~0x7fL) != 0) {
+            dst[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        dst[pos++] = (byte) value;
+        return pos;
+    }
+
+    /**
+     * Lee un varint del flujo.
+     *
+     * @throws EOFException si el flujo termina antes
+     */
+    public static long readVarint(FramedReader in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            if (b < 0) throw new EOFException("Fin de flujo en la cabecera de un frame");
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new ProtocolException("Varint demasiado largo");
+    }
+
+    public static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7fL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Constructor de la carga de un frame con campos (varint y textos con largo).
+     */
+    public static final class Fields {
+        private byte[] data = new byte[64];
+        private int length = 0;
+
+        public Fields string(String value) {
+            byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, data, length, bytes.length);
+            length += bytes.length;
+            return this;
+        }
+
+        public Fields varint(long value) {
+            ensure(10);
+            length = putVarint(data, length, value);
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(length + extra, data.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Lector de los campos de una carga, directamente sobre el arreglo recibido.
+     */
+    public static final class FieldReader {
+        private final byte[] data;
+        private final int limit;
+        private int pos;
+
+        public FieldReader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = offset;
+            this.limit = offset + length;
+        }
+
+        public long varint() throws ProtocolException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= limit) throw new ProtocolException("Campo incompleto");
+                byte b = data[pos++];
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) return value;
+            }
+            throw new ProtocolException("Varint demasiado largo");
+        }
+
+        public String string() throws ProtocolException {
+            long length = varint();
+            if (length > limit - pos) throw new ProtocolException("Campo de texto incompleto");
+            String value = new String(data, pos, (int) length, StandardCharsets.UTF_8);
+            pos += (int) length;
+            return value;
+        }
+    }
+}
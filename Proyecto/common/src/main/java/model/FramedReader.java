@@ -0,0 +1,174 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Lector con buffer para el protocolo TCP: entrega líneas terminadas en '\n'
+ * y permite cambiar a lecturas binarias de longitud exacta (notas de voz) sin
+ * perder los bytes que ya quedaron en el buffer.
+ * Reutiliza sus buffers, por lo que cada línea cuesta una sola lectura del
+ * socket por bloque y una única asignación (el String resultante).
+ * Una línea más larga que el máximo corta la lectura con ProtocolException, así
+ * un par que nunca envía '\n' no hace crecer el buffer sin límite.
+ * No es seguro para uso concurrente: cada conexión tiene su propio lector.
+ * Cliente y servidor comparten esta clase (módulo common).
+ */
+public final class FramedReader {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Igual que el límite de líneas del bucle NIO del servidor
+    public static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private final int maxLineLength;
+    private int position = 0;
+    private int limit = 0;
+    private byte[] lineBuffer = new byte[256];
+
+    public FramedReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FramedReader(InputStream in, int bufferSize) {
+        this(in, bufferSize, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * @param maxLineLength Bytes máximos de una línea, sin contar el '\n'
+     */
+    public FramedReader(InputStream in, int bufferSize, int maxLineLength) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Lee una línea (UTF-8) sin el terminador '\n' ni '\r'.
+     *
+     * @return La línea leída, o null si el flujo terminó sin datos pendientes
+     * @throws ProtocolException si la línea supera el máximo (la conexión debe cerrarse)
+     * @throws IOException si falla la lectura del flujo
+     */
+    public String readLine() throws IOException {
+        int lineLength = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                return lineLength == 0 ? null : decode(lineBuffer, 0, lineLength);
+            }
+
+            // Caso rápido: la línea completa ya está en el buffer
+            int start = position;
+            int end = start;
+            while (end < limit && buffer[end] != '\n') end++;
+
+            if (lineLength + (end - start) > maxLineLength) {
+                throw new ProtocolException("Línea de más de " + maxLineLength + " bytes");
+            }
+
+            if (end < limit) {
+                position = end + 1;
+                if (lineLength == 0) {
+                    return decode(buffer, start, end - start);
+                }
+                lineLength = appendToLine(lineLength, start, end - start);
+                return decode(lineBuffer, 0, lineLength);
+            }
+
+            // La línea continúa en el siguiente bloque
+            lineLength = appendToLine(lineLength, start, limit - start);
+            position = limit;
+        }
+    }
+
+    /**
+     * Lee hasta {@code length} bytes binarios, primero desde el buffer y luego
+     * directamente del flujo cuando el pedido es grande.
+     *
+     * @return Cantidad de bytes leídos, o -1 al final del flujo
+     * @throws IOException si falla la lectura del flujo
+     */
+    public int read(byte[] dst, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (position == limit) {
+            if (length >= buffer.length) {
+                return in.read(dst, offset, length);
+            }
+            if (!fill()) return -1;
+        }
+        int n = Math.min(length, limit - position);
+        System.arraycopy(buffer, position, dst, offset, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * Lee un byte binario.
+     *
+     * @return El byte (0..255), o -1 al final del flujo
+     * @throws IOException si falla la lectura del flujo
+     */
+    public int readByte() throws IOException {
+        if (position == limit && !fill()) return -1;
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * Lee exactamente {@code length} bytes binarios.
+     *
+     * @throws EOFException si el flujo termina antes
+     */
+    public void readFully(byte[] dst, int offset, int length) throws IOException {
+        while (length > 0) {
+            int n = read(dst, offset, length);
+            if (n < 0) throw new EOFException("Fin de flujo antes de completar " + length + " bytes");
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Descarta {@code count} bytes binarios.
+     *
+     * @return Cantidad de bytes efectivamente descartados
+     */
+    public long skip(long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            if (position == limit && !fill()) break;
+            int n = (int) Math.min(remaining, limit - position);
+            position += n;
+            remaining -= n;
+        }
+        return count - remaining;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private int appendToLine(int lineLength, int start, int count) {
+        int needed = lineLength + count;
+        if (needed > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.max(needed, lineBuffer.length * 2));
+        }
+        System.arraycopy(buffer, start, lineBuffer, lineLength, count);
+        return needed;
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') length--;
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,129 @@
+package loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Usuarios inactivos: se conectan con el protocolo de texto, envían su nombre
+ * y después solo leen (y descartan) lo que llegue, sin enviar nada más. Sirven
+ * para medir cuánto le cuesta al servidor mantener muchas conexiones abiertas
+ * mientras otros usuarios generan tráfico. Todas se atienden desde un único
+ * hilo con un Selector, así el generador no gasta un hilo por conexión.
+ */
+final class IdleUsers implements Runnable {
+    private final LoadConfig config;
+    private final long start;
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder closedByServer = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * @param start Inicio de la rampa (System.nanoTime()), compartido con los usuarios activos
+     */
+    IdleUsers(LoadConfig config, long start) {
+        this.config = config;
+        this.start = start;
+    }
+
+    static String userName(int index) {
+        return "idle" + index;
+    }
+
+    /**
+     * Conecta los usuarios repartidos a lo largo de la rampa y lee de todos
+     * hasta {@link #stop()}; al terminar cierra las conexiones.
+     */
+    @Override
+    public void run() {
+        int total = config.idleUsers();
+        List<SocketChannel> channels = new ArrayList<>(total);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(16 * 1024);
+        InetSocketAddress address = new InetSocketAddress(config.host(), config.port());
+        try (Selector selector = Selector.open()) {
+            int next = 0;
+            while (running) {
+                long now = System.nanoTime();
+                // Conectar los que ya les tocó según la rampa (la misma que la de los usuarios activos)
+                while (next < total && now >= start + (long) next * config.rampSeconds() * 1_000_000_000L / total) {
+                    SocketChannel channel = connect(address, next++);
+                    if (channel != null) {
+                        channels.add(channel);
+                        channel.register(selector, SelectionKey.OP_READ);
+                    }
+                }
+                selector.select(next < total ? 1 : 100);
+                for (SelectionKey key : selector.selectedKeys()) read(key, buffer);
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Usuarios inactivos: " + e.getMessage());
+        } finally {
+            for (SocketChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    /**
+     * Conexiones abiertas, fallidas y cerradas por el servidor hasta ahora.
+     */
+    String summary() {
+        return String.format(Locale.ROOT, "inactivos=%d/%d (fallos=%d cerrados=%d)",
+                connected.sum() - closedByServer.sum(), config.idleUsers(), connectFailures.sum(), closedByServer.sum());
+    }
+
+    // Conexión bloqueante (en localhost es inmediata); después se pasa a no bloqueante
+    private SocketChannel connect(InetSocketAddress address, int index) {
+        try {
+            SocketChannel channel = SocketChannel.open(address);
+            channel.write(ByteBuffer.wrap((userName(index) + "\n").getBytes(StandardCharsets.UTF_8)));
+            channel.configureBlocking(false);
+            connected.increment();
+            return channel;
+        } catch (IOException e) {
+            connectFailures.increment();
+            // Si el servidor rechaza conexiones, no insistir a toda velocidad
+            LockSupport.parkNanos(1_000_000L);
+            return null;
+        }
+    }
+
+    private void read(SelectionKey key, ByteBuffer buffer) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        try {
+            int n;
+            while ((n = channel.read(buffer.clear())) > 0) bytesRead.add(n);
+            if (n < 0) closed(key);
+        } catch (IOException e) {
+            closed(key);
+        }
+    }
+
+    private void closed(SelectionKey key) {
+        key.cancel();
+        closedByServer.increment();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package loadgen;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias con cubetas log-lineales, el mismo esquema que
+ * Metrics.Histogram del servidor: 16 cubetas por potencia de dos (error
+ * relativo de a lo sumo ~6%) hasta 2^40 ns. Registrar no toma bloqueos, así
+ * miles de usuarios virtuales pueden medir a la vez.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos Latencia en nanosegundos (las negativas cuentan como 0)
+     */
+    void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.getAndIncrement(index(nanos));
+        count.increment();
+        sum.add(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * Valores (en nanosegundos) bajo los cuales queda cada fracción de las muestras.
+     */
+    long[] quantiles(double... qs) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        long[] result = new long[qs.length];
+        if (total == 0) return result;
+        long observedMax = max.get();
+        int i = 0;
+        long seen = 0;
+        for (int q = 0; q < qs.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(qs[q] * total));
+            while (i < BUCKETS - 1 && seen + snapshot[i] < rank) {
+                seen += snapshot[i++];
+            }
+            result[q] = Math.min(upperBound(i), observedMax);
+        }
+        return result;
+    }
+
+    /**
+     * "n prom p50 p90 p99 p99.9 max" en milisegundos, alineado para la tabla del reporte.
+     */
+    String row() {
+        long n = count.sum();
+        if (n == 0) return String.format(Locale.ROOT, "%9d %9s %9s %9s %9s %9s %9s", 0, "-", "-", "-", "-", "-", "-");
+        long[] q = quantiles(0.5, 0.9, 0.99, 0.999);
+        return String.format(Locale.ROOT, "%9d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f", n, sum.sum() / (double) n / 1e6,
+                q[0] / 1e6, q[1] / 1e6, q[2] / 1e6, q[3] / 1e6, max.get() / 1e6);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
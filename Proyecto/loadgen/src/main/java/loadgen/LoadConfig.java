@@ -0,0 +1,95 @@
+package loadgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parámetros de una prueba de carga. Se leen de argumentos "--clave=valor";
+ * las claves que no se indican toman el valor por defecto.
+ *
+ * @param host Servidor TCP
+ * @param port Puerto TCP (el relay UDP de llamadas está en port + 1)
+ * @param users Usuarios virtuales
+ * @param idleUsers Usuarios que se conectan y solo leen, además de los activos ({@link IdleUsers})
+ * @param groups Grupos; cada usuario se une a uno (0 usa un grupo cada 20 usuarios)
+ * @param rampSeconds Tiempo en el que se conectan todos los usuarios, repartidos en forma pareja
+ * @param durationSeconds Duración de la carga después de la rampa
+ * @param privateRate Mensajes privados por segundo de cada usuario (llegadas de Poisson)
+ * @param groupRate Mensajes de grupo por segundo de cada usuario
+ * @param voiceIntervalSeconds Segundos promedio entre notas de voz de un usuario; 0 las deshabilita
+ * @param voiceSeconds Duración de cada nota de voz sintética
+ * @param callPercent Porcentaje de usuarios en llamadas de a dos por UDP
+ * @param callSeconds Duración de cada llamada (al colgar se vuelve a llamar)
+ * @param reportSeconds Intervalo del reporte de progreso
+ * @param verbose Mostrar la salida de consola de los clientes (por defecto se descarta)
+ */
+public record LoadConfig(String host, int port, int users, int idleUsers, int groups, int rampSeconds, int durationSeconds,
+                         double privateRate, double groupRate, double voiceIntervalSeconds, double voiceSeconds,
+                         double callPercent, int callSeconds, int reportSeconds, boolean verbose) {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("host", "127.0.0.1");
+        DEFAULTS.put("port", "6000");
+        DEFAULTS.put("users", "1000");
+        DEFAULTS.put("idle-users", "0");
+        DEFAULTS.put("groups", "0");
+        DEFAULTS.put("ramp", "10");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("private-rate", "0.2");
+        DEFAULTS.put("group-rate", "0.05");
+        DEFAULTS.put("voice-interval", "120");
+        DEFAULTS.put("voice-seconds", "2");
+        DEFAULTS.put("call-percent", "2");
+        DEFAULTS.put("call-seconds", "20");
+        DEFAULTS.put("report", "5");
+        DEFAULTS.put("verbose", "false");
+    }
+
+    /**
+     * @throws IllegalArgumentException si una clave no existe o un valor no es válido
+     */
+    public static LoadConfig parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Argumento inválido: " + arg);
+            int eq = arg.indexOf('=');
+            String key = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            if (!values.containsKey(key)) throw new IllegalArgumentException("Opción desconocida: --" + key);
+            values.put(key, eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        try {
+            int users = Integer.parseInt(values.get("users"));
+            int groups = Integer.parseInt(values.get("groups"));
+            LoadConfig config = new LoadConfig(values.get("host"), Integer.parseInt(values.get("port")), users,
+                    Integer.parseInt(values.get("idle-users")),
+                    groups > 0 ? groups : Math.max(1, users / 20),
+                    Integer.parseInt(values.get("ramp")), Integer.parseInt(values.get("duration")),
+                    Double.parseDouble(values.get("private-rate")), Double.parseDouble(values.get("group-rate")),
+                    Double.parseDouble(values.get("voice-interval")), Double.parseDouble(values.get("voice-seconds")),
+                    Double.parseDouble(values.get("call-percent")), Integer.parseInt(values.get("call-seconds")),
+                    Integer.parseInt(values.get("report")), Boolean.parseBoolean(values.get("verbose")));
+            if (users < 2) throw new IllegalArgumentException("Se necesitan al menos 2 usuarios");
+            return config;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor numérico inválido: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opciones disponibles con su valor por defecto.
+     */
+    public static String usage() {
+        StringBuilder sb = new StringBuilder("Opciones (--clave=valor):\n");
+        DEFAULTS.forEach((k, v) -> sb.append("  --").append(k).append(" (").append(v).append(")\n"));
+        return sb.toString();
+    }
+
+    /**
+     * Cantidad de llamadas simultáneas (cada una entre dos usuarios).
+     */
+    public int callPairs() {
+        return (int) Math.min(users / 2, Math.round(users * callPercent / 200.0));
+    }
+}
@@ -0,0 +1,152 @@
+package loadgen;
+
+import model.LatencyProbe;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Ejecuta una prueba de carga: conecta los usuarios virtuales repartidos a lo
+ * largo de la rampa, los deja generar tráfico durante la duración configurada,
+ * muestra el progreso periódicamente y devuelve el reporte final.
+ */
+public final class LoadGenerator {
+    private static final int PROBE_PERIOD_MS = 500;
+
+    private final LoadConfig config;
+    private final LoadStats stats = new LoadStats();
+    private final ThreadFactory threads = threadFactory();
+    // Inicio del último envío de nota de voz de cada usuario, para medirla al recibirla
+    private final Map<String, Long> voiceStarts = new ConcurrentHashMap<>();
+    // Sonda boca a oído de cada participante de llamada: mide lo que dice él y oye su par
+    private final LatencyProbe[] probes;
+    private final byte[] voiceNote;
+    private long loadStart;
+    private long loadEnd;
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+        this.voiceNote = syntheticVoice(config.voiceSeconds());
+        this.probes = new LatencyProbe[2 * config.callPairs()];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = new LatencyProbe(PROBE_PERIOD_MS, nanos -> stats.received(LoadStats.Kind.CALL, nanos));
+        }
+    }
+
+    /**
+     * Corre la prueba completa (rampa + duración) y espera a que terminen todos los usuarios.
+     *
+     * @param progress Salida del reporte periódico
+     * @return Reporte final con las latencias por tipo de tráfico
+     */
+    public String run(PrintStream progress) throws InterruptedException {
+        long start = System.nanoTime();
+        loadStart = start + config.rampSeconds() * 1_000_000_000L;
+        loadEnd = loadStart + config.durationSeconds() * 1_000_000_000L;
+
+        IdleUsers idle = new IdleUsers(config, start);
+        Thread idleThread = null;
+        if (config.idleUsers() > 0) {
+            idleThread = new Thread(idle, "idle-users");
+            idleThread.setDaemon(true);
+            idleThread.start();
+        }
+
+        List<Thread> users = new ArrayList<>(config.users());
+        for (int i = 0; i < config.users(); i++) {
+            long connectAt = start + (long) i * config.rampSeconds() * 1_000_000_000L / config.users();
+            Thread t = threads.newThread(new VirtualUser(i, this, connectAt));
+            t.setName(VirtualUser.userName(i));
+            t.start();
+            users.add(t);
+        }
+
+        long reportMillis = Math.max(1, config.reportSeconds()) * 1000L;
+        for (Thread t : users) {
+            while (t.isAlive()) {
+                t.join(reportMillis);
+                if (t.isAlive()) progress.println(progress(idle, start));
+            }
+        }
+        if (idleThread != null) {
+            idle.stop();
+            idleThread.join();
+        }
+        for (LatencyProbe probe : probes) stats.sent(LoadStats.Kind.CALL, probe.stats().said());
+        String report = stats.report(config.durationSeconds());
+        return config.idleUsers() > 0 ? "Usuarios " + idle.summary() + System.lineSeparator() + report : report;
+    }
+
+    private String progress(IdleUsers idle, long start) {
+        String line = stats.progress((System.nanoTime() - start) / 1_000_000_000L);
+        return config.idleUsers() > 0 ? line + " | " + idle.summary() : line;
+    }
+
+    LoadConfig config() {
+        return config;
+    }
+
+    LoadStats stats() {
+        return stats;
+    }
+
+    ThreadFactory threads() {
+        return threads;
+    }
+
+    Map<String, Long> voiceStarts() {
+        return voiceStarts;
+    }
+
+    LatencyProbe probe(int user) {
+        return probes[user];
+    }
+
+    byte[] voiceNote() {
+        return voiceNote;
+    }
+
+    long loadStart() {
+        return loadStart;
+    }
+
+    long loadEnd() {
+        return loadEnd;
+    }
+
+    // Tono de 440 Hz en PCM 16 bits LE, mono, 44.1 kHz: el formato que graba el cliente
+    private static byte[] syntheticVoice(double seconds) {
+        int samples = (int) (44100 * Math.max(0, seconds));
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short s = (short) (Math.sin(2 * Math.PI * 440 * i / 44100.0) * 8000);
+            pcm[2 * i] = (byte) s;
+            pcm[2 * i + 1] = (byte) (s >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * Hilos virtuales si la JVM los tiene (Java 21, o 19-20 con --enable-preview):
+     * miles de usuarios bloqueados en sockets cuestan poca memoria. En otro caso,
+     * hilos de plataforma daemon. Se buscan por reflexión porque el proyecto compila para Java 17.
+     */
+    private static ThreadFactory threadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+}
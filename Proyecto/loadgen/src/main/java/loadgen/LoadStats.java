@@ -0,0 +1,117 @@
+package loadgen;
+
+import model.JitterBuffer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores y latencias de una prueba de carga, compartidos por todos los
+ * usuarios virtuales.
+ */
+final class LoadStats {
+
+    /**
+     * Tipos de tráfico medidos. La latencia se mide de punta a punta: desde que
+     * el emisor envía hasta que el receptor lo recibe (ambos en este proceso,
+     * así comparten el reloj de System.nanoTime()). En las llamadas es la
+     * latencia boca a oído de las ráfagas de una LatencyProbe, a través de todo el
+     * camino de audio del cliente.
+     */
+    enum Kind {
+        PRIVATE("Privados"),
+        GROUP("Grupo (por entrega)"),
+        VOICE("Notas de voz"),
+        CALL("Llamadas (boca a oído)");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Kind, LongAdder> sent = new EnumMap<>(Kind.class);
+    private final Map<Kind, LongAdder> received = new EnumMap<>(Kind.class);
+    private final Map<Kind, LatencyHistogram> latency = new EnumMap<>(Kind.class);
+    final LongAdder connected = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    private final LatencyHistogram callJitter = new LatencyHistogram();
+    private final LongAdder callPackets = new LongAdder();
+    private final LongAdder callLost = new LongAdder();
+    private final LongAdder callLate = new LongAdder();
+    private final LongAdder callConcealed = new LongAdder();
+
+    LoadStats() {
+        for (Kind kind : Kind.values()) {
+            sent.put(kind, new LongAdder());
+            received.put(kind, new LongAdder());
+            latency.put(kind, new LatencyHistogram());
+        }
+    }
+
+    void sent(Kind kind) {
+        sent.get(kind).increment();
+    }
+
+    void sent(Kind kind, long count) {
+        sent.get(kind).add(count);
+    }
+
+    /**
+     * Acumula lo medido por el búfer de jitter de un flujo de llamada al terminar.
+     */
+    void callStream(JitterBuffer.Stats stream) {
+        callJitter.record((long) (stream.jitterMs() * 1e6));
+        callPackets.add(stream.received());
+        callLost.add(stream.lost());
+        callLate.add(stream.late());
+        callConcealed.add(stream.concealed());
+    }
+
+    void received(Kind kind, long latencyNanos) {
+        received.get(kind).increment();
+        latency.get(kind).record(latencyNanos);
+    }
+
+    /**
+     * Una línea de progreso con los totales hasta ahora.
+     */
+    String progress(long elapsedSeconds) {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT, "[%4ds] conectados=%d fallos=%d errores=%d",
+                elapsedSeconds, connected.sum(), connectFailures.sum(), errors.sum()));
+        for (Kind kind : Kind.values()) {
+            long[] p99 = latency.get(kind).quantiles(0.99);
+            sb.append(String.format(Locale.ROOT, " | %s %d/%d p99=%.1fms", kind.name().toLowerCase(Locale.ROOT),
+                    sent.get(kind).sum(), received.get(kind).sum(), p99[0] / 1e6));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Tabla final: envíos, recepciones y percentiles de latencia por tipo.
+     */
+    String report(double seconds) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Usuarios conectados: %d (fallos: %d)%n",
+                connected.sum(), connectFailures.sum()));
+        sb.append(String.format(Locale.ROOT, "Errores del servidor: %d%n", errors.sum()));
+        sb.append(String.format(Locale.ROOT, "%-24s %9s %9s %9s %9s %9s %9s %9s %9s %9s%n", "Tipo (ms)", "enviados",
+                "envíos/s", "recibidos", "prom", "p50", "p90", "p99", "p99.9", "max"));
+        for (Kind kind : Kind.values()) {
+            long s = sent.get(kind).sum();
+            sb.append(String.format(Locale.ROOT, "%-24s %9d %9.1f %s%n", kind.label, s, s / Math.max(seconds, 1e-9),
+                    latency.get(kind).row()));
+        }
+        long[] jitter = callJitter.quantiles(0.5, 0.99);
+        sb.append(String.format(Locale.ROOT,
+                "Paquetes de llamada: %d recibidos, %d perdidos, %d tardíos, %d tramas ocultadas; "
+                        + "jitter por flujo p50=%.2fms p99=%.2fms (%d flujos)%n",
+                callPackets.sum(), callLost.sum(), callLate.sum(), callConcealed.sum(),
+                jitter[0] / 1e6, jitter[1] / 1e6, callJitter.count()));
+        return sb.toString();
+    }
+}
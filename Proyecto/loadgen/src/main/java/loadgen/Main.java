@@ -0,0 +1,37 @@
+package loadgen;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Punto de entrada del generador de carga.
+ * Ejemplo: --users=2000 --ramp=20 --duration=120 --call-percent=5
+ */
+public class Main {
+    public static void main(String[] args) throws InterruptedException {
+        LoadConfig config;
+        try {
+            config = LoadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadConfig.usage());
+            System.exit(2);
+            return;
+        }
+
+        PrintStream console = System.out;
+        if (!config.verbose()) {
+            // Los clientes escriben en consola cada mensaje recibido: con miles de usuarios se descarta
+            PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(discard);
+            System.setErr(discard);
+        }
+
+        console.printf("Carga contra %s:%d: %d usuarios (+%d inactivos), %d grupos, %d llamadas, rampa %ds, duración %ds%n",
+                config.host(), config.port(), config.users(), config.idleUsers(), config.groups(), config.callPairs(),
+                config.rampSeconds(), config.durationSeconds());
+        String report = new LoadGenerator(config).run(console);
+        console.println();
+        console.print(report);
+    }
+}
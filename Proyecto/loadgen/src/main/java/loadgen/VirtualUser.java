@@ -0,0 +1,222 @@
+package loadgen;
+
+import interfaces.MessageHandler;
+import model.JitterBuffer;
+import service.AudioServiceImpl;
+import service.CallManagerImpl;
+import service.MessageHandlerImpl;
+import service.NetworkServiceImpl;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Un usuario simulado: una conexión real con {@link NetworkServiceImpl} que,
+ * tras la rampa, envía mensajes privados y de grupo y notas de voz con
+ * llegadas de Poisson, y opcionalmente mantiene llamadas con el camino de audio
+ * real del cliente (AudioServiceImpl) sobre orígenes y destinos sintéticos.
+ * Cada mensaje de texto lleva "lg &lt;nanoTime del envío&gt;" para que quien lo
+ * reciba mida la latencia. Corre en su propio hilo (virtual si la JVM lo permite).
+ */
+final class VirtualUser implements MessageHandler, Runnable {
+    private static final String MARKER = "lg ";
+    private static final long DRAIN_NANOS = 2_000_000_000L;
+
+    private final int index;
+    private final String name;
+    private final LoadGenerator generator;
+    private final LoadConfig config;
+    private final LoadStats stats;
+    private final NetworkServiceImpl network;
+    private final MessageHandlerImpl callMessages;
+    private final long connectAt;
+    private DatagramSocket udpSocket;
+    private AudioServiceImpl audio;
+    private CallManagerImpl call;
+
+    VirtualUser(int index, LoadGenerator generator, long connectAt) {
+        this.index = index;
+        this.name = userName(index);
+        this.generator = generator;
+        this.config = generator.config();
+        this.stats = generator.stats();
+        this.connectAt = connectAt;
+        this.network = new NetworkServiceImpl(config.host(), config.port(), generator.threads());
+        this.callMessages = new MessageHandlerImpl(name);
+        network.setVoicePlayback(false);
+        network.setMessageHandler(this);
+    }
+
+    static String userName(int index) {
+        return "lg" + index;
+    }
+
+    @Override
+    public void run() {
+        parkUntil(connectAt);
+        if (!connect()) return;
+        try {
+            parkUntil(generator.loadStart());
+            generate(generator.loadEnd());
+            // Seguir conectado un momento: recibir lo que está en vuelo y no provocar
+            // errores de "no conectado" a quienes todavía envían
+            parkUntil(generator.loadEnd() + DRAIN_NANOS);
+        } finally {
+            if (call != null) {
+                recordCallStats();
+                call.endCall();
+                audio.shutdown();
+            }
+            network.disconnect();
+            if (udpSocket != null) udpSocket.close();
+        }
+    }
+
+    private boolean connect() {
+        String welcome = network.connect(name);
+        if (!network.isConnected()) {
+            stats.connectFailures.increment();
+            return false;
+        }
+        stats.connected.increment();
+        if (welcome != null && welcome.startsWith("Error")) stats.errors.increment();
+        // Los primeros usuarios crean los grupos antes de que los demás se unan al terminar la rampa
+        if (index < config.groups()) network.sendCommand("/creategroup " + groupName());
+        if (isInCall()) {
+            try {
+                udpSocket = new DatagramSocket();
+                network.sendCommand("/udpport " + udpSocket.getLocalPort());
+                byte[] hello = name.getBytes(StandardCharsets.UTF_8);
+                udpSocket.send(new DatagramPacket(hello, hello.length, InetAddress.getByName(config.host()),
+                        config.port() + 1));
+                // Habla por la sonda propia y escucha por la del otro extremo del par
+                audio = new AudioServiceImpl(generator.probe(index)::source, generator.probe(index ^ 1)::sink);
+                audio.setUdpSocket(udpSocket);
+                call = new CallManagerImpl();
+                call.setAudioService(audio);
+                callMessages.setCallManagerImpl(call);
+            } catch (IOException e) {
+                stats.errors.increment();
+            }
+        }
+        return true;
+    }
+
+    // Bucle de eventos: duerme hasta el próximo envío de cualquier tipo y lo hace
+    private void generate(long end) {
+        if (index >= config.groups()) network.sendCommand("/joingroup " + groupName());
+        boolean caller = call != null && index % 2 == 0;
+        long now = System.nanoTime();
+        long nextPrivate = now + interval(config.privateRate());
+        long nextGroup = now + interval(config.groupRate());
+        long nextVoice = config.voiceIntervalSeconds() > 0
+                ? now + interval(1 / config.voiceIntervalSeconds()) : Long.MAX_VALUE;
+        // Las llamadas arrancan escalonadas en el primer segundo para no sincronizar los paquetes
+        long nextCall = caller ? now + ThreadLocalRandom.current().nextLong(1_000_000_000L) : Long.MAX_VALUE;
+        boolean calling = false;
+
+        while (network.isConnected()) {
+            long next = Math.min(Math.min(nextPrivate, nextGroup), Math.min(nextVoice, nextCall));
+            if (next >= end) break;
+            parkUntil(next);
+            if (next == nextPrivate) {
+                network.sendCommand("/msg " + randomPeer() + " " + MARKER + System.nanoTime());
+                stats.sent(LoadStats.Kind.PRIVATE);
+                nextPrivate += interval(config.privateRate());
+            } else if (next == nextGroup) {
+                network.sendCommand("/msggroup " + groupName() + " " + MARKER + System.nanoTime());
+                stats.sent(LoadStats.Kind.GROUP);
+                nextGroup += interval(config.groupRate());
+            } else if (next == nextVoice) {
+                generator.voiceStarts().put(name, System.nanoTime());
+                network.sendVoiceNote(randomPeer(), null, generator.voiceNote());
+                stats.sent(LoadStats.Kind.VOICE);
+                nextVoice += interval(1 / config.voiceIntervalSeconds());
+            } else {
+                // Llamar, colgar a los callSeconds y volver a llamar un segundo después
+                network.sendCommand(calling ? "/endcall" : "/call " + userName(index + 1));
+                calling = !calling;
+                nextCall += (calling ? config.callSeconds() : 1) * 1_000_000_000L;
+            }
+        }
+        if (calling) network.sendCommand("/endcall");
+    }
+
+    private boolean isInCall() {
+        return index < 2 * config.callPairs();
+    }
+
+    private String groupName() {
+        return "g" + (index % config.groups());
+    }
+
+    private String randomPeer() {
+        int peer = ThreadLocalRandom.current().nextInt(config.users() - 1);
+        return userName(peer >= index ? peer + 1 : peer);
+    }
+
+    // Tiempo hasta la próxima llegada de un proceso de Poisson con la tasa dada (por segundo)
+    private static long interval(double ratePerSecond) {
+        if (ratePerSecond <= 0) return Long.MAX_VALUE / 2;
+        double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return (long) (-Math.log(u) / ratePerSecond * 1e9);
+    }
+
+    private static void parkUntil(long deadline) {
+        long wait;
+        while ((wait = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    @Override
+    public void handleMessage(String message) {
+        long now = System.nanoTime();
+        if (message.startsWith("MENSAJE_PRIVADO ")) {
+            record(LoadStats.Kind.PRIVATE, message, now);
+        } else if (message.startsWith("MENSAJE_GRUPO ")) {
+            record(LoadStats.Kind.GROUP, message, now);
+        } else if (message.startsWith("[Nota de voz recibida de ")) {
+            String sender = message.substring("[Nota de voz recibida de ".length(), message.length() - 1);
+            Long start = generator.voiceStarts().get(sender);
+            if (start != null) stats.received(LoadStats.Kind.VOICE, now - start);
+        } else if (message.startsWith("LLAMADA_")) {
+            if (message.startsWith("LLAMADA_TERMINADA")) recordCallStats();
+            callMessages.handleMessage(message);
+        } else if (message.startsWith("Error") || message.startsWith("No se pudo")) {
+            stats.errors.increment();
+        }
+    }
+
+    private void record(LoadStats.Kind kind, String message, long now) {
+        int at = message.lastIndexOf(": " + MARKER);
+        if (at < 0) return;
+        try {
+            long sentAt = Long.parseLong(message.substring(at + 2 + MARKER.length()).trim());
+            stats.received(kind, now - sentAt);
+        } catch (NumberFormatException ignored) {
+            // Mensaje de otro cliente conectado al mismo servidor
+        }
+    }
+
+    // Estadísticas de los búferes de jitter de la llamada en curso, antes de cerrarla
+    private void recordCallStats() {
+        if (audio == null || !call.hasActiveCall()) return;
+        for (JitterBuffer.Stats s : audio.getCallStats()) stats.callStream(s);
+    }
+
+    @Override
+    public void handleCallStarted(String callId, String participants) {
+        callMessages.handleCallStarted(callId, participants);
+    }
+
+    @Override
+    public void handleCallEnded(String callId) {
+        callMessages.handleCallEnded(callId);
+    }
+}
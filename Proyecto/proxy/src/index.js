@@ -111,9 +111,9 @@ app.post('/group/message', async (req, res) => {
 
 app.get('/history', async (req, res) => {
   try {
-    const { scope, user, peer, group } = req.query;
+    const { scope, user, peer, group, before, limit } = req.query;
     const queryString = new URLSearchParams(req.query).toString();
-    const result = await getHistory(scope, user, peer, group, queryString);
+    const result = await getHistory(scope, user, peer, group, queryString, before, limit);
     res.status(result.statusCode || 200).json(result.data);
   } catch (err) {
     res.status(400).json({ error: err.message });
@@ -179,7 +179,7 @@ app.listen(HTTP_PORT, '0.0.0.0', () => {
   console.log(`  TCP_PORT: ${config.TCP_PORT}`);
   console.log(`  MAIN_SERVER_IP: ${config.MAIN_SERVER_IP || '(local)'}`);
   console.log(`  VOICE_DIR: ${config.VOICE_DIR}`);
-  console.log(`  HISTORY_FILE: ${config.HISTORY_FILE}`);
+  console.log(`  ICE_HISTORY_PROXY: ${config.ICE_HISTORY_PROXY}`);
   console.log(`  DIST_DIR: ${DIST_DIR}\n`);
 });
 
@@ -3,6 +3,10 @@ import fs from 'fs';
 import path from 'path';
 import http from 'http';
 import { fileURLToPath } from 'url';
+import IceModule from 'ice';
+import { Chat } from '../ice/Services.js';
+
+const Ice = IceModule.Ice || IceModule;
 
 // ─────────────────────────────────────────────────────────────
 // Config
@@ -15,15 +19,21 @@ const HTTP_PORT = Number(process.env.HTTP_PORT || 3001);
 // Dejar vacío si el proxy corre en el mismo dispositivo que el servidor
 const MAIN_SERVER_IP = process.env.MAIN_SERVER_IP || '';
 
+// Servicio de historial del servidor Java (Ice, endpoint TCP del CallAdapter)
+const ICE_HISTORY_PROXY = process.env.ICE_HISTORY_PROXY
+  || `History:tcp -h ${TCP_HOST === '0.0.0.0' ? '127.0.0.1' : TCP_HOST} -p 10011`;
+const HISTORY_PAGE_SIZE = 50;
+
 // Rutas de datos del servidor Java
 const __filename = fileURLToPath(import.meta.url);
 const __dirname = path.dirname(__filename);
-const HISTORY_FILE = path.resolve(__dirname, '../../../server/data/history.jsonl');
 const VOICE_DIR = path.resolve(__dirname, '../../../server/data/voice');
 
 // Estado global
 const userSockets = {};   // { username: net.Socket }
 const userMessages = {};  // { username: [mensajes pendientes] }
+const pendingReplies = {}; // { username: Map<requestId, { lines, resolve, reject, timer }> }
+let nextRequestId = 1;
 
 let globalSocket = null;
 let connected = false;
@@ -58,51 +68,68 @@ connectTCP();
 // ─────────────────────────────────────────────────────────────
 
 /**
- * Envía un comando usando el socket de un usuario específico
+ * Envía un comando con id de petición ("#<id> /comando") usando el socket de un
+ * usuario y espera la respuesta con ese mismo id. Varios comandos pueden estar
+ * en curso a la vez por socket y los avisos que lleguen mientras tanto no se
+ * confunden con la respuesta.
  */
 function sendCommandFromUser(username, command, timeoutMs = 1500) {
   return new Promise((resolve, reject) => {
     const client = userSockets[username];
-    if (!client) {
+    const pending = pendingReplies[username];
+    if (!client || !pending) {
       return reject(new Error(`Usuario ${username} no conectado`));
     }
 
-    let buffer = "";
-
-    const onData = (chunk) => {
-      buffer += chunk.toString("utf8");
-      if (buffer.includes("\n")) {
-        cleanup();
-        resolve(buffer.trim());
-      }
-    };
-
-    const onError = (err) => {
-      cleanup();
-      reject(err);
-    };
-
-    const cleanup = () => {
-      client.off("data", onData);
-      client.off("error", onError);
-      clearTimeout(timer);
-    };
-
+    const id = nextRequestId;
+    nextRequestId = nextRequestId % 2147483647 + 1;
     const timer = setTimeout(() => {
-      cleanup();
-      if (buffer.trim()) {
-        resolve(buffer.trim());
-      } else {
-        reject(new Error("Timeout esperando respuesta del servidor"));
-      }
+      pending.delete(id);
+      reject(new Error("Timeout esperando respuesta del servidor"));
     }, timeoutMs);
 
-    client.on("data", onData);
-    client.on("error", onError);
-    client.write(command.trim() + "\n");
+    pending.set(id, { lines: [], resolve, reject, timer });
+    client.write(`#${id} ${command.trim()}\n`);
   });
 }
 
+/**
+ * Procesa una línea recibida del servidor: las respuestas con id ("#<id>-..."
+ * seguidas de una última "#<id> ...") resuelven el comando que las pidió; el
+ * resto son avisos y quedan en la cola de updates del usuario.
+ */
+function handleServerLine(username, line) {
+  const tagged = /^#(\d+)([ -])(.*)$/.exec(line);
+  const pending = pendingReplies[username];
+  const reply = tagged && pending ? pending.get(Number(tagged[1])) : null;
+
+  if (reply) {
+    reply.lines.push(tagged[3]);
+    if (tagged[2] === ' ') {
+      pending.delete(Number(tagged[1]));
+      clearTimeout(reply.timer);
+      reply.resolve(reply.lines.join("\n").trim());
+    }
+    return;
+  }
+  if (line.trim()) {
+    userMessages[username].push(line);
+  }
+}
+
+/**
+ * Rechaza los comandos en curso de un usuario (su socket se cerró)
+ */
+function rejectPendingReplies(username, err) {
+  const pending = pendingReplies[username];
+  if (!pending) return;
+  for (const reply of pending.values()) {
+    clearTimeout(reply.timer);
+    reply.reject(err);
+  }
+  delete pendingReplies[username];
+}
+
 // ─────────────────────────────────────────────────────────────
 // Servicios de Usuario
 // ─────────────────────────────────────────────────────────────
@@ -125,22 +152,32 @@ async function registerUser(username) {
   return new Promise((resolve, reject) => {
     const client = new net.Socket();
     let responseData = "";
+    let partial = "";
 
     console.log(`[REGISTER] Conectando a TCP ${TCP_HOST}:${TCP_PORT} para ${username}...`);
 
     client.connect(TCP_PORT, TCP_HOST, () => {
       console.log(`[REGISTER] ✓ Conectado, enviando nombre: ${username}`);
       client.write(username + "\n");
+      // Ids de petición en las respuestas (ver sendCommandFromUser)
+      client.write("/tags\n");
     });
 
     client.on("data", (data) => {
-      const text = data.toString("utf8").trim();
-      console.log(`[TCP -> ${username}] ${text}`);
-
-      if (userMessages[username]) {
-        userMessages[username].push(text);
-      } else {
-        responseData += text;
+      partial += data.toString("utf8");
+      let newline;
+      while ((newline = partial.indexOf("\n")) >= 0) {
+        const line = partial.slice(0, newline).replace(/\r$/, "");
+        partial = partial.slice(newline + 1);
+        console.log(`[TCP -> ${username}] ${line}`);
+
+        if (line.startsWith("TAGS:")) {
+          // Confirmación de /tags, no es parte del registro ni un aviso
+        } else if (userMessages[username]) {
+          handleServerLine(username, line);
+        } else {
+          responseData += line;
+        }
       }
     });
 
@@ -153,12 +190,14 @@ async function registerUser(username) {
     client.on("close", () => {
       console.log(`🔌 Socket cerrado para ${username}`);
       delete userSockets[username];
+      rejectPendingReplies(username, new Error("Conexión con el servidor cerrada"));
     });
 
     // Espera breve para confirmar registro
     setTimeout(() => {
       userSockets[username] = client;
       userMessages[username] = [];
+      pendingReplies[username] = new Map();
       console.log(`[REGISTER] ✓ Usuario ${username} registrado. Usuarios activos: ${Object.keys(userSockets).join(', ')}`);
       resolve({ reply: responseData.trim() || "Usuario registrado" });
     }, 300);
@@ -258,10 +297,27 @@ async function sendGroupMessage(groupName, sender, message) {
 // Servicios de Historial
 // ─────────────────────────────────────────────────────────────
 
+let historyPrx = null;
+
+/**
+ * Obtiene (y reutiliza) el proxy Ice al servicio de historial
+ */
+async function getHistoryPrx() {
+  if (!historyPrx) {
+    const communicator = Ice.initialize();
+    historyPrx = await Chat.HistoryPrx.checkedCast(communicator.stringToProxy(ICE_HISTORY_PROXY));
+    if (!historyPrx) {
+      communicator.destroy();
+      throw new Error('Servicio de historial no disponible');
+    }
+  }
+  return historyPrx;
+}
+
 /**
- * Obtiene el historial de mensajes
+ * Obtiene una página del historial de mensajes (las más recientes antes de `before`)
  */
-async function getHistory(scope, user, peer, group, queryString) {
+async function getHistory(scope, user, peer, group, queryString, before = '', limit = HISTORY_PAGE_SIZE) {
   // Si hay servidor principal configurado, obtener historial de ahí
   if (MAIN_SERVER_IP) {
     const remoteUrl = `http://${MAIN_SERVER_IP}:${HTTP_PORT}/history?${queryString}`;
@@ -285,35 +341,42 @@ async function getHistory(scope, user, peer, group, queryString) {
     });
   }
 
-  // Leer historial local
-  if (!fs.existsSync(HISTORY_FILE)) {
-    return { data: { items: [] }, statusCode: 200 };
-  }
-
-  const lines = fs.readFileSync(HISTORY_FILE, 'utf8').split(/\r?\n/).filter(Boolean);
-  const items = lines.map(l => {
-    try { return JSON.parse(l); } catch { return null; }
-  }).filter(Boolean);
+  // Consultar el índice del servidor: solo se leen las entradas de la página
+  const cursor = before || '';
+  const pageSize = Number(limit) || HISTORY_PAGE_SIZE;
+  const prx = await getHistoryPrx();
+  let page;
 
-  let filtered = items.filter(x => x.scope === 'private' || x.scope === 'group');
-
-  if (scope === 'private') {
-    if (!user || !peer) {
-      throw new Error('user y peer requeridos para scope=private');
+  try {
+    if (scope === 'private') {
+      if (!user || !peer) {
+        throw new Error('user y peer requeridos para scope=private');
+      }
+      page = await prx.privateHistory(user, peer, cursor, pageSize);
+    } else if (scope === 'group') {
+      if (!group) {
+        throw new Error('group requerido para scope=group');
+      }
+      page = await prx.groupHistory(group, cursor, pageSize);
+    } else {
+      page = await prx.allHistory(cursor, pageSize);
+    }
+  } catch (err) {
+    // Cursor mal formado: error del pedido; HistoryError: el servidor no pudo leer el historial
+    if (err instanceof Chat.InvalidCursor) {
+      return { data: { error: err.reason }, statusCode: 400 };
     }
-    filtered = filtered.filter(x =>
-      x.scope === 'private' &&
-      ((x.sender === user && x.recipient === peer) || (x.sender === peer && x.recipient === user))
-    );
-  } else if (scope === 'group') {
-    if (!group) {
-      throw new Error('group requerido para scope=group');
+    if (err instanceof Chat.HistoryError) {
+      return { data: { error: err.reason }, statusCode: 500 };
     }
-    filtered = filtered.filter(x => x.scope === 'group' && x.group === group);
+    throw err;
   }
 
-  filtered.sort((a, b) => (a.timestamp || '').localeCompare(b.timestamp || ''));
-  return { data: { items: filtered }, statusCode: 200 };
+  const items = page.items.map(l => {
+    try { return JSON.parse(l); } catch { return null; }
+  }).filter(Boolean);
+
+  return { data: { items, nextCursor: page.nextCursor, hasMore: page.hasMore }, statusCode: 200 };
 }
 
 // ─────────────────────────────────────────────────────────────
@@ -369,7 +432,7 @@ function getConfig() {
     HTTP_PORT,
     MAIN_SERVER_IP,
     VOICE_DIR,
-    HISTORY_FILE
+    ICE_HISTORY_PROXY
   };
 }
 
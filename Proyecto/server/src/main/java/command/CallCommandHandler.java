@@ -10,28 +10,21 @@ import model.ChatServer;
  */
 public class CallCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/call"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/call ");
+    public String command() {
+        return "/call";
     }
 
     /**
      * Ejecuta el comando de llamada privada a otro usuario.
      * 
-     * @param command El comando completo (ej: "/call usuario123")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que inicia la llamada
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 2);
-        String targetUser = parts[1].trim();
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        String targetUser = args.rest();
         
         if (targetUser.isEmpty()) {
             clientHandler.sendMessage("Error: Debes especificar un nombre de usuario valido");
@@ -43,11 +36,14 @@ public class CallCommandHandler implements CommandHandler {
             return;
         }
         
-        String callId = ChatServer.startIndividualCall(userName, targetUser);
-        if (callId == null) {
-            clientHandler.sendMessage("No se pudo iniciar la llamada (usuario no disponible o sin UDP).");
-        } else {
-            clientHandler.sendMessage("Llamada iniciada: " + callId);
-        }
+        // En el hilo de la conversación privada, en orden con sus mensajes
+        ClientHandler.Reply reply = clientHandler.deferReply();
+        boolean queued = ChatServer.inPrivateChat(userName, targetUser, () -> {
+            String callId = ChatServer.startIndividualCall(userName, targetUser);
+            reply.send(callId == null
+                    ? "No se pudo iniciar la llamada (usuario no disponible o sin UDP)."
+                    : "Llamada iniciada: " + callId);
+        });
+        if (!queued) reply.send(ChatServer.BUSY);
     }
 }
\ No newline at end of file
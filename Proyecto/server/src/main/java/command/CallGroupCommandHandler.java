@@ -10,39 +10,35 @@ import model.ChatServer;
  */
 public class CallGroupCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/callgroup"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/callgroup ");
+    public String command() {
+        return "/callgroup";
     }
 
     /**
      * Ejecuta el comando de llamada grupal.
      * 
-     * @param command El comando completo (ej: "/callgroup miGrupo")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que inicia la llamada grupal
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 2);
-        String groupName = parts[1].trim();
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        String groupName = args.rest();
         
         if (groupName.isEmpty()) {
             clientHandler.sendMessage("Error: Debes especificar un nombre de grupo válido");
             return;
         }
         
-        String callId = ChatServer.startGroupCall(userName, groupName);
-        if (callId == null) {
-            clientHandler.sendMessage("No se pudo iniciar la llamada grupal (pocos miembros en línea/udp).");
-        } else {
-            clientHandler.sendMessage("Llamada grupal iniciada: " + callId);
-        }
+        // En el hilo del grupo: el aviso de la llamada queda en orden con los mensajes del grupo
+        ClientHandler.Reply reply = clientHandler.deferReply();
+        boolean queued = ChatServer.inGroup(groupName, () -> {
+            String callId = ChatServer.startGroupCall(userName, groupName);
+            reply.send(callId == null
+                    ? "No se pudo iniciar la llamada grupal (pocos miembros en línea/udp)."
+                    : "Llamada grupal iniciada: " + callId);
+        });
+        if (!queued) reply.send(ChatServer.BUSY);
     }
 }
\ No newline at end of file
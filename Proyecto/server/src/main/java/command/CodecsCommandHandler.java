@@ -0,0 +1,32 @@
+package command;
+
+import interfaces.CommandHandler;
+import model.ClientHandler;
+import model.AudioCodec;
+
+/**
+ * Manejador del comando /codecs con el que el cliente anuncia los códecs de
+ * audio que sabe decodificar. El servidor responde "CODECS: <lista>" con los
+ * que ambos soportan, en orden de preferencia; el cliente usa el primero para
+ * sus notas de voz. Un cliente que nunca envía /codecs solo recibe PCM16.
+ */
+public class CodecsCommandHandler implements CommandHandler {
+
+    @Override
+    public String command() {
+        return "/codecs";
+    }
+
+    /**
+     * Registra los códecs del cliente y responde con los comunes.
+     *
+     * @param args          Argumentos del comando
+     * @param userName      El nombre del usuario que ejecuta el comando
+     * @param clientHandler El manejador del cliente
+     */
+    @Override
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        clientHandler.setCodecs(AudioCodec.parseList(args.hasNext() ? args.rest() : null));
+        clientHandler.sendMessage("CODECS: " + AudioCodec.toList(clientHandler.getCodecs()));
+    }
+}
@@ -0,0 +1,73 @@
+package command;
+
+/**
+ * Argumentos de un comando, leídos en orden sobre la línea original.
+ * Reemplaza a {@code String.split}: no crea arreglos ni compila expresiones
+ * regulares, solo avanza un cursor; cada token leído es un substring de la
+ * línea y los números se interpretan sin crear ninguno.
+ * Los espacios repetidos entre argumentos se ignoran.
+ */
+public final class CommandArgs {
+    private final String line;
+    private int pos;
+
+    /**
+     * @param line Línea completa del comando
+     * @param start Posición desde la que empiezan los argumentos (tras el token del comando)
+     */
+    public CommandArgs(String line, int start) {
+        this.line = line;
+        this.pos = start;
+    }
+
+    /**
+     * @return true si queda al menos un argumento por leer
+     */
+    public boolean hasNext() {
+        skipSpaces();
+        return pos < line.length();
+    }
+
+    /**
+     * Lee el siguiente argumento (hasta el próximo espacio).
+     *
+     * @return El argumento, o cadena vacía si no quedan
+     */
+    public String next() {
+        skipSpaces();
+        int start = pos;
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(pos))) pos++;
+        return line.substring(start, pos);
+    }
+
+    /**
+     * Lee el siguiente argumento como entero decimal.
+     *
+     * @return El número leído
+     * @throws NumberFormatException si falta el argumento o no es un número
+     */
+    public int nextInt() {
+        skipSpaces();
+        int start = pos;
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(pos))) pos++;
+        return Integer.parseInt(line, start, pos, 10);
+    }
+
+    /**
+     * Lee todo lo que queda de la línea (p. ej. el texto de un mensaje).
+     *
+     * @return El resto sin espacios al inicio ni al final, o cadena vacía
+     */
+    public String rest() {
+        skipSpaces();
+        int end = line.length();
+        while (end > pos && Character.isWhitespace(line.charAt(end - 1))) end--;
+        String rest = line.substring(pos, end);
+        pos = line.length();
+        return rest;
+    }
+
+    private void skipSpaces() {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+    }
+}
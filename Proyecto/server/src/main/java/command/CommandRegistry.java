@@ -2,45 +2,132 @@ package command;
 
 import interfaces.CommandHandler;
 import model.ClientHandler;
+import service.Metrics;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Registro centralizado de comandos que permite agregar y ejecutar comandos
- * siguiendo el patrÃ³n Command y el principio Open/Closed.
+ * siguiendo el patrón Command y el principio Open/Closed.
+ * La tabla es inmutable y se indexa por el token del comando, así todas las
+ * conexiones comparten una sola instancia ({@link #shared()}) y despachar una
+ * línea es una búsqueda en el mapa en lugar de recorrer los manejadores.
+ * Cada comando tiene su histograma de latencia (chat_command_seconds), desde
+ * que se despacha hasta que se envía su respuesta: si el comando la difiere a
+ * la partición de su conversación, se registra al enviarla e incluye la espera
+ * en esa cola.
  */
-public class CommandRegistry {
-    private final List<CommandHandler> handlers = new ArrayList<>();
+public final class CommandRegistry {
+    private static final CommandRegistry SHARED = new CommandRegistry(List.of(
+            new CallCommandHandler(),
+            new CallGroupCommandHandler(),
+            new CodecsCommandHandler(),
+            new CreateGroupCommandHandler(),
+            new EndCallCommandHandler(),
+            new JoinGroupCommandHandler(),
+            new ListGroupsCommandHandler(),
+            new ListUsersCommandHandler(),
+            new MessageCommandHandler(),
+            new MessageGroupCommandHandler(),
+            new QuitCommandHandler(),
+            new TagsCommandHandler(),
+            new UdpPortCommandHandler()));
+
+    private final Map<String, CommandHandler> handlers;
+    private final Map<String, Metrics.Histogram> latencies;
+    private final Metrics.Counter unknown = Metrics.counter("chat_commands_unknown_total", null,
+            "Líneas que no corresponden a ningún comando");
+    // Comando en ejecución en cada hilo, para que una respuesta diferida registre su latencia
+    private static final ThreadLocal<Latency> RUNNING = new ThreadLocal<>();
+
+    // Latencia de un comando; se registra una sola vez, al terminar o al enviar la respuesta diferida
+    private static final class Latency implements Runnable {
+        private final Metrics.Histogram histogram;
+        private final long start;
+        private boolean deferred;
+
+        Latency(Metrics.Histogram histogram, long start) {
+            this.histogram = histogram;
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            histogram.recordSince(start);
+        }
+    }
 
     /**
-     * Registra un nuevo manejador de comando.
-     * 
-     * @param handler El manejador de comando a registrar
-     * @throws IllegalArgumentException si el handler es null
+     * Crea una tabla con los manejadores dados.
+     *
+     * @param handlers Manejadores de comando
+     * @throws IllegalArgumentException si un handler es null o dos usan el mismo token
      */
-    public void registerHandler(CommandHandler handler) {
-        if (handler == null) {
-            throw new IllegalArgumentException("El handler no puede ser null");
+    public CommandRegistry(List<? extends CommandHandler> handlers) {
+        Map<String, CommandHandler> table = new HashMap<>();
+        Map<String, Metrics.Histogram> histograms = new HashMap<>();
+        for (CommandHandler handler : handlers) {
+            if (handler == null) {
+                throw new IllegalArgumentException("El handler no puede ser null");
+            }
+            if (table.putIfAbsent(handler.command(), handler) != null) {
+                throw new IllegalArgumentException("Comando duplicado: " + handler.command());
+            }
+            histograms.put(handler.command(), Metrics.histogram("chat_command_seconds",
+                    "command=\"" + handler.command() + "\"", "Tiempo de cada comando hasta su respuesta"));
         }
-        handlers.add(handler);
+        this.handlers = Map.copyOf(table);
+        this.latencies = Map.copyOf(histograms);
+    }
+
+    /**
+     * Tabla con todos los comandos del servidor, compartida por todas las conexiones.
+     */
+    public static CommandRegistry shared() {
+        return SHARED;
     }
 
     /**
      * Ejecuta el comando apropiado basado en el input del usuario.
-     * 
+     *
      * @param command El comando completo ingresado por el usuario
      * @param userName El nombre del usuario que ejecuta el comando
      * @param clientHandler El manejador del cliente
-     * @return true si el comando fue procesado, false si no se encontrÃ³ un manejador
+     * @return true si el comando fue procesado, false si no se encontró un manejador
      */
     public boolean executeCommand(String command, String userName, ClientHandler clientHandler) {
-        for (CommandHandler handler : handlers) {
-            if (handler.canHandle(command)) {
-                handler.execute(command, userName, clientHandler);
-                return true;
-            }
+        int end = command.indexOf(' ');
+        if (end < 0) end = command.length();
+        String token = command.substring(0, end);
+        CommandHandler handler = handlers.get(token);
+        if (handler == null) {
+            unknown.increment();
+            return false;
         }
-        return false;
+        Latency latency = new Latency(latencies.get(token), System.nanoTime());
+        Latency outer = RUNNING.get();
+        RUNNING.set(latency);
+        try {
+            handler.execute(new CommandArgs(command, end), userName, clientHandler);
+        } finally {
+            RUNNING.set(outer);
+            if (!latency.deferred) latency.run();
+        }
+        return true;
+    }
+
+    /**
+     * Difiere el registro de latencia del comando en curso en este hilo hasta
+     * que se envíe su respuesta desde otro hilo (ver ClientHandler.deferReply).
+     *
+     * @return Registra la latencia al ejecutarse (una vez), o null si este hilo no está ejecutando un comando
+     */
+    public static Runnable deferLatency() {
+        Latency latency = RUNNING.get();
+        if (latency == null || latency.deferred) return null;
+        latency.deferred = true;
+        return latency;
     }
-}
\ No newline at end of file
+}
@@ -10,28 +10,21 @@ import model.ChatServer;
  */
 public class CreateGroupCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/creategroup"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/creategroup");
+    public String command() {
+        return "/creategroup";
     }
 
     /**
      * Ejecuta el comando para crear un nuevo grupo.
      * 
-     * @param command El comando completo (ej: "/creategroup miNuevoGrupo")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que crea el grupo
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 2);
-        String groupName = parts[1].trim();
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        String groupName = args.rest();
         
         if (groupName.isEmpty()) {
             clientHandler.sendMessage("Error: El nombre del grupo no puede estar vacío");
@@ -48,8 +41,13 @@ public class CreateGroupCommandHandler implements CommandHandler {
             return;
         }
         
-        ChatServer.createGroup(groupName, userName);
-        clientHandler.sendMessage("Grupo creado: " + groupName);
+        // En el hilo del grupo, para que la respuesta salga con el grupo ya creado
+        ClientHandler.Reply reply = clientHandler.deferReply();
+        boolean queued = ChatServer.inGroup(groupName, () -> {
+            ChatServer.createGroup(groupName, userName);
+            reply.send("Grupo creado: " + groupName);
+        });
+        if (!queued) reply.send(ChatServer.BUSY);
     }
 
     /**
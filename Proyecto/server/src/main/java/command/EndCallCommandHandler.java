@@ -10,32 +10,24 @@ import model.ChatServer;
  */
 public class EndCallCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/endcall"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/endcall");
+    public String command() {
+        return "/endcall";
     }
 
     /**
      * Ejecuta el comando para terminar una llamada.
      * 
-     * @param command El comando completo (ej: "/endcall" o "/endcall callId123")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que termina la llamada
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 2);
-        
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
         String callId = null;
         
-        if (parts.length == 2) {
-            callId = parts[1].trim();
+        if (args.hasNext()) {
+            callId = args.next();
         } else {
             if (ChatServer.getCallManagerImpl() != null) {
                 callId = ChatServer.getCallManagerImpl().getCallOfUser(userName);
@@ -47,7 +39,10 @@ public class EndCallCommandHandler implements CommandHandler {
             return;
         }
         
-        ChatServer.endCall(callId, userName);
+        if (!ChatServer.endCall(callId, userName)) {
+            clientHandler.sendMessage("No estás en la llamada " + callId + ".");
+            return;
+        }
         clientHandler.sendMessage("Llamada terminada: " + callId);
     }
 }
\ No newline at end of file
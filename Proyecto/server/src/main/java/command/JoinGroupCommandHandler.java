@@ -10,45 +10,39 @@ import model.ChatServer;
  */
 public class JoinGroupCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/joingroup"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/joingroup");
+    public String command() {
+        return "/joingroup";
     }
 
     /**
      * Ejecuta el comando para unirse a un grupo existente.
      * 
-     * @param command El comando completo (ej: "/joingroup nombreGrupo")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que se une al grupo
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 2);
-        String groupName = parts[1].trim();
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        String groupName = args.rest();
         
         if (groupName.isEmpty()) {
             clientHandler.sendMessage("Error: Debes especificar un nombre de grupo válido");
             return;
         }
         
-        if (!ChatServer.getGroups().contains(groupName)) {
-            clientHandler.sendMessage("Error: El grupo '" + groupName + "' no existe.");
-            return;
-        }
-        
-        if (ChatServer.getGroupMembers(groupName).contains(userName)) {
-            clientHandler.sendMessage("Ya eres miembro del grupo: " + groupName);
-            return;
-        }
-        
-        ChatServer.joinGroup(groupName, userName);
-        clientHandler.sendMessage("Te has unido al grupo: " + groupName);
+        // Comprobar y unirse en el hilo del grupo: nadie más lo modifica en el medio
+        ClientHandler.Reply reply = clientHandler.deferReply();
+        boolean queued = ChatServer.inGroup(groupName, () -> {
+            if (!ChatServer.getGroups().contains(groupName)) {
+                reply.send("Error: El grupo '" + groupName + "' no existe.");
+            } else if (ChatServer.getGroupMembers(groupName).contains(userName)) {
+                reply.send("Ya eres miembro del grupo: " + groupName);
+            } else {
+                ChatServer.joinGroup(groupName, userName);
+                reply.send("Te has unido al grupo: " + groupName);
+            }
+        });
+        if (!queued) reply.send(ChatServer.BUSY);
     }
 }
\ No newline at end of file
@@ -11,26 +11,20 @@ import java.util.Set;
  */
 public class ListGroupsCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando es exactamente "/listgroups"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.equals("/listgroups");
+    public String command() {
+        return "/listgroups";
     }
 
     /**
      * Ejecuta el comando para listar todos los grupos disponibles.
      * 
-     * @param command El comando completo (debe ser "/listgroups")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que solicita la lista
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {        
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {        
         Set<String> groups = ChatServer.getGroups();
         
         if (groups.isEmpty()) {
@@ -8,26 +8,20 @@ import model.ClientHandler;
 
 public class ListUsersCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando es exactamente "/listusers"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.equals("/listusers");
+    public String command() {
+        return "/listusers";
     }
 
     /**
      * Ejecuta el comando para listar todos los usuarios conectados.
      * 
-     * @param command El comando completo (debe ser "/listusers")
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que solicita la lista
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {        
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {        
         Set<String> users = ChatServer.getUsers();
         
         if (users.isEmpty()) {
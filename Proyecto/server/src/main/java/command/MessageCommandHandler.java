@@ -11,30 +11,23 @@ import service.HistoryService;
  */
 public class MessageCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/msg "
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/msg ");
+    public String command() {
+        return "/msg";
     }
 
     /**
      * Ejecuta el comando de mensaje privado a otro usuario.
      * Formato: /msg <usuario> <mensaje>
      * 
-     * @param command El comando completo
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que envÃ­a el mensaje
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 3);
-        String targetUser = parts[1].trim();
-        String message = parts[2].trim();
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        String targetUser = args.next();
+        String message = args.rest();
         
         if (targetUser.isEmpty() || message.isEmpty()) {
             clientHandler.sendMessage("Error: Usuario y mensaje no pueden estar vacíos");
@@ -46,16 +39,23 @@ public class MessageCommandHandler implements CommandHandler {
             return;
         }
         
-        ClientHandler targetHandler = getUserHandler(targetUser);
-        
-        if (targetHandler == null) {
-            clientHandler.sendMessage("Error: Usuario '" + targetUser + "' no está conectado");
-            return;
-        }
-        
-        targetHandler.sendMessage("MENSAJE_PRIVADO de " + userName + ": " + message);
+        // Entregar y registrar en el hilo de la conversación: los mensajes de ambos
+        // sentidos quedan en el mismo orden para los dos y en el historial
+        ClientHandler.Reply reply = clientHandler.deferReply();
+        boolean queued = ChatServer.inPrivateChat(userName, targetUser, () -> {
+            ClientHandler targetHandler = getUserHandler(targetUser);
+
+            if (targetHandler == null) {
+                reply.send("Error: Usuario '" + targetUser + "' no está conectado");
+                return;
+            }
+
+            targetHandler.sendMessage("MENSAJE_PRIVADO de " + userName + ": " + message);
 
-        HistoryService.logTextPrivate(userName, targetUser, message);
+            HistoryService.logTextPrivate(userName, targetUser, message);
+            reply.send(null);
+        });
+        if (!queued) reply.send(ChatServer.BUSY);
     }
     
     /**
@@ -3,70 +3,81 @@ package command;
 import interfaces.CommandHandler;
 import model.ClientHandler;
 import model.ChatServer;
+import model.OutboundFrame;
 import java.util.Set;
 import service.HistoryService;
+import service.Metrics;
 
 /**
  * Manejador del comando /msggroup que permite enviar mensajes de texto
  * a todos los miembros de un grupo usando TCP (confiable).
  */
 public class MessageGroupCommandHandler implements CommandHandler {
+    private static final Metrics.Histogram FANOUT = Metrics.histogram("chat_group_fanout_seconds", null,
+            "Tiempo de codificar y encolar un mensaje de grupo a todos sus miembros");
+    private static final Metrics.Counter DELIVERIES = Metrics.counter("chat_group_deliveries_total", null,
+            "Mensajes de grupo encolados a un miembro");
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/msggroup "
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/msggroup ");
+    public String command() {
+        return "/msggroup";
     }
 
     /**
      * Ejecuta el comando de mensaje grupal.
      * Formato: /msggroup <grupo> <mensaje>
      * 
-     * @param command El comando completo
+     * @param args Argumentos del comando
      * @param userName El nombre del usuario que envÃ­a el mensaje
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-        String[] parts = command.split(" ", 3);
-        String groupName = parts[1].trim();
-        String message = parts[2].trim();
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        String groupName = args.next();
+        String message = args.rest();
         
         if (groupName.isEmpty() || message.isEmpty()) {
             clientHandler.sendMessage("Error: Grupo y mensaje no pueden estar vacíos");
             return;
         }
         
-        Set<String> members = ChatServer.getGroupMembers(groupName);
-        
-        if (members == null || members.isEmpty()) {
-            clientHandler.sendMessage("Error: El grupo '" + groupName + "' no existe o no tiene miembros");
-            return;
-        }
-        
-        if (!members.contains(userName)) {
-            clientHandler.sendMessage("Error: No eres miembro del grupo '" + groupName + "'");
-            return;
-        }
-        
-        int sentCount = 0;
-        for (String member : members) {
-            if (!member.equals(userName)) {
-                ClientHandler memberHandler = ChatServer.getClientHandler(member);
-                if (memberHandler != null) {
-                    memberHandler.sendMessage("MENSAJE_GRUPO [" + groupName + "] de " + userName + ": " + message);
-                    sentCount++;
+        // Validar, repartir y registrar en el hilo del grupo: todos los miembros reciben
+        // los mensajes del grupo en el mismo orden, que es también el del historial.
+        // El comando no espera: la tarea misma le responde al emisor
+        ClientHandler.Reply reply = clientHandler.deferReply();
+        boolean queued = ChatServer.inGroup(groupName, () -> {
+            Set<String> members = ChatServer.getGroupMembers(groupName);
+
+            if (members == null || members.isEmpty()) {
+                reply.send("Error: El grupo '" + groupName + "' no existe o no tiene miembros");
+                return;
+            }
+
+            if (!members.contains(userName)) {
+                reply.send("Error: No eres miembro del grupo '" + groupName + "'");
+                return;
+            }
+
+            // Se codifica una sola vez y el mismo frame se encola a cada miembro
+            long start = System.nanoTime();
+            OutboundFrame frame = ClientHandler.encodeLine("MENSAJE_GRUPO [" + groupName + "] de " + userName + ": " + message);
+            int sentCount = 0;
+            for (String member : members) {
+                if (!member.equals(userName)) {
+                    ClientHandler memberHandler = ChatServer.getClientHandler(member);
+                    if (memberHandler != null) {
+                        memberHandler.sendFrame(frame);
+                        sentCount++;
+                    }
                 }
             }
-        }
-        
-        clientHandler.sendMessage("Mensaje enviado al grupo '" + groupName + "' (enviado a " + sentCount + " miembros)");
-        
-        HistoryService.logTextGroup(userName, groupName, message);
+            FANOUT.recordSince(start);
+            DELIVERIES.add(sentCount);
+
+            HistoryService.logTextGroup(userName, groupName, message);
+            reply.send("Mensaje enviado al grupo '" + groupName + "' (enviado a " + sentCount + " miembros)");
+        });
+        // Partición saturada: se responde de inmediato en vez de encolar sin límite
+        if (!queued) reply.send(ChatServer.BUSY);
     }
 }
@@ -0,0 +1,31 @@
+package command;
+
+import interfaces.CommandHandler;
+import model.ClientHandler;
+
+/**
+ * Manejador del comando /tags con el que un cliente del protocolo de texto
+ * pide ids de petición: desde entonces las líneas "#&lt;id&gt; /comando ..."
+ * se responden con ese id. Sin /tags una línea que empieza con '#' se procesa
+ * como cualquier otra, así un texto como "#1 ..." nunca se toma por un id.
+ */
+public class TagsCommandHandler implements CommandHandler {
+
+    @Override
+    public String command() {
+        return "/tags";
+    }
+
+    /**
+     * Habilita los ids de petición de la conexión y lo confirma con "TAGS: on".
+     *
+     * @param args          Argumentos del comando
+     * @param userName      El nombre del usuario que ejecuta el comando
+     * @param clientHandler El manejador del cliente
+     */
+    @Override
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
+        clientHandler.enableTaggedLines();
+        clientHandler.sendMessage("TAGS: on");
+    }
+}
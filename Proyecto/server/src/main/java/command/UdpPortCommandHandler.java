@@ -11,31 +11,22 @@ import java.net.InetSocketAddress;
  */
 public class UdpPortCommandHandler implements CommandHandler {
 
-    /**
-     * Verifica si este manejador puede procesar el comando dado.
-     * 
-     * @param command El comando a verificar
-     * @return true si el comando inicia con "/udpport"
-     */
     @Override
-    public boolean canHandle(String command) {
-        return command.startsWith("/udpport");
+    public String command() {
+        return "/udpport";
     }
 
     /**
      * Ejecuta el comando de registro de puerto UDP.
      * 
-     * @param command       El comando completo (ej: "/udpport 12345")
+     * @param args          Argumentos del comando
      * @param userName      El nombre del usuario que ejecuta el comando
      * @param clientHandler El manejador del cliente
      */
     @Override
-    public void execute(String command, String userName, ClientHandler clientHandler) {
-
-        String[] parts = command.split(" ", 2);
-
+    public void execute(CommandArgs args, String userName, ClientHandler clientHandler) {
         try {
-            int port = Integer.parseInt(parts[1].trim());
+            int port = args.nextInt();
             if (port <= 0 || port > 65535) {
                 clientHandler.sendMessage("Error: El puerto debe estar entre 1 y 65535");
                 return;
@@ -1,6 +1,7 @@
 package controller;
 
 import model.*;
+import service.Metrics;
 import com.google.gson.Gson;
 import java.io.FileReader;
 
@@ -48,4 +49,14 @@ public class Controller {
     public boolean isServerRunning() {
         return chatServer.isRunning();
     }
+
+    /**
+     * Resumen de las métricas del servidor (latencias de comandos, fan-out de
+     * grupos, historial, notas de voz y llamadas).
+     *
+     * @return Una métrica por línea
+     */
+    public String getMetricsSummary() {
+        return Metrics.summary();
+    }
 }
@@ -3,9 +3,45 @@ package interfaces;
 import java.util.Set;
 
 /**
- * Interface para manejo de llamadas
+ * Interface para manejo de llamadas. Una única instancia registra las llamadas
+ * iniciadas por TCP y por Ice; sus métodos pueden invocarse concurrentemente.
+ * Terminar una llamada avisa a todos los {@link CallListener}, así cada lado
+ * (servidor TCP con su relay UDP, servant Ice con sus mezcladores) libera lo
+ * suyo y avisa a sus clientes sin importar por dónde se colgó.
  */
 public interface CallManager {
+    /**
+     * Recibe el fin de cada llamada y las salidas de sus participantes, en el
+     * hilo que las produjo.
+     */
+    interface CallListener {
+        /**
+         * @param callId ID de la llamada terminada
+         * @param participants Participantes que tenía
+         * @param endedBy Usuario que la terminó
+         */
+        void callEnded(String callId, Set<String> participants, String endedBy);
+
+        /**
+         * Un participante salió (colgó o se desconectó) y la llamada sigue.
+         *
+         * @param callId ID de la llamada
+         * @param username Usuario que salió
+         * @param remaining Participantes que quedan
+         */
+        void participantLeft(String callId, String username, Set<String> remaining);
+    }
+
+    /**
+     * Registra un listener para el fin de las llamadas.
+     */
+    void addListener(CallListener listener);
+
+    /**
+     * Retira un listener registrado con {@link #addListener}.
+     */
+    void removeListener(CallListener listener);
+
     /**
      * Crea una nueva llamada con el ID y participantes especificados.
      * 
@@ -15,11 +51,33 @@ public interface CallManager {
     void createCall(String callId, Set<String> participants);
 
     /**
-     * Termina una llamada activa y libera a todos los participantes.
+     * Agrega un participante a una llamada activa.
+     *
+     * @param callId ID de la llamada
+     * @param username Usuario que se une
+     * @return false si la llamada no existe
+     */
+    boolean addParticipant(String callId, String username);
+
+    /**
+     * Termina una llamada activa, libera a todos los participantes y avisa a
+     * los listeners. Si dos la terminan a la vez, solo uno avisa.
      * 
      * @param callId ID de la llamada a terminar
+     * @param endedBy Usuario que la termina
+     * @return Participantes que tenía la llamada, o null si no existía
+     */
+    Set<String> endCall(String callId, String endedBy);
+
+    /**
+     * Saca a un participante de la llamada (colgó o se desconectó). Si quedarían
+     * menos de dos, la llamada termina para todos como con {@link #endCall}.
+     *
+     * @param callId ID de la llamada
+     * @param username Usuario que sale
+     * @return false si la llamada no existe o el usuario no participa en ella
      */
-    void endCall(String callId);
+    boolean leaveCall(String callId, String username);
 
     /**
      * Obtiene el ID de la llamada en la que participa un usuario.
@@ -33,7 +91,7 @@ public interface CallManager {
      * Obtiene el conjunto de participantes en una llamada específica.
      * 
      * @param callId ID de la llamada
-     * @return Conjunto de nombres de usuario participantes o conjunto vacío si la llamada no existe
+     * @return Conjunto inmutable de participantes o conjunto vacío si la llamada no existe
      */
     Set<String> getParticipants(String callId);
 }
@@ -0,0 +1,79 @@
+package interfaces;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interfaz para el canal de salida de un cliente conectado.
+ * Permite que ClientHandler funcione igual sobre sockets bloqueantes o sobre
+ * canales NIO sin conocer el mecanismo de E/S subyacente.
+ * Las escrituras se encolan en una cola de salida acotada y nunca bloquean
+ * al hilo que envía; un cliente lento solo afecta a su propia conexión.
+ */
+public interface ClientTransport {
+
+    /**
+     * Métricas de la cola de salida de una conexión.
+     *
+     * @param pendingBytes Bytes encolados pendientes de envío (memoria y disco)
+     * @param peakBytes Máximo de bytes pendientes observado
+     * @param queuedWrites Escrituras aceptadas en la cola
+     * @param droppedWrites Escrituras descartadas por cola llena
+     * @param spilledBytes Bytes que pasaron por el archivo de desborde
+     */
+    record QueueStats(long pendingBytes, long peakBytes, long queuedWrites,
+                      long droppedWrites, long spilledBytes) {}
+
+    /**
+     * Encola un frame ya codificado sin copiarlo; se envía cuando el socket esté listo.
+     * El mismo búfer puede entregarse a muchas conexiones: el transporte trabaja
+     * sobre un duplicate() y nunca modifica su contenido, por lo que quien lo
+     * creó tampoco debe modificarlo después.
+     *
+     * @param frame Bytes a enviar, entre position y limit
+     * @return false si la cola estaba llena y el frame se descartó (política "drop")
+     * @throws IOException si el canal ya está cerrado o el cliente fue desconectado por lento
+     */
+    boolean write(ByteBuffer frame) throws IOException;
+
+    /**
+     * Copia y encola bytes hacia el cliente (para búferes que el llamador reutiliza).
+     *
+     * @param data Arreglo con los datos a enviar
+     * @param offset Posición inicial dentro del arreglo
+     * @param length Cantidad de bytes a enviar
+     * @return false si la cola estaba llena y los bytes se descartaron (política "drop")
+     * @throws IOException si el canal ya está cerrado o el cliente fue desconectado por lento
+     */
+    default boolean write(byte[] data, int offset, int length) throws IOException {
+        return write(ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + length)));
+    }
+
+    /**
+     * Obtiene el socket asociado (para consultar dirección remota, etc.).
+     *
+     * @return Socket del cliente
+     */
+    Socket socket();
+
+    /**
+     * Obtiene las métricas de la cola de salida.
+     *
+     * @return Instantánea de la profundidad y contadores de la cola
+     */
+    QueueStats queueStats();
+
+    /**
+     * Cierra el canal y libera sus recursos. El transporte bloqueante espera
+     * brevemente a que salga lo que quedaba en la cola.
+     */
+    void close();
+
+    /**
+     * Cierra el canal de inmediato descartando la salida pendiente.
+     * Puede invocarse desde cualquier hilo.
+     */
+    void abort();
+}
@@ -1,26 +1,28 @@
 package interfaces;
 
+import command.CommandArgs;
 import model.ClientHandler;
 
 /**
  * Interfaz para el manejo de comandos en el sistema de chat.
  * Define el contrato para procesar diferentes tipos de comandos de usuario.
+ * Una sola instancia atiende a todas las conexiones, por lo que las
+ * implementaciones no deben guardar estado propio de un cliente.
  */
 public interface CommandHandler {
     /**
-     * Determina si este manejador puede procesar el comando especificado.
-     * 
-     * @param command Comando a evaluar
-     * @return true si este manejador puede procesar el comando, false en caso contrario
+     * Token con el que empieza la línea de este comando.
+     *
+     * @return El token, p. ej. "/msg"
      */
-    boolean canHandle(String command);
-    
+    String command();
+
     /**
      * Ejecuta el comando especificado para el usuario dado.
-     * 
-     * @param command Comando completo a ejecutar
+     *
+     * @param args Argumentos que siguen al token del comando
      * @param userName Nombre del usuario que ejecuta el comando
      * @param clientHandler Manejador del cliente que envió el comando
      */
-    void execute(String command, String userName, ClientHandler clientHandler);
-}
\ No newline at end of file
+    void execute(CommandArgs args, String userName, ClientHandler clientHandler);
+}
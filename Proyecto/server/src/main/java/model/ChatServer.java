@@ -1,22 +1,27 @@
 package model;
 
+import interfaces.CallManager;
+import interfaces.ClientTransport;
 import interfaces.ServerService;
 import interfaces.UserManager;
 import interfaces.GroupManager;
 import service.UserManagerImpl;
 import service.CallManagerImpl;
+import service.ConversationShards;
 import service.GroupManagerImpl;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.DatagramSocket;
+import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import service.HistoryService;
+import model.AudioCodec;
+import service.Metrics;
 
 /**
  * Servidor principal del sistema de chat que coordina todas las operaciones
@@ -25,29 +30,55 @@ import service.HistoryService;
 public class ChatServer implements ServerService {
     private static ChatServer instance;
     private static final int THREAD_POOL_SIZE = 10;
+    // Nombre del par que representa al relay UDP en LLAMADA_INICIADA
+    private static final String RELAY_PEER = "relay";
+    /**
+     * Respuesta a un comando cuya conversación tiene la cola llena (ver ConversationShards).
+     */
+    public static final String BUSY = "Error: servidor ocupado, intenta de nuevo";
+    // Sin monitor global: usuarios y llamadas viven en mapas concurrentes y cada escritura
+    // bloquea solo la entrada afectada (ver UserManagerImpl, CallManagerImpl); los grupos y
+    // los chats privados se atienden cada uno en su partición de ConversationShards
     
     private final Config config;
+    private final ConversationShards conversations;
     private final UserManager userManager;
     private final GroupManager groupManager;
     public final CallManagerImpl CallManagerImpl;
 
     private ServerSocket serverSocket;
-    private DatagramSocket udpSocket;
+    private NioServer nioServer;
+    private UdpRelay udpRelay;
+    private MetricsHttpServer metricsServer;
     private ExecutorService threadPool;
-    private final Map<SocketAddress, String> udpClients;
+    private ExecutorService writerPool;
     private boolean running = false;
 
     public ChatServer(Config config) {
         this.config = config;
         this.userManager = new UserManagerImpl();
-        this.groupManager = new GroupManagerImpl();
+        this.conversations = new ConversationShards(config.conversationShards());
+        this.groupManager = new GroupManagerImpl(conversations);
         this.CallManagerImpl = new CallManagerImpl();
-        this.udpClients = new ConcurrentHashMap<>();
+        this.CallManagerImpl.addListener(new CallManager.CallListener() {
+            @Override
+            public void callEnded(String callId, Set<String> participants, String endedBy) {
+                ChatServer.this.callEnded(callId, participants, endedBy);
+            }
+
+            @Override
+            public void participantLeft(String callId, String username, Set<String> remaining) {
+                if (udpRelay != null) udpRelay.leaveMix(callId, username);
+            }
+        });
+        // Una sola vez por servidor: los gauges leen el estado actual, así sirven tras reiniciarlo desde el menú
+        registerGauges();
     }
 
     /**
      * Inicia el servidor de chat y comienza a aceptar conexiones de clientes.
-     * Usa ExecutorService con ThreadPool fijo para manejar clientes de manera eficiente.
+     * Según config.serverMode() usa reactores NIO (por defecto), un hilo virtual
+     * por ClientHandler ("virtual") o el ThreadPool fijo ("pool").
      *
      * @return Mensaje de estado del resultado de la operacion
      */
@@ -60,13 +91,40 @@ public class ChatServer implements ServerService {
         instance = this;
         
         try {
-            serverSocket = new ServerSocket(config.port());
-            udpSocket = new DatagramSocket(config.port() + 1);
-            threadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+            HistoryService.configure(config.historyDurability(), config.historyFlushMs(),
+                    config.historySegmentBytes(), config.historySegmentMs(), config.historyCompactAfterMs(),
+                    config.voiceNoteFormat(), config.historyOnFull());
+            udpRelay = new UdpRelay(config.port() + 1, CallManagerImpl);
+            udpRelay.start();
             running = true;
 
-            Thread serverThread = getTcpThread();
-            serverThread.start();
+            if ("pool".equals(config.serverMode()) || "virtual".equals(config.serverMode())) {
+                serverSocket = new ServerSocket(config.port());
+                threadPool = "virtual".equals(config.serverMode())
+                        ? newVirtualThreadExecutor()
+                        : Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+                // Tareas escritoras de las colas de salida; un cliente lento solo ocupa la suya
+                writerPool = "virtual".equals(config.serverMode())
+                        ? newVirtualThreadExecutor()
+                        : Executors.newCachedThreadPool();
+                Thread serverThread = getTcpThread();
+                serverThread.start();
+            } else {
+                nioServer = new NioServer(config.port(), config.ioThreads(), config.outboundQueueBytes(),
+                        OutboundQueue.Policy.from(config.outboundPolicy()));
+                nioServer.start();
+            }
+
+            if (config.metricsPort() > 0) {
+                try {
+                    metricsServer = new MetricsHttpServer(config.metricsPort());
+                    metricsServer.start();
+                } catch (IOException e) {
+                    // Sin endpoint el chat funciona igual; las métricas siguen en el menú
+                    System.err.println("No se pudo abrir el puerto de métricas " + config.metricsPort()
+                            + ": " + e.getMessage());
+                }
+            }
 
             // Arrancar ICE para notas de voz / llamadas
             rpc.IceBootstrap.start(this);
@@ -74,10 +132,38 @@ public class ChatServer implements ServerService {
             return "Servidor iniciado exitosamente - TCP:" + config.port() + " UDP:" + (config.port() + 1);
         } catch (IOException e) {
             running = false;
+            if (udpRelay != null) udpRelay.close();
             return "Error iniciando servidor: " + e.getMessage();
         }
     }
 
+    // Valores leídos en cada exportación de métricas. Otro ChatServer en el mismo proceso
+    // reemplaza estos gauges (mismo nombre), no los duplica
+    private void registerGauges() {
+        Metrics.gauge("chat_users_connected", null, "Usuarios registrados en el servidor",
+                () -> userManager.getUsers().size());
+        Metrics.gauge("chat_conversation_pending", null, "Tareas en cola en las particiones de conversaciones",
+                conversations::pending);
+        Metrics.gauge("chat_udp_relayed_packets", null, "Datagramas de llamada reenviados por el relay UDP",
+                () -> udpRelay == null ? 0 : udpRelay.getRelayedPackets());
+        Metrics.gauge("chat_udp_relayed_bytes", null, "Bytes de llamada reenviados por el relay UDP",
+                () -> udpRelay == null ? 0 : udpRelay.getRelayedBytes());
+    }
+
+    /**
+     * Crea un executor con un hilo virtual por tarea. Se resuelve por reflexión
+     * para seguir compilando con JDK 17; en JVMs sin hilos virtuales se usa un
+     * hilo de plataforma por conexión.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Hilos virtuales no disponibles (requiere Java 21+), usando un hilo por conexión");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
     private Thread getTcpThread() {
         Thread serverThread = new Thread(() -> {
             System.out.println("Servidor TCP escuchando en puerto " + config.port() + "...");
@@ -85,7 +171,8 @@ public class ChatServer implements ServerService {
             while (running) {
                 try {
                     Socket socket = serverSocket.accept();
-                    ClientHandler handler = new ClientHandler(socket);
+                    ClientHandler handler = new ClientHandler(new SocketTransport(socket, writerPool,
+                            config.outboundQueueBytes(), OutboundQueue.Policy.from(config.outboundPolicy())));
                     threadPool.submit(handler);
                 } catch (IOException e) {
                     if (running) {
@@ -115,14 +202,27 @@ public class ChatServer implements ServerService {
             if (threadPool != null) {
                 threadPool.shutdown();
             }
+            if (writerPool != null) {
+                writerPool.shutdown();
+            }
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
-            if (udpSocket != null && !udpSocket.isClosed()) {
-                udpSocket.close();
+            if (nioServer != null) {
+                nioServer.stop();
+                nioServer = null;
+            }
+            if (udpRelay != null) {
+                udpRelay.close();
+                udpRelay = null;
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+                metricsServer = null;
             }
 
             rpc.IceBootstrap.stop();
+            HistoryService.shutdown();
 
             return "Servidor cerrado exitosamente";
         } catch (IOException e) {
@@ -146,7 +246,7 @@ public class ChatServer implements ServerService {
      * @param name Nombre del usuario
      * @param handler Manejador del cliente
      */
-    public static synchronized void registerUser(String name, ClientHandler handler) {
+    public static void registerUser(String name, ClientHandler handler) {
         instance.userManager.registerUser(name, handler);
     }
 
@@ -155,8 +255,12 @@ public class ChatServer implements ServerService {
      * 
      * @param name Nombre del usuario a remover
      */
-    public static synchronized void removeUser(String name) {
+    public static void removeUser(String name) {
+        // Sale de su llamada: la mezcla deja de esperarlo y, si quedaba uno solo, la llamada termina
+        String callId = instance.CallManagerImpl.getCallOfUser(name);
+        if (callId != null) instance.CallManagerImpl.leaveCall(callId, name);
         instance.userManager.removeUser(name);
+        if (instance.udpRelay != null) instance.udpRelay.unregister(name);
     }
 
     /**
@@ -165,7 +269,7 @@ public class ChatServer implements ServerService {
      * @param name Nombre del usuario
      * @param ipPort Direccion IP y puerto UDP en formato "ip:puerto"
      */
-    public static synchronized void registerUdpInfo(String name, String ipPort) {
+    public static void registerUdpInfo(String name, String ipPort) {
         instance.userManager.registerUdpInfo(name, ipPort);
     }
 
@@ -176,19 +280,69 @@ public class ChatServer implements ServerService {
      * @param address Dirección UDP del cliente (ip:puerto)
      * @param username Nombre de usuario
      */
-    public static synchronized void registerUdpClientAddress(SocketAddress address, String username) {
-        if (instance != null && instance.udpClients != null && address != null && username != null) {
-            instance.udpClients.put(address, username);
+    public static void registerUdpClientAddress(SocketAddress address, String username) {
+        if (instance != null && instance.udpRelay != null && address != null && username != null) {
+            instance.udpRelay.register(address, username);
         }
     }
 
+    /**
+     * Encola una tarea en el hilo del grupo sin esperarla. Las tareas de un mismo
+     * grupo (altas, mensajes, notas de voz, llamadas) corren de a una y en orden;
+     * la respuesta al emisor la envía la propia tarea (ver ClientHandler.deferReply).
+     *
+     * @return false si la partición del grupo está llena y la tarea no se ejecutará;
+     *         quien la encoló debería responder {@link #BUSY}
+     */
+    public static boolean inGroup(String groupName, Runnable task) {
+        return instance.conversations.execute(ConversationShards.groupKey(groupName), task);
+    }
+
+    /**
+     * Encola una tarea en el hilo de la conversación privada entre dos usuarios
+     * (el mismo en ambos sentidos) sin esperarla.
+     *
+     * @return false si la partición está llena y la tarea no se ejecutará
+     */
+    public static boolean inPrivateChat(String a, String b, Runnable task) {
+        return instance.conversations.execute(ConversationShards.privateKey(a, b), task);
+    }
+
+    // Continuación de trabajo ya aceptado (fragmentos de una nota de voz): nunca se rechaza
+    static void continueInGroup(String groupName, Runnable task) {
+        instance.conversations.continueWith(ConversationShards.groupKey(groupName), task);
+    }
+
+    static void continueInPrivateChat(String a, String b, Runnable task) {
+        instance.conversations.continueWith(ConversationShards.privateKey(a, b), task);
+    }
+
+    /**
+     * Control de flujo para quien lee de una conexión: true si lo que este hilo
+     * acaba de encolar dejó una conversación atrasada. El lector deja de leer
+     * hasta que se ejecute resume (desde el hilo de esa conversación).
+     */
+    static boolean pauseIfCongested(Runnable resume) {
+        return instance.conversations.pauseIfCongested(resume);
+    }
+
+    /**
+     * Ejecuta una tarea en el hilo del grupo y espera su resultado. Solo para
+     * hilos que pueden bloquearse (invocaciones Ice que devuelven un valor).
+     *
+     * @throws java.util.concurrent.RejectedExecutionException si la partición del grupo está llena
+     */
+    public static <T> T callInGroup(String groupName, Supplier<T> task) {
+        return instance.conversations.call(ConversationShards.groupKey(groupName), task);
+    }
+
     /**
      * Crea un nuevo grupo con el usuario especificado como creador.
      * 
      * @param groupName Nombre del grupo a crear
      * @param creator Usuario que crea el grupo
      */
-    public static synchronized void createGroup(String groupName, String creator) {
+    public static void createGroup(String groupName, String creator) {
         instance.groupManager.createGroup(groupName, creator);
     }
 
@@ -198,7 +352,7 @@ public class ChatServer implements ServerService {
      * @param groupName Nombre del grupo
      * @param user Usuario que se une al grupo
      */
-    public static synchronized void joinGroup(String groupName, String user) {
+    public static void joinGroup(String groupName, String user) {
         instance.groupManager.joinGroup(groupName, user);
     }
 
@@ -208,7 +362,7 @@ public class ChatServer implements ServerService {
      * @param groupName Nombre del grupo
      * @return Conjunto de nombres de usuarios miembros del grupo
      */
-    public static synchronized Set<String> getGroupMembers(String groupName) {
+    public static Set<String> getGroupMembers(String groupName) {
         return instance.groupManager.getGroupMembers(groupName);
     }
 
@@ -217,7 +371,7 @@ public class ChatServer implements ServerService {
      * 
      * @return Conjunto de nombres de grupos
      */
-    public static synchronized Set<String> getGroups() {
+    public static Set<String> getGroups() {
         return instance.groupManager.getGroups();
     }
 
@@ -228,7 +382,7 @@ public class ChatServer implements ServerService {
      * @param to Usuario destinatario de la llamada
      * @return ID de la llamada creada o null si no se pudo crear
      */
-    public static synchronized String startIndividualCall(String from, String to) {
+    public static String startIndividualCall(String from, String to) {
         if (!instance.userManager.isUserOnline(to) || instance.userManager.getUdpInfo(to) == null) return null;
         if (!instance.userManager.isUserOnline(from) || instance.userManager.getUdpInfo(from) == null) return null;
         Set<String> participants = new HashSet<>();
@@ -236,7 +390,7 @@ public class ChatServer implements ServerService {
         participants.add(to);
         String callId = java.util.UUID.randomUUID().toString();
         instance.CallManagerImpl.createCall(callId, participants);
-        notifyCallStarted(callId);
+        notifyCallStarted(callId, negotiateCodec(participants));
         try {
             HistoryService.logCallStarted(callId, participants);
         } catch (Exception ignored) {}
@@ -250,7 +404,7 @@ public class ChatServer implements ServerService {
      * @param groupName Nombre del grupo a llamar
      * @return ID de la llamada creada o null si no se pudo crear
      */
-    public static synchronized String startGroupCall(String from, String groupName) {
+    public static String startGroupCall(String from, String groupName) {
         Set<String> members = instance.groupManager.getGroupMembers(groupName);
         if (members.isEmpty()) return null;
         Set<String> participants = new HashSet<>();
@@ -265,59 +419,118 @@ public class ChatServer implements ServerService {
         if (participants.size() < 2) return null;
         String callId = java.util.UUID.randomUUID().toString();
         instance.CallManagerImpl.createCall(callId, participants);
-        notifyCallStarted(callId);
+        AudioCodec codec = negotiateCodec(participants);
+        if (isCallMixingEnabled() && instance.udpRelay != null) {
+            instance.udpRelay.startMix(callId, participants, codec);
+        }
+        notifyCallStarted(callId, codec);
         try {
             HistoryService.logCallStarted(callId, participants);
         } catch (Exception ignored) {}
         return callId;
     }
 
+    /**
+     * Indica si las llamadas grupales se mezclan en el servidor (callMode "mix"):
+     * cada participante recibe un solo flujo con la mezcla N-1 de los demás.
+     */
+    public static boolean isCallMixingEnabled() {
+        return instance != null && "mix".equals(instance.config.callMode());
+    }
+
+    /**
+     * Elige el códec de audio de una llamada: el preferido entre los que anunciaron
+     * todos los participantes con /codecs (PCM16 si alguno no anunció ninguno).
+     */
+    private static AudioCodec negotiateCodec(Set<String> participants) {
+        Set<AudioCodec> common = EnumSet.allOf(AudioCodec.class);
+        for (String u : participants) {
+            ClientHandler ch = getClientHandler(u);
+            common.retainAll(ch != null ? ch.getCodecs() : EnumSet.of(AudioCodec.PCM16));
+        }
+        return AudioCodec.best(common);
+    }
+
     /**
      * Notifica a todos los participantes que una llamada ha comenzado.
+     * En modo "relay" (y "mix") el único par anunciado es el propio servidor (puerto UDP),
+     * de modo que cada cliente envía un solo flujo; en modo "p2p" se anuncian
+     * las direcciones UDP de todos los participantes.
+     * Si el códec acordado no es PCM16 se agrega " codec=<id>" al final del aviso
+     * (los clientes que no anunciaron códecs siempre reciben el formato original).
      * 
      * @param callId ID de la llamada iniciada
+     * @param codec Códec acordado para el audio de la llamada
      */
-    private static void notifyCallStarted(String callId) {
+    private static void notifyCallStarted(String callId, AudioCodec codec) {
         Set<String> participants = instance.CallManagerImpl.getParticipants(callId);
+        String codecSuffix = codec == AudioCodec.PCM16 ? "" : " codec=" + codec.id();
+        if (!"p2p".equals(instance.config.callMode()) && instance.udpRelay != null) {
+            notifyRelayCallStarted(callId, participants, codecSuffix);
+            return;
+        }
         Map<String, String> peerMap = new HashMap<>();
         for (String u : participants) {
             String ipPort = instance.userManager.getUdpInfo(u);
             if (ipPort != null) peerMap.put(u, ipPort);
         }
         
+        // El aviso es igual para todos: se codifica una vez y se comparte
+        StringBuilder sb = new StringBuilder();
+        sb.append("LLAMADA_INICIADA: ").append(callId).append(" ");
+        boolean first = true;
+        for (Map.Entry<String, String> e : peerMap.entrySet()) {
+            if (!first) sb.append(",");
+            sb.append(e.getKey()).append(":").append(e.getValue());
+            first = false;
+        }
+        sb.append(codecSuffix);
+        OutboundFrame frame = ClientHandler.encodeLine(sb.toString());
         for (String u : participants) {
             ClientHandler ch = getClientHandler(u);
-            if (ch != null) {
-                StringBuilder sb = new StringBuilder();
-                sb.append("LLAMADA_INICIADA: ").append(callId).append(" ");
-                boolean first = true;
-                for (Map.Entry<String, String> e : peerMap.entrySet()) {
-                    if (!first) sb.append(",");
-                    sb.append(e.getKey()).append(":").append(e.getValue());
-                    first = false;
-                }
-                ch.sendMessage(sb.toString());
-            }
+            if (ch != null) ch.sendFrame(frame);
+        }
+    }
+
+    // Cada cliente recibe la dirección del servidor tal como él la ve (la IP local de su
+    // conexión TCP); el aviso se codifica una vez por dirección distinta
+    private static void notifyRelayCallStarted(String callId, Set<String> participants, String codecSuffix) {
+        int relayPort = instance.udpRelay.port();
+        Map<InetAddress, OutboundFrame> frames = new HashMap<>();
+        for (String u : participants) {
+            ClientHandler ch = getClientHandler(u);
+            if (ch == null) continue;
+            InetAddress local = ch.getClientSocket().getLocalAddress();
+            OutboundFrame frame = frames.computeIfAbsent(local, a -> ClientHandler.encodeLine(
+                    "LLAMADA_INICIADA: " + callId + " " + RELAY_PEER + ":" + a.getHostAddress() + ":" + relayPort + codecSuffix));
+            ch.sendFrame(frame);
         }
     }
 
     /**
-     * Termina una llamada activa y notifica a todos los participantes.
+     * El usuario cuelga: sale de la llamada, que termina para todos si le
+     * quedaba un solo participante más (siempre, en una llamada privada).
      * 
-     * @param callId ID de la llamada a terminar
-     * @param requester Usuario que solicita terminar la llamada
+     * @param callId ID de la llamada
+     * @param requester Usuario que cuelga
+     * @return false si la llamada no existe o el usuario no participa en ella
      */
-    public static synchronized void endCall(String callId, String requester) {
-        Set<String> participants = instance.CallManagerImpl.getParticipants(callId);
-        if (participants == null) return;
-        
+    public static boolean endCall(String callId, String requester) {
+        // Los avisos y la limpieza los hacen los listeners del registro (este servidor y el servant Ice)
+        return instance.CallManagerImpl.leaveCall(callId, requester);
+    }
+
+    // Fin de una llamada, colgada por TCP o por Ice: avisa a los clientes TCP, detiene
+    // la mezcla del relay UDP y la registra en el historial
+    private void callEnded(String callId, Set<String> participants, String endedBy) {
+        OutboundFrame frame = ClientHandler.encodeLine("LLAMADA_TERMINADA: " + callId + " por " + endedBy);
         for (String u : participants) {
             ClientHandler ch = getClientHandler(u);
-            if (ch != null) ch.sendMessage("LLAMADA_TERMINADA: " + callId + " por " + requester);
+            if (ch != null) ch.sendFrame(frame);
         }
-        instance.CallManagerImpl.endCall(callId);
+        if (udpRelay != null) udpRelay.stopMix(callId);
         try {
-            HistoryService.logCallEnded(callId, participants, requester);
+            HistoryService.logCallEnded(callId, participants, endedBy);
         } catch (Exception ignored) {}
     }
 
@@ -351,10 +564,25 @@ public class ChatServer implements ServerService {
      * 
      * @return Conjunto de nombres de usuarios
      */
-    public static synchronized Set<String> getUsers() {
+    public static Set<String> getUsers() {
         return instance.userManager.getUsers();
     }
 
+    /**
+     * Obtiene la profundidad y los contadores de la cola de salida de cada usuario conectado.
+     *
+     * @return Métricas por nombre de usuario
+     */
+    public static Map<String, ClientTransport.QueueStats> getOutboundQueueStats() {
+        Map<String, ClientTransport.QueueStats> stats = new TreeMap<>();
+        if (instance == null) return stats;
+        for (String u : instance.userManager.getUsers()) {
+            ClientHandler ch = getClientHandler(u);
+            if (ch != null) stats.put(u, ch.getQueueStats());
+        }
+        return stats;
+    }
+
     public GroupManager getGroupManager() {
         return groupManager;
     }
@@ -1,63 +1,183 @@
 package model;
 
 import java.io.*;
+import java.net.ProtocolException;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
 import command.*;
+import interfaces.ClientTransport;
+import model.AudioCodec;
 import service.HistoryService;
+import service.Metrics;
+import service.VoiceNoteWriter;
 
 /**
  * Manejador de cliente que procesa conexiones TCP y ejecuta comandos
  * de señalización para llamadas, grupos y notas de voz.
+ * La lógica del protocolo es independiente del transporte: puede ejecutarse
+ * como tarea bloqueante (run) o ser alimentada por el bucle NIO (NioConnection).
+ * Un cliente puede pedir el protocolo binario 2 ({@link FrameCodec}) con su
+ * primera línea; la salida se codifica según la versión de cada cliente.
+ * <p>
+ * Un comando puede llevar un id de petición (el id del frame en el protocolo 2, o
+ * "#&lt;id&gt; /comando ..." en texto si el cliente lo pidió antes con /tags). Lo que el comando le responde a su propio
+ * cliente se junta y se envía al terminar como una única respuesta con ese id;
+ * los avisos que llegan de otros usuarios nunca llevan id. Así un cliente puede
+ * tener varios comandos en curso sin confundir respuestas con avisos.
  */
 public class ClientHandler implements Runnable {
-    private final Socket socket;
-    private final CommandRegistry commandRegistry;
-    private PrintWriter out;
+    private static final Metrics.Histogram VOICE_CHUNK = Metrics.histogram("chat_voice_chunk_seconds", null,
+            "Tiempo de grabar un fragmento de nota de voz y encolar su reenvío");
+    private static final Metrics.Histogram VOICE_NOTE = Metrics.histogram("chat_voice_note_seconds", null,
+            "Duración de una nota de voz desde su encabezado hasta la confirmación al emisor");
+    private static final Metrics.Counter VOICE_BYTES = Metrics.counter("chat_voice_note_bytes_total", null,
+            "Bytes de audio de notas de voz recibidos");
+    // Fragmentos de una nota de voz encolados en su conversación y aún no reenviados;
+    // al llegar al tope se deja de leer al emisor hasta que se reenvíe la mitad
+    private static final int MAX_VOICE_CHUNKS_IN_FLIGHT = 32;
+
+    private final ClientTransport transport;
+    private final FramedReader in;
     private String name;
-    private boolean active = true;
+    private volatile boolean active = true;
+    // Versión del protocolo acordada; los demás hilos la leen al enviarle mensajes
+    private volatile int protocol = 1;
+    // Nota de voz en curso en el protocolo 2 (solo la toca el hilo que decodifica)
+    private VoiceRelay voiceNote;
+    // Comando con id en ejecución en cada hilo: lo que ese hilo le envía a su cliente se
+    // junta en la respuesta. Cada hilo ve solo la suya, así los avisos que otros hilos
+    // envían al mismo cliente nunca se confunden con ella
+    private static final ThreadLocal<Reply> CURRENT_REPLY = new ThreadLocal<>();
+    // El cliente pidió ids de petición en el protocolo de texto (/tags); solo lo toca el hilo que lee
+    private boolean taggedLines;
+    // Códecs que el cliente sabe decodificar (anunciados con /codecs)
+    private volatile Set<AudioCodec> codecs = EnumSet.of(AudioCodec.PCM16);
+    // Nota de voz cuyo audio se está recibiendo (solo la toca el hilo que lee)
+    private VoiceRelay streaming;
+    // Hilo que lee del socket en modo bloqueante y si está en pausa por control de flujo
+    private Thread reader;
+    private volatile boolean readPaused;
+    private final Runnable resumeReading = () -> {
+        readPaused = false;
+        LockSupport.unpark(reader);
+    };
 
-    public ClientHandler(Socket socket) {
-        this.socket = socket;
-        this.commandRegistry = new CommandRegistry();
-        initializeCommands();
+    /**
+     * Crea un manejador bloqueante que lee del socket en el hilo que ejecuta run().
+     */
+    ClientHandler(SocketTransport transport) throws IOException {
+        this(transport, new FramedReader(transport.socket().getInputStream()));
     }
 
     /**
-     * Inicializa todos los comandos disponibles en el sistema.
+     * Crea un manejador sobre un transporte no bloqueante; la entrada la
+     * entrega el bucle de eventos mediante handleRegistration/handleLine.
      */
-    private void initializeCommands() {
-        commandRegistry.registerHandler(new CallCommandHandler());
-        commandRegistry.registerHandler(new CallGroupCommandHandler());
-        commandRegistry.registerHandler(new CreateGroupCommandHandler());
-        commandRegistry.registerHandler(new EndCallCommandHandler());
-        commandRegistry.registerHandler(new JoinGroupCommandHandler());
-        commandRegistry.registerHandler(new ListGroupsCommandHandler());
-        commandRegistry.registerHandler(new ListUsersCommandHandler());
-        commandRegistry.registerHandler(new MessageCommandHandler());
-        commandRegistry.registerHandler(new MessageGroupCommandHandler());
-        commandRegistry.registerHandler(new QuitCommandHandler());
-        commandRegistry.registerHandler(new UdpPortCommandHandler());
+    public ClientHandler(ClientTransport transport) {
+        this(transport, null);
+    }
+
+    private ClientHandler(ClientTransport transport, FramedReader in) {
+        this.transport = transport;
+        this.in = in;
     }
 
     /**
-     * Envía un mensaje de texto al cliente.
+     * Envía un mensaje de texto al cliente. Si su cola de salida está llena el
+     * mensaje se descarta o el cliente se desconecta según la política configurada.
      */
     public void sendMessage(String message) {
-        if (out != null) {
-            out.println(message);
+        Reply reply = CURRENT_REPLY.get();
+        if (reply != null && reply.client == this) {
+            reply.lines.add(message);
+            return;
+        }
+        sendFrame(encodeLine(message));
+    }
+
+    /**
+     * Codifica una línea del protocolo para enviarla a muchos clientes con
+     * {@link #sendFrame(OutboundFrame)}: se codifica como mucho una vez por
+     * versión del protocolo y nunca se copia por destinatario.
+     *
+     * @param message Texto de la línea, sin salto de línea
+     * @return Mensaje listo para compartir
+     */
+    public static OutboundFrame encodeLine(String message) {
+        return OutboundFrame.line(message);
+    }
+
+    /**
+     * Encola un mensaje pre-codificado y compartido hacia el cliente, en la
+     * versión del protocolo que este usa.
+     *
+     * @param frame Mensaje creado con {@link #encodeLine(String)} u {@link OutboundFrame}
+     */
+    public void sendFrame(OutboundFrame frame) {
+        try {
+            transport.write(frame.bytes(protocol));
+        } catch (IOException ignored) {
+            // Igual que PrintWriter: los errores de escritura se detectan al leer
         }
     }
 
+    /**
+     * Métricas de la cola de salida de este cliente.
+     */
+    public ClientTransport.QueueStats getQueueStats() {
+        return transport.queueStats();
+    }
+
     public Socket getClientSocket() {
-        return socket;
+        return transport.socket();
+    }
+
+    public Set<AudioCodec> getCodecs() {
+        return codecs;
+    }
+
+    public void setCodecs(Set<AudioCodec> codecs) {
+        this.codecs = codecs;
+    }
+
+    /**
+     * Habilita los ids de petición "#&lt;id&gt; " en el protocolo de texto. Hasta
+     * entonces una línea que empieza con '#' es una línea más.
+     */
+    public void enableTaggedLines() {
+        taggedLines = true;
+    }
+
+    int getProtocol() {
+        return protocol;
     }
 
     @Override
     public void run() {
+        reader = Thread.currentThread();
         try {
-            setupClientConnection();
-            handleUserRegistration();
-            processUserCommands();
+            String first = in.readLine();
+            if (first != null && handleProtocolRequest(first)) {
+                if (protocol >= FrameCodec.VERSION) {
+                    // El registro llega en el primer frame de texto
+                    processFrames();
+                    return;
+                }
+                first = in.readLine();
+            }
+            if (handleRegistration(first)) {
+                processUserCommands();
+            }
         } catch (IOException e) {
             System.err.println("Error del cliente " + name + ": " + e.getMessage());
         } finally {
@@ -65,228 +185,675 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private void setupClientConnection() throws IOException {
-        out = new PrintWriter(socket.getOutputStream(), true);
+    /**
+     * Registra al usuario con la primera línea recibida.
+     *
+     * @param line Nombre de usuario enviado por el cliente
+     * @return true si el registro fue exitoso y la sesión continúa
+     */
+    boolean handleRegistration(String line) {
+        if (line == null || line.trim().isEmpty()) {
+            sendMessage("Error: Nombre inválido");
+            active = false;
+            return false;
+        }
+        name = line.trim();
+        ChatServer.registerUser(name, this);
+        sendMessage("¡Bienvenido, " + name + "!");
+        return true;
+    }
+
+    /**
+     * Atiende la petición "PROTOCOL &lt;versión&gt;" con la que un cliente puede
+     * abrir la conexión antes de registrarse. Se responde, todavía en texto,
+     * con la versión que se usará: la pedida si se soporta o 1 (texto).
+     *
+     * @param line Primera línea recibida
+     * @return true si la línea era una petición de protocolo
+     */
+    boolean handleProtocolRequest(String line) {
+        if (!line.startsWith(FrameCodec.HANDSHAKE + " ")) return false;
+        int requested;
+        try {
+            requested = Integer.parseInt(line.substring(FrameCodec.HANDSHAKE.length() + 1).trim());
+        } catch (NumberFormatException e) {
+            requested = 1;
+        }
+        int version = requested >= FrameCodec.VERSION ? FrameCodec.VERSION : 1;
+        sendMessage(FrameCodec.HANDSHAKE + " " + version);
+        protocol = version;
+        return true;
     }
 
-    private void handleUserRegistration() throws IOException {
-        name = readLineFromInputStream(socket.getInputStream());
-        if (name == null || name.trim().isEmpty()) {
-            out.println("Error: Nombre inválido");
-            active = false;
+    // Protocolo 2 sobre el socket bloqueante: los bytes pasan por el mismo decodificador que usa NIO
+    private void processFrames() throws IOException {
+        FrameDecoder decoder = new FrameDecoder(this);
+        byte[] buffer = new byte[8192];
+        int n;
+        while (active && (n = in.read(buffer, 0, buffer.length)) != -1) {
+            if (!decoder.feed(buffer, 0, n)) break;
+            throttle();
+        }
+    }
+
+    /**
+     * Control de flujo de la lectura, a llamar después de procesar lo leído:
+     * true si lo que encoló este cliente dejó atrasada la conversación, o si la
+     * nota de voz que envía tiene demasiados fragmentos sin reenviar. Quien lee
+     * deja de hacerlo hasta que otro hilo ejecute resume.
+     *
+     * @param resume Reanuda la lectura; debe ser rápido y no bloquear
+     */
+    boolean pauseReading(Runnable resume) {
+        VoiceRelay note = streaming;
+        if (note != null && note.pauseIfBehind(resume)) return true;
+        return ChatServer.pauseIfCongested(resume);
+    }
+
+    // Pausa del lector bloqueante: los bytes que no se leen quedan en el socket y
+    // TCP frena al cliente. Al apagar el servidor se interrumpe el hilo
+    private void throttle() {
+        readPaused = true;
+        if (!pauseReading(resumeReading)) {
+            readPaused = false;
             return;
         }
-        name = name.trim();
-        ChatServer.registerUser(name, this);
-        out.println("¡Bienvenido, " + name + "!");
+        while (readPaused && !Thread.currentThread().isInterrupted()) LockSupport.park(this);
+    }
+
+    /**
+     * Procesa un frame completo del protocolo 2. El audio de las notas de voz
+     * llega aparte, por {@link #handleVoiceData}.
+     *
+     * @return false si la sesión debe terminar
+     * @throws ProtocolException si la carga del frame está mal formada
+     */
+    boolean handleFrame(int type, int flags, int requestId, byte[] payload, int length) throws ProtocolException {
+        if (name == null && type != FrameCodec.TEXT) {
+            throw new ProtocolException("Se esperaba el registro del usuario");
+        }
+        switch (type) {
+            case FrameCodec.TEXT -> {
+                String text = new String(payload, 0, length, StandardCharsets.UTF_8);
+                return name == null ? handleRegistration(text) : handleCommand(text, requestId);
+            }
+            case FrameCodec.VOICE_START -> {
+                if (voiceNote != null) {
+                    System.err.println("Nota de voz de " + name + " sin cerrar, se descarta");
+                    voiceNote.abort();
+                }
+                FrameCodec.FieldReader fields = new FrameCodec.FieldReader(payload, 0, length);
+                String user = fields.string();
+                String group = fields.string();
+                long size = fields.varint();
+                String codec = fields.string();
+                boolean isGroup = (flags & FrameCodec.FLAG_GROUP) != 0;
+                voiceNote = beginVoiceNote(isGroup ? group : user, isGroup, size,
+                        codec.isEmpty() ? null : codec, requestId);
+            }
+            case FrameCodec.VOICE_END -> {
+                VoiceRelay finished = voiceNote;
+                voiceNote = null;
+                if (finished != null) {
+                    // Los clientes de texto esperan exactamente los bytes anunciados
+                    if (finished.remaining() > 0) {
+                        System.err.println("Nota de voz de " + name + " más corta que lo anunciado, se completa con ceros");
+                        byte[] zeros = new byte[(int) Math.min(4096, finished.remaining())];
+                        while (finished.remaining() > 0) {
+                            finished.accept(zeros, 0, (int) Math.min(zeros.length, finished.remaining()));
+                        }
+                    }
+                    finished.finish();
+                }
+            }
+            default -> {
+                // Tipo desconocido (cliente más nuevo): el frame se salta completo
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Recibe un fragmento de audio de la nota de voz en curso (protocolo 2).
+     * Lo que excede el tamaño anunciado se descarta.
+     */
+    void handleVoiceData(byte[] data, int offset, int length) {
+        if (voiceNote == null) return;
+        int n = (int) Math.min(length, voiceNote.remaining());
+        if (n > 0) voiceNote.accept(data, offset, n);
     }
 
     private void processUserCommands() throws IOException {
         String line;
-        while (active && (line = readLineFromInputStream(socket.getInputStream())) != null) {
-
-            if (line.trim().isEmpty()) continue;
+        while (active && (line = in.readLine()) != null) {
 
             // Detección de inicio de nota de voz TCP
-            if (line.startsWith("VOICE_NOTE_START") || line.startsWith("VOICE_NOTE_GROUP_START")) {
-                processVoiceNote(socket.getInputStream(), line);
+            if (isVoiceNoteHeader(line)) {
+                VoiceRelay relay = beginVoiceNote(line);
+                if (relay != null) {
+                    try {
+                        pumpVoiceBytes(relay);
+                    } catch (IOException e) {
+                        relay.abort();
+                        throw e;
+                    }
+                    if (relay.remaining() > 0) {
+                        // Conexión cerrada a mitad de la nota
+                        relay.abort();
+                        break;
+                    }
+                    relay.finish(in.readLine());
+                }
                 continue;
             }
 
-            if (line.equals("/quit")) {
-                commandRegistry.executeCommand(line, name, this);
-                active = false;
+            if (!handleLine(line)) {
                 break;
             }
+            throttle();
+        }
+    }
 
-            if (!commandRegistry.executeCommand(line, name, this)) {
-                out.println("Opción inválida.");
+    /**
+     * Procesa una línea de comando ya decodificada (protocolo de texto), con su
+     * id de petición opcional: "#&lt;id&gt; /comando ..." (solo tras /tags).
+     *
+     * @param line Línea recibida del cliente
+     * @return false si la sesión debe terminar
+     */
+    boolean handleLine(String line) {
+        if (taggedLines && line.startsWith("#")) {
+            int space = line.indexOf(' ');
+            try {
+                int requestId = Integer.parseInt(line, 1, space < 0 ? line.length() : space, 10);
+                return handleCommand(space < 0 ? "" : line.substring(space + 1), requestId);
+            } catch (NumberFormatException e) {
+                // No es un id: se procesa como cualquier otra línea
             }
         }
+        return handleCommand(line, 0);
     }
 
     /**
-     * Procesa una nota de voz entrante (modo binario).
-     * @param inputStream Flujo de entrada del socket
-     * @param header Línea de encabezado "VOICE_NOTE_START <sender> <size>" o "VOICE_NOTE_GROUP_START <sender> <group> <size>"
+     * Ejecuta un comando. Si trae id de petición, lo que responde se envía al
+     * final como una sola respuesta con ese id (vacía si no respondió nada).
+     *
+     * @param line Comando sin id
+     * @param requestId Id de la petición, 0 si no tiene
+     * @return false si la sesión debe terminar
      */
-    private void processVoiceNote(InputStream inputStream, String header) {
+    boolean handleCommand(String line, int requestId) {
+        if (requestId == 0) return execute(line);
+        Reply reply = new Reply(this, requestId);
+        Reply outer = CURRENT_REPLY.get();
+        CURRENT_REPLY.set(reply);
         try {
-            String[] parts = header.split(" ");
-            if (parts.length < 3) {
-                sendMessage("Error: encabezado de nota de voz inválido");
-                return;
-            }
-
-            if (header.startsWith("VOICE_NOTE_GROUP_START")) {
-                // Cliente -> Servidor: VOICE_NOTE_GROUP_START <grupo> <tamaño>
-                String groupName = parts[1];
-                long size = Long.parseLong(parts[2]);
+            return execute(line);
+        } finally {
+            CURRENT_REPLY.set(outer);
+            if (!reply.deferred) reply.send(null);
+        }
+    }
 
-                java.util.Set<String> members = ChatServer.getGroupMembers(groupName);
-                if (members == null || members.isEmpty()) {
-                    sendMessage("Error: grupo '" + groupName + "' no existe o está vacío");
-                    skipBytes(inputStream, size);
-                    skipLine();
-                    return;
-                }
+    /**
+     * Entrega la respuesta del comando en curso a quien termine el trabajo en
+     * otro hilo (p. ej. la partición de un grupo): el comando vuelve sin
+     * responder y la respuesta sale, con su id si lo tiene, cuando se llama a
+     * {@link Reply#send(String)}. Sin id de petición, send envía una línea común.
+     *
+     * @return Respuesta pendiente; debe enviarse exactamente una vez
+     */
+    public Reply deferReply() {
+        Reply reply = CURRENT_REPLY.get();
+        if (reply == null || reply.client != this) {
+            reply = new Reply(this, 0);
+        } else {
+            reply.deferred = true;
+            CURRENT_REPLY.remove();
+        }
+        // La latencia del comando (chat_command_seconds) se registra al enviar la respuesta
+        reply.latency = CommandRegistry.deferLatency();
+        return reply;
+    }
 
-                java.util.List<ClientHandler> recipients = new java.util.ArrayList<>();
-                for (String m : members) {
-                    if (!m.equals(name)) {
-                        ClientHandler ch = ChatServer.getClientHandler(m);
-                        if (ch != null) recipients.add(ch);
-                    }
-                }
+    /**
+     * Respuesta de un comando: lo que el comando le envía a su cliente se junta
+     * aquí y se envía de una vez (con el id de la petición) al terminar.
+     */
+    public static final class Reply {
+        private final ClientHandler client;
+        private final int requestId;
+        private final List<String> lines = new ArrayList<>(2);
+        private boolean deferred;
+        private Runnable latency;
+
+        private Reply(ClientHandler client, int requestId) {
+            this.client = client;
+            this.requestId = requestId;
+        }
 
-                // Enviar encabezado a todos: VOICE_NOTE_GROUP_START <remitente> <grupo> <tamaño>
-                String outHeader = "VOICE_NOTE_GROUP_START " + name + " " + groupName + " " + size + "\n";
-                byte[] outHeaderBytes = outHeader.getBytes(java.nio.charset.StandardCharsets.UTF_8);
-                for (ClientHandler ch : recipients) {
-                    ch.socket.getOutputStream().write(outHeaderBytes);
-                }
+        /**
+         * Envía la respuesta con una última línea.
+         *
+         * @param message Última línea de la respuesta, o null si no hay más que decir
+         */
+        public void send(String message) {
+            if (message != null) lines.add(message);
+            if (requestId != 0) {
+                client.sendFrame(OutboundFrame.reply(requestId, String.join("\n", lines)));
+            } else {
+                for (String line : lines) client.sendFrame(encodeLine(line));
+            }
+            if (latency != null) latency.run();
+        }
+    }
 
-                // Reenviar bytes y capturarlos para guardar en historial
-                byte[] captured = teeForwardBytesToRecipients(inputStream, size, recipients);
+    private boolean execute(String line) {
+        if (line.trim().isEmpty()) return true;
 
-                // Leer y reenviar fin
-                String end = readLineFromInputStream(inputStream);
-                if (end == null || !end.equals("VOICE_NOTE_GROUP_END")) {
-                    System.err.println("Advertencia: VOICE_NOTE_GROUP_END no detectado correctamente");
-                }
-                byte[] endBytes = "VOICE_NOTE_GROUP_END\n".getBytes(java.nio.charset.StandardCharsets.UTF_8);
-                for (ClientHandler ch : recipients) {
-                    ch.socket.getOutputStream().write(endBytes);
-                    ch.socket.getOutputStream().flush();
-                }
+        if (line.equals("/quit")) {
+            CommandRegistry.shared().executeCommand(line, name, this);
+            active = false;
+            return false;
+        }
 
-                // Guardar y registrar en historial
-                try {
-                    HistoryService.SavedAudio saved = HistoryService.saveVoiceBytes(captured);
-                    HistoryService.logVoiceGroup(name, groupName, saved.relativePath(), saved.sizeBytes());
-                } catch (IOException ioe) {
-                    System.err.println("No se pudo guardar nota de voz grupal: " + ioe.getMessage());
-                }
-                sendMessage("Nota de voz grupal enviada a '" + groupName + "'.");
-
-            } else if (header.startsWith("VOICE_NOTE_START")) {
-                // Cliente -> Servidor: VOICE_NOTE_START <destino> <tamaño>
-                String targetUser = parts[1];
-                long size = Long.parseLong(parts[2]);
-
-                ClientHandler target = ChatServer.getClientHandler(targetUser);
-                if (target == null) {
-                    sendMessage("Error: Usuario '" + targetUser + "' no está conectado");
-                    skipBytes(inputStream, size);
-                    skipLine();
-                    return;
-                }
+        if (!CommandRegistry.shared().executeCommand(line, name, this)) {
+            sendMessage("Opción inválida.");
+        }
+        return active;
+    }
 
-                // Encabezado para destinatario: VOICE_NOTE_START <remitente> <tamaño>
-                String outHeader = "VOICE_NOTE_START " + name + " " + size + "\n";
-                OutputStream out = target.socket.getOutputStream();
-                out.write(outHeader.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    static boolean isVoiceNoteHeader(String line) {
+        return line.startsWith("VOICE_NOTE_START") || line.startsWith("VOICE_NOTE_GROUP_START");
+    }
 
-                // Reenviar bytes y capturarlos para guardar en historial
-                byte[] captured = pipeAndCaptureBytes(inputStream, out, size);
+    /**
+     * Procesa el encabezado de una nota de voz entrante (modo binario) y prepara
+     * el reenvío de los bytes que siguen.
+     * @param header Línea de encabezado "VOICE_NOTE_START <destino> <size> [códec]" o
+     *               "VOICE_NOTE_GROUP_START <grupo> <size> [códec]" (sin códec: pcm16)
+     * @return Relay que consume los bytes de audio, o null si el encabezado es inválido
+     */
+    VoiceRelay beginVoiceNote(String header) {
+        String[] parts = header.split(" ");
+        if (parts.length < 3) {
+            sendMessage("Error: encabezado de nota de voz inválido");
+            return null;
+        }
+        boolean group = header.startsWith("VOICE_NOTE_GROUP_START");
+        if (!group && !header.startsWith("VOICE_NOTE_START")) {
+            sendMessage("Error: encabezado de nota de voz no reconocido");
+            return null;
+        }
+        try {
+            return beginVoiceNote(parts[1], group, Long.parseLong(parts[2]), parts.length > 3 ? parts[3] : null, 0);
+        } catch (NumberFormatException e) {
+            System.err.println("Error procesando nota de voz: " + e.getMessage());
+            return null;
+        }
+    }
 
-                // Leer end del emisor y reenviar
-                String end = readLineFromInputStream(inputStream);
-                if (end == null || !end.equals("VOICE_NOTE_END")) {
-                    System.err.println("Advertencia: VOICE_NOTE_END no detectado correctamente");
-                }
-                out.write("VOICE_NOTE_END\n".getBytes(java.nio.charset.StandardCharsets.UTF_8));
-                out.flush();
+    /**
+     * Prepara el reenvío de una nota de voz, venga del protocolo de texto o del binario.
+     *
+     * @param target Usuario destino, o grupo si group es true
+     * @param group true si es una nota grupal
+     * @param size Tamaño del audio en bytes
+     * @param codecId Códec del audio, o null para pcm16
+     * @param requestId Id de la petición a confirmar al terminar (0 si no hay)
+     * @return Relay que consume los bytes de audio, o null si no puede recibirse
+     */
+    VoiceRelay beginVoiceNote(String target, boolean group, long size, String codecId, int requestId) {
+        try {
+            AudioCodec codec = codecId != null ? AudioCodec.fromId(codecId) : AudioCodec.PCM16;
+            if (codec == null) {
+                sendMessage("Error: códec de nota de voz no soportado: " + codecId);
+                return new VoiceRelay(size);
+            }
 
-                // Guardar y registrar en historial
-                try {
-                    HistoryService.SavedAudio saved = HistoryService.saveVoiceBytes(captured);
-                    HistoryService.logVoiceNote(name, targetUser, saved.relativePath(), saved.sizeBytes());
-                } catch (IOException ioe) {
-                    System.err.println("No se pudo guardar nota de voz: " + ioe.getMessage());
+            if (group) {
+                Set<String> members = ChatServer.getGroupMembers(target);
+                if (members == null || members.isEmpty()) {
+                    sendMessage("Error: grupo '" + target + "' no existe o está vacío");
+                    return new VoiceRelay(size);
                 }
-                sendMessage("Nota de voz enviada a " + targetUser);
-            } else {
-                sendMessage("Error: encabezado de nota de voz no reconocido");
+            } else if (ChatServer.getClientHandler(target) == null) {
+                sendMessage("Error: Usuario '" + target + "' no está conectado");
+                return new VoiceRelay(size);
             }
+            return new VoiceRelay(size, codec, target, group, requestId);
 
         } catch (Exception e) {
             System.err.println("Error procesando nota de voz: " + e.getMessage());
         }
+        return null;
     }
 
-    
-
-    // Variante que reenvía y además captura los bytes en memoria para guardarlos
-    private byte[] pipeAndCaptureBytes(InputStream in, OutputStream out, long size) throws IOException {
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream((int)Math.min(size, 1024 * 1024));
+    // Lee del socket exactamente los bytes anunciados y los entrega al relay
+    private void pumpVoiceBytes(VoiceRelay relay) throws IOException {
         byte[] buffer = new byte[4096];
-        long remaining = size;
-        while (remaining > 0) {
-            int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+        while (relay.remaining() > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, relay.remaining()));
             if (n == -1) break;
-            out.write(buffer, 0, n);
-            baos.write(buffer, 0, n);
-            remaining -= n;
+            relay.accept(buffer, 0, n);
+            throttle();
         }
-        return baos.toByteArray();
     }
 
-    private byte[] teeForwardBytesToRecipients(InputStream in, long size, java.util.List<ClientHandler> recipients) throws IOException {
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream((int)Math.min(size, 1024 * 1024));
-        byte[] buffer = new byte[4096];
-        long remaining = size;
-        while (remaining > 0) {
-            int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
-            if (n == -1) break;
-            for (ClientHandler ch : recipients) {
-                ch.socket.getOutputStream().write(buffer, 0, n);
+    /**
+     * Reenvío de una nota de voz en curso. Recibe los bytes por partes (desde el
+     * flujo bloqueante o desde el decodificador NIO) y los escribe directamente
+     * al WAV del historial en el hilo que lee, sin acumular la nota en memoria.
+     * Lo que ven los destinatarios (elegirlos, reenviar el audio, el cierre y el
+     * registro en el historial) pasa por el hilo de la conversación, así la nota
+     * queda en orden con los mensajes de texto del mismo grupo o chat privado.
+     * Un relay sin destino simplemente descarta los bytes.
+     */
+    final class VoiceRelay {
+        private String target;
+        private final boolean group;
+        private final int requestId;
+        private final Delivery delivery;
+        private VoiceNoteWriter recording;
+        private long remaining;
+        // Ya se encoló el cierre (por finish o abort)
+        private boolean closed;
+        private final long startNanos = System.nanoTime();
+        // Fragmentos encolados y aún no reenviados, y cómo reanudar la lectura si se pausó por ellos
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicReference<Runnable> resume = new AtomicReference<>();
+
+        private VoiceRelay(long size) {
+            this.remaining = size;
+            this.target = null;
+            this.group = false;
+            this.requestId = 0;
+            this.delivery = null;
+        }
+
+        private VoiceRelay(long size, AudioCodec codec, String target, boolean group, int requestId) {
+            this.remaining = size;
+            this.target = target;
+            this.group = group;
+            this.requestId = requestId;
+            try {
+                recording = HistoryService.openVoiceNote(codec);
+            } catch (IOException e) {
+                System.err.println("No se pudo crear la nota de voz en disco: " + e.getMessage());
             }
-            baos.write(buffer, 0, n);
-            remaining -= n;
+            this.delivery = new Delivery(codec, size);
+            boolean queued = group
+                    ? ChatServer.inGroup(target, delivery::begin)
+                    : ChatServer.inPrivateChat(name, target, delivery::begin);
+            if (!queued) {
+                // Conversación saturada: la nota no se entrega y sus bytes se descartan
+                this.target = null;
+                abort();
+                sendFrame(OutboundFrame.reply(requestId, ChatServer.BUSY));
+                return;
+            }
+            streaming = this;
         }
-        return baos.toByteArray();
-    }
 
-    private void skipBytes(InputStream in, long size) throws IOException {
-        long remaining = size;
-        byte[] buffer = new byte[4096];
-        while (remaining > 0) {
-            int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
-            if (n == -1) break;
-            remaining -= n;
+        long remaining() {
+            return remaining;
         }
-    }
 
-    private void skipLine() {
-        // Intentar consumir una línea residual si existe
-        try {
-            readLineFromInputStream(socket.getInputStream());
-        } catch (IOException ignored) {}
-    }
+        /**
+         * Agrega un fragmento del audio al WAV en disco y encola su reenvío. El
+         * fragmento se copia una sola vez y esa copia es la que reciben todos los
+         * destinatarios que soportan su códec.
+         */
+        void accept(byte[] buffer, int offset, int length) {
+            remaining -= length;
+            if (target == null) return;
+            long start = System.nanoTime();
+            byte[] chunk = Arrays.copyOfRange(buffer, offset, offset + length);
+            inFlight.incrementAndGet();
+            submit(() -> {
+                delivery.accept(chunk);
+                chunkDelivered();
+            });
+            if (recording != null) {
+                try {
+                    recording.write(buffer, offset, length);
+                } catch (IOException e) {
+                    // El reenvío continúa aunque no se pueda guardar
+                    System.err.println("Error guardando nota de voz: " + e.getMessage());
+                    recording.abort();
+                    recording = null;
+                }
+            }
+            VOICE_CHUNK.recordSince(start);
+            VOICE_BYTES.add(length);
+        }
+
+        // En el hilo de la conversación: al bajar a la mitad del tope se reanuda la lectura
+        private void chunkDelivered() {
+            if (inFlight.decrementAndGet() > MAX_VOICE_CHUNKS_IN_FLIGHT / 2) return;
+            Runnable r = resume.getAndSet(null);
+            if (r != null) r.run();
+        }
+
+        /**
+         * true si la nota llegó al tope de fragmentos sin reenviar: resume se
+         * ejecuta (desde el hilo de la conversación) cuando se reenvíe la mitad.
+         */
+        boolean pauseIfBehind(Runnable r) {
+            if (inFlight.get() < MAX_VOICE_CHUNKS_IN_FLIGHT) return false;
+            resume.set(r);
+            // Pudo bajar justo antes de registrar: si nadie lo tomó, se sigue leyendo
+            return inFlight.get() > MAX_VOICE_CHUNKS_IN_FLIGHT / 2 || !resume.compareAndSet(r, null);
+        }
+
+        /**
+         * Cierra la nota de voz del protocolo de texto validando la línea de cierre del emisor.
+         *
+         * @param end Línea de cierre leída del emisor
+         */
+        void finish(String end) {
+            String endMarker = group ? "VOICE_NOTE_GROUP_END" : "VOICE_NOTE_END";
+            if (target != null && (end == null || !end.equals(endMarker))) {
+                System.err.println("Advertencia: " + endMarker + " no detectado correctamente");
+            }
+            finish();
+        }
 
-    private String readLineFromInputStream(InputStream inputStream) throws IOException {
-        // Leer bytes hasta \n y construir String (UTF-8)
-        java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-        int b;
-        while ((b = inputStream.read()) != -1) {
-            if (b == '\n') break;
-            if (b != '\r') baos.write(b);
+        /**
+         * Cierra la nota de voz: cierra el WAV y encola el fin para los
+         * destinatarios, el registro en el historial y la confirmación al emisor.
+         */
+        void finish() {
+            if (streaming == this) streaming = null;
+            if (target == null || closed) {
+                return;
+            }
+            closed = true;
+            HistoryService.SavedAudio saved = null;
+            try {
+                if (recording == null) {
+                    throw new IOException("audio no disponible");
+                }
+                saved = recording.finish();
+                recording = null;
+            } catch (IOException ioe) {
+                System.err.println("No se pudo guardar nota de voz" + (group ? " grupal" : "") + ": " + ioe.getMessage());
+            }
+            HistoryService.SavedAudio audio = saved;
+            submit(() -> delivery.finish(audio));
+        }
+
+        /**
+         * Descarta la nota incompleta (la conexión del emisor se cerró antes del
+         * final): no se guarda ni se registra, pero los destinatarios ya
+         * recibieron el encabezado, así que se les completa con ceros y se les
+         * envía el cierre.
+         */
+        void abort() {
+            if (streaming == this) streaming = null;
+            if (recording != null) {
+                recording.abort();
+                recording = null;
+            }
+            if (target == null || closed) return;
+            closed = true;
+            long missing = remaining;
+            remaining = 0;
+            submit(() -> {
+                delivery.pad(missing);
+                delivery.end();
+            });
+        }
+
+        // Fragmentos y cierre continúan una nota ya aceptada: no se rechazan
+        private void submit(Runnable task) {
+            if (group) {
+                ChatServer.continueInGroup(target, task);
+            } else {
+                ChatServer.continueInPrivateChat(name, target, task);
+            }
+        }
+
+        /**
+         * Parte de la nota que corre en el hilo de la conversación. Los
+         * destinatarios que no anunciaron el códec del emisor reciben el audio
+         * decodificado a PCM16 (se decodifica una vez para todos ellos).
+         */
+        private final class Delivery {
+            private final AudioCodec codec;
+            private final long size;
+            private final List<ClientHandler> recipients = new ArrayList<>();
+            private final List<ClientHandler> pcmRecipients = new ArrayList<>();
+            private AudioCodec.StreamDecoder transcoder;
+            private short[] samples = new short[0];
+            private byte[] pcm = new byte[0];
+
+            private Delivery(AudioCodec codec, long size) {
+                this.codec = codec;
+                this.size = size;
+            }
+
+            // Destinatarios según la membresía en este punto de la conversación
+            void begin() {
+                List<ClientHandler> targets = new ArrayList<>();
+                if (group) {
+                    for (String m : ChatServer.getGroupMembers(target)) {
+                        if (!m.equals(name)) {
+                            ClientHandler ch = ChatServer.getClientHandler(m);
+                            if (ch != null) targets.add(ch);
+                        }
+                    }
+                } else {
+                    ClientHandler ch = ChatServer.getClientHandler(target);
+                    if (ch != null) targets.add(ch);
+                }
+                for (ClientHandler ch : targets) {
+                    (ch.getCodecs().contains(codec) ? recipients : pcmRecipients).add(ch);
+                }
+                String groupName = group ? target : null;
+                forward(recipients, OutboundFrame.voiceStart(name, groupName, size, codec), false);
+                if (!pcmRecipients.isEmpty()) {
+                    transcoder = new AudioCodec.StreamDecoder(codec);
+                    long pcmSize = (long) codec.decodedSamples((int) size) * 2;
+                    forward(pcmRecipients, OutboundFrame.voiceStart(name, groupName, pcmSize, AudioCodec.PCM16), false);
+                }
+            }
+
+            void accept(byte[] chunk) {
+                if (!recipients.isEmpty()) {
+                    forward(recipients, OutboundFrame.voiceData(chunk), true);
+                }
+                if (transcoder != null && !pcmRecipients.isEmpty()) {
+                    int max = transcoder.maxSamples(chunk.length);
+                    if (samples.length < max) samples = new short[max];
+                    forwardPcm(transcoder.feed(chunk, 0, chunk.length, samples));
+                }
+            }
+
+            // Reenvía el fin, registra el audio en el historial y confirma al emisor
+            void finish(HistoryService.SavedAudio saved) {
+                end();
+
+                if (saved != null) {
+                    if (group) {
+                        HistoryService.logVoiceGroup(name, target, saved.relativePath(), saved.sizeBytes());
+                    } else {
+                        HistoryService.logVoiceNote(name, target, saved.relativePath(), saved.sizeBytes());
+                    }
+                }
+                sendFrame(OutboundFrame.reply(requestId, group
+                        ? "Nota de voz grupal enviada a '" + target + "'."
+                        : "Nota de voz enviada a " + target));
+                VOICE_NOTE.recordSince(startNanos);
+            }
+
+            // Reenvía el fin de la nota a los destinatarios
+            void end() {
+                if (transcoder != null && !pcmRecipients.isEmpty()) {
+                    if (samples.length < AudioCodec.ADPCM_BLOCK_SAMPLES) samples = new short[AudioCodec.ADPCM_BLOCK_SAMPLES];
+                    forwardPcm(transcoder.finish(samples));
+                }
+                OutboundFrame endFrame = OutboundFrame.voiceEnd(group);
+                forward(recipients, endFrame, true);
+                forward(pcmRecipients, endFrame, true);
+            }
+
+            // Completa con ceros los bytes que faltan (los clientes de texto esperan
+            // exactamente los anunciados); el mismo fragmento se reenvía las veces necesarias
+            void pad(long missing) {
+                if (missing <= 0) return;
+                byte[] zeros = new byte[(int) Math.min(4096, missing)];
+                while (missing > 0 && !(recipients.isEmpty() && pcmRecipients.isEmpty())) {
+                    int n = (int) Math.min(zeros.length, missing);
+                    accept(n == zeros.length ? zeros : new byte[n]);
+                    missing -= n;
+                }
+            }
+
+            // Las muestras decodificadas se envían como PCM16 (voiceData copia el búfer, así que se reutiliza)
+            private void forwardPcm(int count) {
+                if (count == 0) return;
+                if (pcm.length < count * 2) pcm = new byte[count * 2];
+                AudioCodec.pcmToLe(samples, 0, count, pcm, 0);
+                forward(pcmRecipients, OutboundFrame.voiceData(pcm, 0, count * 2), true);
+            }
+        }
+
+        // Un destinatario que falla se descarta sin afectar al resto. Si su cola descarta
+        // el encabezado simplemente no recibe la nota; si descarta bytes a mitad de la
+        // nota su flujo quedó inconsistente y se le desconecta.
+        private void forward(List<ClientHandler> recipients, OutboundFrame frame, boolean midStream) {
+            Iterator<ClientHandler> it = recipients.iterator();
+            while (it.hasNext()) {
+                ClientHandler ch = it.next();
+                try {
+                    if (!ch.transport.write(frame.bytes(ch.protocol))) {
+                        it.remove();
+                        if (midStream) {
+                            System.err.println("Nota de voz interrumpida para " + ch.name + ": cola de salida llena");
+                            ch.transport.abort();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error reenviando nota de voz a " + ch.name + ": " + e.getMessage());
+                    it.remove();
+                }
+            }
         }
-        if (baos.size() == 0 && b == -1) return null;
-        return baos.toString(java.nio.charset.StandardCharsets.UTF_8);
     }
 
-    private void cleanup() {
+    /**
+     * Libera la sesión: elimina al usuario del servidor y cierra el transporte.
+     */
+    void cleanup() {
+        if (voiceNote != null) {
+            // Nota de voz incompleta: no se guarda en el historial
+            voiceNote.abort();
+            voiceNote = null;
+        }
         if (name != null) {
             ChatServer.removeUser(name);
         }
-        try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
-            }
-        } catch (IOException e) {
-            System.err.println("Error cerrando socket: " + e.getMessage());
-        }
+        transport.close();
     }
 }
@@ -3,5 +3,94 @@ package model;
 /**
  * Clase de configuración para almacenar parámetros de conexión del servidor.
  * Contiene la información necesaria para establecer conexiones de red.
+ *
+ * @param serverMode Modelo de E/S para TCP: "nio" (por defecto, reactores con Selector),
+ *                   "virtual" (un hilo virtual bloqueante por cliente) o "pool"
+ *                   (pool fijo de hilos bloqueantes)
+ * @param ioThreads Cantidad de reactores NIO; 0 usa el número de procesadores
+ * @param historyDurability Política de fsync del historial: "none", "interval" (por defecto)
+ *                          o "always" (después de cada lote escrito, no de cada entrada;
+ *                          "entry" es un nombre anterior de "always")
+ * @param historyFlushMs Intervalo de fsync en milisegundos para "interval"; 0 usa 1000
+ * @param historySegmentBytes Tamaño de rotación de los segmentos del historial; 0 usa 64 MiB
+ * @param historySegmentMs Antigüedad máxima del segmento activo en milisegundos; 0 sin límite
+ * @param historyCompactAfterMs Tiempo tras el sellado para comprimir un segmento; 0 usa 1 hora
+ * @param historyOnFull Qué hacer si el disco no da abasto y la cola del historial se llena:
+ *                      "block" (por defecto, quien registra espera hasta 100 ms y solo
+ *                      entonces se pierde la entrada) o "drop" (se pierde de inmediato)
+ * @param outboundQueueBytes Límite de la cola de salida de cada cliente en bytes; 0 usa 4 MiB
+ * @param outboundPolicy Qué hacer con un cliente lento cuya cola se llena: "disconnect"
+ *                       (por defecto), "drop" (descarta el mensaje) o "spill" (desborda a disco)
+ * @param callMode Audio de llamadas TCP/UDP: "relay" (por defecto, el servidor reenvía el flujo
+ *                 de cada cliente en el puerto TCP+1), "mix" (como relay, pero las llamadas
+ *                 grupales se mezclan en el servidor) o "p2p" (malla directa entre clientes)
+ * @param voiceNoteFormat Formato de los WAV de notas de voz: "ulaw" (por defecto, 8 bits
+ *                        por muestra) o "pcm16"
+ * @param metricsPort Puerto HTTP local (127.0.0.1) del endpoint /metrics; 0 usa el puerto
+ *                    TCP + 2, un valor negativo lo deshabilita
+ * @param conversationShards Hilos que atienden grupos y chats privados (cada conversación
+ *                           siempre en el mismo); 0 usa el número de procesadores
  */
-public record Config(String host, int port) {}
\ No newline at end of file
+public record Config(String host, int port, String serverMode, int ioThreads,
+                     String historyDurability, int historyFlushMs,
+                     long historySegmentBytes, long historySegmentMs, long historyCompactAfterMs,
+                     long outboundQueueBytes, String outboundPolicy, String callMode,
+                     String voiceNoteFormat, int metricsPort, int conversationShards,
+                     String historyOnFull) {
+
+    public Config(String host, int port) {
+        this(host, port, null, 0, null, 0, 0, 0, 0, 0, null, null, null, 0, 0, null);
+    }
+
+    @Override
+    public String serverMode() {
+        return serverMode == null || serverMode.isBlank() ? "nio" : serverMode.trim().toLowerCase();
+    }
+
+    @Override
+    public int ioThreads() {
+        return ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String historyDurability() {
+        return historyDurability == null || historyDurability.isBlank()
+                ? "interval" : historyDurability.trim().toLowerCase();
+    }
+
+    @Override
+    public int historyFlushMs() {
+        return historyFlushMs > 0 ? historyFlushMs : 1000;
+    }
+
+    @Override
+    public String historyOnFull() {
+        return historyOnFull == null || historyOnFull.isBlank() ? "block" : historyOnFull.trim().toLowerCase();
+    }
+
+    @Override
+    public String outboundPolicy() {
+        return outboundPolicy == null || outboundPolicy.isBlank()
+                ? "disconnect" : outboundPolicy.trim().toLowerCase();
+    }
+
+    @Override
+    public String callMode() {
+        return callMode == null || callMode.isBlank() ? "relay" : callMode.trim().toLowerCase();
+    }
+
+    @Override
+    public String voiceNoteFormat() {
+        return voiceNoteFormat == null || voiceNoteFormat.isBlank() ? "ulaw" : voiceNoteFormat.trim().toLowerCase();
+    }
+
+    @Override
+    public int metricsPort() {
+        return metricsPort == 0 ? port + 2 : metricsPort;
+    }
+
+    @Override
+    public int conversationShards() {
+        return conversationShards > 0 ? conversationShards : Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,113 @@
+package model;
+
+import java.net.ProtocolException;
+import java.util.Arrays;
+
+/**
+ * Decodificador incremental de frames del protocolo 2 ({@link FrameCodec}).
+ * Recibe los bytes tal como llegan del socket, en fragmentos de cualquier
+ * tamaño, y entrega cada frame completo al ClientHandler. El audio de las notas
+ * de voz no se acumula: cada fragmento se pasa al handler directamente desde
+ * el búfer de lectura. Lo usan tanto el transporte bloqueante como el NIO.
+ * No es seguro para uso concurrente: cada conexión tiene el suyo.
+ */
+final class FrameDecoder {
+    // Igual que el límite de línea del protocolo de texto
+    private static final int MAX_PAYLOAD = 64 * 1024;
+
+    private final ClientHandler handler;
+    private final byte[] header = new byte[FrameCodec.MAX_HEADER_BYTES];
+    private int headerLength = 0;
+    private byte[] payload = new byte[256];
+    private int payloadLength = 0;
+
+    // Frame en curso (ya leída su cabecera)
+    private boolean inPayload = false;
+    private int type;
+    private int flags;
+    private int requestId;
+    private int remaining;
+    // Resultado de readVarint
+    private long varint;
+
+    FrameDecoder(ClientHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Decodifica un fragmento de la entrada.
+     *
+     * @return false si la sesión debe terminar
+     * @throws ProtocolException si un frame está mal formado o excede el tamaño máximo
+     */
+    boolean feed(byte[] data, int offset, int length) throws ProtocolException {
+        int end = offset + length;
+        while (offset < end) {
+            if (!inPayload) {
+                header[headerLength++] = data[offset++];
+                if (!parseHeader()) {
+                    if (headerLength == header.length) throw new ProtocolException("Cabecera de frame inválida");
+                    continue;
+                }
+                headerLength = 0;
+                payloadLength = 0;
+                inPayload = true;
+                if (remaining == 0 && !complete()) return false;
+                continue;
+            }
+
+            int n = Math.min(remaining, end - offset);
+            if (type == FrameCodec.VOICE_DATA) {
+                handler.handleVoiceData(data, offset, n);
+            } else {
+                System.arraycopy(data, offset, payload, payloadLength, n);
+                payloadLength += n;
+            }
+            offset += n;
+            remaining -= n;
+            if (remaining == 0 && !complete()) return false;
+        }
+        return true;
+    }
+
+    // true si la cabecera acumulada está completa (y deja sus campos en el frame en curso)
+    private boolean parseHeader() throws ProtocolException {
+        if (headerLength < 4) return false;
+        int pos = readVarint(2);
+        if (pos < 0) return false;
+        long id = varint;
+        pos = readVarint(pos);
+        if (pos < 0) return false;
+        if (id > 0xffffffffL || varint > Integer.MAX_VALUE) throw new ProtocolException("Cabecera de frame inválida");
+
+        type = header[0] & 0xff;
+        flags = header[1] & 0xff;
+        requestId = (int) id;
+        remaining = (int) varint;
+        if (type != FrameCodec.VOICE_DATA) {
+            if (remaining > MAX_PAYLOAD) throw new ProtocolException("Frame demasiado grande: " + remaining + " bytes");
+            if (remaining > payload.length) payload = Arrays.copyOf(payload, Math.max(remaining, payload.length * 2));
+        }
+        return true;
+    }
+
+    // Lee un varint de la cabecera; -1 si aún faltan bytes
+    private int readVarint(int pos) {
+        long value = 0;
+        for (int shift = 0; pos < headerLength; shift += 7) {
+            byte b = header[pos++];
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                varint = value;
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private boolean complete() throws ProtocolException {
+        inPayload = false;
+        if (type == FrameCodec.VOICE_DATA) return true;
+        return handler.handleFrame(type, flags, requestId, payload, payloadLength);
+    }
+}
@@ -0,0 +1,62 @@
+package model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import service.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Endpoint HTTP local con las métricas del servidor ({@link Metrics}) en el
+ * formato de texto de Prometheus: GET http://127.0.0.1:&lt;puerto&gt;/metrics.
+ * Escucha solo en loopback y atiende con el hilo del propio HttpServer: una
+ * exportación es barata y no compite con los hilos del chat.
+ */
+final class MetricsHttpServer {
+    private final HttpServer server;
+
+    /**
+     * @param port Puerto de escucha en 127.0.0.1
+     * @throws IOException si no se puede abrir el puerto
+     */
+    MetricsHttpServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", MetricsHttpServer::handle);
+    }
+
+    void start() {
+        server.start();
+        System.out.println("Métricas disponibles en http://127.0.0.1:" + port() + "/metrics");
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    void close() {
+        server.stop(0);
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
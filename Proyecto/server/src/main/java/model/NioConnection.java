@@ -0,0 +1,296 @@
+package model;
+
+import interfaces.ClientTransport;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Conexión de un cliente atendida por un reactor NIO.
+ * Decodifica de forma incremental el protocolo de líneas y el bloque binario
+ * de VOICE_NOTE_START / VOICE_NOTE_GROUP_START, y entrega cada evento al
+ * ClientHandler asociado; si el cliente acuerda el protocolo 2 los bytes pasan
+ * a un {@link FrameDecoder}. La salida va a una cola acotada que el reactor
+ * vacía cuando el canal está listo, sin bloquear al hilo que envía.
+ */
+final class NioConnection implements ClientTransport {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    // Frames por escritura con gathering (writev)
+    private static final int MAX_GATHER = 64;
+
+    private final SocketChannel channel;
+    private final NioServer.Reactor reactor;
+    private final ClientHandler handler;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final OutboundQueue outbound;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private SelectionKey key;
+
+    // Estado del decodificador (solo lo toca el hilo del reactor)
+    private byte[] lineBuffer = new byte[256];
+    private int lineLength = 0;
+    private boolean registered = false;
+    private ClientHandler.VoiceRelay relay;
+    // Protocolo 2 acordado: a partir de aquí solo llegan frames
+    private FrameDecoder frames;
+    // Frames retirados de la cola y aún no escritos por completo (solo el reactor)
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private int gatherStart = 0;
+    private int gatherEnd = 0;
+    private volatile boolean closeAfterFlush = false;
+    private volatile boolean abortRequested = false;
+    // Lectura en pausa porque la conversación a la que escribe está atrasada
+    private volatile boolean readPaused = false;
+
+    NioConnection(SocketChannel channel, NioServer.Reactor reactor, long queueBytes, OutboundQueue.Policy policy) {
+        this.channel = channel;
+        this.reactor = reactor;
+        this.outbound = new OutboundQueue(queueBytes, policy);
+        this.handler = new ClientHandler(this);
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Lee lo disponible en el canal y lo decodifica. Se invoca desde el reactor.
+     */
+    void onReadable() {
+        try {
+            int n = channel.read(readBuffer);
+            if (n < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            decode(readBuffer);
+            readBuffer.clear();
+            pauseIfBehind();
+        } catch (IOException e) {
+            System.err.println("Error leyendo de cliente: " + e.getMessage());
+            close();
+        } catch (RuntimeException e) {
+            System.err.println("Error procesando comando de cliente: " + e.getMessage());
+            close();
+        }
+    }
+
+    // Deja de leer (sin OP_READ) hasta que la conversación se ponga al día; mientras
+    // tanto los bytes quedan en el socket y TCP frena al cliente
+    private void pauseIfBehind() {
+        if (closed.get()) return;
+        readPaused = true;
+        if (!handler.pauseReading(this::resumeReading)) {
+            readPaused = false;
+            return;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    // Desde otro hilo: el reactor vuelve a activar OP_READ en flushOutbound
+    private void resumeReading() {
+        readPaused = false;
+        reactor.requestWrite(this);
+    }
+
+    private void decode(ByteBuffer buffer) throws IOException {
+        byte[] array = buffer.array();
+        while (buffer.hasRemaining() && !closed.get()) {
+            if (frames != null) {
+                if (closeAfterFlush) return;
+                boolean open = frames.feed(array, buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                buffer.position(buffer.limit());
+                if (!open) requestClose();
+                return;
+            }
+
+
+            // Modo binario: bytes de audio de una nota de voz
+            if (relay != null && relay.remaining() > 0) {
+                int chunk = (int) Math.min(relay.remaining(), buffer.remaining());
+                relay.accept(array, buffer.arrayOffset() + buffer.position(), chunk);
+                buffer.position(buffer.position() + chunk);
+                continue;
+            }
+
+            byte b = buffer.get();
+            if (b == '\n') {
+                String line = new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8);
+                lineLength = 0;
+                onLine(line);
+            } else if (b != '\r') {
+                appendToLine(b);
+            }
+        }
+    }
+
+    private void appendToLine(byte b) {
+        if (lineLength == lineBuffer.length) {
+            if (lineBuffer.length >= MAX_LINE_LENGTH) {
+                System.err.println("Línea demasiado larga, cerrando conexión");
+                close();
+                return;
+            }
+            lineBuffer = java.util.Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+        }
+        lineBuffer[lineLength++] = b;
+    }
+
+    private void onLine(String line) {
+        if (closeAfterFlush) return;
+
+        if (!registered) {
+            if (handler.handleProtocolRequest(line)) {
+                // Con el protocolo 2 el registro llega en el primer frame; con el 1, en la próxima línea
+                if (handler.getProtocol() >= FrameCodec.VERSION) {
+                    registered = true;
+                    frames = new FrameDecoder(handler);
+                }
+                return;
+            }
+            registered = true;
+            if (!handler.handleRegistration(line)) {
+                requestClose();
+            }
+            return;
+        }
+
+        // Línea de cierre de una nota de voz ya recibida
+        if (relay != null) {
+            ClientHandler.VoiceRelay finished = relay;
+            relay = null;
+            finished.finish(line);
+            return;
+        }
+
+        if (ClientHandler.isVoiceNoteHeader(line)) {
+            relay = handler.beginVoiceNote(line);
+            return;
+        }
+
+        if (!handler.handleLine(line)) {
+            requestClose();
+        }
+    }
+
+    @Override
+    public boolean write(ByteBuffer frame) throws IOException {
+        if (closed.get() || abortRequested) {
+            throw new IOException("Conexión cerrada");
+        }
+        switch (outbound.offer(frame)) {
+            case DROPPED -> {
+                return false;
+            }
+            case OVERFLOW -> {
+                System.err.println("Cliente lento desconectado: " + channel.socket().getRemoteSocketAddress());
+                abort();
+                throw new IOException("Cola de salida llena");
+            }
+            default -> {
+                if (writeRequested.compareAndSet(false, true)) {
+                    reactor.requestWrite(this);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Escribe todo lo posible de la cola de salida sin bloquear, varios frames por
+     * llamada al sistema (gathering write). Si el socket no acepta más datos se
+     * activa OP_WRITE para continuar luego.
+     */
+    void flushOutbound() {
+        if (closed.get() || key == null) return;
+        if (abortRequested) {
+            close();
+            return;
+        }
+        // Una escritura posterior a este punto vuelve a solicitar el vaciado
+        writeRequested.set(false);
+        boolean drained;
+        try {
+            while (true) {
+                if (gatherStart == gatherEnd) {
+                    gatherStart = 0;
+                    gatherEnd = 0;
+                    ByteBuffer next;
+                    while (gatherEnd < MAX_GATHER && (next = outbound.poll()) != null) {
+                        gather[gatherEnd++] = next;
+                    }
+                    if (gatherEnd == 0) break;
+                }
+                channel.write(gather, gatherStart, gatherEnd - gatherStart);
+                while (gatherStart < gatherEnd && !gather[gatherStart].hasRemaining()) {
+                    gather[gatherStart++] = null;
+                }
+                if (gatherStart < gatherEnd) break;
+            }
+            drained = gatherStart == gatherEnd;
+            int read = readPaused ? 0 : SelectionKey.OP_READ;
+            key.interestOps(drained ? read : read | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close();
+            return;
+        } catch (java.nio.channels.CancelledKeyException e) {
+            close();
+            return;
+        }
+        if (drained && closeAfterFlush) {
+            close();
+        }
+    }
+
+    private void requestClose() {
+        closeAfterFlush = true;
+        reactor.requestWrite(this);
+    }
+
+    @Override
+    public Socket socket() {
+        return channel.socket();
+    }
+
+    @Override
+    public QueueStats queueStats() {
+        return outbound.stats();
+    }
+
+    /**
+     * Solicita al reactor cerrar la conexión sin enviar lo pendiente.
+     */
+    @Override
+    public void abort() {
+        abortRequested = true;
+        reactor.requestWrite(this);
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        ClientHandler.VoiceRelay pending = relay;
+        relay = null;
+        if (pending != null) {
+            // Nota de voz incompleta: no se guarda en el historial
+            pending.abort();
+        }
+        handler.cleanup();
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error cerrando socket: " + e.getMessage());
+        }
+        java.util.Arrays.fill(gather, null);
+        outbound.clear();
+    }
+}
@@ -0,0 +1,196 @@
+package model;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Front-end TCP no bloqueante basado en Selector.
+ * Un hilo acepta conexiones y las reparte en round-robin entre un pequeño
+ * conjunto de reactores; cada reactor atiende muchas conexiones con un solo
+ * hilo, por lo que el número de clientes solo queda limitado por los
+ * descriptores de archivo disponibles.
+ */
+public class NioServer {
+    private final int port;
+    private final Reactor[] reactors;
+    private final long queueBytes;
+    private final OutboundQueue.Policy queuePolicy;
+
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+    private int nextReactor = 0;
+
+    /**
+     * @param port Puerto TCP de escucha
+     * @param reactorCount Cantidad de hilos reactores (bucles de eventos)
+     * @param queueBytes Límite de la cola de salida de cada conexión en bytes
+     * @param queuePolicy Política al llenarse la cola de salida
+     */
+    NioServer(int port, int reactorCount, long queueBytes, OutboundQueue.Policy queuePolicy) {
+        this.port = port;
+        this.reactors = new Reactor[Math.max(1, reactorCount)];
+        this.queueBytes = queueBytes;
+        this.queuePolicy = queuePolicy;
+    }
+
+    /**
+     * Abre el canal de escucha y arranca el aceptador y los reactores.
+     *
+     * @throws IOException si no se puede abrir el puerto
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        running = true;
+
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(i);
+            reactors[i].thread.start();
+        }
+
+        Thread acceptor = new Thread(this::acceptLoop, "NIO-Acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Detiene la aceptación y cierra todas las conexiones.
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            System.err.println("Error cerrando canal TCP: " + e.getMessage());
+        }
+        for (Reactor r : reactors) {
+            if (r != null) r.shutdown();
+        }
+    }
+
+    private void acceptLoop() {
+        System.out.println("Servidor TCP (NIO, " + reactors.length + " reactores) escuchando en puerto " + port + "...");
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Reactor reactor = reactors[nextReactor];
+                nextReactor = (nextReactor + 1) % reactors.length;
+                reactor.register(channel);
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error aceptando conexión TCP del cliente: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Bucle de eventos de un Selector. Todas las lecturas, escrituras y
+     * cambios de interés de sus conexiones ocurren en este hilo.
+     */
+    final class Reactor implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+        Reactor(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "NIO-Reactor-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void register(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Solicita vaciar la cola de salida de una conexión. Si se llama desde
+         * el propio reactor se escribe de inmediato.
+         */
+        void requestWrite(NioConnection connection) {
+            if (Thread.currentThread() == thread) {
+                connection.flushOutbound();
+            } else {
+                pendingWrites.add(connection);
+                selector.wakeup();
+            }
+        }
+
+        void shutdown() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection connection) {
+                    connection.close();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerPending();
+                    flushPending();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.close();
+                            continue;
+                        }
+                        if (key.isWritable()) {
+                            connection.flushOutbound();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        System.err.println("Error en reactor NIO: " + e.getMessage());
+                    }
+                } catch (java.nio.channels.ClosedSelectorException e) {
+                    break;
+                }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                try {
+                    NioConnection connection = new NioConnection(channel, this, queueBytes, queuePolicy);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connection.attach(key);
+                } catch (ClosedChannelException e) {
+                    System.err.println("Conexión cerrada antes de registrarse: " + e.getMessage());
+                }
+            }
+        }
+
+        private void flushPending() {
+            NioConnection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                connection.flushOutbound();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package model;
+
+import model.AudioCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Mensaje saliente, codificado como mucho una vez por versión del protocolo.
+ * Un mismo aviso (mensaje de grupo, inicio de llamada, fragmento de nota de voz)
+ * se entrega a clientes de texto y binarios: cada uno recibe el búfer de su
+ * versión, creado al primer uso y compartido por todos los de esa versión.
+ * Los búferes no deben modificarse (ver {@link interfaces.ClientTransport#write(ByteBuffer)}).
+ */
+public final class OutboundFrame {
+    private final int type;
+    private final int flags;
+    private final int requestId;
+    // Carga del frame binario; en líneas y datos también es el contenido de texto
+    private final byte[] payload;
+    private final String legacyLine;
+    private volatile ByteBuffer legacy;
+    private volatile ByteBuffer framed;
+
+    private OutboundFrame(int type, int flags, int requestId, byte[] payload, String legacyLine) {
+        this.type = type;
+        this.flags = flags;
+        this.requestId = requestId;
+        this.payload = payload;
+        this.legacyLine = legacyLine;
+    }
+
+    /**
+     * Una línea de texto del protocolo.
+     *
+     * @param message Texto, sin salto de línea
+     */
+    public static OutboundFrame line(String message) {
+        return new OutboundFrame(FrameCodec.TEXT, 0, 0, message.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    /**
+     * Respuesta a una petición del cliente. Con id 0 es una línea común; si no,
+     * es un ACK con ese id o, para clientes de texto, líneas con el id como
+     * prefijo: "#&lt;id&gt;-" en todas salvo la última, que lleva "#&lt;id&gt; "
+     * (una respuesta vacía es solo "#&lt;id&gt; ").
+     */
+    public static OutboundFrame reply(int requestId, String message) {
+        if (requestId == 0) return line(message);
+        String tag = "#" + Integer.toUnsignedString(requestId);
+        StringBuilder tagged = new StringBuilder(message.length() + 16);
+        int start = 0;
+        int end;
+        while ((end = message.indexOf('\n', start)) >= 0) {
+            tagged.append(tag).append('-').append(message, start, end).append('\n');
+            start = end + 1;
+        }
+        tagged.append(tag).append(' ').append(message, start, message.length());
+        return new OutboundFrame(FrameCodec.ACK, 0, requestId, message.getBytes(StandardCharsets.UTF_8), tagged.toString());
+    }
+
+    /**
+     * Encabezado de una nota de voz hacia sus destinatarios.
+     *
+     * @param sender Remitente
+     * @param group Grupo, o null si es individual
+     * @param size Tamaño del audio en bytes
+     * @param codec Códec del audio
+     */
+    public static OutboundFrame voiceStart(String sender, String group, long size, AudioCodec codec) {
+        String codecId = codec == AudioCodec.PCM16 ? "" : codec.id();
+        byte[] fields = new FrameCodec.Fields().string(sender).string(group).varint(size).string(codecId).toByteArray();
+        String suffix = codecId.isEmpty() ? "" : " " + codecId;
+        String line = group != null
+                ? "VOICE_NOTE_GROUP_START " + sender + " " + group + " " + size + suffix
+                : "VOICE_NOTE_START " + sender + " " + size + suffix;
+        return new OutboundFrame(FrameCodec.VOICE_START, group != null ? FrameCodec.FLAG_GROUP : 0, 0, fields, line);
+    }
+
+    /**
+     * Fragmento de audio de una nota de voz. Los bytes se copian una vez; los
+     * clientes de texto reciben esa misma copia.
+     */
+    public static OutboundFrame voiceData(byte[] data, int offset, int length) {
+        return new OutboundFrame(FrameCodec.VOICE_DATA, 0, 0, Arrays.copyOfRange(data, offset, offset + length), null);
+    }
+
+    /**
+     * Fragmento de audio de una nota de voz sin copiar: el arreglo pasa a ser
+     * del mensaje y no debe modificarse después.
+     */
+    public static OutboundFrame voiceData(byte[] data) {
+        return new OutboundFrame(FrameCodec.VOICE_DATA, 0, 0, data, null);
+    }
+
+    /**
+     * Cierre de una nota de voz.
+     */
+    public static OutboundFrame voiceEnd(boolean group) {
+        return new OutboundFrame(FrameCodec.VOICE_END, group ? FrameCodec.FLAG_GROUP : 0, 0, new byte[0],
+                group ? "VOICE_NOTE_GROUP_END" : "VOICE_NOTE_END");
+    }
+
+    /**
+     * Bytes de este mensaje para un cliente con la versión de protocolo dada.
+     */
+    public ByteBuffer bytes(int protocol) {
+        if (protocol >= FrameCodec.VERSION) {
+            ByteBuffer b = framed;
+            if (b == null) {
+                // Carrera benigna: dos hilos pueden codificarlo a la vez, ambos resultados son iguales
+                b = ByteBuffer.wrap(FrameCodec.encode(type, flags, requestId, payload, 0, payload.length));
+                framed = b;
+            }
+            return b;
+        }
+        ByteBuffer b = legacy;
+        if (b == null) {
+            if (type == FrameCodec.VOICE_DATA) {
+                b = ByteBuffer.wrap(payload);
+            } else if (legacyLine != null) {
+                b = ByteBuffer.wrap((legacyLine + "\n").getBytes(StandardCharsets.UTF_8));
+            } else {
+                byte[] line = Arrays.copyOf(payload, payload.length + 1);
+                line[payload.length] = '\n';
+                b = ByteBuffer.wrap(line);
+            }
+            legacy = b;
+        }
+        return b;
+    }
+}
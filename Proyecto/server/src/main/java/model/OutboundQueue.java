@@ -0,0 +1,226 @@
+package model;
+
+import interfaces.ClientTransport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cola de salida acotada de una conexión. Cualquier hilo puede encolar sin esperar
+ * a la red; un único consumidor (el reactor NIO o la tarea escritora del socket)
+ * la vacía en orden. Cuando los bytes pendientes superan el límite se aplica la
+ * política de contrapresión configurada.
+ */
+final class OutboundQueue {
+
+    /**
+     * Qué hacer cuando un cliente no consume su salida al ritmo que se le envía.
+     */
+    enum Policy {
+        /** Descarta la escritura y mantiene la conexión. */
+        DROP,
+        /** Desconecta al cliente lento. */
+        DISCONNECT,
+        /** Desborda a un archivo temporal y lo envía cuando el cliente se recupere. */
+        SPILL;
+
+        static Policy from(String value) {
+            if (value == null || value.isBlank()) return DISCONNECT;
+            return switch (value.trim().toLowerCase()) {
+                case "drop" -> DROP;
+                case "spill" -> SPILL;
+                default -> DISCONNECT;
+            };
+        }
+    }
+
+    /**
+     * Resultado de encolar una escritura.
+     */
+    enum Result { QUEUED, DROPPED, OVERFLOW }
+
+    static final long DEFAULT_LIMIT_BYTES = 4L * 1024 * 1024;
+    private static final int SPILL_CHUNK = 64 * 1024;
+    // Tope del archivo de desborde por conexión; al superarlo se desconecta
+    private static final long MAX_SPILL_BYTES = 256L * 1024 * 1024;
+
+    private final long limitBytes;
+    private final Policy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<ByteBuffer> memory = new ArrayDeque<>();
+    private long memoryBytes = 0;
+
+    private Path spillPath;
+    private FileChannel spill;
+    private long spillRead = 0;
+    private long spillWrite = 0;
+
+    private long peakBytes = 0;
+    private long queued = 0;
+    private long dropped = 0;
+    private long spilledBytes = 0;
+
+    /**
+     * @param limitBytes Bytes pendientes en memoria antes de aplicar la política; 0 usa 4 MiB
+     * @param policy Política de contrapresión
+     */
+    OutboundQueue(long limitBytes, Policy policy) {
+        this.limitBytes = limitBytes > 0 ? limitBytes : DEFAULT_LIMIT_BYTES;
+        this.policy = policy;
+    }
+
+    /**
+     * Encola un frame por referencia (se guarda un duplicate(), el contenido se
+     * comparte con las demás conexiones que reciben el mismo frame). Un frame que
+     * no cabe nunca se parte: se acepta completo (en memoria o en el desborde) o
+     * se rechaza completo.
+     */
+    Result offer(ByteBuffer frame) {
+        int length = frame.remaining();
+        lock.lock();
+        try {
+            // Mientras haya desborde pendiente todo va detrás de él para conservar el orden
+            boolean spilling = spillWrite > spillRead;
+            if (!spilling && (memoryBytes == 0 || memoryBytes + length <= limitBytes)) {
+                memory.add(frame.duplicate());
+                memoryBytes += length;
+                accepted();
+                return Result.QUEUED;
+            }
+            switch (policy) {
+                case DROP -> {
+                    dropped++;
+                    return Result.DROPPED;
+                }
+                case SPILL -> {
+                    if (spillWrite - spillRead + length > MAX_SPILL_BYTES) {
+                        return Result.OVERFLOW;
+                    }
+                    try {
+                        toSpill(frame.duplicate());
+                    } catch (IOException e) {
+                        System.err.println("[OutboundQueue] Error escribiendo desborde: " + e.getMessage());
+                        return Result.OVERFLOW;
+                    }
+                    accepted();
+                    return Result.QUEUED;
+                }
+                default -> {
+                    return Result.OVERFLOW;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void accepted() {
+        queued++;
+        peakBytes = Math.max(peakBytes, pendingBytesLocked());
+    }
+
+    private void toSpill(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        if (spill == null) {
+            spillPath = Files.createTempFile("outbound-", ".spill");
+            spill = FileChannel.open(spillPath, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        while (src.hasRemaining()) {
+            spillWrite += spill.write(src, spillWrite);
+        }
+        spilledBytes += length;
+    }
+
+    /**
+     * Retira el siguiente bloque a enviar (primero la memoria, luego el desborde
+     * en trozos de 64 KiB). Solo lo invoca el consumidor de la conexión.
+     *
+     * @return Bloque listo para escribir, o null si la cola está vacía
+     * @throws IOException si falla la lectura del archivo de desborde
+     */
+    ByteBuffer poll() throws IOException {
+        lock.lock();
+        try {
+            ByteBuffer head = memory.poll();
+            if (head != null) {
+                memoryBytes -= head.remaining();
+                return head;
+            }
+            if (spillRead >= spillWrite) {
+                return null;
+            }
+            int n = (int) Math.min(SPILL_CHUNK, spillWrite - spillRead);
+            ByteBuffer chunk = ByteBuffer.allocate(n);
+            while (chunk.hasRemaining()) {
+                if (spill.read(chunk, spillRead + chunk.position()) < 0) {
+                    throw new EOFException("Archivo de desborde truncado");
+                }
+            }
+            chunk.flip();
+            spillRead += n;
+            if (spillRead == spillWrite) {
+                // Desborde consumido: se reutiliza el archivo desde el inicio
+                spill.truncate(0);
+                spillRead = 0;
+                spillWrite = 0;
+            }
+            return chunk;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        lock.lock();
+        try {
+            return memory.isEmpty() && spillWrite == spillRead;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long pendingBytesLocked() {
+        return memoryBytes + (spillWrite - spillRead);
+    }
+
+    ClientTransport.QueueStats stats() {
+        lock.lock();
+        try {
+            return new ClientTransport.QueueStats(pendingBytesLocked(), peakBytes, queued, dropped, spilledBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Descarta todo lo pendiente y elimina el archivo de desborde.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            memory.clear();
+            memoryBytes = 0;
+            spillRead = 0;
+            spillWrite = 0;
+            if (spill != null) {
+                try {
+                    spill.close();
+                    Files.deleteIfExists(spillPath);
+                } catch (IOException e) {
+                    System.err.println("[OutboundQueue] No se pudo eliminar " + spillPath + ": " + e.getMessage());
+                }
+                spill = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
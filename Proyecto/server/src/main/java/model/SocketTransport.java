@@ -0,0 +1,140 @@
+package model;
+
+import interfaces.ClientTransport;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transporte bloqueante sobre un Socket clásico.
+ * Los emisores solo encolan en la cola de salida acotada; una tarea escritora
+ * (como máximo una por conexión a la vez) la vacía hacia el socket, de modo que
+ * un cliente lento bloquea únicamente a su propia tarea y no a quien le envía.
+ */
+public class SocketTransport implements ClientTransport {
+    // Espera máxima al cerrar para que salga lo pendiente (p. ej. la despedida)
+    private static final long CLOSE_LINGER_MS = 2000;
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final Executor writers;
+    private final OutboundQueue outbound;
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final CountDownLatch drainedOnClose = new CountDownLatch(1);
+    private volatile boolean closing = false;
+
+    /**
+     * @param socket Socket del cliente
+     * @param writers Executor donde corren las tareas escritoras
+     * @param queueBytes Límite de la cola de salida en bytes; 0 usa el valor por defecto
+     * @param policy Política al llenarse la cola
+     */
+    SocketTransport(Socket socket, Executor writers, long queueBytes, OutboundQueue.Policy policy) throws IOException {
+        this.socket = socket;
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+        this.writers = writers;
+        this.outbound = new OutboundQueue(queueBytes, policy);
+    }
+
+    @Override
+    public boolean write(ByteBuffer frame) throws IOException {
+        if (closed.get() || closing) {
+            throw new IOException("Conexión cerrada");
+        }
+        switch (outbound.offer(frame)) {
+            case DROPPED -> {
+                return false;
+            }
+            case OVERFLOW -> {
+                System.err.println("Cliente lento desconectado: " + socket.getRemoteSocketAddress());
+                abort();
+                throw new IOException("Cola de salida llena");
+            }
+            default -> {
+                scheduleDrain();
+                return true;
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                writers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                abort();
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            do {
+                ByteBuffer chunk;
+                // El BufferedOutputStream agrupa los frames pequeños en una sola escritura
+                while ((chunk = outbound.poll()) != null) {
+                    out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                }
+                out.flush();
+                draining.set(false);
+                // Otro emisor pudo encolar justo después de vaciar la cola
+            } while (!outbound.isEmpty() && draining.compareAndSet(false, true));
+        } catch (IOException e) {
+            draining.set(false);
+            if (!closed.get()) {
+                System.err.println("Error escribiendo a cliente: " + e.getMessage());
+            }
+            abort();
+        }
+        if (closing && outbound.isEmpty()) {
+            drainedOnClose.countDown();
+        }
+    }
+
+    @Override
+    public Socket socket() {
+        return socket;
+    }
+
+    @Override
+    public QueueStats queueStats() {
+        return outbound.stats();
+    }
+
+    @Override
+    public void close() {
+        if (closed.get() || closing) return;
+        closing = true;
+        scheduleDrain();
+        try {
+            drainedOnClose.await(CLOSE_LINGER_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        abort();
+    }
+
+    @Override
+    public void abort() {
+        if (!closed.compareAndSet(false, true)) return;
+        outbound.clear();
+        drainedOnClose.countDown();
+        try {
+            if (!socket.isClosed()) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error cerrando socket: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package model;
+
+import interfaces.CallManager;
+import model.AudioCodec;
+import service.CallMixer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Relay de audio UDP de las llamadas en el puerto TCP+1.
+ * Cada cliente envía un solo flujo al servidor y un hilo dedicado lo reenvía a
+ * los demás participantes de su llamada (según el CallManager), así la subida
+ * de cada cliente no crece con el tamaño del grupo.
+ * <p>
+ * Cada datagrama lleva la cabecera de medios de CallAudio (secuencia, marca de
+ * tiempo y ssrc del emisor), que el relay reenvía intacta.
+ * <p>
+ * Las llamadas con mezcla activa (ver {@link #startMix}) no se reenvían: el audio de
+ * cada emisor entra a un {@link CallMixer} y cada participante recibe un único flujo
+ * con la mezcla de los demás.
+ * <p>
+ * La dirección UDP de cada usuario se aprende de /udpport y del datagrama HELLO
+ * que el cliente envía al conectarse (útil detrás de NAT).
+ */
+final class UdpRelay implements Runnable {
+    private static final int MAX_DATAGRAM = 64 * 1024;
+    // Formato de CallAudio en los clientes Java: PCM 16-bit mono little-endian a 16 kHz
+    private static final int CALL_SAMPLE_RATE = 16000;
+    // Cabecera de medios de CallAudio.MediaHeader: versión, tipo, secuencia, marca de tiempo, ssrc
+    private static final int MEDIA_HEADER_BYTES = 12;
+    private static final int MEDIA_VERSION = 0x80;
+
+    private final DatagramChannel channel;
+    private final CallManager calls;
+    // Recibe en un búfer directo: el kernel copia sin pasar por el heap
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+    private final Map<SocketAddress, String> users = new ConcurrentHashMap<>();
+    private final Map<String, SocketAddress> addresses = new ConcurrentHashMap<>();
+    private final Map<String, CallMixer> mixers = new ConcurrentHashMap<>();
+    // Decodificación de lo que entra al mezclador (solo la usa el hilo del relay)
+    private final Map<AudioCodec, AudioCodec.Decoder> decoders = new EnumMap<>(AudioCodec.class);
+    private final byte[] encoded = new byte[MAX_DATAGRAM];
+    private final short[] samples = new short[MAX_DATAGRAM * 2];
+    private final Thread thread;
+
+    private final LongAdder relayedPackets = new LongAdder();
+    private final LongAdder relayedBytes = new LongAdder();
+    private final LongAdder unknownPackets = new LongAdder();
+    private final LongAdder mixedPackets = new LongAdder();
+
+    /**
+     * @param port Puerto UDP de escucha
+     * @param calls Gestor de llamadas con los participantes de cada una
+     * @throws IOException si no se puede abrir el puerto
+     */
+    UdpRelay(int port, CallManager calls) throws IOException {
+        this.calls = calls;
+        this.channel = DatagramChannel.open();
+        this.channel.bind(new InetSocketAddress(port));
+        this.thread = new Thread(this, "UDP-Relay");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    int port() {
+        return ((InetSocketAddress) channel.socket().getLocalSocketAddress()).getPort();
+    }
+
+    /**
+     * Asocia la dirección UDP de un usuario (reemplaza la anterior).
+     */
+    void register(SocketAddress address, String username) {
+        SocketAddress previous = addresses.put(username, address);
+        if (previous != null && !previous.equals(address)) {
+            users.remove(previous, username);
+        }
+        users.put(address, username);
+    }
+
+    void unregister(String username) {
+        SocketAddress address = addresses.remove(username);
+        if (address != null) {
+            users.remove(address, username);
+        }
+    }
+
+    /**
+     * Empieza a mezclar una llamada en lugar de reenviar cada flujo.
+     * Los emisores pueden usar cualquier códec (se decodifica según el tipo de
+     * carga de cada paquete); la mezcla se envía con el códec acordado.
+     *
+     * @param callId Llamada a mezclar
+     * @param participants Participantes iniciales
+     * @param codec Códec con el que se codifica la mezcla de cada oyente
+     */
+    void startMix(String callId, Set<String> participants, AudioCodec codec) {
+        // La mezcla es un flujo más para los clientes: su propio ssrc y un paquete reutilizado
+        // (el reloj del mezclador nunca ejecuta dos tramas de la misma llamada a la vez)
+        int ssrc = callId.hashCode();
+        MixSender sender = new MixSender(ssrc, codec);
+        CallMixer mixer = new CallMixer(callId, CALL_SAMPLE_RATE, sender::send);
+        for (String user : participants) mixer.join(user);
+        CallMixer previous = mixers.put(callId, mixer);
+        if (previous != null) previous.close();
+    }
+
+    // Quien sale de la llamada deja de sumarse a la mezcla y de recibirla
+    void leaveMix(String callId, String username) {
+        CallMixer mixer = mixers.get(callId);
+        if (mixer != null) mixer.leave(username);
+    }
+
+    void stopMix(String callId) {
+        CallMixer mixer = mixers.remove(callId);
+        if (mixer != null) mixer.close();
+    }
+
+    /**
+     * Envío de la mezcla de una llamada. Lo invoca el reloj del mezclador;
+     * DatagramChannel admite send concurrente con receive.
+     */
+    private final class MixSender {
+        private final int ssrc;
+        private final AudioCodec codec;
+        private final ByteBuffer packet = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        private final byte[] payload = new byte[MAX_DATAGRAM];
+        private final Map<String, AudioCodec.Encoder> encoders = new ConcurrentHashMap<>();
+
+        MixSender(int ssrc, AudioCodec codec) {
+            this.ssrc = ssrc;
+            this.codec = codec;
+        }
+
+        void send(String listener, int seq, long ts, short[] frame) {
+            SocketAddress target = addresses.get(listener);
+            if (target == null) return;
+            try {
+                // ADPCM guarda estado: cada oyente tiene su propio codificador
+                AudioCodec.Encoder encoder = encoders.computeIfAbsent(listener, u -> codec.newEncoder());
+                int length = encoder.encode(frame, 0, frame.length, payload, 0);
+                packet.clear();
+                packet.put((byte) MEDIA_VERSION).put((byte) codec.payloadType()).putShort((short) seq)
+                        .putInt((int) ts).putInt(ssrc).put(payload, 0, length);
+                packet.flip();
+                int bytes = packet.remaining();
+                channel.send(packet, target);
+                mixedPackets.increment();
+                relayedBytes.add(bytes);
+            } catch (IOException e) {
+                System.err.println("[UDP] Error enviando mezcla a " + listener + ": " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                if (source == null) continue;
+                buffer.flip();
+
+                String sender = users.get(source);
+                if (sender == null) {
+                    handleHello(source);
+                    continue;
+                }
+                relay(sender);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                System.err.println("[UDP] Error en relay: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reenvía el datagrama del búfer a los demás participantes de la llamada del emisor
+    private void relay(String sender) throws IOException {
+        String callId = calls.getCallOfUser(sender);
+        if (callId == null) return;
+        CallMixer mixer = mixers.get(callId);
+        if (mixer != null) {
+            // Al mezclador solo entran las muestras: se salta la cabecera de medios y se decodifica
+            AudioCodec codec = buffer.remaining() > MEDIA_HEADER_BYTES && (buffer.get(0) & 0xC0) == MEDIA_VERSION
+                    ? AudioCodec.fromPayloadType(buffer.get(1) & 0x7f) : null;
+            if (codec == AudioCodec.PCM16) {
+                buffer.position(MEDIA_HEADER_BYTES);
+                mixer.add(sender, buffer);
+            } else if (codec != null) {
+                int length = buffer.remaining() - MEDIA_HEADER_BYTES;
+                buffer.position(MEDIA_HEADER_BYTES);
+                buffer.get(encoded, 0, length);
+                int count = decoders.computeIfAbsent(codec, AudioCodec::newDecoder)
+                        .decode(encoded, 0, length, samples, 0);
+                mixer.add(sender, samples, 0, count);
+            }
+            return;
+        }
+        Set<String> participants = calls.getParticipants(callId);
+        int length = buffer.remaining();
+        for (String user : participants) {
+            if (user.equals(sender)) continue;
+            SocketAddress target = addresses.get(user);
+            if (target == null) continue;
+            buffer.rewind();
+            channel.send(buffer, target);
+            relayedPackets.increment();
+            relayedBytes.add(length);
+        }
+    }
+
+    // HELLO <usuario>: se acepta si el usuario está conectado por TCP desde la misma IP
+    private void handleHello(SocketAddress source) {
+        String username = StandardCharsets.UTF_8.decode(buffer).toString().trim();
+        ClientHandler handler = username.isEmpty() ? null : ChatServer.getClientHandler(username);
+        if (handler != null && source instanceof InetSocketAddress udp
+                && udp.getAddress().equals(handler.getClientSocket().getInetAddress())) {
+            register(source, username);
+            System.out.println("[UDP] Dirección de " + username + " registrada: " + source);
+        } else {
+            unknownPackets.increment();
+        }
+    }
+
+    long getRelayedPackets() {
+        return relayedPackets.sum();
+    }
+
+    long getRelayedBytes() {
+        return relayedBytes.sum();
+    }
+
+    long getUnknownPackets() {
+        return unknownPackets.sum();
+    }
+
+    long getMixedPackets() {
+        return mixedPackets.sum();
+    }
+
+    void close() {
+        for (CallMixer mixer : mixers.values()) mixer.close();
+        mixers.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("[UDP] Error cerrando canal: " + e.getMessage());
+        }
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,23 +4,64 @@ import Chat.Call;
 import Chat.VoiceEntry;
 import Chat.VoiceObserverPrx;
 import com.zeroc.Ice.Current;
+import interfaces.CallManager;
 import model.ChatServer;
+import model.AudioCodec;
+import service.CallMixer;
 import service.HistoryService;
+import service.Metrics;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import Chat.CallChunk;
 import Chat.CallEvent;
 import java.util.UUID;
 
 
 public class CallImpl implements Call {
-    // username -> observer proxy
-    private final Map<String, VoiceObserverPrx> observers = new ConcurrentHashMap<>();
-    // callId -> Set<participants>
-    private final Map<String, Set<String>> activeCalls = new ConcurrentHashMap<>();
+    // Audio de llamada del cliente web: PCM 16-bit mono little-endian a 44.1 kHz
+    private static final int WEB_SAMPLE_RATE = 44100;
+    // Emisor con el que llega la mezcla N-1 al navegador
+    private static final String MIX_USER = "mix";
+    private static final Metrics.Histogram CALL_CHUNK = Metrics.histogram("chat_call_chunk_seconds", null,
+            "Tiempo de reenviar un fragmento de llamada Ice a los participantes");
+
+    // username -> cola serial de callbacks hacia su observer
+    private final ObserverDispatcher observers = new ObserverDispatcher();
+    // Registro de llamadas compartido con el servidor TCP y el relay UDP
+    private final CallManager calls;
+    // callId -> mezclador de las llamadas grupales (solo con callMode "mix")
+    private final Map<String, CallMixer> mixers = new ConcurrentHashMap<>();
+    // Llamadas colgadas o abandonadas por Ice o por TCP: ajusta los mezcladores y avisa a los observers
+    private final CallManager.CallListener callEnded = new CallManager.CallListener() {
+        @Override
+        public void callEnded(String callId, Set<String> participants, String endedBy) {
+            CallMixer mixer = mixers.remove(callId);
+            if (mixer != null) mixer.close();
+            for (String participant : participants) {
+                notifyCallEvent(participant, "call_ended", callId, endedBy, "", "", "private");
+            }
+        }
+
+        @Override
+        public void participantLeft(String callId, String username, Set<String> remaining) {
+            CallMixer mixer = mixers.get(callId);
+            if (mixer != null) mixer.leave(username);
+        }
+    };
+
+    /**
+     * @param calls Registro de llamadas del servidor
+     */
+    public CallImpl(CallManager calls) {
+        this.calls = calls;
+        calls.addListener(callEnded);
+    }
 
     @Override
     public void subscribe(String username, VoiceObserverPrx obs, Current current) {
@@ -32,35 +73,50 @@ public class CallImpl implements Call {
 
             // Agregar callback para limpiar cuando se cierre la conexión
             current.con.setCloseCallback(con -> {
-                observers.remove(username);
+                observers.unsubscribe(username, fixedProxy);
+                // Cliente web desconectado: sale de su llamada como si hubiera colgado
+                String callId = calls.getCallOfUser(username);
+                if (callId != null) calls.leaveCall(callId, username);
             });
             
-            observers.put(username, fixedProxy);
+            observers.subscribe(username, fixedProxy);
             
         } catch (Exception e) {
             System.err.println("[ICE] ✗ Error fijando proxy: " + e.getMessage());
             e.printStackTrace();
             // Intentar con el proxy original como fallback
-            observers.put(username, obs);
+            observers.subscribe(username, obs);
         }
     }
 
     @Override
     public void unsubscribe(String username, VoiceObserverPrx obs, Current current) {
-        observers.remove(username);
+        observers.unsubscribe(username, null);
         System.out.println("[ICE] VoiceObserver desuscrito: " + username);
     }
 
+    @Override
+    public String[] codecs(Current current) {
+        return Arrays.stream(AudioCodec.values()).map(AudioCodec::id).toArray(String[]::new);
+    }
+
     @Override
     public void sendVoiceNoteToUser(String fromUser, String toUser, byte[] audio, Current current) {
-        try {
-            // 1) Guardar bytes PCM16 como WAV
-            HistoryService.SavedAudio saved = HistoryService.saveVoiceBytes(audio);
+        sendEncodedVoiceNoteToUser(fromUser, toUser, AudioCodec.PCM16.id(), audio, current);
+    }
 
-            // 2) Registrar en historial (history.jsonl)
-            HistoryService.logVoiceNote(fromUser, toUser, saved.relativePath(), saved.sizeBytes());
+    @Override
+    public void sendEncodedVoiceNoteToUser(String fromUser, String toUser, String codec, byte[] audio, Current current) {
+        AudioCodec source = AudioCodec.fromId(codec);
+        if (source == null) {
+            System.err.println("[ICE] Códec de nota de voz no soportado: " + codec);
+            return;
+        }
+        try {
+            // 1) Guardar el audio como WAV (se transcodifica al formato de almacenamiento)
+            HistoryService.SavedAudio saved = HistoryService.saveVoiceBytes(source, audio);
 
-            // 3) Armar entrada de voz para el front
+            // 2) Armar entrada de voz para el front
             VoiceEntry entry = new VoiceEntry();
             entry.type = "voice_note";
             entry.scope = "private";
@@ -69,10 +125,17 @@ public class CallImpl implements Call {
             entry.group = "";
             entry.audioFile = saved.relativePath();
 
-            // 4) Notificar en tiempo real
-            notifyUser(fromUser, entry);
-            if (!fromUser.equals(toUser)) {
-                notifyUser(toUser, entry);
+            // 3) Registrar en historial y notificar en el hilo de la conversación,
+            // en orden con los mensajes del mismo chat privado
+            boolean queued = ChatServer.inPrivateChat(fromUser, toUser, () -> {
+                HistoryService.logVoiceNote(fromUser, toUser, saved.relativePath(), saved.sizeBytes());
+                notifyUser(fromUser, entry);
+                if (!fromUser.equals(toUser)) {
+                    notifyUser(toUser, entry);
+                }
+            });
+            if (!queued) {
+                System.err.println("[ICE] Conversación ocupada, nota de voz no entregada: " + saved.relativePath());
             }
 
         } catch (IOException e) {
@@ -82,10 +145,18 @@ public class CallImpl implements Call {
 
     @Override
     public void sendVoiceNoteToGroup(String fromUser, String groupName, byte[] audio, Current current) {
-        try {
-            HistoryService.SavedAudio saved = HistoryService.saveVoiceBytes(audio);
+        sendEncodedVoiceNoteToGroup(fromUser, groupName, AudioCodec.PCM16.id(), audio, current);
+    }
 
-            HistoryService.logVoiceGroup(fromUser, groupName, saved.relativePath(), saved.sizeBytes());
+    @Override
+    public void sendEncodedVoiceNoteToGroup(String fromUser, String groupName, String codec, byte[] audio, Current current) {
+        AudioCodec source = AudioCodec.fromId(codec);
+        if (source == null) {
+            System.err.println("[ICE] Códec de nota de voz no soportado: " + codec);
+            return;
+        }
+        try {
+            HistoryService.SavedAudio saved = HistoryService.saveVoiceBytes(source, audio);
 
             VoiceEntry entry = new VoiceEntry();
             entry.type = "voice_group";
@@ -95,17 +166,23 @@ public class CallImpl implements Call {
             entry.group = groupName;
             entry.audioFile = saved.relativePath();
 
-            // Miembros del grupo desde ChatServer, igual a como ya lo usas
-            Set<String> members = ChatServer.getGroupMembers(groupName);
             System.out.println("[ICE] Nota de voz a grupo guardada: " + saved.relativePath());
-            System.out.println("[ICE] Notificando a " + members.size() + " miembros del grupo: " + groupName);
-            for (String u : members) {
-                notifyUser(u, entry);
-            }
-            // Asegurar que el emisor también lo vea
-            if (!members.contains(fromUser)) {
-                System.out.println("[ICE] Notificando también al emisor: " + fromUser);
-                notifyUser(fromUser, entry);
+            // Registro y aviso en el hilo del grupo, en orden con sus mensajes y notas TCP
+            boolean queued = ChatServer.inGroup(groupName, () -> {
+                HistoryService.logVoiceGroup(fromUser, groupName, saved.relativePath(), saved.sizeBytes());
+                Set<String> members = ChatServer.getGroupMembers(groupName);
+                System.out.println("[ICE] Notificando a " + members.size() + " miembros del grupo: " + groupName);
+                for (String u : members) {
+                    notifyUser(u, entry);
+                }
+                // Asegurar que el emisor también lo vea
+                if (!members.contains(fromUser)) {
+                    System.out.println("[ICE] Notificando también al emisor: " + fromUser);
+                    notifyUser(fromUser, entry);
+                }
+            });
+            if (!queued) {
+                System.err.println("[ICE] Grupo ocupado, nota de voz no entregada: " + saved.relativePath());
             }
 
         } catch (IOException e) {
@@ -114,69 +191,56 @@ public class CallImpl implements Call {
     }
 
     private void notifyUser(String username, VoiceEntry entry) {
-        VoiceObserverPrx obs = observers.get(username);
-        if (obs != null) {
-            // Ejecutar la notificación en un thread separado para no bloquear
-            new Thread(() -> {
-                try {
-                    System.out.println("[ICE] Intentando notificar a " + username);
-                    System.out.println("[ICE]   - type: " + entry.type);
-                    System.out.println("[ICE]   - sender: " + entry.sender);
-                    System.out.println("[ICE]   - recipient: " + entry.recipient);
-                    System.out.println("[ICE]   - audioFile: " + entry.audioFile);
-                    
-                    // Verificar si la conexión está activa
-                    try {
-                        obs.ice_getConnection();
-                        System.out.println("[ICE] Conexión verificada para " + username);
-                    } catch (Exception connEx) {
-                        System.err.println("[ICE] Conexión perdida para " + username + ": " + connEx.getMessage());
-                        observers.remove(username);
-                        return;
-                    }
-                    
-                    // Intentar enviar la notificación
-                    obs.onVoice(entry);
-                    System.out.println("[ICE] ✓ Notificación enviada exitosamente a: " + username);
-                    
-                } catch (com.zeroc.Ice.CloseConnectionException e) {
-                    System.out.println("[ICE] ⚠ Conexión cerrada para " + username + " (usuario desconectado)");
-                    observers.remove(username);
-                } catch (com.zeroc.Ice.ConnectionLostException e) {
-                    System.out.println("[ICE] ⚠ Conexión perdida con " + username + " (se reconectará automáticamente)");
-                    observers.remove(username);
-                } catch (Exception e) {
-                    System.err.println("[ICE] ✗ Error notificando a " + username);
-                    System.err.println("[ICE]   - Clase: " + e.getClass().getName());
-                    System.err.println("[ICE]   - Mensaje: " + e.getMessage());
-                    
-                    // Remover observer inválido
-                    observers.remove(username);
-                    System.err.println("[ICE] Observer removido para " + username);
-                }
-            }, "ICE-Notify-" + username).start();
+        if (observers.isSubscribed(username)) {
+            // Se encola en la cola serial del observer; no bloquea la invocación Ice
+            observers.voice(username, entry);
         } else {
             System.out.println("[ICE] ⚠ Usuario " + username + " no tiene observer suscrito");
         }
     }
 
+    /**
+     * Fragmento de llamada comprimido: se decodifica a PCM16 para el mezclador y para
+     * los navegadores, que reproducen PCM.
+     */
+    @Override
+    public void sendEncodedCallChunk(String callId, String fromUser, String codec, byte[] audio, Current current) {
+        AudioCodec source = AudioCodec.fromId(codec);
+        if (source == null) {
+            System.err.println("[ICE] Códec de llamada no soportado: " + codec);
+            return;
+        }
+        if (source != AudioCodec.PCM16) {
+            short[] samples = new short[source.decodedSamples(audio.length)];
+            int count = source.newDecoder().decode(audio, 0, audio.length, samples, 0);
+            audio = new byte[count * 2];
+            AudioCodec.pcmToLe(samples, 0, count, audio, 0);
+        }
+        sendCallChunk(callId, fromUser, audio, current);
+    }
+
     @Override
     public void sendCallChunk(String callId, String fromUser, byte[] audio, Current current) {
-        // 1) Obtener el CallManager y los participantes de la llamada
-        var callManager = ChatServer.getCallManagerImpl();
-        if (callManager == null) {
-            System.out.println("[ICE]   - No hay CallManager activo, se ignora chunk");
+        long start = System.nanoTime();
+        try {
+            relayCallChunk(callId, fromUser, audio);
+        } finally {
+            CALL_CHUNK.recordSince(start);
+        }
+    }
+
+    private void relayCallChunk(String callId, String fromUser, byte[] audio) {
+        // 1) Participantes de la llamada: una lectura sin bloqueo de la instantánea actual
+        Set<String> participants = calls.getParticipants(callId);
+        if (participants.isEmpty()) {
+            // Llamada inexistente o ya terminada (siguen llegando chunks en vuelo): sin log por chunk
             return;
         }
 
-        Set<String> participants = callManager.getParticipants(callId);
-        
-        if (participants == null || participants.isEmpty()) {
-            // Solo logear la primera vez que falla
-            if (!activeCalls.containsKey(callId)) {
-                System.out.println("[ICE CHUNK ERROR] No hay participantes para la llamada " + callId);
-                System.out.println("[ICE CHUNK ERROR]   - activeCalls contiene: " + activeCalls.keySet());
-            }
+        // En llamadas mezcladas el audio entra al mezclador, que envía un solo flujo por oyente
+        CallMixer mixer = mixers.get(callId);
+        if (mixer != null) {
+            mixer.add(fromUser, audio);
             return;
         }
 
@@ -186,50 +250,13 @@ public class CallImpl implements Call {
         chunk.fromUser = fromUser;
         chunk.audio = audio;
 
-        // 3) Reenviar a todos los participantes excepto al emisor
+        // 3) Encolar el mismo chunk a todos los participantes excepto al emisor.
+        // Sin log por chunk: en una llamada llegan decenas por segundo.
         for (String user : participants) {
             if (user == null || user.equals(fromUser)) {
                 continue;
             }
-
-            VoiceObserverPrx obs = observers.get(user);
-            if (obs == null) {
-                System.out.println("[ICE]   - Usuario " + user + " no tiene observer suscrito (no se envía chunk)");
-                continue;
-            }
-
-            final VoiceObserverPrx targetObs = obs;
-            final String targetUser = user;
-
-            // Enviar en un hilo separado para no bloquear la llamada Ice
-            new Thread(() -> {
-                try {
-                    // Verificar conexión activa
-                    try {
-                        targetObs.ice_getConnection();
-                    } catch (Exception connEx) {
-                        System.err.println("[ICE] Conexión perdida para " + targetUser + " (call chunk): " + connEx.getMessage());
-                        observers.remove(targetUser);
-                        return;
-                    }
-
-                    // Enviar el chunk de audio
-                    targetObs.onCallChunk(chunk);
-                    System.out.println("[ICE] ✓ Chunk de llamada enviado a " + targetUser + " (callId=" + callId + ", bytes=" + (audio != null ? audio.length : 0) + ")");
-
-                } catch (com.zeroc.Ice.CloseConnectionException e) {
-                    System.out.println("[ICE] ⚠ Conexión cerrada para " + targetUser + " (call chunk)");
-                    observers.remove(targetUser);
-                } catch (com.zeroc.Ice.ConnectionLostException e) {
-                    System.out.println("[ICE] ⚠ Conexión perdida con " + targetUser + " (call chunk)");
-                    observers.remove(targetUser);
-                } catch (Exception e) {
-                    System.err.println("[ICE] ✗ Error enviando call chunk a " + targetUser);
-                    System.err.println("[ICE]   - Clase: " + e.getClass().getName());
-                    System.err.println("[ICE]   - Mensaje: " + e.getMessage());
-                    observers.remove(targetUser);
-                }
-            }, "ICE-CallChunk-" + targetUser).start();
+            observers.callChunk(user, chunk);
         }
     }
 
@@ -241,30 +268,26 @@ public class CallImpl implements Call {
         System.out.println("[ICE CALL]   - caller: " + caller);
         System.out.println("[ICE CALL]   - callee: " + callee);
 
-        // Crear set de participantes
-        Set<String> participants = ConcurrentHashMap.newKeySet();
-        participants.add(caller);
-        participants.add(callee);
-        activeCalls.put(callId, participants);
-
-        // Registrar en el CallManager del ChatServer
-        var callManager = ChatServer.getCallManagerImpl();
-        if (callManager != null) {
-            System.out.println("[ICE CALL]   - Registrando en CallManager...");
-            callManager.createCall(callId, participants);
-            System.out.println("[ICE CALL]   - ✓ Registrado en CallManager");
-        } else {
-            System.err.println("[ICE CALL]   - ✗ CallManager es null!");
-        }
+        // Registrar la llamada en el registro compartido
+        Set<String> participants = Set.of(caller, callee);
+        calls.createCall(callId, participants);
 
-        // Registrar en historial
-        HistoryService.logCallStarted(callId, participants);
+        // Historial y avisos en el hilo de la conversación privada
+        boolean queued = ChatServer.inPrivateChat(caller, callee, () -> {
+            HistoryService.logCallStarted(callId, participants);
 
-        // Notificar evento de llamada entrante al receptor
-        notifyCallEvent(callee, "call_incoming", callId, caller, callee, "", "private");
-        
-        // Notificar al emisor que la llamada está iniciada
-        notifyCallEvent(caller, "call_started", callId, caller, callee, "", "private");
+            // Notificar evento de llamada entrante al receptor
+            notifyCallEvent(callee, "call_incoming", callId, caller, callee, "", "private");
+
+            // Notificar al emisor que la llamada está iniciada
+            notifyCallEvent(caller, "call_started", callId, caller, callee, "", "private");
+        });
+        if (!queued) {
+            // Sin avisos ni historial la llamada no existe para nadie: se descarta
+            calls.endCall(callId, caller);
+            System.err.println("[ICE CALL] ✗ Conversación ocupada, llamada descartada: " + callId);
+            return "";
+        }
 
         System.out.println("[ICE CALL] ✓ Llamada creada: " + callId);
         System.out.println("[ICE CALL]   - Participantes: " + participants);
@@ -279,23 +302,38 @@ public class CallImpl implements Call {
         System.out.println("[ICE CALL]   - caller: " + caller);
         System.out.println("[ICE CALL]   - group: " + groupName);
 
+        // En el hilo del grupo, en orden con sus mensajes; el hilo de Ice espera el resultado
+        boolean started;
+        try {
+            started = ChatServer.callInGroup(groupName, () -> startGroupCall(callId, caller, groupName));
+        } catch (RejectedExecutionException e) {
+            System.err.println("[ICE CALL] ✗ Grupo ocupado: " + groupName);
+            started = false;
+        }
+        if (!started) return "";
+
+        System.out.println("[ICE CALL] ✓ Llamada grupal creada: " + callId);
+        return callId;
+    }
+
+    // Crea la llamada grupal con los miembros actuales y avisa a todos (en el hilo del grupo)
+    private boolean startGroupCall(String callId, String caller, String groupName) {
         // Obtener miembros del grupo
         Set<String> members = ChatServer.getGroupMembers(groupName);
         if (members == null || members.isEmpty()) {
             System.err.println("[ICE CALL] ✗ Grupo no encontrado o sin miembros: " + groupName);
-            return "";
+            return false;
         }
 
         // Agregar al caller si no está en el grupo
-        Set<String> participants = ConcurrentHashMap.newKeySet();
-        participants.addAll(members);
+        Set<String> participants = new HashSet<>(members);
         participants.add(caller);
-        activeCalls.put(callId, participants);
+        calls.createCall(callId, participants);
 
-        // Registrar en el CallManager
-        var callManager = ChatServer.getCallManagerImpl();
-        if (callManager != null) {
-            callManager.createCall(callId, participants);
+        if (ChatServer.isCallMixingEnabled()) {
+            CallMixer mixer = new CallMixer(callId, WEB_SAMPLE_RATE, (listener, seq, ts, frame) -> sendMix(callId, listener, frame));
+            for (String member : participants) mixer.join(member);
+            mixers.put(callId, mixer);
         }
 
         // Registrar en historial
@@ -309,23 +347,21 @@ public class CallImpl implements Call {
                 notifyCallEvent(member, "call_incoming", callId, caller, "", groupName, "group");
             }
         }
-
-        System.out.println("[ICE CALL] ✓ Llamada grupal creada: " + callId);
-        return callId;
+        return true;
     }
 
     @Override
     public void acceptCall(String callId, String user, Current current) {
         System.out.println("[ICE CALL] Usuario " + user + " aceptó llamada: " + callId);
         
-        Set<String> participants = activeCalls.get(callId);
-        if (participants == null) {
+        // Agregar al usuario que acepta a los participantes activos
+        if (!calls.addParticipant(callId, user)) {
             System.err.println("[ICE CALL] ✗ Llamada no encontrada: " + callId);
             return;
         }
-
-        // Agregar al usuario que acepta a los participantes activos
-        participants.add(user);
+        Set<String> participants = calls.getParticipants(callId);
+        CallMixer mixer = mixers.get(callId);
+        if (mixer != null) mixer.join(user);
         System.out.println("[ICE CALL] ✓ Usuario " + user + " agregado a la llamada");
         System.out.println("[ICE CALL]   - Participantes actuales: " + participants);
 
@@ -339,8 +375,8 @@ public class CallImpl implements Call {
     public void rejectCall(String callId, String user, Current current) {
         System.out.println("[ICE CALL] Usuario " + user + " rechazó llamada: " + callId);
         
-        Set<String> participants = activeCalls.get(callId);
-        if (participants == null) {
+        Set<String> participants = calls.getParticipants(callId);
+        if (participants.isEmpty()) {
             System.err.println("[ICE CALL] ✗ Llamada no encontrada: " + callId);
             return;
         }
@@ -350,7 +386,7 @@ public class CallImpl implements Call {
             notifyCallEvent(participant, "call_rejected", callId, user, "", "", "private");
         }
 
-        // Terminar la llamada
+        // Sale de la llamada (en una privada, la termina)
         endCall(callId, user, current);
     }
 
@@ -358,64 +394,50 @@ public class CallImpl implements Call {
     public void endCall(String callId, String user, Current current) {
         System.out.println("[ICE CALL] Terminando llamada: " + callId + " por " + user);
         
-        Set<String> participants = activeCalls.remove(callId);
-        if (participants == null) {
+        // Cuelga: sale de la llamada, que termina para todos si quedaba uno solo más.
+        // Mezcladores, avisos a clientes Ice y TCP, relay UDP e historial: ver callEnded y ChatServer
+        if (!calls.leaveCall(callId, user)) {
             System.err.println("[ICE CALL] ✗ Llamada no encontrada: " + callId);
             return;
         }
 
-        // Registrar en historial
-        HistoryService.logCallEnded(callId, participants, user);
-
-        // Notificar a todos los participantes que la llamada terminó
-        for (String participant : participants) {
-            notifyCallEvent(participant, "call_ended", callId, user, "", "", "private");
-        }
-
-        // Limpiar del CallManager
-        var callManager = ChatServer.getCallManagerImpl();
-        if (callManager != null) {
-            callManager.endCall(callId);
-        }
-
         System.out.println("[ICE CALL] ✓ Llamada terminada: " + callId);
     }
 
+    // El búfer del mezclador se reutiliza: el CallChunk lleva su propia copia
+    private void sendMix(String callId, String listener, short[] frame) {
+        CallChunk chunk = new CallChunk();
+        chunk.callId = callId;
+        chunk.fromUser = MIX_USER;
+        chunk.audio = new byte[frame.length * 2];
+        AudioCodec.pcmToLe(frame, 0, frame.length, chunk.audio, 0);
+        observers.callChunk(listener, chunk);
+    }
+
     private void notifyCallEvent(String username, String type, String callId, String caller, String callee, String group, String scope) {
-        VoiceObserverPrx obs = observers.get(username);
-        if (obs != null) {
-            new Thread(() -> {
-                try {
-                    // Verificar conexión
-                    try {
-                        obs.ice_getConnection();
-                    } catch (Exception connEx) {
-                        System.err.println("[ICE CALL] Conexión perdida para " + username);
-                        observers.remove(username);
-                        return;
-                    }
-
-                    // Crear evento
-                    CallEvent event = new CallEvent();
-                    event.type = type;
-                    event.callId = callId;
-                    event.caller = caller;
-                    event.callee = callee;
-                    event.group = group;
-                    event.scope = scope;
-
-                    // Enviar evento
-                    obs.onCallEvent(event);
-                    System.out.println("[ICE CALL] ✓ Evento enviado a " + username + ": " + type);
-
-                } catch (Exception e) {
-                    System.err.println("[ICE CALL] ✗ Error enviando evento a " + username + ": " + e.getMessage());
-                    observers.remove(username);
-                }
-            }, "ICE-CallEvent-" + username).start();
-        } else {
+        if (!observers.isSubscribed(username)) {
             System.out.println("[ICE CALL] ⚠ Usuario " + username + " no tiene observer suscrito");
+            return;
         }
+
+        CallEvent event = new CallEvent();
+        event.type = type;
+        event.callId = callId;
+        event.caller = caller;
+        event.callee = callee;
+        event.group = group;
+        event.scope = scope;
+        observers.callEvent(username, event);
+    }
+
+    /**
+     * Detiene el despacho de callbacks (al cerrar el adaptador Ice).
+     */
+    void shutdown() {
+        calls.removeListener(callEnded);
+        for (CallMixer mixer : mixers.values()) mixer.close();
+        mixers.clear();
+        observers.shutdown();
     }
 
 }
@@ -0,0 +1,67 @@
+package rpc;
+
+import Chat.History;
+import Chat.HistoryError;
+import Chat.HistoryPage;
+import Chat.InvalidCursor;
+import com.zeroc.Ice.Current;
+import service.HistoryService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Servant de consultas del historial. Cada operación devuelve una página
+ * "últimas N antes del cursor" resuelta con el índice por conversación,
+ * sin recorrer el archivo completo.
+ * Un cursor mal formado llega al cliente como InvalidCursor y una falla de
+ * lectura como HistoryError, así puede distinguir un error suyo de uno del servidor.
+ */
+public class HistoryImpl implements History {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int MAX_LIMIT = 500;
+
+    @Override
+    public HistoryPage privateHistory(String user, String peer, String before, int limit, Current current)
+            throws HistoryError {
+        return query(() -> HistoryService.queryPrivate(user, peer, before, clamp(limit)));
+    }
+
+    @Override
+    public HistoryPage groupHistory(String group, String before, int limit, Current current) throws HistoryError {
+        return query(() -> HistoryService.queryGroup(group, before, clamp(limit)));
+    }
+
+    @Override
+    public HistoryPage callHistory(String callId, String before, int limit, Current current) throws HistoryError {
+        return query(() -> HistoryService.queryCall(callId, before, clamp(limit)));
+    }
+
+    @Override
+    public HistoryPage allHistory(String before, int limit, Current current) throws HistoryError {
+        return query(() -> HistoryService.queryAll(before, clamp(limit)));
+    }
+
+    private interface Query {
+        HistoryService.Page run() throws IOException;
+    }
+
+    private static HistoryPage query(Query query) throws HistoryError {
+        try {
+            return toPage(query.run());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursor(e.getMessage());
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Error consultando el historial: " + e.getMessage());
+            throw new HistoryError("No se pudo leer el historial: " + e.getMessage());
+        }
+    }
+
+    private static int clamp(int limit) {
+        return limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+    }
+
+    private static HistoryPage toPage(HistoryService.Page page) {
+        return new HistoryPage(page.items().toArray(new String[0]), page.nextCursor(), page.hasMore());
+    }
+}
@@ -1,6 +1,5 @@
 package rpc;
 
-import Chat.Call;
 import com.zeroc.Ice.*;
 import com.zeroc.Ice.Exception;
 
@@ -9,6 +8,7 @@ import model.ChatServer;
 public final class IceBootstrap {
 
     private static Communicator communicator;
+    private static CallImpl callServant;
 
     public static void start(ChatServer chatServer) {
         Thread t = new Thread(() -> {
@@ -23,19 +23,22 @@ public final class IceBootstrap {
                 
                 communicator = Util.initialize(initData);
 
-                // Crear adapter con soporte WebSocket bidireccional
+                // Crear adapter con soporte WebSocket bidireccional (navegador) y
+                // TCP para consumidores del lado servidor (proxy Node)
                 ObjectAdapter adapter =
                         communicator.createObjectAdapterWithEndpoints(
                                 "CallAdapter",
-                                "ws -p 10010 -r /call"
+                                "ws -p 10010 -r /call:tcp -p 10011"
                         );
 
-                Call servant = new CallImpl();
-                adapter.add(servant, Util.stringToIdentity("Call"));
+                callServant = new CallImpl(chatServer.CallManagerImpl);
+                adapter.add(callServant, Util.stringToIdentity("Call"));
+                adapter.add(new HistoryImpl(), Util.stringToIdentity("History"));
 
                 adapter.activate();
 
                 System.out.println("[ICE] CallAdapter escuchando en ws://0.0.0.0:10010/call");
+                System.out.println("[ICE] Historial disponible en History:tcp -p 10011");
                 System.out.println("[ICE] Soporte bidireccional habilitado para callbacks");
 
                 communicator.waitForShutdown();
@@ -54,5 +57,9 @@ public final class IceBootstrap {
             communicator.destroy();
             communicator = null;
         }
+        if (callServant != null) {
+            callServant.shutdown();
+            callServant = null;
+        }
     }
 }
@@ -0,0 +1,261 @@
+package rpc;
+
+import Chat.CallChunk;
+import Chat.CallEvent;
+import Chat.VoiceEntry;
+import Chat.VoiceObserverPrx;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Despacho de callbacks Ice hacia los VoiceObserver suscritos.
+ * Cada suscriptor tiene una cola serial: como máximo una invocación asíncrona
+ * en vuelo a la vez, de modo que el orden por observer se conserva y un
+ * navegador lento solo retrasa su propia cola. Todas las colas comparten un
+ * pool acotado de hilos, que nunca esperan respuesta de la red.
+ * <p>
+ * Los fragmentos de audio de llamada viajan como invocaciones oneway; los que se
+ * acumulan mientras hay una invocación en vuelo se agrupan en un solo CallChunk,
+ * y si la cola se llena se descarta el audio más antiguo (ya no sirve en tiempo real).
+ * Los eventos y las notas de voz nunca se descartan.
+ */
+final class ObserverDispatcher {
+    // Fragmentos de audio pendientes por suscriptor antes de descartar los más viejos
+    private static final int MAX_PENDING_CHUNKS = 64;
+    // Tamaño máximo de un CallChunk agrupado
+    private static final int MAX_COALESCED_BYTES = 32 * 1024;
+
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    ObserverDispatcher() {
+        AtomicInteger count = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ICE-Dispatch-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Registra (o reemplaza) el observer de un usuario.
+     */
+    void subscribe(String username, VoiceObserverPrx proxy) {
+        Subscriber previous = subscribers.put(username, new Subscriber(username, proxy));
+        if (previous != null) previous.close();
+    }
+
+    /**
+     * Elimina el observer de un usuario si sigue siendo el indicado
+     * (null elimina cualquiera).
+     */
+    void unsubscribe(String username, VoiceObserverPrx proxy) {
+        Subscriber current = subscribers.get(username);
+        if (current != null && (proxy == null || current.proxy.equals(proxy))
+                && subscribers.remove(username, current)) {
+            current.close();
+        }
+    }
+
+    boolean isSubscribed(String username) {
+        return subscribers.containsKey(username);
+    }
+
+    void voice(String username, VoiceEntry entry) {
+        enqueue(username, entry);
+    }
+
+    void callEvent(String username, CallEvent event) {
+        enqueue(username, event);
+    }
+
+    void callChunk(String username, CallChunk chunk) {
+        enqueue(username, chunk);
+    }
+
+    private boolean enqueue(String username, Object message) {
+        Subscriber s = subscribers.get(username);
+        if (s == null) return false;
+        s.enqueue(message);
+        return true;
+    }
+
+    void shutdown() {
+        for (Subscriber s : subscribers.values()) s.close();
+        subscribers.clear();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Cola serial de un observer.
+     */
+    private final class Subscriber {
+        private final String username;
+        private final VoiceObserverPrx proxy;
+        private final VoiceObserverPrx oneway;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ArrayDeque<Object> pending = new ArrayDeque<>();
+        private int pendingChunks = 0;
+        private long droppedChunks = 0;
+        private boolean inFlight = false;
+        private boolean closed = false;
+
+        Subscriber(String username, VoiceObserverPrx proxy) {
+            this.username = username;
+            this.proxy = proxy;
+            this.oneway = proxy.ice_oneway();
+        }
+
+        void enqueue(Object message) {
+            boolean start;
+            lock.lock();
+            try {
+                if (closed) return;
+                if (message instanceof CallChunk) {
+                    if (pendingChunks >= MAX_PENDING_CHUNKS) {
+                        dropOldestChunk();
+                    }
+                    pendingChunks++;
+                }
+                pending.add(message);
+                start = !inFlight;
+                inFlight = true;
+            } finally {
+                lock.unlock();
+            }
+            if (start) schedule();
+        }
+
+        private void dropOldestChunk() {
+            Iterator<Object> it = pending.iterator();
+            while (it.hasNext()) {
+                if (it.next() instanceof CallChunk) {
+                    it.remove();
+                    pendingChunks--;
+                    if (droppedChunks++ % 100 == 0) {
+                        System.out.println("[ICE] ⚠ " + username + " no consume el audio a tiempo, fragmentos descartados: " + droppedChunks);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this::sendNext);
+            } catch (RejectedExecutionException e) {
+                close();
+            }
+        }
+
+        private void sendNext() {
+            Object next;
+            lock.lock();
+            try {
+                next = closed ? null : pending.poll();
+                if (next == null) {
+                    inFlight = false;
+                    return;
+                }
+                if (next instanceof CallChunk chunk) {
+                    pendingChunks--;
+                    next = coalesce(chunk);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            CompletableFuture<Void> sent;
+            try {
+                if (next instanceof CallChunk chunk) {
+                    sent = oneway.onCallChunkAsync(chunk);
+                } else if (next instanceof CallEvent event) {
+                    sent = proxy.onCallEventAsync(event);
+                } else {
+                    sent = proxy.onVoiceAsync((VoiceEntry) next);
+                }
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            // La siguiente invocación sale cuando termina ésta (oneway: al enviarse)
+            sent.whenComplete((r, ex) -> {
+                if (ex != null) fail(ex);
+                else schedule();
+            });
+        }
+
+        // Une los fragmentos consecutivos de la misma llamada y emisor (con el lock tomado)
+        private CallChunk coalesce(CallChunk first) {
+            int total = first.audio != null ? first.audio.length : 0;
+            int count = 1;
+            for (Object o : pending) {
+                if (!(o instanceof CallChunk c) || !c.callId.equals(first.callId)
+                        || !c.fromUser.equals(first.fromUser) || c.audio == null
+                        || total + c.audio.length > MAX_COALESCED_BYTES) {
+                    break;
+                }
+                total += c.audio.length;
+                count++;
+            }
+            if (count == 1) return first;
+
+            byte[] audio = new byte[total];
+            int pos = 0;
+            if (first.audio != null) {
+                System.arraycopy(first.audio, 0, audio, 0, first.audio.length);
+                pos = first.audio.length;
+            }
+            for (int i = 1; i < count; i++) {
+                CallChunk c = (CallChunk) pending.poll();
+                pendingChunks--;
+                System.arraycopy(c.audio, 0, audio, pos, c.audio.length);
+                pos += c.audio.length;
+            }
+            CallChunk merged = new CallChunk();
+            merged.callId = first.callId;
+            merged.fromUser = first.fromUser;
+            merged.audio = audio;
+            return merged;
+        }
+
+        private void fail(Throwable e) {
+            Throwable cause = e instanceof java.util.concurrent.CompletionException && e.getCause() != null
+                    ? e.getCause() : e;
+            if (cause instanceof com.zeroc.Ice.CloseConnectionException
+                    || cause instanceof com.zeroc.Ice.ConnectionLostException) {
+                System.out.println("[ICE] ⚠ Conexión cerrada para " + username + " (usuario desconectado)");
+            } else {
+                System.err.println("[ICE] ✗ Error notificando a " + username + ": " + cause.getClass().getName()
+                        + " " + cause.getMessage());
+            }
+            // Observer inválido: se elimina para que el cliente vuelva a suscribirse
+            if (subscribers.remove(username, this)) {
+                System.err.println("[ICE] Observer removido para " + username);
+            }
+            close();
+        }
+
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                pending.clear();
+                pendingChunks = 0;
+                inFlight = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -1,80 +1,155 @@
 package service;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import interfaces.CallManager;
 
 /**
- * Gestor de llamadas activas para el sistema de chat.
- * Administra el estado de las llamadas y la relación entre usuarios y llamadas.
- * Solo maneja la señalización; el audio UDP se gestiona directamente entre clientes.
+ * Registro único de llamadas activas del servidor, compartido por los comandos
+ * TCP, el relay UDP y el servant Ice.
+ * Los participantes de cada llamada son una instantánea inmutable que se
+ * reemplaza completa al cambiar (copy-on-write), así consultarlos por cada
+ * paquete o chunk de audio es una sola lectura sin bloqueo del mapa concurrente.
  */
 public class CallManagerImpl implements CallManager {
 
     /**
-     * Mapa de llamadas activas: ID de llamada -> conjunto de participantes
+     * Mapa de llamadas activas: ID de llamada -> participantes (inmutable)
      */
-    private final Map<String, Set<String>> calls = new HashMap<>();
+    private final Map<String, Set<String>> calls = new ConcurrentHashMap<>();
 
     /**
      * Mapa de usuarios en llamadas: nombre de usuario -> ID de llamada
      */
-    private final Map<String, String> userToCall = new HashMap<>();
+    private final Map<String, String> userToCall = new ConcurrentHashMap<>();
+
+    /**
+     * Interesados en el fin de las llamadas (servidor TCP y servant Ice)
+     */
+    private final List<CallListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void addListener(CallListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(CallListener listener) {
+        listeners.remove(listener);
+    }
 
     /**
      * Crea una nueva llamada con el ID y conjunto de participantes especificado.
-     * 
+     *
      * @param callId ID de la llamada
      * @param participants Conjunto de nombres de usuario que participarán en la llamada
      */
     @Override
-    public synchronized void createCall(String callId, Set<String> participants) {
-        System.out.println("[CallManagerImpl] createCall llamado");
-        System.out.println("[CallManagerImpl]   - callId: " + callId);
-        System.out.println("[CallManagerImpl]   - participants: " + participants);
-        calls.put(callId, new HashSet<>(participants));
-        System.out.println("[CallManagerImpl]   - Guardado en Map. Total llamadas: " + calls.size());
-        System.out.println("[CallManagerImpl]   - CallIds en Map: " + calls.keySet());
-        for (String u : participants) userToCall.put(u, callId);
+    public void createCall(String callId, Set<String> participants) {
+        Set<String> snapshot = Set.copyOf(participants);
+        calls.put(callId, snapshot);
+        for (String u : snapshot) userToCall.put(u, callId);
+    }
+
+    /**
+     * Agrega un participante a una llamada activa.
+     *
+     * @param callId ID de la llamada
+     * @param username Usuario que se une
+     * @return false si la llamada no existe
+     */
+    @Override
+    public boolean addParticipant(String callId, String username) {
+        Set<String> updated = calls.computeIfPresent(callId, (id, current) -> {
+            if (current.contains(username)) return current;
+            Set<String> next = new HashSet<>(current);
+            next.add(username);
+            return Set.copyOf(next);
+        });
+        if (updated == null) return false;
+        userToCall.put(username, callId);
+        return true;
     }
 
     /**
-     * Termina una llamada activa y libera a todos los participantes.
-     * 
+     * Termina una llamada activa, libera a todos los participantes y avisa a
+     * los listeners. Retirarla del mapa es atómico: si dos la terminan a la
+     * vez, solo uno avisa.
+     *
      * @param callId ID de la llamada a terminar
+     * @param endedBy Usuario que la termina
+     * @return Participantes que tenía la llamada, o null si no existía
      */
     @Override
-    public synchronized void endCall(String callId) {
+    public Set<String> endCall(String callId, String endedBy) {
         Set<String> parts = calls.remove(callId);
-        if (parts != null) {
-            for (String u : parts) userToCall.remove(u);
+        if (parts == null) return null;
+        // Solo si el usuario no pasó ya a otra llamada
+        for (String u : parts) userToCall.remove(u, callId);
+        for (CallListener listener : listeners) {
+            try {
+                listener.callEnded(callId, parts, endedBy);
+            } catch (RuntimeException e) {
+                System.err.println("Error avisando fin de llamada " + callId + ": " + e);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Saca a un participante de la llamada. Si quedarían menos de dos, la
+     * termina para todos: así el historial y los avisos de fin incluyen a
+     * quien salió.
+     *
+     * @param callId ID de la llamada
+     * @param username Usuario que sale
+     * @return false si la llamada no existe o el usuario no participa en ella
+     */
+    @Override
+    public boolean leaveCall(String callId, String username) {
+        while (true) {
+            Set<String> current = calls.get(callId);
+            if (current == null || !current.contains(username)) return false;
+            if (current.size() <= 2) return endCall(callId, username) != null;
+            Set<String> next = new HashSet<>(current);
+            next.remove(username);
+            Set<String> remaining = Set.copyOf(next);
+            // Si otro cambió la llamada mientras tanto, se reintenta sobre la versión nueva
+            if (!calls.replace(callId, current, remaining)) continue;
+            userToCall.remove(username, callId);
+            for (CallListener listener : listeners) {
+                try {
+                    listener.participantLeft(callId, username, remaining);
+                } catch (RuntimeException e) {
+                    System.err.println("Error avisando salida de " + username + " de la llamada " + callId + ": " + e);
+                }
+            }
+            return true;
         }
     }
 
     /**
      * Obtiene el ID de la llamada en la que participa un usuario.
-     * 
+     *
      * @param username Nombre del usuario
      * @return ID de la llamada o null si el usuario no está en ninguna llamada
      */
     @Override
-    public synchronized String getCallOfUser(String username) {
+    public String getCallOfUser(String username) {
         return userToCall.get(username);
     }
 
     /**
      * Obtiene el conjunto de participantes de una llamada específica.
-     * 
+     *
      * @param callId ID de la llamada
-     * @return Conjunto de nombres de usuario participantes o conjunto vacío si la llamada no existe
+     * @return Participantes (inmutable) o conjunto vacío si la llamada no existe
      */
     @Override
-    public synchronized Set<String> getParticipants(String callId) {
-        System.out.println("[CallManagerImpl] getParticipants llamado");
-        System.out.println("[CallManagerImpl]   - callId buscado: " + callId);
-        System.out.println("[CallManagerImpl]   - CallIds disponibles: " + calls.keySet());
-        Set<String> result = calls.getOrDefault(callId, Collections.emptySet());
-        System.out.println("[CallManagerImpl]   - Resultado: " + result);
-        return result;
+    public Set<String> getParticipants(String callId) {
+        // Sin logs ni bloqueos: el relay UDP y los chunks Ice la invocan por cada paquete de audio
+        return calls.getOrDefault(callId, Collections.emptySet());
     }
 }
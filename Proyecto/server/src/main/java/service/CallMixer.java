@@ -0,0 +1,283 @@
+package service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Mezclador N-1 de una llamada grupal. Cada participante envía su audio PCM
+ * 16-bit mono little-endian al servidor; cada 20 ms el mezclador toma una trama
+ * de cada uno, las suma y entrega a cada oyente una sola trama con la mezcla de
+ * todos los demás (sin su propia voz), recortada al rango de 16 bits.
+ * <p>
+ * Así el ancho de banda de bajada y el trabajo del cliente no dependen del tamaño
+ * de la llamada. El bucle de mezcla no reserva memoria: los acumuladores y los
+ * búferes de cada participante se crean al unirse.
+ */
+public final class CallMixer implements AutoCloseable {
+
+    /**
+     * Destino de la mezcla de cada oyente.
+     */
+    public interface Output {
+        /**
+         * Entrega la trama mezclada de un oyente. El búfer se reutiliza en la
+         * siguiente trama: quien necesite conservarlo debe copiarlo.
+         *
+         * @param listener Usuario que recibe la mezcla
+         * @param sequence Número de trama enviada a este oyente (consecutivo)
+         * @param timestamp Posición de la trama en el reloj del mezclador, en muestras
+         * @param frame Muestras PCM 16-bit de la trama completa
+         */
+        void send(String listener, int sequence, long timestamp, short[] frame);
+    }
+
+    public static final int FRAME_MS = 20;
+    // Tramas en el búfer de cada participante (320 ms) y mínimo acumulado antes de mezclarlo
+    private static final int RING_FRAMES = 16;
+    private static final int PREBUFFER_FRAMES = 2;
+
+    // Un solo hilo marca el reloj de 20 ms de todas las llamadas mezcladas
+    private static final ScheduledExecutorService CLOCK = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Call-Mixer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String callId;
+    private final int frameSamples;
+    private final Output output;
+    private final int[] total;
+    private final ReentrantLock membership = new ReentrantLock();
+    private volatile Participant[] participants = new Participant[0];
+    private final ScheduledFuture<?> ticker;
+    private long ticks = 0;
+
+    /**
+     * Crea el mezclador y arranca su reloj.
+     *
+     * @param callId Llamada mezclada (para logs)
+     * @param sampleRate Frecuencia de muestreo del audio de la llamada
+     * @param output Destino de la mezcla de cada oyente
+     */
+    public CallMixer(String callId, int sampleRate, Output output) {
+        this.callId = callId;
+        this.frameSamples = sampleRate * FRAME_MS / 1000;
+        this.output = output;
+        this.total = new int[frameSamples];
+        this.ticker = CLOCK.scheduleAtFixedRate(this::tickSafely, FRAME_MS, FRAME_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Agrega un participante (si ya estaba no hace nada).
+     */
+    public void join(String username) {
+        membership.lock();
+        try {
+            for (Participant p : participants) {
+                if (p.name.equals(username)) return;
+            }
+            Participant[] next = Arrays.copyOf(participants, participants.length + 1);
+            next[next.length - 1] = new Participant(username, frameSamples);
+            participants = next;
+        } finally {
+            membership.unlock();
+        }
+    }
+
+    public void leave(String username) {
+        membership.lock();
+        try {
+            Participant[] current = participants;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].name.equals(username)) {
+                    Participant[] next = new Participant[current.length - 1];
+                    System.arraycopy(current, 0, next, 0, i);
+                    System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                    participants = next;
+                    return;
+                }
+            }
+        } finally {
+            membership.unlock();
+        }
+    }
+
+    /**
+     * Recibe audio de un participante (solo las muestras, sin cabecera). Lee los
+     * bytes entre position y limit sin modificar el búfer.
+     *
+     * @return false si el usuario no participa en la mezcla
+     */
+    public boolean add(String username, ByteBuffer pcm) {
+        for (Participant p : participants) {
+            if (p.name.equals(username)) {
+                p.write(pcm);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean add(String username, byte[] pcm) {
+        return add(username, ByteBuffer.wrap(pcm));
+    }
+
+    /**
+     * Recibe audio ya decodificado de un participante.
+     *
+     * @return false si el usuario no participa en la mezcla
+     */
+    public boolean add(String username, short[] pcm, int offset, int count) {
+        for (Participant p : participants) {
+            if (p.name.equals(username)) {
+                p.write(pcm, offset, count);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            // Una excepción cancelaría el reloj de la llamada
+            System.err.println("[CallMixer] Error mezclando llamada " + callId + ": " + e.getMessage());
+        }
+    }
+
+    private void tick() {
+        long timestamp = ticks++ * frameSamples;
+        Participant[] ps = participants;
+        Arrays.fill(total, 0);
+        int speaking = 0;
+        for (Participant p : ps) {
+            p.speaking = p.read();
+            if (p.speaking) {
+                speaking++;
+                short[] frame = p.frame;
+                for (int i = 0; i < frameSamples; i++) {
+                    total[i] += frame[i];
+                }
+            }
+        }
+        if (speaking == 0) return;
+
+        for (Participant p : ps) {
+            // Nada que enviar si el único que habla es el propio oyente
+            if (speaking - (p.speaking ? 1 : 0) == 0) continue;
+            short[] out = p.out;
+            short[] own = p.frame;
+            for (int i = 0; i < frameSamples; i++) {
+                int v = p.speaking ? total[i] - own[i] : total[i];
+                if (v > Short.MAX_VALUE) v = Short.MAX_VALUE;
+                else if (v < Short.MIN_VALUE) v = Short.MIN_VALUE;
+                out[i] = (short) v;
+            }
+            output.send(p.name, p.sent++, timestamp, out);
+        }
+    }
+
+    @Override
+    public void close() {
+        ticker.cancel(false);
+        participants = new Participant[0];
+    }
+
+    /**
+     * Búfer circular de muestras de un participante (escribe la red, lee el reloj).
+     */
+    private static final class Participant {
+        final String name;
+        final short[] frame;
+        final short[] out;
+        private final short[] ring;
+        private final ReentrantLock lock = new ReentrantLock();
+        private long written = 0;
+        private long consumed = 0;
+        // Mayor envío recibido: quien manda bloques grandes necesita más colchón
+        private int largestWrite = 0;
+        private boolean started = false;
+        boolean speaking;
+        int sent;
+
+        Participant(String name, int frameSamples) {
+            this.name = name;
+            this.frame = new short[frameSamples];
+            this.ring = new short[frameSamples * RING_FRAMES];
+            this.out = new short[frameSamples];
+        }
+
+        void write(ByteBuffer pcm) {
+            int base = pcm.position();
+            int samples = pcm.remaining() / 2;
+            lock.lock();
+            try {
+                noteWrite(samples);
+                for (int i = 0; i < samples; i++) {
+                    int b = base + i * 2;
+                    ring[(int) (written % ring.length)] = (short) ((pcm.get(b) & 0xff) | (pcm.get(b + 1) << 8));
+                    written++;
+                }
+                dropOverflow();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void write(short[] pcm, int offset, int samples) {
+            lock.lock();
+            try {
+                noteWrite(samples);
+                for (int i = 0; i < samples; i++) {
+                    ring[(int) (written % ring.length)] = pcm[offset + i];
+                    written++;
+                }
+                dropOverflow();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void noteWrite(int samples) {
+            if (samples > largestWrite) largestWrite = Math.min(samples, ring.length / 2);
+        }
+
+        // Si el emisor va más rápido que el reloj se descarta lo más antiguo
+        private void dropOverflow() {
+            if (written - consumed > ring.length) {
+                consumed = written - ring.length;
+            }
+        }
+
+        // Copia la siguiente trama a frame; false si no hay audio suficiente
+        boolean read() {
+            lock.lock();
+            try {
+                long available = written - consumed;
+                if (!started) {
+                    long prebuffer = Math.max((long) frame.length * PREBUFFER_FRAMES, largestWrite + frame.length);
+                    if (available < prebuffer) return false;
+                    started = true;
+                }
+                if (available < frame.length) {
+                    // Sin audio a tiempo: vuelve a acumular antes de mezclarlo otra vez
+                    started = false;
+                    return false;
+                }
+                for (int i = 0; i < frame.length; i++) {
+                    frame[i] = ring[(int) ((consumed + i) % ring.length)];
+                }
+                consumed += frame.length;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
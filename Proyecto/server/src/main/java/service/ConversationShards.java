@@ -0,0 +1,254 @@
+package service;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Ejecutor particionado por conversación (un actor por grupo o chat privado):
+ * cada clave se asigna siempre al mismo de N hilos, y cada hilo ejecuta sus
+ * tareas de a una y en orden de llegada. Todo lo que toca una conversación
+ * (membresía, reparto de mensajes y notas de voz, registro en el historial)
+ * corre entonces serializado sin bloqueos, los miembros reciben los mensajes en
+ * el mismo orden en que se registran, y conversaciones distintas avanzan en
+ * paralelo en hilos distintos.
+ * <p>
+ * Quien entrega trabajo no espera: {@link #execute} solo encola, y la tarea
+ * misma envía la respuesta a la cola de salida del cliente. Así un reactor NIO
+ * nunca se detiene por una partición ocupada. Las tareas tampoco deben
+ * bloquear ni esperar a otra partición: solo encolan (ClientHandler.sendFrame,
+ * HistoryService, observers de Ice).
+ * <p>
+ * Control de flujo: la cola de cada partición está acotada a
+ * {@link #DEFAULT_CAPACITY} tareas nuevas.
+ * <ul>
+ *   <li>Al pasar la mitad (marca alta), el hilo que encoló queda marcado y,
+ *       si es el lector de una conexión, deja de leer de ella hasta que la
+ *       partición baje a un octavo (marca baja): ver {@link #pauseIfCongested}.
+ *       Una conversación lenta frena solo a quienes le escriben.</li>
+ *   <li>Con la cola llena, {@link #execute} rechaza la tarea y la cuenta
+ *       (chat_conversation_rejected_total); quien la encoló responde un error a
+ *       su cliente. Solo se llega ahí si muchas conexiones encolan a la vez lo que
+ *       ya habían leído, o desde Ice, que no tiene lectura que pausar.</li>
+ *   <li>{@link #continueWith} encola sin rechazo la continuación de trabajo ya
+ *       aceptado (fragmentos y cierre de una nota de voz), que no puede perderse
+ *       a mitad de camino; quien la usa acota cuántas tiene en cola.</li>
+ * </ul>
+ */
+public final class ConversationShards {
+    /**
+     * Tareas nuevas que acepta la cola de cada partición.
+     */
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private static final Metrics.Counter REJECTED = Metrics.counter("chat_conversation_rejected_total", null,
+            "Tareas rechazadas por cola de partición llena");
+
+    private final ThreadPoolExecutor[] shards;
+    // Hilo de cada partición. Se arrancan todos en el constructor; si uno muere por un
+    // error, el ejecutor lo reemplaza desde otro hilo, de ahí el arreglo atómico
+    private final AtomicReferenceArray<Thread> threads;
+    // Lectores en pausa de cada partición, a reanudar al bajar de la marca baja
+    private final Queue<Runnable>[] waiters;
+    private final int capacity;
+    private final int highWater;
+    private final int lowWater;
+    // Partición que quedó sobre la marca alta con lo último que encoló este hilo (-1 ninguna)
+    private final ThreadLocal<int[]> congested = ThreadLocal.withInitial(() -> new int[]{-1});
+
+    /**
+     * @param count Cantidad de particiones (0 usa el número de procesadores)
+     */
+    public ConversationShards(int count) {
+        this(count, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param count Cantidad de particiones (0 usa el número de procesadores)
+     * @param capacity Tareas nuevas que acepta la cola de cada partición
+     */
+    @SuppressWarnings("unchecked")
+    public ConversationShards(int count, int capacity) {
+        int n = count > 0 ? count : Runtime.getRuntime().availableProcessors();
+        this.capacity = Math.max(8, capacity);
+        this.highWater = this.capacity / 2;
+        this.lowWater = this.capacity / 8;
+        shards = new ThreadPoolExecutor[n];
+        threads = new AtomicReferenceArray<>(n);
+        waiters = new Queue[n];
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            waiters[i] = new ConcurrentLinkedQueue<>();
+            // Cola sin límite propio: el límite lo aplica execute, así las continuaciones siempre entran
+            shards[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "Conversation-" + index);
+                t.setDaemon(true);
+                threads.set(index, t);
+                return t;
+            });
+            shards[i].prestartCoreThread();
+        }
+    }
+
+    /**
+     * Clave de la conversación de un grupo (la misma que usa el historial).
+     */
+    public static String groupKey(String group) {
+        return HistoryIndex.groupKey(group);
+    }
+
+    /**
+     * Clave de la conversación privada entre dos usuarios, igual en ambos sentidos.
+     */
+    public static String privateKey(String a, String b) {
+        return HistoryIndex.privateKey(a, b);
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    /**
+     * Encola la tarea en la partición de la conversación sin esperarla. Si ya
+     * se está en el hilo de esa partición, la ejecuta directamente (sigue en
+     * orden: la tarea actual es la última que empezó en esa partición).
+     * Un error de la tarea se informa y no afecta a las siguientes.
+     *
+     * @param key Conversación ({@link #groupKey} o {@link #privateKey})
+     * @return false si la cola de la partición está llena: la tarea no se ejecuta
+     */
+    public boolean execute(String key, Runnable task) {
+        int shard = shardOf(key);
+        if (Thread.currentThread() == threads.get(shard)) {
+            run(task);
+            return true;
+        }
+        if (shards[shard].getQueue().size() >= capacity) {
+            REJECTED.increment();
+            congested.get()[0] = shard;
+            return false;
+        }
+        enqueue(shard, task);
+        return true;
+    }
+
+    /**
+     * Encola, sin rechazarla aunque la cola esté llena, una tarea que continúa
+     * trabajo ya aceptado por {@link #execute}. Quien la usa acota cuántas
+     * tiene pendientes (p. ej. una nota de voz, sus fragmentos en vuelo).
+     *
+     * @param key Conversación ({@link #groupKey} o {@link #privateKey})
+     */
+    public void continueWith(String key, Runnable task) {
+        int shard = shardOf(key);
+        if (Thread.currentThread() == threads.get(shard)) {
+            run(task);
+            return;
+        }
+        enqueue(shard, task);
+    }
+
+    private void enqueue(int shard, Runnable task) {
+        shards[shard].execute(() -> {
+            run(task);
+            if (!waiters[shard].isEmpty()) resumeWaiters(shard);
+        });
+        if (shards[shard].getQueue().size() >= highWater) congested.get()[0] = shard;
+    }
+
+    // Se revisa la cola antes de cada uno: un lector reanudado puede volver a llenarla
+    // y registrarse de nuevo mientras este bucle sigue
+    private void resumeWaiters(int shard) {
+        Runnable resume;
+        while (shards[shard].getQueue().size() <= lowWater && (resume = waiters[shard].poll()) != null) run(resume);
+    }
+
+    /**
+     * Control de flujo del lector de una conexión, a llamar después de procesar
+     * lo que leyó: si lo que encoló este hilo dejó una partición sobre la marca
+     * alta, registra resume para cuando baje a la marca baja y devuelve true;
+     * el lector debe dejar de leer hasta entonces. resume corre en el hilo de
+     * la partición y nunca en el que llama a este método.
+     *
+     * @param resume Reanuda la lectura; debe ser rápido y no bloquear
+     * @return true si el lector debe pausar
+     */
+    public boolean pauseIfCongested(Runnable resume) {
+        int[] mark = congested.get();
+        int shard = mark[0];
+        if (shard < 0) return false;
+        mark[0] = -1;
+        if (shards[shard].getQueue().size() <= lowWater) return false;
+        waiters[shard].add(resume);
+        // La partición pudo vaciarse justo antes de registrar: si nadie tomó resume todavía,
+        // se retira y se sigue leyendo; si ya lo tomó, la reanudación está en camino
+        if (shards[shard].getQueue().size() <= lowWater && waiters[shard].remove(resume)) return false;
+        // Por si la cola quedó vacía antes de registrar y ninguna tarea más va a revisar los lectores en pausa
+        shards[shard].execute(() -> resumeWaiters(shard));
+        return true;
+    }
+
+    /**
+     * Ejecuta la tarea en la partición de la conversación y espera su resultado.
+     * Solo para hilos que pueden bloquearse (invocaciones Ice que devuelven un
+     * valor); los comandos de los clientes TCP usan {@link #execute}.
+     *
+     * @param key Conversación ({@link #groupKey} o {@link #privateKey})
+     * @throws java.util.concurrent.RejectedExecutionException si la cola de la partición está llena
+     */
+    public <T> T call(String key, Supplier<T> task) {
+        int shard = shardOf(key);
+        if (Thread.currentThread() == threads.get(shard)) return task.get();
+        if (shards[shard].getQueue().size() >= capacity) {
+            REJECTED.increment();
+            throw new RejectedExecutionException("Partición de conversación llena");
+        }
+        try {
+            return CompletableFuture.supplyAsync(task, shards[shard]).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    /**
+     * true si el hilo actual es el que atiende la conversación.
+     */
+    public boolean isOwner(String key) {
+        return Thread.currentThread() == threads.get(shardOf(key));
+    }
+
+    /**
+     * Partición de la conversación: el hash se mezcla para que claves
+     * parecidas ("g1", "g2"...) se repartan de forma pareja.
+     */
+    public int shardOf(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    /**
+     * Tareas en cola en todas las particiones.
+     */
+    public long pending() {
+        long total = 0;
+        for (ThreadPoolExecutor shard : shards) total += shard.getQueue().size();
+        return total;
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error en tarea de conversación: " + e);
+        }
+    }
+}
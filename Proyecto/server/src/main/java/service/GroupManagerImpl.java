@@ -7,58 +7,83 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Implementación concreta del gestor de grupos para el sistema de chat.
  * Administra la creación, membresía y operaciones relacionadas con grupos de chat.
+ * <p>
+ * Cada grupo pertenece a una partición de {@link ConversationShards} y solo el
+ * hilo de esa partición modifica sus miembros: altas y difusión de mensajes del
+ * grupo se ejecutan ahí en orden, sin bloqueos. Cada alta publica una nueva
+ * instantánea inmutable de los miembros, que cualquier hilo puede leer sin
+ * esperar a la partición (las altas son raras frente a los envíos).
  */
 public class GroupManagerImpl implements GroupManager {
+    private final ConversationShards shards;
     /**
-     * Mapa de grupos: nombre del grupo -> conjunto de nombres de usuario miembros
+     * Nombre del grupo -> instantánea de sus miembros (la reemplaza solo el hilo de su partición)
      */
     private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
 
+    /**
+     * @param shards Particiones que atienden las conversaciones del servidor
+     */
+    public GroupManagerImpl(ConversationShards shards) {
+        this.shards = shards;
+    }
+
     /**
      * Crea un nuevo grupo de chat con el usuario especificado como creador.
      * Si el grupo ya existe, simplemente añade al creador como miembro.
-     * 
+     *
      * @param groupName Nombre del grupo a crear
      * @param creator Nombre del usuario que crea el grupo
      */
     @Override
     public void createGroup(String groupName, String creator) {
-        groups.putIfAbsent(groupName, ConcurrentHashMap.newKeySet());
-        groups.get(groupName).add(creator);
+        addMember(groupName, creator);
         System.out.println("Grupo creado: " + groupName + " por " + creator);
     }
 
     /**
      * Añade un usuario a un grupo existente o crea el grupo si no existe.
-     * 
+     *
      * @param groupName Nombre del grupo al que unirse
      * @param user Nombre del usuario que se une al grupo
      */
     @Override
     public void joinGroup(String groupName, String user) {
-        groups.putIfAbsent(groupName, ConcurrentHashMap.newKeySet());
-        groups.get(groupName).add(user);
+        addMember(groupName, user);
         System.out.println(user + " se unió al grupo " + groupName);
     }
 
+    // Desde la partición del grupo se aplica en el acto; desde otro hilo se encola ahí sin
+    // rechazo: el alta es parte de un comando ya aceptado y no puede perderse
+    private void addMember(String groupName, String user) {
+        shards.continueWith(ConversationShards.groupKey(groupName), () -> {
+            Set<String> members = groups.getOrDefault(groupName, Set.of());
+            if (members.contains(user)) return;
+            Set<String> updated = new HashSet<>(members);
+            updated.add(user);
+            groups.put(groupName, Set.copyOf(updated));
+        });
+    }
+
     /**
-     * Obtiene el conjunto de miembros de un grupo específico.
-     * 
+     * Obtiene el conjunto de miembros de un grupo específico: la última
+     * instantánea publicada, sin copiar ni bloquear.
+     *
      * @param groupName Nombre del grupo
-     * @return Conjunto de nombres de usuario miembros del grupo o conjunto vacío si no existe
+     * @return Miembros del grupo (inmutable) o conjunto vacío si no existe
      */
     @Override
     public Set<String> getGroupMembers(String groupName) {
-        return groups.getOrDefault(groupName, Collections.emptySet());
+        return groups.getOrDefault(groupName, Set.of());
     }
 
     /**
      * Obtiene el conjunto de todos los grupos disponibles en el sistema.
-     * 
+     *
      * @return Conjunto de nombres de grupos existentes
      */
     @Override
     public Set<String> getGroups() {
-        return groups.keySet();
+        return Collections.unmodifiableSet(groups.keySet());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Índice en memoria por conversación (par privado, grupo y llamada) del segmento
+ * activo del historial. Por cada conversación guarda la posición y longitud de sus
+ * entradas dentro del segmento, en orden de escritura, de modo que una página
+ * "últimas N antes de X" se resuelve leyendo solo esos rangos de bytes.
+ * <p>
+ * Lo alimenta un único escritor después de que cada lote llega al archivo; las
+ * consultas pueden ejecutarse en paralelo desde cualquier hilo. Al sellar el
+ * segmento se persiste en su archivo .idx (ver {@link HistorySegment}).
+ */
+final class HistoryIndex {
+
+    /** Clave que agrupa todas las entradas de texto y audio (privadas y de grupo). */
+    static final String ALL_MESSAGES = "*";
+
+    private final Map<String, Postings> conversations = new ConcurrentHashMap<>();
+
+    static String privateKey(String a, String b) {
+        return a.compareTo(b) <= 0 ? "private:" + a + "\n" + b : "private:" + b + "\n" + a;
+    }
+
+    static String groupKey(String group) {
+        return "group:" + group;
+    }
+
+    static String callKey(String callId) {
+        return "call:" + callId;
+    }
+
+    /**
+     * Registra una entrada ya escrita. Solo lo invoca el hilo escritor.
+     *
+     * @param key Clave de conversación (null si la entrada no pertenece a ninguna)
+     * @param offset Posición de la línea en el segmento
+     * @param length Longitud en bytes de la línea, sin el salto de línea
+     */
+    void add(String key, long offset, int length) {
+        if (key == null) return;
+        conversations.computeIfAbsent(key, k -> new Postings()).add(offset, length);
+        if (!key.startsWith("call:")) {
+            conversations.computeIfAbsent(ALL_MESSAGES, k -> new Postings()).add(offset, length);
+        }
+    }
+
+    Postings get(String key) {
+        return conversations.get(key);
+    }
+
+    Set<String> keys() {
+        return conversations.keySet();
+    }
+
+    /**
+     * Lista de posiciones de una conversación. Un único escritor agrega y publica
+     * el nuevo tamaño (volatile) después de escribir; los lectores toman una
+     * instantánea con {@link #snapshot()} y nunca acceden más allá de su tamaño.
+     */
+    static final class Postings {
+        private volatile long[] offsets = new long[16];
+        private volatile int[] lengths = new int[16];
+        private volatile int size = 0;
+
+        Postings() {
+        }
+
+        Postings(long[] offsets, int[] lengths) {
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.size = offsets.length;
+        }
+
+        void add(long offset, int length) {
+            int n = size;
+            if (n == offsets.length) {
+                long[] newOffsets = Arrays.copyOf(offsets, n * 2);
+                int[] newLengths = Arrays.copyOf(lengths, n * 2);
+                newOffsets[n] = offset;
+                newLengths[n] = length;
+                offsets = newOffsets;
+                lengths = newLengths;
+            } else {
+                offsets[n] = offset;
+                lengths[n] = length;
+            }
+            size = n + 1;
+        }
+
+        /**
+         * Copia consistente: se lee el tamaño antes que los arreglos, que el
+         * escritor publica antes de incrementar el tamaño.
+         */
+        Snapshot snapshot() {
+            int n = size;
+            return new Snapshot(offsets, lengths, n);
+        }
+    }
+
+    record Snapshot(long[] offsets, int[] lengths, int size) {
+
+        /**
+         * Cantidad de entradas cuya posición es menor que {@code bound}.
+         */
+        int countBefore(long bound) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (offsets[mid] < bound) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Historial segmentado: un directorio de segmentos seg-N que rotan por tamaño o
+ * por antigüedad. Solo el segmento activo se recorre al iniciar; los sellados se
+ * abren cuando una consulta llega a ellos, y una cadena por conversación
+ * (segmento → segmento anterior que la contiene) evita visitar segmentos donde la
+ * conversación no aparece. Un compactor en segundo plano comprime los segmentos fríos.
+ * <p>
+ * Las escrituras llegan solo desde el hilo de {@link HistoryWriter}.
+ */
+final class HistoryLog implements AutoCloseable {
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("seg-(\\d{20})\\.(jsonl|jsonz|idx)");
+
+    /**
+     * Entrada lista para escribir.
+     *
+     * @param key Clave de conversación (null si no pertenece a ninguna)
+     * @param line Línea JSON codificada en UTF-8, sin salto de línea
+     * @param timestamp Momento del registro en milisegundos
+     */
+    record Entry(String key, byte[] line, long timestamp) {}
+
+    private final Path dir;
+    private final long rollBytes;
+    private final long rollMs;
+    private final long compactAfterMs;
+    private final ConcurrentSkipListMap<Long, HistorySegment> segments = new ConcurrentSkipListMap<>();
+    // Conversación -> segmento sellado más reciente que la contiene
+    private final Map<String, Long> latestSealed = new ConcurrentHashMap<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final ScheduledExecutorService compactor;
+    private volatile HistorySegment active;
+
+    private HistoryLog(Path dir, long rollBytes, long rollMs, long compactAfterMs) {
+        this.dir = dir;
+        this.rollBytes = rollBytes;
+        this.rollMs = rollMs;
+        this.compactAfterMs = compactAfterMs;
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "History-Compactor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Abre el historial segmentado.
+     *
+     * @param dir Directorio de segmentos
+     * @param legacyFile history.jsonl de versiones anteriores; si existe y el directorio
+     *                   está vacío se adopta como primer segmento
+     * @param rollBytes Tamaño a partir del cual rota el segmento activo
+     * @param rollMs Antigüedad a partir de la cual rota el segmento activo (0 = sin límite)
+     * @param compactAfterMs Tiempo desde el sellado tras el cual un segmento se comprime
+     * @throws IOException si no se puede abrir el directorio o el segmento activo
+     */
+    static HistoryLog open(Path dir, Path legacyFile, long rollBytes, long rollMs, long compactAfterMs) throws IOException {
+        Files.createDirectories(dir);
+        HistoryLog log = new HistoryLog(dir, rollBytes, rollMs, compactAfterMs);
+
+        TreeSet<Long> ids = log.listSegmentIds();
+        if (ids.isEmpty() && legacyFile != null && Files.exists(legacyFile)) {
+            Files.move(legacyFile, HistorySegment.dataPath(dir, 0));
+            ids.add(0L);
+        }
+
+        // El .idx sellado más reciente trae la cadena completa; los anteriores no se abren
+        Long newestSealed = null;
+        for (long id : ids.descendingSet()) {
+            if (HistorySegment.isSealed(dir, id)) {
+                newestSealed = id;
+                break;
+            }
+        }
+        for (long id : ids) {
+            if (newestSealed != null && id <= newestSealed) {
+                if (HistorySegment.isSealed(dir, id)) {
+                    log.segments.put(id, HistorySegment.openSealed(dir, id));
+                } else {
+                    System.err.println("[HistoryLog] Segmento sin índice ignorado: " + id);
+                }
+            }
+        }
+        if (newestSealed != null) {
+            log.latestSealed.putAll(log.segments.get(newestSealed).readChain());
+        }
+
+        // Segmentos sin sellar posteriores (interrupción durante una rotación): se sellan ahora
+        List<Long> unsealed = new ArrayList<>(newestSealed == null ? ids : ids.tailSet(newestSealed, false));
+        for (int i = 0; i < unsealed.size() - 1; i++) {
+            HistorySegment seg = HistorySegment.openActive(dir, unsealed.get(i));
+            log.segments.put(seg.id(), seg);
+            log.seal(seg);
+        }
+        long activeId = unsealed.isEmpty()
+                ? (newestSealed == null ? 0 : newestSealed + 1)
+                : unsealed.get(unsealed.size() - 1);
+        log.active = HistorySegment.openActive(dir, activeId);
+        log.segments.put(activeId, log.active);
+
+        long period = Math.max(10_000, Math.min(compactAfterMs, 60_000));
+        log.compactor.scheduleWithFixedDelay(log::compactCold, period, period, TimeUnit.MILLISECONDS);
+        return log;
+    }
+
+    private TreeSet<Long> listSegmentIds() throws IOException {
+        TreeSet<Long> ids = new TreeSet<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*")) {
+            for (Path f : files) {
+                Matcher m = SEGMENT_FILE.matcher(f.getFileName().toString());
+                if (m.matches()) ids.add(Long.parseLong(m.group(1)));
+            }
+        }
+        return ids;
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Escritura (hilo escritor)
+    // ─────────────────────────────────────────────────────────────
+
+    /**
+     * Escribe un lote en el segmento activo, rotándolo antes si corresponde.
+     */
+    void append(List<Entry> batch) throws IOException {
+        HistorySegment seg = active;
+        if (seg.size() > 0 && (seg.size() >= rollBytes
+                || (rollMs > 0 && System.currentTimeMillis() - seg.createdAt() >= rollMs))) {
+            seal(seg);
+            HistorySegment next = HistorySegment.openActive(dir, seg.id() + 1);
+            segments.put(next.id(), next);
+            active = next;
+            seg = next;
+        }
+        seg.append(batch, buffer);
+    }
+
+    // Sella un segmento y actualiza la cadena de conversaciones
+    private void seal(HistorySegment seg) throws IOException {
+        Map<String, Long> previous = new HashMap<>();
+        Map<String, Long> chain = new HashMap<>(latestSealed);
+        for (String key : seg.keysForSeal()) {
+            previous.put(key, latestSealed.getOrDefault(key, -1L));
+            chain.put(key, seg.id());
+        }
+        seg.seal(previous, chain);
+        // El segmento ya responde desde su .idx antes de que la cadena lo apunte
+        latestSealed.putAll(chain);
+    }
+
+    void force() throws IOException {
+        active.force();
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Consultas
+    // ─────────────────────────────────────────────────────────────
+
+    /**
+     * Devuelve hasta {@code limit} entradas de una conversación anteriores a {@code before},
+     * en orden cronológico.
+     *
+     * @param before Vacío para lo más reciente, un cursor "segmento:posición" devuelto
+     *               por una página anterior, o un instante ISO-8601
+     */
+    HistoryService.Page query(String key, String before, int limit) throws IOException {
+        if (limit <= 0) return new HistoryService.Page(Collections.emptyList(), "", false);
+
+        HistorySegment seg;
+        int end = Integer.MAX_VALUE;
+        HistorySegment.View view;
+        if (before == null || before.isBlank()) {
+            seg = active;
+            view = seg.view(key);
+        } else if (before.indexOf('T') >= 0) {
+            long ts = parseInstant(before);
+            seg = null;
+            for (HistorySegment s : segments.descendingMap().values()) {
+                if (s.minTimestamp() < ts) {
+                    seg = s;
+                    break;
+                }
+            }
+            view = seg == null ? null : seg.view(key);
+            if (view != null) end = seg.countBefore(view, ts);
+        } else {
+            int colon = before.indexOf(':');
+            try {
+                long segId = Long.parseLong(colon < 0 ? before.trim() : before.substring(0, colon).trim());
+                if (colon >= 0) end = Integer.parseInt(before.substring(colon + 1).trim());
+                seg = segments.get(segId);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Cursor inválido: " + before);
+            }
+            view = seg == null ? null : seg.view(key);
+        }
+
+        List<String> items = new ArrayList<>();
+        int remaining = limit;
+        while (seg != null && remaining > 0) {
+            long previousId;
+            if (view != null) {
+                int e = Math.min(end, view.postings().size());
+                int s = Math.max(0, e - remaining);
+                items.addAll(0, seg.read(view, s, e));
+                remaining -= e - s;
+                if (s > 0) {
+                    return new HistoryService.Page(items, seg.id() + ":" + s, true);
+                }
+                previousId = view.previous() == HistorySegment.CHAIN
+                        ? previousContaining(key, seg.id())
+                        : view.previous();
+            } else {
+                previousId = previousContaining(key, seg.id());
+            }
+            seg = previousId >= 0 ? segments.get(previousId) : null;
+            view = seg == null ? null : seg.view(key);
+            end = Integer.MAX_VALUE;
+        }
+        // Página completa justo en el límite de un segmento: el cursor apunta al anterior
+        return seg != null
+                ? new HistoryService.Page(items, String.valueOf(seg.id()), true)
+                : new HistoryService.Page(items, "", false);
+    }
+
+    // Segmento sellado más reciente con id menor que beforeId que contiene la conversación
+    private long previousContaining(String key, long beforeId) throws IOException {
+        Long id = latestSealed.get(key);
+        while (id != null && id >= beforeId) {
+            HistorySegment s = segments.get(id);
+            HistorySegment.View v = s == null ? null : s.view(key);
+            id = v == null ? null : v.previous();
+        }
+        return id == null ? -1 : id;
+    }
+
+    private static long parseInstant(String value) {
+        try {
+            return Instant.parse(value.trim()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Instante inválido: " + value);
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Compactación
+    // ─────────────────────────────────────────────────────────────
+
+    private void compactCold() {
+        long now = System.currentTimeMillis();
+        for (HistorySegment seg : segments.values()) {
+            if (seg.isActive() || seg.isCompacted()) continue;
+            try {
+                if (now - seg.sealedAt() >= compactAfterMs) {
+                    seg.compact();
+                }
+            } catch (IOException e) {
+                System.err.println("[HistoryLog] Error compactando segmento " + seg.id() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        try {
+            compactor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (HistorySegment seg : segments.values()) {
+            seg.close();
+        }
+    }
+}
@@ -0,0 +1,802 @@
+package service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Segmento del historial. Un segmento pasa por tres estados:
+ * <ul>
+ *   <li>activo: seg-N.jsonl recibe las escrituras; su índice por conversación y
+ *       su índice disperso (timestamp → posición) viven en memoria.</li>
+ *   <li>sellado: al rotar se escribe seg-N.idx con el índice disperso, las
+ *       posiciones de cada conversación y un enlace al segmento anterior que
+ *       contiene cada conversación; esos datos se cargan bajo demanda.</li>
+ *   <li>compactado: el compactor reescribe seg-N.jsonl como seg-N.jsonz, bloques
+ *       de 64 KiB comprimidos de forma independiente; las posiciones del .idx
+ *       siguen siendo válidas porque se refieren al contenido sin comprimir.</li>
+ * </ul>
+ */
+final class HistorySegment {
+
+    /** Enlace "usar la cadena global" para el segmento activo (aún sin .idx). */
+    static final long CHAIN = -2;
+
+    private static final int INDEX_MAGIC = 0x48494458;   // "HIDX"
+    private static final int BLOCK_MAGIC = 0x48424c4b;   // "HBLK"
+    private static final int VERSION = 1;
+    private static final int SPARSE_INTERVAL = 16 * 1024;
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private enum State { ACTIVE, SEALED, COMPACTED }
+
+    private final long id;
+    private final Path dataPath;
+    private final Path compressedPath;
+    private final Path indexPath;
+    private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+    private final ReentrantLock openLock = new ReentrantLock();
+    private volatile State state;
+    private volatile FileChannel reader;
+    private volatile BlockReader blocks;
+
+    // Solo segmento activo (los modifica el hilo escritor)
+    private FileChannel appender;
+    private volatile HistoryIndex index;
+    private volatile SparseIndex sparse;
+    private volatile long size;
+    private volatile long entryCount;
+    private volatile long minTs = Long.MAX_VALUE;
+    private volatile long maxTs = Long.MIN_VALUE;
+    private long lastSampleOffset = -SPARSE_INTERVAL;
+    private long createdAt;
+
+    // Solo segmentos sellados (cargados bajo demanda)
+    private volatile SoftReference<Header> header = new SoftReference<>(null);
+    private volatile SoftReference<Map<String, KeyRef>> directory = new SoftReference<>(null);
+
+    private HistorySegment(Path dir, long id, State state) {
+        this.id = id;
+        String base = String.format("seg-%020d", id);
+        this.dataPath = dir.resolve(base + ".jsonl");
+        this.compressedPath = dir.resolve(base + ".jsonz");
+        this.indexPath = dir.resolve(base + ".idx");
+        this.state = state;
+    }
+
+    static Path dataPath(Path dir, long id) {
+        return dir.resolve(String.format("seg-%020d.jsonl", id));
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Apertura
+    // ─────────────────────────────────────────────────────────────
+
+    /**
+     * Abre un segmento activo. Si el archivo ya existe (reinicio) se recorre una
+     * vez para reconstruir sus índices y se descarta una última línea incompleta.
+     */
+    static HistorySegment openActive(Path dir, long id) throws IOException {
+        HistorySegment seg = new HistorySegment(dir, id, State.ACTIVE);
+        seg.index = new HistoryIndex();
+        seg.sparse = new SparseIndex();
+        if (!Files.exists(seg.dataPath)) {
+            Files.createFile(seg.dataPath);
+        }
+        seg.scan();
+        seg.appender = FileChannel.open(seg.dataPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        seg.reader = FileChannel.open(seg.dataPath, StandardOpenOption.READ);
+        seg.createdAt = seg.entryCount > 0 ? seg.minTs : System.currentTimeMillis();
+        return seg;
+    }
+
+    /**
+     * Registra un segmento sellado sin leer nada: el .idx y los datos se abren
+     * la primera vez que una consulta los necesita.
+     */
+    static HistorySegment openSealed(Path dir, long id) throws IOException {
+        HistorySegment seg = new HistorySegment(dir, id, State.SEALED);
+        if (Files.exists(seg.compressedPath)) {
+            // Un .jsonl junto a su .jsonz es un resto de una compactación interrumpida
+            Files.deleteIfExists(seg.dataPath);
+            seg.state = State.COMPACTED;
+        }
+        return seg;
+    }
+
+    static boolean isSealed(Path dir, long id) {
+        return Files.exists(new HistorySegment(dir, id, State.SEALED).indexPath);
+    }
+
+    private void scan() throws IOException {
+        long validEnd = 0;
+        try (InputStream in = Files.newInputStream(dataPath)) {
+            byte[] buffer = new byte[64 * 1024];
+            byte[] line = new byte[1024];
+            int lineLength = 0;
+            long lineStart = 0;
+            long position = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                        indexExisting(new String(line, 0, length, StandardCharsets.UTF_8), lineStart, length);
+                        lineLength = 0;
+                        lineStart = position + i + 1;
+                        validEnd = lineStart;
+                    } else {
+                        if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+                        line[lineLength++] = b;
+                    }
+                }
+                position += n;
+            }
+        }
+        if (Files.size(dataPath) > validEnd) {
+            // Escritura interrumpida: se descarta la línea incompleta
+            try (FileChannel ch = FileChannel.open(dataPath, StandardOpenOption.WRITE)) {
+                ch.truncate(validEnd);
+            }
+        }
+        size = validEnd;
+    }
+
+    private void indexExisting(String json, long offset, int length) {
+        if (json.isBlank()) return;
+        try {
+            JsonObject entry = JsonParser.parseString(json).getAsJsonObject();
+            long ts = maxTs == Long.MIN_VALUE ? 0 : maxTs;
+            String iso = text(entry, "timestamp");
+            if (!iso.isEmpty()) ts = Instant.parse(iso).toEpochMilli();
+            record(keyOf(entry), offset, length, ts);
+        } catch (RuntimeException e) {
+            // Línea corrupta: no se indexa
+        }
+    }
+
+    private static String keyOf(JsonObject entry) {
+        return switch (text(entry, "scope")) {
+            case "private" -> HistoryIndex.privateKey(text(entry, "sender"), text(entry, "recipient"));
+            case "group" -> HistoryIndex.groupKey(text(entry, "group"));
+            case "call" -> HistoryIndex.callKey(text(entry, "callId"));
+            default -> null;
+        };
+    }
+
+    private static String text(JsonObject entry, String field) {
+        JsonElement e = entry.get(field);
+        return e == null || e.isJsonNull() ? "" : e.getAsString();
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Escritura (solo hilo escritor, segmento activo)
+    // ─────────────────────────────────────────────────────────────
+
+    /**
+     * Escribe un lote completo y, cuando ya está en el archivo, lo publica en los índices.
+     */
+    void append(List<HistoryLog.Entry> batch, ByteBuffer buffer) throws IOException {
+        long[] offsets = new long[batch.size()];
+        long next = size;
+        buffer.clear();
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] bytes = batch.get(i).line();
+            offsets[i] = next;
+            next += bytes.length + 1;
+            if (bytes.length + 1 > buffer.remaining()) {
+                drain(buffer);
+            }
+            if (bytes.length + 1 > buffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+                writeFully(ByteBuffer.wrap(new byte[] {'\n'}));
+                continue;
+            }
+            buffer.put(bytes).put((byte) '\n');
+        }
+        drain(buffer);
+        for (int i = 0; i < batch.size(); i++) {
+            HistoryLog.Entry e = batch.get(i);
+            record(e.key(), offsets[i], e.line().length, e.timestamp());
+        }
+        size = next;
+    }
+
+    private void record(String key, long offset, int length, long ts) {
+        long clamped = Math.max(ts, maxTs);
+        if (offset - lastSampleOffset >= SPARSE_INTERVAL) {
+            sparse.add(clamped, offset);
+            lastSampleOffset = offset;
+        }
+        index.add(key, offset, length);
+        if (clamped < minTs) minTs = clamped;
+        maxTs = clamped;
+        entryCount++;
+    }
+
+    private void drain(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            appender.write(src);
+        }
+    }
+
+    void force() throws IOException {
+        if (appender != null) appender.force(false);
+    }
+
+    Set<String> keysForSeal() {
+        return index.keys();
+    }
+
+    /**
+     * Sella el segmento activo: fuerza los datos a disco y escribe seg-N.idx.
+     *
+     * @param previous Para cada conversación del segmento, el segmento sellado
+     *                 anterior que la contiene (-1 si ninguno)
+     * @param chain Último segmento sellado de cada conversación, incluido este
+     */
+    void seal(Map<String, Long> previous, Map<String, Long> chain) throws IOException {
+        appender.force(false);
+        appender.close();
+        appender = null;
+
+        Path tmp = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(minTs);
+            out.writeLong(maxTs);
+            out.writeLong(entryCount);
+            out.writeLong(size);
+
+            SparseIndex s = sparse;
+            int samples = s.size;
+            out.writeInt(samples);
+            for (int i = 0; i < samples; i++) {
+                out.writeLong(s.timestamps[i]);
+                out.writeLong(s.offsets[i]);
+            }
+
+            // Posiciones por conversación; el directorio va al final para conocer sus posiciones
+            List<String> keys = new ArrayList<>(index.keys());
+            long[] positions = new long[keys.size()];
+            int[] counts = new int[keys.size()];
+            for (int k = 0; k < keys.size(); k++) {
+                HistoryIndex.Snapshot p = index.get(keys.get(k)).snapshot();
+                positions[k] = out.size();
+                counts[k] = p.size();
+                for (int i = 0; i < p.size(); i++) {
+                    out.writeLong(p.offsets()[i]);
+                    out.writeInt(p.lengths()[i]);
+                }
+            }
+
+            long directoryPos = out.size();
+            out.writeInt(keys.size());
+            for (int k = 0; k < keys.size(); k++) {
+                out.writeUTF(keys.get(k));
+                out.writeLong(previous.getOrDefault(keys.get(k), -1L));
+                out.writeInt(counts[k]);
+                out.writeLong(positions[k]);
+            }
+
+            long chainPos = out.size();
+            out.writeInt(chain.size());
+            for (Map.Entry<String, Long> e : chain.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue());
+            }
+
+            out.writeLong(directoryPos);
+            out.writeLong(chainPos);
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // A partir de aquí las consultas usan el .idx y se libera la memoria del índice
+        state = State.SEALED;
+        index = null;
+        sparse = null;
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Lectura
+    // ─────────────────────────────────────────────────────────────
+
+    long id() {
+        return id;
+    }
+
+    boolean isActive() {
+        return state == State.ACTIVE;
+    }
+
+    boolean isCompacted() {
+        return state == State.COMPACTED;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long entryCount() {
+        return entryCount;
+    }
+
+    long createdAt() {
+        return createdAt;
+    }
+
+    long sealedAt() throws IOException {
+        return Files.getLastModifiedTime(indexPath).toMillis();
+    }
+
+    /**
+     * Menor timestamp del segmento (Long.MAX_VALUE si está vacío).
+     */
+    long minTimestamp() throws IOException {
+        return isActive() ? minTs : header().minTs();
+    }
+
+    /**
+     * Entradas de una conversación en este segmento.
+     *
+     * @return Vista con las posiciones y el segmento anterior que la contiene,
+     *         o null si la conversación no aparece en este segmento
+     */
+    View view(String key) throws IOException {
+        if (isActive()) {
+            HistoryIndex idx = index;
+            if (idx != null) {
+                HistoryIndex.Postings p = idx.get(key);
+                return p == null ? null : new View(p.snapshot(), CHAIN);
+            }
+        }
+        KeyRef ref = directory().get(key);
+        if (ref == null) return null;
+        return new View(readPostings(ref), ref.previous());
+    }
+
+    /**
+     * Cantidad de entradas de la vista con timestamp anterior a {@code ts}. El índice
+     * disperso acota la ventana y solo se leen las entradas de la conversación en ella.
+     */
+    int countBefore(View view, long ts) throws IOException {
+        long lo = 0;
+        long hi = Long.MAX_VALUE;
+        long[] timestamps;
+        long[] offsets;
+        int samples;
+        SparseIndex s = isActive() ? sparse : null;
+        if (s != null) {
+            samples = s.size;
+            timestamps = s.timestamps;
+            offsets = s.offsets;
+        } else {
+            Header h = header();
+            samples = h.sampleTimestamps().length;
+            timestamps = h.sampleTimestamps();
+            offsets = h.sampleOffsets();
+        }
+        for (int i = 0; i < samples; i++) {
+            if (timestamps[i] < ts) {
+                lo = offsets[i];
+            } else {
+                hi = offsets[i];
+                break;
+            }
+        }
+        HistoryIndex.Snapshot p = view.postings();
+        int end = p.countBefore(hi);
+        while (end > 0 && p.offsets()[end - 1] >= lo) {
+            String json = read(p.offsets()[end - 1], p.lengths()[end - 1]);
+            if (timestampOf(json) < ts) break;
+            end--;
+        }
+        return end;
+    }
+
+    private static long timestampOf(String json) {
+        try {
+            return Instant.parse(text(JsonParser.parseString(json).getAsJsonObject(), "timestamp")).toEpochMilli();
+        } catch (RuntimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Lee las entradas [from, to) de la vista, en orden.
+     */
+    List<String> read(View view, int from, int to) throws IOException {
+        List<String> items = new ArrayList<>(to - from);
+        HistoryIndex.Snapshot p = view.postings();
+        for (int i = from; i < to; i++) {
+            items.add(read(p.offsets()[i], p.lengths()[i]));
+        }
+        return items;
+    }
+
+    private String read(long offset, int length) throws IOException {
+        dataLock.readLock().lock();
+        try {
+            if (state == State.COMPACTED) {
+                return new String(blocks().read(offset, length), StandardCharsets.UTF_8);
+            }
+            ByteBuffer dst = ByteBuffer.allocate(length);
+            long position = offset;
+            FileChannel ch = plainReader();
+            while (dst.hasRemaining()) {
+                int n = ch.read(dst, position);
+                if (n < 0) break;
+                position += n;
+            }
+            return new String(dst.array(), 0, dst.position(), StandardCharsets.UTF_8);
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+
+    // Apertura perezosa del canal de lectura (segmentos sellados que nunca se consultaron)
+    private FileChannel plainReader() throws IOException {
+        FileChannel ch = reader;
+        if (ch == null) {
+            openLock.lock();
+            try {
+                if (reader == null) reader = FileChannel.open(dataPath, StandardOpenOption.READ);
+                ch = reader;
+            } finally {
+                openLock.unlock();
+            }
+        }
+        return ch;
+    }
+
+    private BlockReader blocks() throws IOException {
+        BlockReader b = blocks;
+        if (b == null) {
+            openLock.lock();
+            try {
+                if (blocks == null) blocks = BlockReader.open(compressedPath);
+                b = blocks;
+            } finally {
+                openLock.unlock();
+            }
+        }
+        return b;
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Índice persistido (.idx)
+    // ─────────────────────────────────────────────────────────────
+
+    private Header header() throws IOException {
+        Header h = header.get();
+        if (h == null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+                if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("Índice de historial inválido: " + indexPath);
+                }
+                long min = in.readLong();
+                long max = in.readLong();
+                long count = in.readLong();
+                long length = in.readLong();
+                int samples = in.readInt();
+                long[] ts = new long[samples];
+                long[] offsets = new long[samples];
+                for (int i = 0; i < samples; i++) {
+                    ts[i] = in.readLong();
+                    offsets[i] = in.readLong();
+                }
+                h = new Header(min, max, count, length, ts, offsets);
+            }
+            header = new SoftReference<>(h);
+        }
+        return h;
+    }
+
+    private Map<String, KeyRef> directory() throws IOException {
+        Map<String, KeyRef> dir = directory.get();
+        if (dir == null) {
+            try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+                long[] footer = readFooter(ch);
+                ch.position(footer[0]);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+                int keys = in.readInt();
+                dir = new HashMap<>(keys * 2);
+                for (int k = 0; k < keys; k++) {
+                    String key = in.readUTF();
+                    dir.put(key, new KeyRef(in.readLong(), in.readInt(), in.readLong()));
+                }
+            }
+            directory = new SoftReference<>(dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Último segmento sellado de cada conversación según este .idx (se usa al iniciar
+     * con el segmento sellado más reciente, sin abrir los anteriores).
+     */
+    Map<String, Long> readChain() throws IOException {
+        try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long[] footer = readFooter(ch);
+            ch.position(footer[1]);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+            int n = in.readInt();
+            Map<String, Long> chain = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                chain.put(in.readUTF(), in.readLong());
+            }
+            return chain;
+        }
+    }
+
+    private static long[] readFooter(FileChannel ch) throws IOException {
+        ByteBuffer footer = ByteBuffer.allocate(16);
+        long position = ch.size() - 16;
+        while (footer.hasRemaining()) {
+            if (ch.read(footer, position + footer.position()) < 0) throw new IOException("Índice truncado");
+        }
+        footer.flip();
+        return new long[] {footer.getLong(), footer.getLong()};
+    }
+
+    private HistoryIndex.Snapshot readPostings(KeyRef ref) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(ref.count() * 12);
+        try (FileChannel ch = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long position = ref.position();
+            while (buf.hasRemaining()) {
+                int n = ch.read(buf, position);
+                if (n < 0) throw new IOException("Índice truncado");
+                position += n;
+            }
+        }
+        buf.flip();
+        long[] offsets = new long[ref.count()];
+        int[] lengths = new int[ref.count()];
+        for (int i = 0; i < ref.count(); i++) {
+            offsets[i] = buf.getLong();
+            lengths[i] = buf.getInt();
+        }
+        return new HistoryIndex.Snapshot(offsets, lengths, ref.count());
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Compactación
+    // ─────────────────────────────────────────────────────────────
+
+    /**
+     * Reescribe el segmento sellado en bloques comprimidos y elimina el .jsonl.
+     * Las lecturas en curso terminan antes del cambio (lock de escritura).
+     */
+    void compact() throws IOException {
+        if (state != State.SEALED) return;
+        Path tmp = compressedPath.resolveSibling(compressedPath.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (InputStream in = Files.newInputStream(dataPath);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            byte[] block = new byte[BLOCK_SIZE];
+            byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 8 + 64];
+            List<long[]> table = new ArrayList<>();
+            long position = 0;
+            int n;
+            while ((n = in.readNBytes(block, 0, BLOCK_SIZE)) > 0) {
+                deflater.reset();
+                deflater.setInput(block, 0, n);
+                deflater.finish();
+                int clen = 0;
+                while (!deflater.finished()) {
+                    if (clen == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    clen += deflater.deflate(compressed, clen, compressed.length - clen);
+                }
+                ByteBuffer src = ByteBuffer.wrap(compressed, 0, clen);
+                while (src.hasRemaining()) out.write(src);
+                table.add(new long[] {position, clen, n});
+                position += clen;
+            }
+
+            ByteBuffer tail = ByteBuffer.allocate(4 + table.size() * 16 + 12);
+            tail.putInt(table.size());
+            for (long[] t : table) {
+                tail.putLong(t[0]).putInt((int) t[1]).putInt((int) t[2]);
+            }
+            tail.putLong(position).putInt(BLOCK_MAGIC);
+            tail.flip();
+            while (tail.hasRemaining()) out.write(tail);
+            out.force(true);
+        } finally {
+            deflater.end();
+        }
+        Files.move(tmp, compressedPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        dataLock.writeLock().lock();
+        try {
+            state = State.COMPACTED;
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+        Files.deleteIfExists(dataPath);
+    }
+
+    void close() {
+        try {
+            if (appender != null) appender.close();
+            if (reader != null) reader.close();
+            if (blocks != null) blocks.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // ─────────────────────────────────────────────────────────────
+    // Tipos auxiliares
+    // ─────────────────────────────────────────────────────────────
+
+    record View(HistoryIndex.Snapshot postings, long previous) {}
+
+    private record KeyRef(long previous, int count, long position) {}
+
+    private record Header(long minTs, long maxTs, long entryCount, long dataLength,
+                          long[] sampleTimestamps, long[] sampleOffsets) {}
+
+    /**
+     * Índice disperso del segmento activo: una muestra (timestamp, posición) cada
+     * {@value #SPARSE_INTERVAL} bytes. Mismo esquema de publicación que Postings.
+     */
+    private static final class SparseIndex {
+        private volatile long[] timestamps = new long[64];
+        private volatile long[] offsets = new long[64];
+        private volatile int size = 0;
+
+        void add(long ts, long offset) {
+            int n = size;
+            if (n == timestamps.length) {
+                long[] t = Arrays.copyOf(timestamps, n * 2);
+                long[] o = Arrays.copyOf(offsets, n * 2);
+                t[n] = ts;
+                o[n] = offset;
+                timestamps = t;
+                offsets = o;
+            } else {
+                timestamps[n] = ts;
+                offsets[n] = offset;
+            }
+            size = n + 1;
+        }
+    }
+
+    /**
+     * Lector de un segmento compactado. Cada bloque se descomprime de forma
+     * independiente y se conserva el último bloque leído.
+     */
+    private static final class BlockReader {
+        private final FileChannel channel;
+        private final long[] positions;
+        private final int[] compressedLengths;
+        private final int[] lengths;
+        private volatile CachedBlock cached;
+
+        private record CachedBlock(int index, byte[] data) {}
+
+        private BlockReader(FileChannel channel, long[] positions, int[] compressedLengths, int[] lengths) {
+            this.channel = channel;
+            this.positions = positions;
+            this.compressedLengths = compressedLengths;
+            this.lengths = lengths;
+        }
+
+        static BlockReader open(Path path) throws IOException {
+            FileChannel ch = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                ByteBuffer footer = readAt(ch, ch.size() - 12, 12);
+                long tablePos = footer.getLong();
+                if (footer.getInt() != BLOCK_MAGIC) throw new IOException("Segmento comprimido inválido: " + path);
+                int count = readAt(ch, tablePos, 4).getInt();
+                ByteBuffer table = readAt(ch, tablePos + 4, count * 16);
+                long[] positions = new long[count];
+                int[] clens = new int[count];
+                int[] lens = new int[count];
+                for (int i = 0; i < count; i++) {
+                    positions[i] = table.getLong();
+                    clens[i] = table.getInt();
+                    lens[i] = table.getInt();
+                }
+                return new BlockReader(ch, positions, clens, lens);
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+        }
+
+        byte[] read(long offset, int length) throws IOException {
+            byte[] out = new byte[length];
+            int copied = 0;
+            while (copied < length) {
+                long absolute = offset + copied;
+                int blockIndex = (int) (absolute / BLOCK_SIZE);
+                if (blockIndex >= positions.length) break;
+                byte[] block = block(blockIndex);
+                int within = (int) (absolute - (long) blockIndex * BLOCK_SIZE);
+                int n = Math.min(length - copied, block.length - within);
+                System.arraycopy(block, within, out, copied, n);
+                copied += n;
+            }
+            return copied == length ? out : Arrays.copyOf(out, copied);
+        }
+
+        private byte[] block(int index) throws IOException {
+            CachedBlock c = cached;
+            if (c != null && c.index() == index) return c.data();
+            ByteBuffer compressed = readAt(channel, positions[index], compressedLengths[index]);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed.array(), 0, compressedLengths[index]);
+                byte[] data = new byte[lengths[index]];
+                int n = 0;
+                while (n < data.length && !inflater.finished()) {
+                    n += inflater.inflate(data, n, data.length - n);
+                }
+                cached = new CachedBlock(index, data);
+                return data;
+            } catch (DataFormatException e) {
+                throw new IOException("Bloque comprimido corrupto", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private static ByteBuffer readAt(FileChannel ch, long position, int length) throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(length);
+            while (buf.hasRemaining()) {
+                if (ch.read(buf, position + buf.position()) < 0) throw new IOException("Segmento truncado");
+            }
+            buf.flip();
+            return buf;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -2,58 +2,144 @@ package service;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import model.AudioCodec;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Servicio para registrar el historial de mensajes (texto y audios) en JSON.
  * Escribe en formato NDJSON (una entrada JSON por línea) para simplificar la concurrencia.
+ * Las entradas se encolan y las escribe en lotes un único hilo ({@link HistoryWriter}).
+ * El historial se guarda en segmentos rotativos ({@link HistoryLog}) y las consultas por
+ * conversación se resuelven con sus índices sin recorrer los archivos.
  */
 public class HistoryService {
     private static final String HISTORY_DIR = "Proyecto" + File.separator + "server" + File.separator + "data";
-    private static final String HISTORY_FILE = HISTORY_DIR + File.separator + "history.jsonl"; // NDJSON (JSON Lines)
+    private static final String HISTORY_FILE = HISTORY_DIR + File.separator + "history.jsonl"; // formato anterior (un solo archivo)
+    private static final String HISTORY_LOG_DIR = HISTORY_DIR + File.separator + "history"; // segmentos NDJSON (JSON Lines)
     private static final String VOICE_DIR = HISTORY_DIR + File.separator + "voice";
 
     private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-    private static final Object lock = new Object();
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_COMPACT_AFTER_MS = 60L * 60 * 1000;
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static volatile HistoryWriter writer;
+    private static volatile HistoryLog log;
+    // Formato de los WAV de notas de voz: μ-law ocupa la mitad que PCM16
+    private static volatile AudioCodec voiceNoteFormat = AudioCodec.ULAW;
+    private static final Metrics.Histogram APPEND = Metrics.histogram("chat_history_append_seconds", null,
+            "Tiempo de serializar y encolar una entrada del historial");
+
+    static {
+        // Vaciar las entradas pendientes aunque la JVM termine sin cerrar el servidor
+        Runtime.getRuntime().addShutdownHook(new Thread(HistoryService::shutdown, "History-Shutdown"));
+        // Contadores del escritor actual (se reinician si el historial se reconfigura)
+        Metrics.gauge("chat_history_pending", null, "Entradas en cola sin escribir",
+                () -> writer == null ? 0 : writer.getPendingCount());
+        Metrics.gauge("chat_history_written", null, "Entradas escritas por el escritor actual",
+                () -> writer == null ? 0 : writer.getWrittenCount());
+        Metrics.gauge("chat_history_batches", null, "Lotes escritos por el escritor actual",
+                () -> writer == null ? 0 : writer.getBatchCount());
+        Metrics.gauge("chat_history_dropped", null, "Entradas descartadas por cola llena o cerrada",
+                () -> writer == null ? 0 : writer.getDroppedCount());
+    }
 
     private static void ensureDirs() throws IOException {
         Files.createDirectories(Paths.get(HISTORY_DIR));
         Files.createDirectories(Paths.get(VOICE_DIR));
-        // Asegurar existencia del archivo
-        Path historyPath = Paths.get(HISTORY_FILE);
-        if (!Files.exists(historyPath)) {
-            Files.createFile(historyPath);
+    }
+
+    /**
+     * Configura (o reconfigura) el escritor asíncrono del historial.
+     * Se invoca al iniciar el servidor con los valores de config.json.
+     *
+     * @param durability Política de fsync: "none", "interval" o "always"
+     * @param flushMs Intervalo de fsync en milisegundos para "interval"
+     * @param segmentBytes Tamaño de rotación de segmentos (0 = 64 MiB)
+     * @param segmentMs Antigüedad de rotación de segmentos (0 = sin límite)
+     * @param compactAfterMs Tiempo tras el sellado para comprimir un segmento (0 = 1 hora)
+     * @param voiceFormat Formato de los WAV de notas de voz: "ulaw" (por defecto) o "pcm16"
+     * @param onFull Qué hacer con una entrada si la cola del escritor está llena: "block"
+     *               (por defecto, espera un momento) o "drop" (la descarta); ver {@link HistoryWriter.Overflow}
+     */
+    public static void configure(String durability, long flushMs, long segmentBytes, long segmentMs,
+                                 long compactAfterMs, String voiceFormat, String onFull) {
+        voiceNoteFormat = "pcm16".equalsIgnoreCase(voiceFormat) ? AudioCodec.PCM16 : AudioCodec.ULAW;
+        lock.lock();
+        try {
+            closeWriter();
+            log = HistoryLog.open(Paths.get(HISTORY_LOG_DIR), Paths.get(HISTORY_FILE),
+                    segmentBytes > 0 ? segmentBytes : DEFAULT_SEGMENT_BYTES,
+                    Math.max(0, segmentMs),
+                    compactAfterMs > 0 ? compactAfterMs : DEFAULT_COMPACT_AFTER_MS);
+            writer = new HistoryWriter(log, HistoryWriter.Durability.from(durability), flushMs, QUEUE_CAPACITY,
+                    HistoryWriter.Overflow.from(onFull));
+        } catch (IOException e) {
+            closeWriter();
+            System.err.println("[HistoryService] No se pudo abrir el historial: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Vacía las entradas pendientes a disco y cierra el escritor.
+     */
+    public static void shutdown() {
+        lock.lock();
+        try {
+            closeWriter();
+        } finally {
+            lock.unlock();
         }
     }
 
-    private static void appendLine(String jsonLine) {
-        synchronized (lock) {
+    private static void closeWriter() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    public static HistoryWriter getWriter() {
+        return writer;
+    }
+
+    // Serializa y encola la entrada (el emisor solo espera si la cola está llena, ver HistoryWriter.Overflow);
+    // el hilo escritor la agrupa con las demás
+    private static void appendLine(String key, Map<String, Object> entry) {
+        long start = System.nanoTime();
+        String jsonLine = gson.toJson(entry);
+        HistoryWriter w = writer;
+        if (w == null) {
+            // Sin configuración explícita (p. ej. uso fuera de ChatServer): valores por defecto
+            lock.lock();
             try {
-                ensureDirs();
-                try (BufferedWriter bw = Files.newBufferedWriter(Paths.get(HISTORY_FILE), StandardCharsets.UTF_8, java.nio.file.StandardOpenOption.APPEND)) {
-                    bw.write(jsonLine);
-                    bw.newLine();
-                }
-            } catch (IOException e) {
-                System.err.println("[HistoryService] Error escribiendo historial: " + e.getMessage());
+                if (writer == null) configure(null, 0, 0, 0, 0, null, null);
+                w = writer;
+            } finally {
+                lock.unlock();
             }
+            if (w == null) return;
         }
+        w.append(key, jsonLine);
+        APPEND.recordSince(start);
     }
 
     private static String isoNow() {
@@ -68,14 +154,14 @@ public class HistoryService {
         Map<String, Object> entry = baseEntry("text", "private", sender);
         entry.put("recipient", recipient);
         entry.put("message", text);
-        appendLine(gson.toJson(entry));
+        appendLine(HistoryIndex.privateKey(sender, recipient), entry);
     }
 
     public static void logTextGroup(String sender, String groupName, String text) {
         Map<String, Object> entry = baseEntry("text", "group", sender);
         entry.put("group", groupName);
         entry.put("message", text);
-        appendLine(gson.toJson(entry));
+        appendLine(HistoryIndex.groupKey(groupName), entry);
     }
 
     public static void logVoiceNote(String sender, String recipient, String relativeFilePath, long sizeBytes) {
@@ -83,7 +169,7 @@ public class HistoryService {
         entry.put("recipient", recipient);
         entry.put("audioFile", relativeFilePath);
         entry.put("sizeBytes", sizeBytes);
-        appendLine(gson.toJson(entry));
+        appendLine(HistoryIndex.privateKey(sender, recipient), entry);
     }
 
     public static void logVoiceGroup(String sender, String groupName, String relativeFilePath, long sizeBytes) {
@@ -91,14 +177,14 @@ public class HistoryService {
         entry.put("group", groupName);
         entry.put("audioFile", relativeFilePath);
         entry.put("sizeBytes", sizeBytes);
-        appendLine(gson.toJson(entry));
+        appendLine(HistoryIndex.groupKey(groupName), entry);
     }
 
     public static void logCallStarted(String callId, Iterable<String> participants) {
         Map<String, Object> entry = baseEntry("call_started", "call", "server");
         entry.put("callId", callId);
         entry.put("participants", participants);
-        appendLine(gson.toJson(entry));
+        appendLine(HistoryIndex.callKey(callId), entry);
     }
 
     public static void logCallEnded(String callId, Iterable<String> participants, String requester) {
@@ -106,7 +192,54 @@ public class HistoryService {
         entry.put("callId", callId);
         entry.put("participants", participants);
         entry.put("endedBy", requester);
-        appendLine(gson.toJson(entry));
+        appendLine(HistoryIndex.callKey(callId), entry);
+    }
+
+    /**
+     * Historial de una conversación privada entre dos usuarios (texto y notas de voz).
+     *
+     * @param before Cursor de una página anterior, un instante ISO-8601 (entradas anteriores
+     *               a ese momento) o vacío para las entradas más recientes
+     * @param limit Cantidad máxima de entradas
+     */
+    public static Page queryPrivate(String user, String peer, String before, int limit) throws IOException {
+        return query(HistoryIndex.privateKey(user, peer), before, limit);
+    }
+
+    /**
+     * Historial de un grupo (texto y notas de voz grupales).
+     */
+    public static Page queryGroup(String group, String before, int limit) throws IOException {
+        return query(HistoryIndex.groupKey(group), before, limit);
+    }
+
+    /**
+     * Eventos de una llamada (inicio y fin).
+     */
+    public static Page queryCall(String callId, String before, int limit) throws IOException {
+        return query(HistoryIndex.callKey(callId), before, limit);
+    }
+
+    /**
+     * Todas las entradas de texto y notas de voz, privadas y de grupo.
+     */
+    public static Page queryAll(String before, int limit) throws IOException {
+        return query(HistoryIndex.ALL_MESSAGES, before, limit);
+    }
+
+    private static Page query(String key, String before, int limit) throws IOException {
+        HistoryLog l = log;
+        if (l == null) {
+            lock.lock();
+            try {
+                if (writer == null) configure(null, 0, 0, 0, 0, null, null);
+                l = log;
+            } finally {
+                lock.unlock();
+            }
+            if (l == null) throw new IOException("Historial no disponible");
+        }
+        return l.query(key, before, limit);
     }
 
     private static Map<String, Object> baseEntry(String type, String scope, String sender) {
@@ -120,27 +253,43 @@ public class HistoryService {
     }
 
     /**
-     * Guarda bytes de audio PCM (44100 Hz, 16-bit, mono, little-endian) en formato WAV
-     * dentro de data/voice, y devuelve la ruta relativa para el JSON.
-     * Nota: los bytes recibidos provienen del cliente que captura con ese formato.
+     * Abre una nota de voz WAV (44100 Hz, mono, en el formato de almacenamiento
+     * configurado) dentro de data/voice para escribirla en streaming a medida que
+     * llegan los bytes.
+     *
+     * @param source Códec con el que el cliente envía el audio (captura a 44100 Hz, mono)
      */
-    public static SavedAudio saveVoiceBytes(byte[] data) throws IOException {
+    public static VoiceNoteWriter openVoiceNote(AudioCodec source) throws IOException {
         ensureDirs();
         String fileName = "voice-" + System.currentTimeMillis() + "-" + UUID.randomUUID() + ".wav";
         Path filePath = Paths.get(VOICE_DIR, fileName);
+        // Ruta relativa desde Proyecto (para que sea portable en logs)
+        String relative = "server" + File.separator + "data" + File.separator + "voice" + File.separator + fileName;
+        return new VoiceNoteWriter(filePath, relative, source, voiceNoteFormat);
+    }
 
-        // Definir el formato de audio según la captura del cliente
-        AudioFormat fmt = new AudioFormat(44100, 16, 1, true, false); // PCM signed, little-endian
-        try (java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(data);
-            AudioInputStream ais = new AudioInputStream(bais, fmt, data.length / fmt.getFrameSize())) {
-            AudioSystem.write(ais, AudioFileFormat.Type.WAVE, filePath.toFile());
-        }
+    /**
+     * Guarda una nota de voz completa ya recibida en memoria (p. ej. por Ice)
+     * y devuelve la ruta relativa para el JSON.
+     */
+    public static SavedAudio saveVoiceBytes(byte[] data) throws IOException {
+        return saveVoiceBytes(AudioCodec.PCM16, data);
+    }
 
-        long size = Files.size(filePath);
-        // Devolver ruta relativa desde Proyecto (para que sea portable en logs)
-        String relative = "server" + File.separator + "data" + File.separator + "voice" + File.separator + fileName;
-        return new SavedAudio(relative, size);
+    /**
+     * Igual que {@link #saveVoiceBytes(byte[])} para audio comprimido con otro códec.
+     */
+    public static SavedAudio saveVoiceBytes(AudioCodec codec, byte[] data) throws IOException {
+        try (VoiceNoteWriter note = openVoiceNote(codec)) {
+            note.write(data, 0, data.length);
+            return note.finish();
+        }
     }
 
     public record SavedAudio(String relativePath, long sizeBytes) {}
+
+    /**
+     * Página de historial: entradas NDJSON en orden cronológico y cursor para la página anterior.
+     */
+    public record Page(List<String> items, String nextCursor, boolean hasMore) {}
 }
@@ -0,0 +1,212 @@
+package service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritor asíncrono del historial (NDJSON) con un único hilo dueño de los archivos.
+ * Los emisores solo encolan la línea en una cola acotada y no esperan al disco
+ * mientras haya lugar; el hilo escritor agrupa todas las entradas pendientes en
+ * una sola escritura sobre el segmento activo del historial (group commit) y
+ * aplica la política de durabilidad configurada.
+ * <p>
+ * Si el disco no da abasto y la cola se llena, {@link Overflow} decide: por
+ * defecto el emisor espera un momento a que se libere lugar (frenando a la
+ * conversación que registra) y solo si no se libera la entrada se pierde;
+ * con "drop" se pierde enseguida. Toda entrada perdida se cuenta en
+ * chat_history_dropped y {@link #append} devuelve false.
+ */
+public class HistoryWriter implements AutoCloseable {
+
+    /**
+     * Política de sincronización a disco (fsync).
+     */
+    public enum Durability {
+        /** Nunca fuerza a disco; el sistema operativo decide cuándo escribir. */
+        NONE,
+        /** Fuerza a disco como máximo cada N milisegundos. */
+        INTERVAL,
+        /**
+         * Fuerza a disco después de cada lote escrito: una entrada confirmada
+         * por {@link #getWrittenCount()} ya está en disco, pero las que llegan
+         * juntas comparten un fsync (no hay uno por entrada). "entry" es un
+         * nombre anterior de esta misma política.
+         */
+        ALWAYS;
+
+        public static Durability from(String value) {
+            if (value == null || value.isBlank()) return INTERVAL;
+            return switch (value.trim().toLowerCase()) {
+                case "none" -> NONE;
+                case "always", "entry" -> ALWAYS;
+                default -> INTERVAL;
+            };
+        }
+    }
+
+    /**
+     * Qué hacer con una entrada cuando la cola está llena.
+     */
+    public enum Overflow {
+        /** Esperar hasta {@link #BLOCK_TIMEOUT_MS} a que haya lugar; si no, se descarta. */
+        BLOCK,
+        /** Descartarla de inmediato: el emisor nunca espera, a costa de perder historial. */
+        DROP;
+
+        public static Overflow from(String value) {
+            return value != null && value.trim().equalsIgnoreCase("drop") ? DROP : BLOCK;
+        }
+    }
+
+    /**
+     * Espera máxima de {@link Overflow#BLOCK} por una entrada.
+     */
+    public static final long BLOCK_TIMEOUT_MS = 100;
+
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_POLL_MS = 200;
+
+    private final HistoryLog log;
+    private final Durability durability;
+    private final Overflow overflow;
+    private final long flushIntervalMs;
+    private final BlockingQueue<HistoryLog.Entry> queue;
+    private final Thread thread;
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+    private volatile long lastDropWarning = 0;
+
+    /**
+     * Inicia el hilo escritor sobre un historial ya abierto.
+     *
+     * @param log Historial segmentado de destino
+     * @param durability Política de fsync
+     * @param flushIntervalMs Intervalo de fsync para {@link Durability#INTERVAL}
+     * @param capacity Capacidad de la cola de entradas pendientes
+     * @param overflow Qué hacer si la cola está llena
+     */
+    HistoryWriter(HistoryLog log, Durability durability, long flushIntervalMs, int capacity, Overflow overflow) {
+        this.log = log;
+        this.durability = durability;
+        this.overflow = overflow;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "History-Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Encola una línea JSON para escribirla. Con lugar en la cola no bloquea;
+     * si está llena, espera o descarta según la política {@link Overflow}. Una
+     * entrada descartada se contabiliza.
+     *
+     * @param key Clave de conversación para el índice (null si no pertenece a ninguna)
+     * @param jsonLine Entrada serializada (sin salto de línea)
+     * @return true si quedó encolada; false si se perdió (cola llena o escritor cerrado)
+     */
+    public boolean append(String key, String jsonLine) {
+        if (running) {
+            HistoryLog.Entry entry = new HistoryLog.Entry(key, jsonLine.getBytes(StandardCharsets.UTF_8),
+                    System.currentTimeMillis());
+            if (queue.offer(entry) || overflow == Overflow.BLOCK && offerBlocking(entry)) return true;
+        }
+        dropped.increment();
+        long now = System.currentTimeMillis();
+        if (now - lastDropWarning > 5000) {
+            lastDropWarning = now;
+            System.err.println("[HistoryWriter] Cola llena o cerrada, entradas descartadas: " + dropped.sum());
+        }
+        return false;
+    }
+
+    private boolean offerBlocking(HistoryLog.Entry entry) {
+        try {
+            return queue.offer(entry, BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void run() {
+        List<HistoryLog.Entry> batch = new ArrayList<>(MAX_BATCH);
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+        long pollMs = durability == Durability.INTERVAL ? Math.min(flushIntervalMs, IDLE_POLL_MS) : IDLE_POLL_MS;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                HistoryLog.Entry first = queue.poll(pollMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    log.append(batch);
+                    written.add(batch.size());
+                    batches.increment();
+                    batch.clear();
+                    dirty = true;
+                    if (durability == Durability.ALWAYS) {
+                        log.force();
+                        dirty = false;
+                    }
+                }
+                if (dirty && durability == Durability.INTERVAL
+                        && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastForce) >= flushIntervalMs) {
+                    log.force();
+                    lastForce = System.nanoTime();
+                    dirty = false;
+                }
+            } catch (InterruptedException e) {
+                // close() detiene el bucle con running=false
+            } catch (IOException e) {
+                System.err.println("[HistoryWriter] Error escribiendo historial: " + e.getMessage());
+                batch.clear();
+            }
+        }
+
+        try {
+            if (durability != Durability.NONE) log.force();
+        } catch (IOException e) {
+            System.err.println("[HistoryWriter] Error cerrando historial: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Detiene el escritor después de vaciar la cola y forzar los datos a disco.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,339 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro de métricas del servidor: contadores, histogramas de latencia y
+ * valores leídos bajo demanda. Registrar es una operación de arranque (se busca
+ * o crea la métrica por nombre y etiquetas); actualizar no toma bloqueos: los
+ * contadores son {@link LongAdder} y los histogramas incrementan una celda de un
+ * {@link AtomicLongArray}, así medir un camino caliente cuesta un par de
+ * System.nanoTime() y unas sumas atómicas.
+ * Se exporta en el formato de texto de Prometheus ({@link #render()}) por el
+ * endpoint /metrics y en un resumen legible para el menú del servidor.
+ */
+public final class Metrics {
+    private static final Map<String, Metric> registry = new ConcurrentHashMap<>();
+
+    private Metrics() {}
+
+    /**
+     * Contador con el nombre y las etiquetas dados, creado si no existe.
+     *
+     * @param name Nombre de la métrica (p. ej. "chat_history_appends_total")
+     * @param labels Etiquetas en formato Prometheus sin llaves (p. ej. command="/msg"), o null
+     * @param help Descripción de la métrica
+     */
+    public static Counter counter(String name, String labels, String help) {
+        return register(new Counter(name, labels, help));
+    }
+
+    /**
+     * Histograma de duraciones en nanosegundos, creado si no existe.
+     * Se exporta en segundos.
+     */
+    public static Histogram histogram(String name, String labels, String help) {
+        return register(new Histogram(name, labels, help));
+    }
+
+    /**
+     * Valor leído en cada exportación (tamaño de una cola, usuarios conectados...).
+     * Registrar otro con el mismo nombre y etiquetas reemplaza la función anterior.
+     */
+    public static void gauge(String name, String labels, String help, LongSupplier value) {
+        Gauge gauge = new Gauge(name, labels, help, value);
+        registry.put(gauge.key(), gauge);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Metric> T register(T metric) {
+        Metric existing = registry.putIfAbsent(metric.key(), metric);
+        if (existing == null) return metric;
+        if (existing.getClass() != metric.getClass()) {
+            throw new IllegalArgumentException("Métrica ya registrada con otro tipo: " + metric.key());
+        }
+        return (T) existing;
+    }
+
+    /**
+     * Todas las métricas en el formato de texto de Prometheus (versión 0.0.4).
+     * Los histogramas se exportan como summary con los cuantiles 0.5, 0.9, 0.99 y 0.999.
+     */
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        String lastName = null;
+        for (Metric metric : sorted()) {
+            if (!metric.name.equals(lastName)) {
+                out.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+                out.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+                lastName = metric.name;
+            }
+            metric.render(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Resumen legible de las métricas, una por línea. Los histogramas muestran
+     * cantidad, promedio, p50, p99 y máximo.
+     */
+    public static String summary() {
+        StringBuilder out = new StringBuilder(2048);
+        for (Metric metric : sorted()) {
+            metric.summarize(out);
+        }
+        return out.length() == 0 ? "Sin métricas registradas" : out.toString();
+    }
+
+    // Agrupadas por nombre: el formato exige que las series de una métrica vayan juntas
+    private static List<Metric> sorted() {
+        List<Metric> metrics = new ArrayList<>(registry.values());
+        metrics.sort(Comparator.comparing((Metric m) -> m.name).thenComparing(Metric::key));
+        return metrics;
+    }
+
+    private abstract static class Metric {
+        final String name;
+        final String labels;
+        final String help;
+
+        Metric(String name, String labels, String help) {
+            this.name = name;
+            this.labels = labels == null || labels.isEmpty() ? null : labels;
+            this.help = help;
+        }
+
+        String key() {
+            return labels == null ? name : name + "{" + labels + "}";
+        }
+
+        abstract String type();
+
+        abstract void render(StringBuilder out);
+
+        abstract void summarize(StringBuilder out);
+
+        // nombre{etiquetas,extra} valor
+        void sample(StringBuilder out, String suffix, String extra, String value) {
+            out.append(name).append(suffix);
+            if (labels != null || extra != null) {
+                out.append('{');
+                if (labels != null) out.append(labels);
+                if (labels != null && extra != null) out.append(',');
+                if (extra != null) out.append(extra);
+                out.append('}');
+            }
+            out.append(' ').append(value).append('\n');
+        }
+    }
+
+    /**
+     * Contador monótono. Con {@link LongAdder} cada hilo suma en su propia celda
+     * cuando hay contención, por lo que no se vuelve un punto de serialización.
+     */
+    public static final class Counter extends Metric {
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String labels, String help) {
+            super(name, labels, help);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        String type() {
+            return "counter";
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            sample(out, "", null, Long.toString(value.sum()));
+        }
+
+        @Override
+        void summarize(StringBuilder out) {
+            out.append(key()).append(": ").append(value.sum()).append('\n');
+        }
+    }
+
+    private static final class Gauge extends Metric {
+        private final LongSupplier value;
+
+        private Gauge(String name, String labels, String help, LongSupplier value) {
+            super(name, labels, help);
+            this.value = value;
+        }
+
+        @Override
+        String type() {
+            return "gauge";
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            sample(out, "", null, Long.toString(value.getAsLong()));
+        }
+
+        @Override
+        void summarize(StringBuilder out) {
+            out.append(key()).append(": ").append(value.getAsLong()).append('\n');
+        }
+    }
+
+    /**
+     * Histograma de duraciones con cubetas log-lineales (como HdrHistogram): cada
+     * potencia de dos se divide en 16 cubetas iguales, así el
+     * error relativo de un cuantil es de a lo sumo 1/16 (~6%) en todo el rango,
+     * desde nanosegundos hasta 2^40 ns (unos 18 minutos; lo que
+     * exceda cae en la última cubeta). Registrar es calcular el índice con
+     * numberOfLeadingZeros e incrementar esa celda; no hay bloqueos ni reservas.
+     * Los cuantiles se calculan al exportar sobre una lectura no atómica de las
+     * cubetas, suficiente para monitoreo.
+     */
+    public static final class Histogram extends Metric {
+        private static final int SUB_BITS = 4;
+        private static final int SUB_BUCKETS = 1 << SUB_BITS;
+        private static final int MAX_EXPONENT = 40;
+        private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+        private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name, String labels, String help) {
+            super(name, labels, help);
+        }
+
+        /**
+         * Registra una duración.
+         *
+         * @param nanos Duración en nanosegundos (los negativos cuentan como 0)
+         */
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            buckets.getAndIncrement(index(nanos));
+            count.increment();
+            sum.add(nanos);
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Registra el tiempo transcurrido desde {@code startNanos} (un valor de System.nanoTime()).
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        /**
+         * Valor (en nanosegundos) bajo el cual queda la fracción q de las muestras.
+         * Devuelve el extremo superior de la cubeta, acotado por el máximo observado.
+         */
+        public long quantile(double q) {
+            return quantiles(new double[] {q})[0];
+        }
+
+        static int index(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            if (exponent > MAX_EXPONENT) return BUCKETS - 1;
+            int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        // Mayor valor que cae en la cubeta
+        static long upperBound(int index) {
+            if (index < SUB_BUCKETS) return index;
+            int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+            int sub = index % SUB_BUCKETS;
+            long lower = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+            return lower + (1L << (exponent - SUB_BITS)) - 1;
+        }
+
+        private long[] quantiles(double[] qs) {
+            long[] snapshot = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            long[] result = new long[qs.length];
+            if (total == 0) return result;
+            long observedMax = max.get();
+            int i = 0;
+            long seen = 0;
+            for (int q = 0; q < qs.length; q++) {
+                long rank = Math.max(1, (long) Math.ceil(qs[q] * total));
+                while (i < BUCKETS - 1 && seen + snapshot[i] < rank) {
+                    seen += snapshot[i++];
+                }
+                result[q] = Math.min(upperBound(i), observedMax);
+            }
+            return result;
+        }
+
+        @Override
+        String type() {
+            return "summary";
+        }
+
+        @Override
+        void render(StringBuilder out) {
+            long[] values = quantiles(QUANTILES);
+            for (int q = 0; q < QUANTILES.length; q++) {
+                sample(out, "", "quantile=\"" + QUANTILES[q] + "\"", seconds(values[q]));
+            }
+            sample(out, "_sum", null, seconds(sum.sum()));
+            sample(out, "_count", null, Long.toString(count.sum()));
+        }
+
+        @Override
+        void summarize(StringBuilder out) {
+            long n = count.sum();
+            out.append(key()).append(": n=").append(n);
+            if (n > 0) {
+                long[] values = quantiles(new double[] {0.5, 0.99});
+                out.append(" prom=").append(millis(sum.sum() / n))
+                        .append(" p50=").append(millis(values[0]))
+                        .append(" p99=").append(millis(values[1]))
+                        .append(" max=").append(millis(max.get()));
+            }
+            out.append('\n');
+        }
+
+        private static String seconds(long nanos) {
+            return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+        }
+
+        private static String millis(long nanos) {
+            return String.format(Locale.ROOT, "%.3fms", nanos / 1e6);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package service;
+
+import model.AudioCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Escritura en streaming de una nota de voz como WAV (44100 Hz, mono). Escribe
+ * primero el encabezado con tamaños provisionales, luego cada fragmento
+ * directamente al archivo a medida que llega y, al terminar, corrige los tamaños
+ * RIFF y data. La memoria usada no depende de la duración.
+ * <p>
+ * El audio se guarda en el formato de almacenamiento configurado (PCM 16-bit o
+ * μ-law de 8 bits, la mitad de espacio); si el emisor lo envió con otro códec se
+ * transcodifica al vuelo.
+ */
+public final class VoiceNoteWriter implements AutoCloseable {
+    private static final int HEADER_SIZE = 44;
+    private static final int SAMPLE_RATE = 44100;
+    private static final short CHANNELS = 1;
+    // Etiquetas de formato WAV
+    private static final short WAVE_FORMAT_PCM = 1;
+    private static final short WAVE_FORMAT_MULAW = 7;
+
+    private final Path path;
+    private final String relativePath;
+    private final FileChannel channel;
+    private final AudioCodec storage;
+    private final AudioCodec.StreamDecoder decoder;
+    private final AudioCodec.Encoder encoder;
+    private short[] samples = new short[0];
+    private byte[] encoded = new byte[0];
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private long dataBytes = 0;
+
+    /**
+     * @param source Códec con el que llegan los bytes
+     * @param storage Formato del WAV: PCM16 o ULAW
+     */
+    VoiceNoteWriter(Path path, String relativePath, AudioCodec source, AudioCodec storage) throws IOException {
+        if (storage != AudioCodec.PCM16 && storage != AudioCodec.ULAW) {
+            throw new IllegalArgumentException("Formato WAV no soportado: " + storage.id());
+        }
+        this.path = path;
+        this.relativePath = relativePath;
+        this.storage = storage;
+        this.decoder = source == storage ? null : new AudioCodec.StreamDecoder(source);
+        this.encoder = source == storage ? null : storage.newEncoder();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeFully(header(0), 0);
+    }
+
+    /**
+     * Agrega un fragmento de audio (en el códec de origen) al archivo.
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (decoder == null) {
+            append(data, offset, length);
+            return;
+        }
+        ensureCapacity(decoder.maxSamples(length));
+        append(decoder.feed(data, offset, length, samples));
+    }
+
+    // Codifica las muestras decodificadas al formato de almacenamiento y las agrega
+    private void append(int count) throws IOException {
+        if (count == 0) return;
+        int n = encoder.encode(samples, 0, count, encoded, 0);
+        append(encoded, 0, n);
+    }
+
+    private void append(byte[] data, int offset, int length) throws IOException {
+        writeFully(ByteBuffer.wrap(data, offset, length), HEADER_SIZE + dataBytes);
+        dataBytes += length;
+    }
+
+    // Los búferes de transcodificación crecen con el fragmento más grande y se reutilizan
+    private void ensureCapacity(int sampleCount) {
+        if (samples.length < sampleCount) {
+            samples = new short[sampleCount];
+            encoded = new byte[storage.maxEncodedBytes(sampleCount)];
+        }
+    }
+
+    /**
+     * Corrige los tamaños del encabezado y cierra el archivo.
+     * Un byte final suelto (muestra PCM incompleta) se descarta.
+     *
+     * @return Ruta relativa y tamaño del WAV guardado
+     */
+    public HistoryService.SavedAudio finish() throws IOException {
+        if (!done.compareAndSet(false, true)) {
+            throw new IOException("La nota de voz ya fue cerrada");
+        }
+        try {
+            if (decoder != null) {
+                ensureCapacity(AudioCodec.ADPCM_BLOCK_SAMPLES);
+                append(decoder.finish(samples));
+            }
+            int blockAlign = blockAlign();
+            long data = dataBytes / blockAlign * blockAlign;
+            channel.truncate(HEADER_SIZE + data);
+            writeFully(header(data), 0);
+            channel.close();
+            return new HistoryService.SavedAudio(relativePath, HEADER_SIZE + data);
+        } catch (IOException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Descarta la nota (conexión cerrada a mitad de la transferencia o error de disco).
+     */
+    public void abort() {
+        if (done.compareAndSet(false, true)) {
+            discard();
+        }
+    }
+
+    @Override
+    public void close() {
+        abort();
+    }
+
+    private void discard() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("[VoiceNoteWriter] No se pudo descartar " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void writeFully(ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    private int blockAlign() {
+        return storage == AudioCodec.ULAW ? CHANNELS : CHANNELS * 2;
+    }
+
+    private ByteBuffer header(long dataLength) {
+        int blockAlign = blockAlign();
+        ByteBuffer h = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        h.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        h.putInt((int) (36 + dataLength));
+        h.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        h.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        h.putInt(16);                          // tamaño del bloque fmt
+        h.putShort(storage == AudioCodec.ULAW ? WAVE_FORMAT_MULAW : WAVE_FORMAT_PCM);
+        h.putShort(CHANNELS);
+        h.putInt(SAMPLE_RATE);
+        h.putInt(SAMPLE_RATE * blockAlign);    // byte rate
+        h.putShort((short) blockAlign);
+        h.putShort((short) (blockAlign / CHANNELS * 8));
+        h.put("data".getBytes(StandardCharsets.US_ASCII));
+        h.putInt((int) dataLength);
+        h.flip();
+        return h;
+    }
+}
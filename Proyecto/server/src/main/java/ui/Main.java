@@ -37,12 +37,14 @@ public class Main {
             + "\nSelecciona una opción:"
             + "\n1. Iniciar servidor"
             + "\n2. Cerrar servidor"
+            + "\n3. Ver métricas"
             + "\n0. Salir");
 
             try{
                 switch (sc.nextInt()) {
                     case 1 -> startServer();
                     case 2 -> closeServer();
+                    case 3 -> showMetrics();
                     case 0 -> {
                         System.out.println("Saliendo...");
                         exit = true;
@@ -70,4 +72,11 @@ public class Main {
         if (!controller.isServerRunning()) System.out.println("\n El servidor no está en ejecución.");
         else System.out.println("\n" + controller.closeServer());
     }
+
+    /**
+     * Muestra el resumen de métricas del servidor.
+     */
+    private void showMetrics() {
+        System.out.println("\n" + controller.getMetricsSummary());
+    }
 }
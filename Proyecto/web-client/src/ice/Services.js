@@ -28,6 +28,8 @@ let Chat = _ModuleRegistry.module("Chat");
 
     Slice.defineSequence(Chat, "ByteSeqHelper", "Ice.ByteHelper", true);
 
+    Slice.defineSequence(Chat, "StringSeqHelper", "Ice.StringHelper", false);
+
     Chat.VoiceEntry = class
     {
         constructor(type = "", scope = "", sender = "", recipient = "", group = "", audioFile = "")
@@ -139,6 +141,94 @@ let Chat = _ModuleRegistry.module("Chat");
 
     Slice.defineStruct(Chat.CallEvent, true, true);
 
+    Chat.HistoryPage = class
+    {
+        constructor(items = null, nextCursor = "", hasMore = false)
+        {
+            this.items = items;
+            this.nextCursor = nextCursor;
+            this.hasMore = hasMore;
+        }
+
+        _write(ostr)
+        {
+            Chat.StringSeqHelper.write(ostr, this.items);
+            ostr.writeString(this.nextCursor);
+            ostr.writeBool(this.hasMore);
+        }
+
+        _read(istr)
+        {
+            this.items = Chat.StringSeqHelper.read(istr);
+            this.nextCursor = istr.readString();
+            this.hasMore = istr.readBool();
+        }
+
+        static get minWireSize()
+        {
+            return  3;
+        }
+    };
+
+    Slice.defineStruct(Chat.HistoryPage, true, true);
+
+    Chat.HistoryError = class extends Ice.UserException
+    {
+        constructor(reason = "", _cause = "")
+        {
+            super(_cause);
+            this.reason = reason;
+        }
+
+        static get _parent()
+        {
+            return Ice.UserException;
+        }
+
+        static get _id()
+        {
+            return "::Chat::HistoryError";
+        }
+
+        _mostDerivedType()
+        {
+            return Chat.HistoryError;
+        }
+
+        _writeMemberImpl(ostr)
+        {
+            ostr.writeString(this.reason);
+        }
+
+        _readMemberImpl(istr)
+        {
+            this.reason = istr.readString();
+        }
+    };
+
+    Chat.InvalidCursor = class extends Chat.HistoryError
+    {
+        constructor(reason, _cause = "")
+        {
+            super(reason, _cause);
+        }
+
+        static get _parent()
+        {
+            return Chat.HistoryError;
+        }
+
+        static get _id()
+        {
+            return "::Chat::InvalidCursor";
+        }
+
+        _mostDerivedType()
+        {
+            return Chat.InvalidCursor;
+        }
+    };
+
     const iceC_Chat_VoiceObserver_ids = [
         "::Chat::VoiceObserver",
         "::Ice::Object"
@@ -179,6 +269,10 @@ let Chat = _ModuleRegistry.module("Chat");
         "subscribe": [, , , , , [[7], ["Chat.VoiceObserverPrx"]], , , , ],
         "unsubscribe": [, , , , , [[7], ["Chat.VoiceObserverPrx"]], , , , ],
         "sendCallChunk": [, , , , , [[7], [7], ["Chat.ByteSeqHelper"]], , , , ],
+        "codecs": [, , , , ["Chat.StringSeqHelper"], , , , , ],
+        "sendEncodedVoiceNoteToUser": [, , , , , [[7], [7], [7], ["Chat.ByteSeqHelper"]], , , , ],
+        "sendEncodedVoiceNoteToGroup": [, , , , , [[7], [7], [7], ["Chat.ByteSeqHelper"]], , , , ],
+        "sendEncodedCallChunk": [, , , , , [[7], [7], [7], ["Chat.ByteSeqHelper"]], , , , ],
         "startCall": [, , , , [7], [[7], [7]], , , , ],
         "startGroupCall": [, , , , [7], [[7], [7]], , , , ],
         "acceptCall": [, , , , , [[7], [7]], , , , ],
@@ -186,4 +280,33 @@ let Chat = _ModuleRegistry.module("Chat");
         "endCall": [, , , , , [[7], [7]], , , , ]
     });
 
+    const iceC_Chat_History_ids = [
+        "::Chat::History",
+        "::Ice::Object"
+    ];
+
+    Chat.History = class extends Ice.Object
+    {
+    };
+
+    Chat.HistoryPrx = class extends Ice.ObjectPrx
+    {
+    };
+
+    Slice.defineOperations(Chat.History, Chat.HistoryPrx, iceC_Chat_History_ids, 0,
+    {
+        "privateHistory": [, , , , [Chat.HistoryPage], [[7], [7], [7], [3]], , [
+            Chat.HistoryError
+        ], , ],
+        "groupHistory": [, , , , [Chat.HistoryPage], [[7], [7], [3]], , [
+            Chat.HistoryError
+        ], , ],
+        "callHistory": [, , , , [Chat.HistoryPage], [[7], [7], [3]], , [
+            Chat.HistoryError
+        ], , ],
+        "allHistory": [, , , , [Chat.HistoryPage], [[7], [3]], , [
+            Chat.HistoryError
+        ], , ]
+    });
+
 export { Chat };